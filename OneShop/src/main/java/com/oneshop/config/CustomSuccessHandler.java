@@ -1,7 +1,7 @@
 // src/main/java/com/oneshop/config/CustomSuccessHandler.java
 package com.oneshop.config;
 
-import com.oneshop.service.JwtUtils;
+import com.oneshop.service.JwtTokenService;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -28,7 +28,7 @@ public class CustomSuccessHandler implements AuthenticationSuccessHandler {
     private static final Logger logger = LoggerFactory.getLogger(CustomSuccessHandler.class);
 
     @Autowired
-    private JwtUtils jwtUtils;
+    private JwtTokenService jwtTokenService;
 
     @Override
     public void onAuthenticationSuccess(HttpServletRequest request,
@@ -99,7 +99,7 @@ public class CustomSuccessHandler implements AuthenticationSuccessHandler {
         }
 
         // --- Generate JWT token and Cookie ---
-        String jwt = jwtUtils.generateJwtTokenFromUsername(identifierForJwt); // Use the determined identifier
+        String jwt = jwtTokenService.generateToken(identifierForJwt); // Use the determined identifier
         logger.debug("Generated JWT with subject: {}", identifierForJwt);
         Cookie cookie = new Cookie("jwtToken", jwt);
         cookie.setHttpOnly(true);
@@ -0,0 +1,34 @@
+package com.oneshop.config;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Broker STOMP nhúng (Artemis) thay cho RabbitMQ khi chạy thử chế độ relay trên máy dev.
+ * Bật ở 1 node: oneshop.websocket.embedded-broker.enabled=true + oneshop.websocket.broker.mode=relay;
+ * các node khác chỉ cần broker.mode=relay và relay.port trỏ tới cổng này.
+ * Thư viện Artemis chỉ có trên classpath khi build/chạy local (scope provided), không có trong bản đóng gói.
+ */
+@Configuration
+@ConditionalOnProperty(name = "oneshop.websocket.embedded-broker.enabled", havingValue = "true")
+@ConditionalOnClass(name = "org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ")
+public class EmbeddedStompBrokerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmbeddedActiveMQ embeddedStompBroker(@Value("${oneshop.websocket.relay.port:61613}") int port) throws Exception {
+        ConfigurationImpl configuration = new ConfigurationImpl();
+        configuration.setPersistenceEnabled(false);
+        configuration.setSecurityEnabled(false);
+        // /queue/... -> anycast, /topic/... -> multicast (đúng ngữ nghĩa destination của Spring STOMP)
+        configuration.addAcceptorConfiguration("stomp",
+                "tcp://127.0.0.1:" + port + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuration);
+        return broker;
+    }
+}
@@ -1,11 +1,13 @@
 package com.oneshop.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -19,7 +21,10 @@ public class MvcConfig implements WebMvcConfigurer {
 
         // Cấu hình: Khi ai đó truy cập /uploads/images/**
         // Hãy tìm file trong thư mục 'file:/đường/dẫn/tuyệt/đối/uploads/images/'
+        // URL cũ không có hash nội dung (link đã lưu, ảnh giỏ hàng dựng bằng JS) -> chỉ cache ngắn;
+        // trang mới dùng /media/{hash}/... (MediaController) với cache dài hạn
         registry.addResourceHandler("/uploads/images/**")
-                .addResourceLocations("file:/" + imageUploadPath + "/");
+                .addResourceLocations("file:/" + imageUploadPath + "/")
+                .setCacheControl(CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic());
     }
 }
\ No newline at end of file
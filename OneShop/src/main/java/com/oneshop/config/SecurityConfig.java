@@ -58,7 +58,7 @@ public class SecurityConfig {
     }
 
     private static final String[] PUBLIC_URLS = {
-            "/assets/**", "/webjars/**", "/css/**", "/js/**", "/images/**", "/uploads/**",
+            "/assets/**", "/webjars/**", "/css/**", "/js/**", "/images/**", "/uploads/**", "/media/**",
             "/", "/home", "/search", "/error", "/contact", "/news",
             "/products", "/product/**",
             "/login", "/register", "/verify-otp", "/forgot", "/reset-password",
@@ -0,0 +1,37 @@
+package com.oneshop.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Các TransactionTemplate dùng chung (TransactionTemplate đã cấu hình thì an toàn khi dùng từ nhiều luồng).
+ */
+@Configuration
+public class TransactionConfig {
+
+    /** Tên bean: transaction riêng (REQUIRES_NEW), chỉ đọc. */
+    public static final String READ_ONLY_NEW_TEMPLATE = "readOnlyNewTransactionTemplate";
+
+    // Khai báo lại template mặc định của Spring Boot (auto-config bị tắt khi đã có bean TransactionTemplate)
+    @Bean
+    @Primary
+    public TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Cho listener AFTER_COMMIT / job nền đọc dữ liệu: không tham gia transaction gốc (có thể đã commit),
+     * chỉ đọc. Inject bằng @Qualifier(TransactionConfig.READ_ONLY_NEW_TEMPLATE).
+     */
+    @Bean(READ_ONLY_NEW_TEMPLATE)
+    public TransactionTemplate readOnlyNewTransactionTemplate(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        return template;
+    }
+}
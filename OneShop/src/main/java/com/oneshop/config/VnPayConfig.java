@@ -4,21 +4,32 @@ import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.net.InetAddress;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.UUID;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.Getter;
@@ -30,6 +41,8 @@ import lombok.Setter;
 @Setter
 public class VnPayConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(VnPayConfig.class);
+
     // Các thuộc tính lấy từ application.properties
     private String url;
     private String apiUrl;
@@ -54,12 +67,21 @@ public class VnPayConfig {
     public static final String VNP_SECURE_HASH = "vnp_SecureHash";
     public static final String VNP_EXPIRE_DATE = "vnp_ExpireDate";
 
+    // Kết quả tra cứu giao dịch (querydr) của 1 đơn
+    public enum TransactionStatus {
+        PAID,       // Đã thanh toán thành công
+        UNPAID,     // Chắc chắn chưa thanh toán: không có giao dịch, giao dịch lỗi hoặc chưa hoàn tất
+        UNKNOWN     // Không xác định được (lỗi mạng, VNPAY lỗi, chữ ký sai...): không được tự hủy đơn
+    }
+
+    private RestClient restClient;
+
     /**
      * Phương thức tạo URL thanh toán.
      * Đây là phương thức (instance method) mà Controller của bạn sẽ gọi.
      */
-    public String createPaymentUrl(String vnp_TxnRef, long amount, String vnp_OrderInfo, String vnp_IpAddr) 
-            throws UnsupportedEncodingException {
+    public String createPaymentUrl(String vnp_TxnRef, long amount, String vnp_OrderInfo, String vnp_IpAddr,
+                                   LocalDateTime orderCreatedAt) throws UnsupportedEncodingException {
         
         Map<String, String> vnp_Params = new HashMap<>();
         vnp_Params.put(VNP_VERSION, this.version); // Sử dụng 'this.version'
@@ -74,9 +96,11 @@ public class VnPayConfig {
         vnp_Params.put(VNP_RETURN_URL, this.returnUrl); // Sử dụng 'this.returnUrl'
         vnp_Params.put(VNP_IPADDR, vnp_IpAddr);
 
-        // Đặt thời gian tạo và hết hạn
+        // Đặt thời gian tạo và hết hạn. Thời gian tạo lấy theo lúc tạo đơn để sau này tra cứu giao dịch (querydr)
+        // tính lại được đúng vnp_TransactionDate mà không cần lưu thêm
         Calendar cld = Calendar.getInstance(TimeZone.getTimeZone("Etc/GMT+7"));
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMddHHmmss");
+        cld.setTime(Date.from(orderCreatedAt.atZone(ZoneId.systemDefault()).toInstant()));
+        SimpleDateFormat formatter = vnpDateFormat();
         String vnp_CreateDate = formatter.format(cld.getTime());
         vnp_Params.put(VNP_CREATE_DATE, vnp_CreateDate);
         
@@ -110,6 +134,97 @@ public class VnPayConfig {
         return this.url + "?" + query.toString(); // Sử dụng 'this.url'
     }
 
+    /**
+     * Tra cứu trạng thái thanh toán của đơn {@code vnp_TxnRef} (API querydr).
+     * Trả UNKNOWN khi không chắc chắn (lỗi mạng, VNPAY lỗi, chữ ký phản hồi sai): bên gọi không được hủy đơn.
+     */
+    public TransactionStatus queryTransaction(String vnp_TxnRef, LocalDateTime orderCreatedAt) {
+        try {
+            String requestId = UUID.randomUUID().toString().replace("-", "");
+            String command = "querydr";
+            String orderInfo = "Tra cuu don hang " + vnp_TxnRef;
+            String transactionDate = vnpDateFormat().format(Date.from(orderCreatedAt.atZone(ZoneId.systemDefault()).toInstant()));
+            String createDate = vnpDateFormat().format(new Date());
+            String ipAddr = InetAddress.getLocalHost().getHostAddress();
+
+            String hashData = String.join("|", requestId, this.version, command, this.tmnCode, vnp_TxnRef,
+                    transactionDate, createDate, ipAddr, orderInfo);
+            Map<String, String> body = new HashMap<>();
+            body.put("vnp_RequestId", requestId);
+            body.put(VNP_VERSION, this.version);
+            body.put(VNP_COMMAND, command);
+            body.put(VNP_TMNCODE, this.tmnCode);
+            body.put(VNP_TXNREF, vnp_TxnRef);
+            body.put(VNP_ORDER_INFO, orderInfo);
+            body.put("vnp_TransactionDate", transactionDate);
+            body.put(VNP_CREATE_DATE, createDate);
+            body.put(VNP_IPADDR, ipAddr);
+            body.put(VNP_SECURE_HASH, hmacSHA512(this.hashSecret, hashData));
+
+            Map<String, String> response = restClient().post()
+                    .uri(this.apiUrl)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body)
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<Map<String, String>>() {});
+            return toTransactionStatus(vnp_TxnRef, response);
+        } catch (Exception e) {
+            logger.warn("VNPAY querydr for order {} failed: {}", vnp_TxnRef, e.getMessage());
+            return TransactionStatus.UNKNOWN;
+        }
+    }
+
+    private TransactionStatus toTransactionStatus(String vnp_TxnRef, Map<String, String> response) {
+        if (response == null) {
+            return TransactionStatus.UNKNOWN;
+        }
+        String responseCode = response.get("vnp_ResponseCode");
+        // 91: không tìm thấy giao dịch -> khách chưa từng thanh toán (phản hồi lỗi không kèm chữ ký đầy đủ)
+        if ("91".equals(responseCode)) {
+            return TransactionStatus.UNPAID;
+        }
+        if (!"00".equals(responseCode)) {
+            logger.warn("VNPAY querydr for order {} returned code {}: {}", vnp_TxnRef, responseCode, response.get("vnp_Message"));
+            return TransactionStatus.UNKNOWN;
+        }
+        String responseHash = String.join("|", field(response, "vnp_ResponseId"), field(response, VNP_COMMAND),
+                responseCode, field(response, "vnp_Message"), field(response, VNP_TMNCODE), field(response, VNP_TXNREF),
+                field(response, VNP_AMOUNT), field(response, "vnp_BankCode"), field(response, "vnp_PayDate"),
+                field(response, "vnp_TransactionNo"), field(response, "vnp_TransactionType"),
+                field(response, "vnp_TransactionStatus"), field(response, VNP_ORDER_INFO),
+                field(response, "vnp_PromotionCode"), field(response, "vnp_PromotionAmount"));
+        if (!hmacSHA512(this.hashSecret, responseHash).equalsIgnoreCase(field(response, VNP_SECURE_HASH))) {
+            logger.warn("VNPAY querydr response for order {} failed integrity check.", vnp_TxnRef);
+            return TransactionStatus.UNKNOWN;
+        }
+        // 00: thành công; 01: chưa hoàn tất (link thanh toán đã hết hạn nên không thể hoàn tất nữa); 02: lỗi
+        return switch (field(response, "vnp_TransactionStatus")) {
+            case "00" -> TransactionStatus.PAID;
+            case "01", "02" -> TransactionStatus.UNPAID;
+            default -> TransactionStatus.UNKNOWN;
+        };
+    }
+
+    private static String field(Map<String, String> response, String name) {
+        String value = response.get(name);
+        return value != null ? value : "";
+    }
+
+    private RestClient restClient() {
+        if (restClient == null) {
+            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(5000);
+            requestFactory.setReadTimeout(10000);
+            restClient = RestClient.builder().requestFactory(requestFactory).build();
+        }
+        return restClient;
+    }
+
+    // Định dạng ngày của VNPAY (theo múi giờ máy chủ, giống lúc tạo URL thanh toán)
+    private static SimpleDateFormat vnpDateFormat() {
+        return new SimpleDateFormat("yyyyMMddHHmmss");
+    }
+
     /**
      * Phương thức lấy IP.
      * Đây là phương thức (instance method) mà Controller của bạn sẽ gọi.
@@ -1,20 +1,92 @@
 // src/main/java/com/oneshop/config/WebSocketConfig.java
 package com.oneshop.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 // Thêm các import này
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker; // Đã có
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry; // Đã có
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer; // Đã có
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+/**
+ * Cấu hình STOMP.
+ * - oneshop.websocket.broker.mode=simple (mặc định): broker trong JVM, chỉ dùng được khi chạy 1 node.
+ * - oneshop.websocket.broker.mode=relay: chuyển tiếp /queue, /topic tới broker STOMP ngoài (RabbitMQ, Artemis...);
+ *   thông tin session của user được phát giữa các node nên convertAndSendToUser tới được user đang kết nối ở node khác.
+ *   Chạy thử trên máy dev: bật oneshop.websocket.embedded-broker.enabled=true ở 1 node (xem EmbeddedStompBrokerConfig).
+ */
 @Configuration
 @EnableWebSocketMessageBroker // Đã có
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer { // Đã có
 
+    @Value("${oneshop.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${oneshop.websocket.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${oneshop.websocket.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${oneshop.websocket.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${oneshop.websocket.relay.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${oneshop.websocket.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+
+    @Value("${oneshop.websocket.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${oneshop.websocket.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    // Pool xử lý tin từ client (@MessageMapping) và pool gửi tin xuống client
+    @Value("${oneshop.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${oneshop.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${oneshop.websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${oneshop.websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${oneshop.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${oneshop.websocket.outbound.queue-capacity:1000}")
+    private int outboundQueueCapacity;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) { // Đã có
-        config.enableSimpleBroker("/queue", "/topic");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/queue", "/topic")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayClientLogin)
+                    .setClientPasscode(relayClientPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode)
+                    // Gửi tới user không có session ở node này -> phát cho các node khác
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    // Đồng bộ danh sách user/session giữa các node
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            if (StringUtils.hasText(relayVirtualHost)) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else {
+            config.enableSimpleBroker("/queue", "/topic");
+        }
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
@@ -23,4 +95,27 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer { // Đ
     public void registerStompEndpoints(StompEndpointRegistry registry) { // Đã có
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
     }
-}
\ No newline at end of file
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Client chậm không giữ luồng outbound quá lâu / không làm đầy bộ nhớ
+        registration.setSendTimeLimit(15 * 1000)
+                .setSendBufferSizeLimit(512 * 1024);
+    }
+}
@@ -1,50 +1,41 @@
 // src/main/java/com/oneshop/controller/ChatApiController.java
 package com.oneshop.controller;
 
+import com.oneshop.entity.ChatConversation;
 import com.oneshop.entity.Role.RoleName;
 import com.oneshop.entity.User;
-import com.oneshop.repository.ChatMessageRepository;
-import com.oneshop.repository.RoleRepository; // Assuming you need this if not directly on User
-import com.oneshop.repository.UserRepository;
+import com.oneshop.service.ChatConversationService;
+import com.oneshop.service.PresenceService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/chat")
 public class ChatApiController {
 
-    @Autowired private UserRepository userRepository;
-    @Autowired private ChatMessageRepository chatMessageRepository;
-    // @Autowired private RoleRepository roleRepository; // Inject RoleRepository if needed
+    @Autowired private ChatConversationService chatConversationService;
+    @Autowired private PresenceService presenceService;
 
     // *** THÊM role vào DTO ***
-    public record ChatUserDto(Long id, String username, String fullName, String email, String role) {}
+    public record ChatUserDto(Long id, String username, String fullName, String email, String role,
+                              String lastMessage, String lastSender, LocalDateTime lastMessageAt, int unreadCount,
+                              boolean online) {}
 
+    // Hộp thư: người đã nhắn tin với user hiện tại, hội thoại mới nhất trước
     @GetMapping("/users")
     public List<ChatUserDto> getChatUsers(Authentication authentication) {
         String currentUsername = authentication.getName();
 
-        List<String> chatParticipants = chatMessageRepository.findChatParticipants(currentUsername);
-
-        List<String> targetUsernames = chatParticipants.stream()
-            .filter(name -> name != null && !name.equals(currentUsername))
-            .distinct() // Đảm bảo username không lặp lại
-            .toList();
-
-        if (targetUsernames.isEmpty()) {
-            return List.of(); // Trả về danh sách rỗng nếu không có ai chat
-        }
-
-        // Lấy thông tin User entities
-        List<User> targetUsers = userRepository.findByUsernameIn(targetUsernames); // Giả sử có hàm findByUsernameIn
-
-        return targetUsers.stream()
-                .filter(User::isActivated) // Chỉ lấy user đang hoạt động
-                .map(u -> {
+        return chatConversationService.getInbox(currentUsername).stream()
+                .map(row -> {
+                    ChatConversation c = (ChatConversation) row[0];
+                    User u = (User) row[1];
                     // *** Xác định vai trò để hiển thị ***
                     String displayRole = "Khách"; // Mặc định là Khách
                     if (u.getRole() != null) {
@@ -58,9 +49,21 @@ public class ChatApiController {
                         u.getUsername(),
                         u.getFullName(),
                         u.getEmail(),
-                        displayRole // *** Trả về vai trò ***
+                        displayRole, // *** Trả về vai trò ***
+                        c.getLastMessagePreview(),
+                        c.getLastSender(),
+                        c.getLastMessageAt(),
+                        c.getUnreadCount() != null ? c.getUnreadCount() : 0,
+                        presenceService.isOnline(u.getUsername())
                     );
                 })
                 .toList();
     }
-}
\ No newline at end of file
+
+    // Đánh dấu đã đọc các tin {username} gửi cho user hiện tại
+    @PostMapping("/conversations/{username}/read")
+    public ResponseEntity<?> markRead(@PathVariable String username, Authentication authentication) {
+        boolean cleared = chatConversationService.markRead(authentication.getName(), username);
+        return ResponseEntity.ok(Map.of("success", true, "cleared", cleared));
+    }
+}
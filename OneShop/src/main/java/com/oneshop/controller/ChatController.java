@@ -3,40 +3,65 @@ package com.oneshop.controller;
 
 import com.oneshop.entity.ChatMessageEntity;
 import com.oneshop.model.ChatMessage;
-import com.oneshop.repository.ChatMessageRepository;
+import com.oneshop.model.TypingNotice;
+import com.oneshop.service.ChatWriteBehindService;
+import com.oneshop.service.PresenceService;
 // Thêm các import này
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller; // Đã có
 
+import java.security.Principal;
 import java.time.LocalDateTime;
 
 @Controller // Đã có
 public class ChatController {
 
     private final SimpMessagingTemplate messagingTemplate; // Đã có
-    private final ChatMessageRepository chatMessageRepository; // Đã có
+    private final ChatWriteBehindService chatWriteBehindService;
+    private final PresenceService presenceService;
 
     public ChatController(SimpMessagingTemplate messagingTemplate, // Đã có
-                          ChatMessageRepository chatMessageRepository) { // Đã có
+                          ChatWriteBehindService chatWriteBehindService,
+                          PresenceService presenceService) {
         this.messagingTemplate = messagingTemplate;
-        this.chatMessageRepository = chatMessageRepository;
+        this.chatWriteBehindService = chatWriteBehindService;
+        this.presenceService = presenceService;
     }
 
     @MessageMapping("/chat.send") // Đã có
     public void send(@Payload ChatMessage msg) { // Đã có
-        // Lưu vào CSDL
-        chatMessageRepository.save(ChatMessageEntity.builder()
+        LocalDateTime sentAt = LocalDateTime.now();
+
+        // Gửi đến người nhận ngay, không chờ ghi CSDL
+        messagingTemplate.convertAndSendToUser(msg.getReceiver(), "/queue/private", msg); // Đã có
+
+        // Lưu vào CSDL theo lô ở luồng nền (kèm cập nhật hộp thư của 2 bên)
+        chatWriteBehindService.enqueue(ChatMessageEntity.builder()
                 .sender(msg.getSender())
                 .receiver(msg.getReceiver())
                 .content(msg.getContent())
-                .timestamp(LocalDateTime.now())
+                .timestamp(sentAt)
                 .type(ChatMessageEntity.MessageType.CHAT)
                 .build());
+        presenceService.touch(msg.getSender());
+    }
 
-        // Gửi đến người nhận
-        messagingTemplate.convertAndSendToUser(msg.getReceiver(), "/queue/private", msg); // Đã có
+    // "Đang nhập": người gửi lấy từ session (không tin payload), server gộp/giới hạn tần suất
+    @MessageMapping("/chat.typing")
+    public void typing(@Payload TypingNotice notice, Principal principal) {
+        if (principal != null && notice != null) {
+            presenceService.typing(principal.getName(), notice.receiver(), notice.typing());
+        }
+    }
+
+    // Client gửi định kỳ khi trang chat còn mở
+    @MessageMapping("/presence.heartbeat")
+    public void heartbeat(Principal principal) {
+        if (principal != null) {
+            presenceService.touch(principal.getName());
+        }
     }
 
     @MessageMapping("/chat.join") // Đã có
@@ -1,23 +1,31 @@
 package com.oneshop.controller;
 
-import com.oneshop.entity.ChatMessageEntity;
-import com.oneshop.repository.ChatMessageRepository;
+import com.oneshop.dto.ChatMessageDto;
+import com.oneshop.dto.CursorPage;
+import com.oneshop.service.ChatHistoryService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/chat")
 public class ChatHistoryController {
 
-    private final ChatMessageRepository repo;
+    private final ChatHistoryService chatHistoryService;
 
-    public ChatHistoryController(ChatMessageRepository repo) {
-        this.repo = repo;
+    public ChatHistoryController(ChatHistoryService chatHistoryService) {
+        this.chatHistoryService = chatHistoryService;
     }
 
+    // Lịch sử chat của người đang đăng nhập với {with}: N tin mới nhất, hoặc các tin trước {before}
     @GetMapping("/history")
-    public List<ChatMessageEntity> getHistory(@RequestParam String userA, @RequestParam String userB) {
-        return repo.findChatHistory(userA, userB);
+    public ResponseEntity<CursorPage<ChatMessageDto>> getHistory(@RequestParam("with") String otherUser,
+                                                                 @RequestParam(value = "before", required = false) Long beforeId,
+                                                                 @RequestParam(value = "limit", required = false) Integer limit,
+                                                                 Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(chatHistoryService.getHistory(authentication.getName(), otherUser, beforeId, limit));
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,7 @@ package com.oneshop.controller;
 import com.oneshop.entity.Product;
 import com.oneshop.entity.Promotion;
 import com.oneshop.entity.Shop;
-import com.oneshop.service.ProductService;
+import com.oneshop.service.HomePageCacheService;
 import com.oneshop.service.PromotionService;
 import com.oneshop.service.ShopService;
 import org.slf4j.Logger;
@@ -28,7 +28,7 @@ public class HomeController {
     private static final Logger logger = LoggerFactory.getLogger(HomeController.class);
 
     @Autowired
-    private ProductService productService;
+    private HomePageCacheService homePageCacheService;
 
     @Autowired
     private ShopService shopService;
@@ -43,13 +43,10 @@ public class HomeController {
         int otherLimit = 10;
 
         try {
-            List<Product> bestSellers = productService.findBestSellingProducts(limit);
-            
-            // Sửa lỗi logic: Gọi đúng hàm findNewestProducts
-            Pageable newestPageable = PageRequest.of(0, otherLimit, Sort.by("productId").descending());
-            List<Product> newest = productService.findNewestProducts(newestPageable).getContent();
-            
-            List<Product> bestPrice = productService.findBestPriceProducts(otherLimit);
+            // Lấy từ cache trang chủ (tự làm mới khi sản phẩm/đơn hàng thay đổi)
+            List<Product> bestSellers = homePageCacheService.getBestSellingProducts(limit);
+            List<Product> newest = homePageCacheService.getNewestProducts(otherLimit);
+            List<Product> bestPrice = homePageCacheService.getBestPriceProducts(otherLimit);
 
             model.addAttribute("bestSellingProducts", bestSellers);
             model.addAttribute("newestProducts", newest);
@@ -96,8 +93,7 @@ public class HomeController {
             Pageable promoPageable = PageRequest.of(promoPage, pageSize, Sort.by("startDate").descending());
             Page<Promotion> promotionPage = promotionService.findActiveAndUpcomingPromotions(promoPageable);
 
-            Pageable productPageable = PageRequest.of(productPage, pageSize, Sort.by("productId").descending());
-            Page<Product> newestProductPage = productService.findNewestProducts(productPageable);
+            Page<Product> newestProductPage = homePageCacheService.getNewestProductPage(productPage, pageSize);
 
             model.addAttribute("promotionPage", promotionPage);
             model.addAttribute("newestProductPage", newestProductPage);
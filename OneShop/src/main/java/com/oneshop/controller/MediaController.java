@@ -0,0 +1,171 @@
+package com.oneshop.controller;
+
+import com.oneshop.service.MediaService;
+import com.oneshop.service.MediaService.Fingerprint;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Phục vụ file upload (ảnh, video đánh giá) qua URL /media/{hash}/{đường dẫn}.
+ * - hash khớp nội dung hiện tại: Cache-Control 1 năm, immutable. Không khớp (file đã đổi): vẫn trả nội dung mới nhưng no-cache.
+ * - ETag mạnh = hash nội dung; If-None-Match khớp -> 304.
+ * - Range "bytes=a-b" (1 khoảng) -> 206 để tua video; If-Range không khớp -> trả cả file.
+ * - Gửi file bằng sendfile của Tomcat khi connector hỗ trợ (kernel copy thẳng file -> socket),
+ *   nếu không thì FileChannel.transferTo sang output stream.
+ */
+@Controller
+public class MediaController {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaController.class);
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "public, no-cache";
+
+    // Thuộc tính request của Tomcat cho sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private MediaService mediaService;
+
+    private record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    @GetMapping("/media/{hash}/**")
+    public void serve(@PathVariable String hash, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String pattern = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        String prefix = MediaService.PUBLIC_PREFIX + hash + "/";
+        Path file = pattern != null && pattern.startsWith(prefix) ? mediaService.resolve(pattern.substring(prefix.length())) : null;
+        Fingerprint fingerprint = file != null ? mediaService.fingerprint(file) : null;
+        if (fingerprint == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + fingerprint.hash() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, fingerprint.hash().equals(hash) ? IMMUTABLE : REVALIDATE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, fingerprint.lastModified());
+
+        if (matchesAny(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long size = fingerprint.size();
+        ByteRange range = null;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            range = parseRange(rangeHeader, size);
+            if (range == null && rangeHeader.startsWith("bytes=") && !rangeHeader.contains(",")) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            // Nhiều khoảng (multipart/byteranges) không hỗ trợ: trả cả file, được phép theo RFC 9110
+        }
+
+        long start = range != null ? range.start() : 0;
+        long length = range != null ? range.length() : size;
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + size);
+        }
+        response.setContentType(mediaService.contentType(file).toString());
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+        transfer(file, start, length, response);
+    }
+
+    private static void transfer(Path file, long start, long length, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        } catch (IOException e) {
+            // Thường là client đóng kết nối giữa chừng (tua video, chuyển trang)
+            logger.debug("Media transfer of {} aborted: {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2); // If-None-Match dùng so sánh yếu
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "bytes=a-b", "bytes=a-", "bytes=-n"; null nếu không hợp lệ, không thỏa được hoặc có nhiều khoảng
+    private static ByteRange parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.contains(",") || size == 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                return suffix > 0 ? new ByteRange(Math.max(0, size - suffix), size - 1) : null;
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            return start <= end && start < size ? new ByteRange(start, end) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -96,6 +96,12 @@ public class OrderController {
             } else {
                 // THANH TOÁN THẤT BẠI
                 logger.warn("VNPAY payment failed for Order ID: {}. Response code: {}", vnp_TxnRef, vnp_ResponseCode);
+                // Thanh toán thất bại/bị hủy -> hủy đơn chờ thanh toán để trả lại hàng đã giữ
+                try {
+                    orderService.cancelUnpaidOrder(Long.parseLong(vnp_TxnRef));
+                } catch (Exception e) {
+                    logger.error("Could not release reserved stock for failed VNPAY order {}: {}", vnp_TxnRef, e.getMessage());
+                }
                 model.addAttribute("message", "Thanh toán thất bại. Mã lỗi VNPAY: " + vnp_ResponseCode);
                 return "user/vnpay-error";
             }
@@ -146,7 +152,7 @@ public class OrderController {
             String vnp_IpAddr = vnPayConfig.getIpAddress(request);
             String vnp_OrderInfo = "Thanh toan don hang " + vnp_TxnRef;
             try {
-                String paymentUrl = vnPayConfig.createPaymentUrl(vnp_TxnRef, amount, vnp_OrderInfo, vnp_IpAddr);
+                String paymentUrl = vnPayConfig.createPaymentUrl(vnp_TxnRef, amount, vnp_OrderInfo, vnp_IpAddr, newOrder.getCreatedAt());
                 jsonResponse.put("status", "pending_payment");
                 jsonResponse.put("paymentUrl", paymentUrl);
                 return ResponseEntity.ok(jsonResponse);
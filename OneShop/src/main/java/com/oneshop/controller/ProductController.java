@@ -1,6 +1,8 @@
 // src/main/java/com/oneshop/controller/ProductController.java
 package com.oneshop.controller;
 
+import com.oneshop.dto.CursorPage;
+import com.oneshop.dto.ProductFacetsDto;
 import com.oneshop.dto.ReviewDTO;
 // --- THÊM LẠI CÁC IMPORT CẦN THIẾT ---
 import com.oneshop.entity.Brand;
@@ -12,7 +14,9 @@ import com.oneshop.entity.ProductVariant; // <<< Đã thêm
 import com.oneshop.entity.ReviewMedia;
 import com.oneshop.service.BrandService;
 import com.oneshop.service.CategoryService;
+import com.oneshop.service.ProductFacetService;
 import com.oneshop.service.ProductReviewService;
+import com.oneshop.service.ProductSearchIndexService;
 import com.oneshop.service.ProductService;
 import com.oneshop.specification.ProductSpecification;
 
@@ -50,10 +54,15 @@ public class ProductController {
 
     private static final Logger logger = LoggerFactory.getLogger(ProductController.class);
 
+    // Các khóa sắp xếp hỗ trợ phân trang theo con trỏ
+    private static final Set<String> KEYSET_SORT_PROPERTIES = Set.of("productId", "price", "salesCount", "averageRating");
+
     @Autowired private ProductService productService;
     @Autowired private ProductReviewService reviewService;
     @Autowired private CategoryService categoryService;
     @Autowired private BrandService brandService;
+    @Autowired private ProductSearchIndexService productSearchIndexService;
+    @Autowired private ProductFacetService productFacetService;
 
     /**
      * Tìm kiếm sản phẩm (sử dụng method riêng trong service).
@@ -196,6 +205,8 @@ public class ProductController {
             @RequestParam(name = "page", defaultValue = "1") int page,
             @RequestParam(name = "size", defaultValue = "10") int size, // Tăng size
             @RequestParam(name = "sort", defaultValue = "productId,desc") String sort, // Mặc định mới nhất
+            // Chế độ "xem thêm" (keyset): có tham số cursor -> trả các sản phẩm tiếp theo, không chạy COUNT
+            @RequestParam(name = "cursor", required = false) String cursor,
             HttpServletRequest request) {
 
         logger.debug("Listing/Searching products - Page: {}, Size: {}, Sort: {}, Name: {}, Categories: {}, Brands: {}, Price: {}-{}",
@@ -204,8 +215,12 @@ public class ProductController {
         try {
             // 1. Build Specification (bao gồm cả tìm kiếm theo 'name')
             Specification<Product> spec = Specification.where(ProductSpecification.isPublished());
+            // ID ứng viên theo chỉ mục (null = chỉ mục chưa sẵn sàng, quay về LIKE), dùng chung cho danh sách và facet
+            Set<Long> indexCandidates = null;
             if (StringUtils.hasText(name)) { // Sử dụng StringUtils.hasText để kiểm tra null và rỗng
-                spec = spec.and(ProductSpecification.hasName(name.trim()));
+                // Tra chỉ mục tìm kiếm (bỏ dấu, tên/tags/brand/danh mục/mô tả) -> lọc theo ID ứng viên
+                indexCandidates = productSearchIndexService.indexCandidates(name.trim());
+                spec = spec.and(productSearchIndexService.matching(name.trim(), indexCandidates));
             }
             spec = spec.and(ProductSpecification.hasCategory(categoryIds))
                        .and(ProductSpecification.hasBrand(brandIds))
@@ -221,7 +236,26 @@ public class ProductController {
                 property = "productId";
                 direction = Sort.Direction.DESC;
             }
+            if ("rating".equals(property)) {
+                // rating là trường @Transient -> sort theo cột PRODUCTS.average_rating (có index)
+                property = "averageRating";
+            }
+            String requestedWithHeader = request.getHeader("X-Requested-With");
+            boolean isAjaxRequest = "XMLHttpRequest".equals(requestedWithHeader);
+
+            // Chế độ con trỏ chỉ dùng cho fragment AJAX "xem thêm" và các khóa sort có index
+            if (cursor != null && isAjaxRequest && KEYSET_SORT_PROPERTIES.contains(property)) {
+                CursorPage<Product> cursorPage = productService.findPublishedProductsByCursor(spec, property, direction, cursor, size);
+                model.addAttribute("cursorPage", cursorPage);
+                model.addAttribute("sort", sort);
+                logger.trace("Cursor request, returning {} products, hasNext: {}", cursorPage.getContent().size(), cursorPage.isHasNext());
+                return "user/listProduct :: product_cursor_fragment";
+            }
+
             Sort sortOrder = Sort.by(direction, property);
+            if ("averageRating".equals(property)) {
+                sortOrder = sortOrder.and(Sort.by(direction, "productId")); // Nhiều sản phẩm cùng rating -> khóa phụ cho thứ tự ổn định
+            }
             Pageable pageable = PageRequest.of(zeroBasedPage, size, sortOrder);
 
             // 3. Fetch data (Sử dụng Service trả về Page)
@@ -230,8 +264,17 @@ public class ProductController {
 
             // 4. Add data to Model
             model.addAttribute("productPage", productPage);
-            model.addAttribute("categories", categoryService.findAll());
-            model.addAttribute("brands", brandService.findAll());
+            // Con trỏ cho nút "Xem thêm" (tiếp nối sau phần tử cuối của trang hiện tại)
+            if (productPage.hasNext() && KEYSET_SORT_PROPERTIES.contains(property)) {
+                List<Product> content = productPage.getContent();
+                model.addAttribute("nextCursor", productService.buildCursorAfter(content.get(content.size() - 1), property, direction));
+            }
+            if (!isAjaxRequest) {
+                // Sidebar bộ lọc chỉ render ở trang đầy đủ; fragment AJAX không cần danh sách này
+                model.addAttribute("categories", categoryService.findAll());
+                model.addAttribute("brands", brandService.findAll());
+            }
+            model.addAttribute("facets", computeFacets(name, indexCandidates, categoryIds, brandIds, minPrice, maxPrice));
             model.addAttribute("searchTerm", name); // Giữ lại giá trị tìm kiếm
             model.addAttribute("selectedCategories", categoryIds);
             model.addAttribute("selectedBrands", brandIds);
@@ -243,9 +286,6 @@ public class ProductController {
             model.addAttribute("totalItems", productPage.getTotalElements());
 
             // 5. Check AJAX request (giữ nguyên)
-            String requestedWithHeader = request.getHeader("X-Requested-With");
-            boolean isAjaxRequest = "XMLHttpRequest".equals(requestedWithHeader);
-
             if (isAjaxRequest) {
                 logger.trace("AJAX request detected, returning product list fragment.");
                 // Trả về fragment chứa danh sách sản phẩm và phân trang
@@ -277,4 +317,23 @@ public class ProductController {
              return "user/listProduct"; // Trả về trang chính với lỗi
         }
     }
-} // <<< ĐẢM BẢO CÓ DẤU NGOẶC NHỌN CUỐI CÙNG CỦA CLASS
\ No newline at end of file
+
+    // Đếm facet cho trạng thái lọc hiện tại (null nếu snapshot chưa sẵn sàng).
+    // Từ khóa được lọc giống hệt danh sách: theo ứng viên chỉ mục, hoặc theo LIKE khi danh sách quay về LIKE
+    private ProductFacetsDto computeFacets(String name, Set<Long> indexCandidates, List<Long> categoryIds,
+                                           List<Long> brandIds, BigDecimal minPrice, BigDecimal maxPrice) {
+        try {
+            if (!productFacetService.isReady()) {
+                return null;
+            }
+            Set<Long> candidateIds = null;
+            if (StringUtils.hasText(name)) {
+                candidateIds = indexCandidates != null ? indexCandidates : productSearchIndexService.likeMatches(name.trim());
+            }
+            return productFacetService.computeFacets(candidateIds, categoryIds, brandIds, minPrice, maxPrice);
+        } catch (Exception e) {
+            logger.warn("Could not compute product facets: {}", e.getMessage());
+            return null;
+        }
+    }
+} // <<< ĐẢM BẢO CÓ DẤU NGOẶC NHỌN CUỐI CÙNG CỦA CLASS
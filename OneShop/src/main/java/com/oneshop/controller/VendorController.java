@@ -2,21 +2,25 @@ package com.oneshop.controller;
 
 import com.oneshop.dto.*;
 import com.oneshop.entity.*;
+import com.oneshop.enums.ReportType;
 import com.oneshop.enums.ShopStatus;
 import com.oneshop.repository.UserRepository;
 import com.oneshop.service.*;
 
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
-import org.apache.poi.ss.usermodel.Workbook;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -32,8 +36,10 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.MediaType;
 
-import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -49,12 +55,16 @@ public class VendorController {
 
     private static final Logger logger = LoggerFactory.getLogger(VendorController.class);
 
+    // Giới hạn số đơn mỗi lần thao tác hàng loạt
+    private static final int MAX_BULK_ORDERS = 500;
+
     @Autowired private ProductService productService;
     @Autowired private CategoryService categoryService;
     @Autowired private OrderService orderService;
     @Autowired private ShopService shopService;
     @Autowired private UserService userService;
-    @Autowired private ReportService reportService;
+    @Autowired private ReportJobService reportJobService;
+    @Autowired private VendorDashboardService vendorDashboardService;
     @Autowired private UserRepository userRepository;
     @Autowired private BrandService brandService;
     @Autowired private ShippingCompanyService shippingCompanyService;
@@ -101,9 +111,11 @@ public class VendorController {
             Shop shop = getAndValidateVendorShop(authentication);
             Long shopId = shop.getId();
 
-            long newOrderCount = orderService.countNewOrdersByShop(shopId);
-            long totalProductCount = productService.countProductsByShop(shopId);
-            BigDecimal currentMonthRevenue = orderService.getCurrentMonthRevenueByShop(shopId);
+            // Cả 3 ô số liệu lấy từ 1 query (có cache theo shop)
+            VendorDashboardDto tiles = vendorDashboardService.getDashboard(shopId);
+            long newOrderCount = tiles.getNewOrderCount();
+            long totalProductCount = tiles.getTotalProductCount();
+            BigDecimal currentMonthRevenue = tiles.getMonthlyRevenue();
 
             model.addAttribute("newOrderCount", newOrderCount);
             model.addAttribute("totalProductCount", totalProductCount);
@@ -214,12 +226,21 @@ public class VendorController {
     // --- Product Management ---
     @GetMapping("/products")
     public String productList(Model model, @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size, Authentication authentication) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(name = "cursor", required = false) String cursor, // Có cursor -> duyệt theo con trỏ, không đếm tổng
+            Authentication authentication) {
         String username = authentication.getName();
         logger.debug("Listing products for user: {}, page: {}, size: {}", username, page, size);
         model.addAttribute("currentPage", "products");
         try {
             Long shopId = getAuthenticatedShopId(authentication);
+            if (cursor != null) {
+                CursorPage<Product> cursorPage = productService.getProductsByShopCursor(shopId, cursor, size);
+                // Bọc vào Page 1 trang để template dùng chung; ẩn phân trang số
+                model.addAttribute("productPage", new PageImpl<>(cursorPage.getContent()));
+                model.addAttribute("cursorPage", cursorPage);
+                return "vendor/product_list";
+            }
             Pageable pageable = PageRequest.of(page, size, Sort.by("productId").descending());
             Page<Product> productPage = productService.getProductsByShop(shopId, pageable);
             model.addAttribute("productPage", productPage);
@@ -498,6 +519,7 @@ public class VendorController {
     @GetMapping("/orders")
     public String orderList(Model model, @RequestParam(name = "status", required = false) String statusString,
             @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int size,
+            @RequestParam(name = "cursor", required = false) String cursor, // Có cursor -> duyệt theo con trỏ, không đếm tổng
             Authentication authentication) {
         String username = authentication.getName();
         logger.debug("Listing orders for user: {}, status: {}, page: {}, size: {}", username, statusString, page, size);
@@ -515,6 +537,13 @@ public class VendorController {
                     // Optional rỗng là mặc định, không cần làm gì thêm
                 }
             }
+            if (cursor != null) {
+                CursorPage<Order> cursorPage = orderService.getOrdersByShopCursor(shopId, orderStatusOptional, cursor, size);
+                model.addAttribute("orderPage", new PageImpl<>(cursorPage.getContent()));
+                model.addAttribute("cursorPage", cursorPage);
+                model.addAttribute("currentStatus", statusString);
+                return "vendor/order_list";
+            }
             Page<Order> orderPage = orderService.getOrdersByShop(shopId, orderStatusOptional, pageable);
             model.addAttribute("orderPage", orderPage);
             model.addAttribute("currentStatus", statusString); // Truyền status string gốc để active tab
@@ -621,6 +650,60 @@ public class VendorController {
     }
 
 
+    // Xác nhận / hủy nhiều đơn cùng lúc (AJAX), trả về kết quả từng đơn
+    @PostMapping("/orders/bulk-update-status")
+    @ResponseBody
+    public ResponseEntity<?> bulkUpdateOrderStatus(@RequestParam("orderIds") List<Long> orderIds,
+            @RequestParam("status") String statusString,
+            Authentication authentication) {
+        String username = authentication.getName();
+        logger.info("User {} bulk updating {} orders to status {}", username, orderIds.size(), statusString);
+        if (orderIds.size() > MAX_BULK_ORDERS) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Chỉ được chọn tối đa " + MAX_BULK_ORDERS + " đơn mỗi lần."));
+        }
+        try {
+            OrderStatus newStatus = OrderStatus.valueOf(statusString.trim().toUpperCase());
+            Long shopId = getAuthenticatedShopId(authentication);
+            BulkOrderActionResult result = orderService.bulkUpdateOrderStatus(shopId, orderIds, newStatus);
+            return ResponseEntity.ok(Map.of("success", true, "result", result));
+        } catch (ShopNotApprovedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Shop chưa được duyệt."));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid bulk status update by user {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Trạng thái cập nhật không hợp lệ."));
+        } catch (Exception e) {
+            logger.error("Error bulk updating orders for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("success", false, "message", "Lỗi hệ thống khi cập nhật đơn hàng."));
+        }
+    }
+
+    // Gán cùng 1 shipper cho nhiều đơn đã xác nhận (AJAX)
+    @PostMapping("/orders/bulk-assign-shipper")
+    @ResponseBody
+    public ResponseEntity<?> bulkAssignShipper(@RequestParam("orderIds") List<Long> orderIds,
+            @RequestParam("shipperId") Long shipperId,
+            Authentication authentication) {
+        String username = authentication.getName();
+        logger.info("User {} bulk assigning shipper {} to {} orders", username, shipperId, orderIds.size());
+        if (orderIds.size() > MAX_BULK_ORDERS) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Chỉ được chọn tối đa " + MAX_BULK_ORDERS + " đơn mỗi lần."));
+        }
+        try {
+            Long shopId = getAuthenticatedShopId(authentication);
+            BulkOrderActionResult result = orderService.bulkAssignShipper(shopId, orderIds, shipperId);
+            return ResponseEntity.ok(Map.of("success", true, "result", result));
+        } catch (ShopNotApprovedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Shop chưa được duyệt."));
+        } catch (EntityNotFoundException | IllegalArgumentException e) {
+            logger.warn("Invalid bulk shipper assignment by user {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error bulk assigning shipper for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("success", false, "message", "Lỗi hệ thống khi gán Shipper."));
+        }
+    }
+
+
     // --- Revenue Management ---
     @GetMapping("/revenue")
     public String revenueManagement(Model model, Authentication authentication) {
@@ -896,56 +979,83 @@ public class VendorController {
 
 
     // --- Reports ---
-    // downloadSalesReport and sendErrorResponse remain the same
-     @GetMapping("/reports/sales/download")
-    public void downloadSalesReport(Authentication authentication, HttpServletResponse response) {
+    // Tạo báo cáo chạy nền: trả về job ID ngay, trang vendor hỏi tiến độ rồi tải file khi xong (AJAX)
+    @PostMapping("/reports/jobs")
+    @ResponseBody
+    public ResponseEntity<?> submitReportJob(Authentication authentication,
+                                             @RequestParam(name = "type", defaultValue = "SALES") String typeString,
+                                             @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
         String username = authentication.getName();
-        logger.info("User {} requesting sales report download.", username);
-        Long shopId = null;
+        logger.info("User {} submitting {} report job. Range: {} - {}", username, typeString, from, to);
+        if (from != null && to != null && from.isAfter(to)) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Ngày bắt đầu phải trước hoặc bằng ngày kết thúc."));
+        }
         try {
-            shopId = getAuthenticatedShopId(authentication); // Lấy shop ID đã xác thực
-
-            Workbook workbook = reportService.generateSalesReport(shopId); // Gọi service tạo báo cáo
-            String fileName = "BaoCaoBanHang_Shop" + shopId + "_" + java.time.LocalDate.now() + ".xlsx";
-
-            // Thiết lập response headers
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
-
-            // Ghi workbook vào output stream của response
-            workbook.write(response.getOutputStream());
-            workbook.close(); // Đóng workbook
-            response.flushBuffer(); // Đảm bảo dữ liệu được gửi đi
-            logger.info("Sales report sent successfully for shopId: {}", shopId);
-
+            ReportType type = ReportType.valueOf(typeString.trim().toUpperCase());
+            Long shopId = getAuthenticatedShopId(authentication);
+            ReportJobDto job = reportJobService.submit(shopId, type, from, to);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("success", true, "job", job));
         } catch (ShopNotApprovedException e) {
-            logger.warn("User {} cannot download report, shop not approved. Status: {}", username, e.getShopStatus());
-            sendErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, "Không thể tải báo cáo khi shop chưa được duyệt.");
-        } catch (IOException e) {
-            // Lỗi khi ghi file vào response output stream
-            logger.error("IOException writing sales report for shopId {}: {}", (shopId != null ? shopId : "null"), e.getMessage());
-            // Không cần gửi lỗi nữa vì response có thể đã bị commit một phần
+            logger.warn("User {} cannot create report, shop not approved. Status: {}", username, e.getShopStatus());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Không thể tạo báo cáo khi shop chưa được duyệt."));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Loại báo cáo không hợp lệ."));
+        } catch (IllegalStateException e) {
+            // Vượt giới hạn job đồng thời của shop hoặc hàng đợi đầy
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("success", false, "message", e.getMessage()));
         } catch (Exception e) {
-            // Các lỗi khác (ví dụ: lỗi tạo workbook trong service)
-            logger.error("Error generating or writing sales report for shopId {}: {}", (shopId != null ? shopId : "null"), e.getMessage(), e);
-            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Lỗi khi tạo báo cáo: " + e.getMessage());
+            logger.error("Error submitting report job for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("success", false, "message", "Lỗi hệ thống khi tạo báo cáo."));
         }
     }
 
-    // Helper gửi lỗi về client khi download report thất bại
-    private void sendErrorResponse(HttpServletResponse response, int status, String message) {
+    @GetMapping("/reports/jobs")
+    @ResponseBody
+    public ResponseEntity<?> listReportJobs(Authentication authentication) {
         try {
-            if (!response.isCommitted()) { // Chỉ gửi nếu response chưa bị commit
-                response.setStatus(status);
-                response.setContentType("text/plain; charset=utf-8"); // Đặt kiểu content là text
-                response.getWriter().write(message); // Ghi thông báo lỗi
-                response.getWriter().flush();
-            }
-        } catch (IOException ioEx) {
-            logger.error("Error writing error response after report generation failed: {}", ioEx.getMessage());
+            Long shopId = getAuthenticatedShopId(authentication);
+            return ResponseEntity.ok(Map.of("success", true, "jobs", reportJobService.listJobs(shopId)));
+        } catch (ShopNotApprovedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Shop chưa được duyệt."));
         }
     }
 
+    @GetMapping("/reports/jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<?> getReportJob(@PathVariable String jobId, Authentication authentication) {
+        try {
+            Long shopId = getAuthenticatedShopId(authentication);
+            return reportJobService.getJob(shopId, jobId)
+                    .<ResponseEntity<?>>map(job -> ResponseEntity.ok(Map.of("success", true, "job", job)))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "Không tìm thấy báo cáo.")));
+        } catch (ShopNotApprovedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Shop chưa được duyệt."));
+        }
+    }
+
+    @GetMapping("/reports/jobs/{jobId}/download")
+    public ResponseEntity<Resource> downloadReportJob(@PathVariable String jobId, Authentication authentication) {
+        Long shopId;
+        try {
+            shopId = getAuthenticatedShopId(authentication);
+        } catch (ShopNotApprovedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Optional<ReportJobDto> job = reportJobService.getJob(shopId, jobId);
+        Optional<Path> file = reportJobService.getResultFile(shopId, jobId);
+        if (job.isEmpty() || file.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        logger.info("User {} downloading report job {} for shopId: {}", authentication.getName(), jobId, shopId);
+        ContentDisposition disposition = ContentDisposition.attachment()
+                .filename(job.get().getFileName(), StandardCharsets.UTF_8)
+                .build();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .body(new FileSystemResource(file.get()));
+    }
 
     // --- AJAX Endpoints ---
     // updateShippingDetailsAjax and assignShipperAjax remain the same
@@ -0,0 +1,92 @@
+package com.oneshop.controller.admin;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.oneshop.entity.SettlementStatement;
+import com.oneshop.service.CommissionSettlementService;
+
+@Controller
+@RequestMapping("/admin")
+public class AdminSettlementController {
+
+	private static final Logger logger = LoggerFactory.getLogger(AdminSettlementController.class);
+
+	@Autowired
+	private CommissionSettlementService settlementService;
+
+	@GetMapping("/settlements")
+	public String listStatements(
+			@RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			Model model) {
+		model.addAttribute("currentPage", "admin-settlements");
+		// Mặc định: tháng trước
+		YearMonth previous = YearMonth.now().minusMonths(1);
+		LocalDate periodStart = from != null ? from : previous.atDay(1);
+		LocalDate periodEnd = to != null ? to : previous.atEndOfMonth();
+		model.addAttribute("periodStart", periodStart);
+		model.addAttribute("periodEnd", periodEnd);
+		model.addAttribute("running", settlementService.isRunning());
+		try {
+			List<SettlementStatement> statements = settlementService.getStatements(periodStart, periodEnd);
+			model.addAttribute("statements", statements);
+			model.addAttribute("totalGmv", statements.stream().map(SettlementStatement::getGmv).reduce(BigDecimal.ZERO, BigDecimal::add));
+			model.addAttribute("totalCommission", statements.stream().map(SettlementStatement::getCommissionAmount).reduce(BigDecimal.ZERO, BigDecimal::add));
+			model.addAttribute("totalNetPayout", statements.stream().map(SettlementStatement::getNetPayout).reduce(BigDecimal.ZERO, BigDecimal::add));
+			model.addAttribute("periods", settlementService.getSettledPeriods());
+		} catch (Exception e) {
+			logger.error("Error loading settlement statements: {}", e.getMessage(), e);
+			model.addAttribute("message", "Không thể tải bảng kê đối soát.");
+			model.addAttribute("status", "danger");
+			model.addAttribute("statements", List.of());
+			model.addAttribute("periods", List.of());
+		}
+		return "admin/settlements";
+	}
+
+	@PostMapping("/settlements/run")
+	public String runSettlement(
+			@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			RedirectAttributes redirectAttributes) {
+		logger.info("Admin requested settlement for period {} - {}", from, to);
+		redirectAttributes.addAttribute("from", from);
+		redirectAttributes.addAttribute("to", to);
+		if (from.isAfter(to)) {
+			redirectAttributes.addFlashAttribute("message", "Ngày bắt đầu phải trước hoặc bằng ngày kết thúc.");
+			redirectAttributes.addFlashAttribute("status", "danger");
+			return "redirect:/admin/settlements";
+		}
+		if (settlementService.isRunning()) {
+			redirectAttributes.addFlashAttribute("message", "Đang có một lần đối soát khác chạy. Vui lòng thử lại sau.");
+			redirectAttributes.addFlashAttribute("status", "warning");
+			return "redirect:/admin/settlements";
+		}
+		// Chạy nền: toàn bộ lịch sử có thể mất vài phút, không giữ request
+		Thread.ofVirtual().name("settlement-run").start(() -> {
+			try {
+				settlementService.settle(from, to);
+			} catch (Exception e) {
+				logger.error("Settlement for {} - {} failed: {}", from, to, e.getMessage(), e);
+			}
+		});
+		redirectAttributes.addFlashAttribute("message", "Đã bắt đầu đối soát kỳ " + from + " - " + to + ". Tải lại trang sau ít phút để xem kết quả.");
+		redirectAttributes.addFlashAttribute("status", "success");
+		return "redirect:/admin/settlements";
+	}
+}
@@ -0,0 +1,42 @@
+package com.oneshop.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kết quả thao tác hàng loạt trên đơn hàng (xác nhận / hủy / gán shipper):
+ * danh sách đơn thành công và lý do thất bại của từng đơn còn lại.
+ */
+@Data
+@NoArgsConstructor
+public class BulkOrderActionResult {
+
+    private String action;
+    private List<Long> succeededOrderIds = new ArrayList<>();
+    private Map<Long, String> failedOrders = new LinkedHashMap<>();
+
+    public BulkOrderActionResult(String action) {
+        this.action = action;
+    }
+
+    public void succeeded(Long orderId) {
+        succeededOrderIds.add(orderId);
+    }
+
+    public void failed(Long orderId, String reason) {
+        failedOrders.put(orderId, reason);
+    }
+
+    public int getSucceededCount() {
+        return succeededOrderIds.size();
+    }
+
+    public int getFailedCount() {
+        return failedOrders.size();
+    }
+}
@@ -0,0 +1,25 @@
+package com.oneshop.dto;
+
+import com.oneshop.entity.ChatMessageEntity.MessageType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tin nhắn trả về cho API lịch sử chat (không trả entity JPA).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageDto {
+
+    private Long id;
+    private String sender;
+    private String receiver;
+    private String content;
+    private LocalDateTime timestamp;
+    private MessageType type;
+}
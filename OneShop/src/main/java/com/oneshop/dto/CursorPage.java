@@ -0,0 +1,28 @@
+package com.oneshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Một "trang" trong chế độ phân trang theo con trỏ (keyset/seek).
+ * Không có tổng số phần tử: không chạy câu COUNT(*).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> content = new ArrayList<>();
+    // Con trỏ (opaque) để lấy trang tiếp theo; null nếu đã hết
+    private String nextCursor;
+    private boolean hasNext;
+    private int size;
+
+    public boolean isEmpty() {
+        return content == null || content.isEmpty();
+    }
+}
@@ -0,0 +1,45 @@
+package com.oneshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Số lượng sản phẩm theo từng giá trị bộ lọc (danh mục, thương hiệu, khoảng giá)
+ * cho trạng thái tìm kiếm/lọc hiện tại của trang /products.
+ * Mỗi nhóm được đếm với tất cả bộ lọc KHÁC nhóm đó (chọn thêm 1 giá trị sẽ ra đúng số này).
+ */
+@Data
+@NoArgsConstructor
+public class ProductFacetsDto {
+
+    private Map<Long, Integer> categoryCounts = new HashMap<>();
+    private Map<Long, Integer> brandCounts = new HashMap<>();
+    private List<PriceBucket> priceBuckets = new ArrayList<>();
+    // Tổng số sản phẩm khớp toàn bộ bộ lọc
+    private int totalMatches;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PriceBucket {
+        private String label;
+        private BigDecimal min; // null = không giới hạn dưới
+        private BigDecimal max; // null = không giới hạn trên
+        private int count;
+    }
+
+    public int getCategoryCount(Long categoryId) {
+        return categoryCounts.getOrDefault(categoryId, 0);
+    }
+
+    public int getBrandCount(Long brandId) {
+        return brandCounts.getOrDefault(brandId, 0);
+    }
+}
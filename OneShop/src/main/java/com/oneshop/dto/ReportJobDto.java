@@ -0,0 +1,32 @@
+package com.oneshop.dto;
+
+import com.oneshop.enums.ReportJobStatus;
+import com.oneshop.enums.ReportType;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Trạng thái 1 job tạo báo cáo chạy nền (trả về cho trang vendor để hiển thị tiến độ).
+ */
+@Data
+@NoArgsConstructor
+public class ReportJobDto {
+
+    private String jobId;
+    private ReportType type;
+    private String typeName;
+    private ReportJobStatus status;
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private long processedRows;
+    private long totalRows;
+    private int progressPercent;
+    private String fileName;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,29 @@
+package com.oneshop.dto;
+
+import com.oneshop.entity.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng báo cáo bán hàng = một dòng chi tiết đơn hàng (projection, không phải entity).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesReportLineDto {
+    private Long orderId;
+    private Long orderDetailId;
+    private LocalDateTime createdAt;
+    private String recipientName;
+    private String shippingPhone;
+    private String shippingAddress;
+    private String productName;
+    private String variantName;
+    private Integer quantity;
+    private BigDecimal price;
+    private OrderStatus orderStatus;
+}
@@ -0,0 +1,24 @@
+package com.oneshop.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Tổng kết 1 lần chạy đối soát hoa hồng cho 1 kỳ.
+ */
+@Data
+@NoArgsConstructor
+public class SettlementRunResult {
+
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    private int shopCount;
+    private long orderCount;
+    private BigDecimal totalGmv = BigDecimal.ZERO;
+    private BigDecimal totalCommission = BigDecimal.ZERO;
+    private BigDecimal totalNetPayout = BigDecimal.ZERO;
+    private long durationMs;
+}
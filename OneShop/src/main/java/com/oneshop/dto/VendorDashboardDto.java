@@ -0,0 +1,20 @@
+package com.oneshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Các ô số liệu trên trang dashboard của vendor.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VendorDashboardDto {
+
+    private long newOrderCount;
+    private long totalProductCount;
+    private BigDecimal monthlyRevenue;
+}
@@ -0,0 +1,50 @@
+package com.oneshop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tóm tắt 1 cuộc trò chuyện nhìn từ phía 1 người tham gia (mỗi cuộc trò chuyện có 2 dòng: owner -> peer).
+ * Được cập nhật mỗi khi có tin nhắn mới; hộp thư chỉ cần đọc các dòng của owner theo thứ tự thời gian.
+ */
+@Entity
+@Table(name = "CHAT_CONVERSATIONS",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_chat_conversation_owner_peer", columnNames = {"owner_username", "peer_username"})
+        },
+        indexes = {
+                @Index(name = "idx_chat_conversation_owner_recent", columnList = "owner_username, last_message_at")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatConversation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_username", nullable = false, length = 100)
+    private String ownerUsername;
+
+    @Column(name = "peer_username", nullable = false, length = 100)
+    private String peerUsername;
+
+    // Đoạn đầu của tin nhắn cuối cùng
+    @Column(name = "last_message_preview", columnDefinition = "nvarchar(200)")
+    private String lastMessagePreview;
+
+    @Column(name = "last_sender", length = 100)
+    private String lastSender;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    // Số tin owner chưa đọc trong cuộc trò chuyện này
+    @Column(name = "unread_count", nullable = false)
+    private Integer unreadCount = 0;
+}
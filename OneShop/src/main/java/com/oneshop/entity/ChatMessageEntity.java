@@ -6,7 +6,10 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "CHAT_MESSAGES")
+@Table(name = "CHAT_MESSAGES", indexes = {
+        // Lịch sử 1 cuộc trò chuyện: seek theo (conversation_key, id) rồi lấy N dòng
+        @Index(name = "idx_chat_conversation_id", columnList = "conversation_key, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,6 +24,10 @@ public class ChatMessageEntity {
     private String sender;
     private String receiver;
 
+    // Khóa cuộc trò chuyện 2 chiều: "<username nhỏ hơn>|<username lớn hơn>" (xem conversationKeyOf)
+    @Column(name = "conversation_key", length = 210)
+    private String conversationKey;
+
     @Column(columnDefinition = "nvarchar(1000)")
     private String content;
 
@@ -32,4 +39,21 @@ public class ChatMessageEntity {
     public enum MessageType {
         CHAT, JOIN, LEAVE
     }
+
+    /**
+     * Khóa chung cho 2 chiều của 1 cuộc trò chuyện (so sánh chuỗi phía Java để không phụ thuộc collation của DB).
+     */
+    public static String conversationKeyOf(String userA, String userB) {
+        if (userA == null || userB == null) {
+            return null;
+        }
+        return userA.compareTo(userB) <= 0 ? userA + "|" + userB : userB + "|" + userA;
+    }
+
+    @PrePersist
+    void assignConversationKey() {
+        if (conversationKey == null) {
+            conversationKey = conversationKeyOf(sender, receiver);
+        }
+    }
 }
\ No newline at end of file
@@ -10,7 +10,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "ORDERS")
+@Table(name = "ORDERS", indexes = {
+        // Phục vụ danh sách đơn của shop sắp xếp theo thời gian (phân trang keyset)
+        @Index(name = "idx_orders_shop_created", columnList = "shop_id, created_at, order_id"),
+        // Quét đơn chờ thanh toán online đã quá hạn giữ hàng
+        @Index(name = "idx_orders_status_payment_expiry", columnList = "order_status, payment_expires_at"),
+        // Đối soát hoa hồng theo thời điểm giao thành công
+        @Index(name = "idx_orders_status_delivered", columnList = "order_status, delivered_at, shop_id")
+})
 @Getter 
 @Setter
 @NoArgsConstructor
@@ -47,6 +54,14 @@ public class Order {
     @Column(name = "payment_method", length = 50)
     private String paymentMethod;
 
+    // Hạn thanh toán online (VNPAY): quá hạn mà vẫn PENDING thì đơn bị hủy và hoàn tồn kho
+    @Column(name = "payment_expires_at")
+    private LocalDateTime paymentExpiresAt;
+
+    // Thời điểm đơn chuyển sang DELIVERED (null với đơn giao trước khi có cột này); đối soát hoa hồng tính kỳ theo cột này
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+
     @Column(precision = 19, scale = 2)
     private BigDecimal subtotal;
 
@@ -2,6 +2,7 @@ package com.oneshop.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.NumberFormat;
@@ -12,7 +13,13 @@ import java.util.Set;
 import com.oneshop.enums.ProductStatus;
 
 @Entity
-@Table(name = "PRODUCTS")
+@Table(name = "PRODUCTS", indexes = {
+        // Phục vụ phân trang keyset theo (khóa sắp xếp, product_id)
+        @Index(name = "idx_products_price_id", columnList = "price, product_id"),
+        @Index(name = "idx_products_sales_id", columnList = "sales_count, product_id"),
+        @Index(name = "idx_products_shop_id", columnList = "shop_id, product_id"),
+        @Index(name = "idx_products_status_rating_id", columnList = "status, average_rating, product_id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -50,6 +57,12 @@ public class Product {
     @Column(nullable = false)
     private Integer stock = 0;
 
+    // Bản sao average_rating của PRODUCT_RATING_SUMMARY để sort/keyset theo rating dùng index.
+    // Chỉ ProductRatingService ghi (UPDATE trực tiếp), lưu entity không ghi đè giá trị mới hơn
+    @ColumnDefault("0")
+    @Column(name = "average_rating", nullable = false, insertable = false, updatable = false)
+    private Double averageRating = 0.0;
+
     @Column(columnDefinition = "nvarchar(500)")
     private String tags;
 
@@ -0,0 +1,51 @@
+package com.oneshop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Doanh thu tổng hợp theo shop x ngày đặt hàng x sản phẩm (kèm danh mục của sản phẩm), chỉ tính đơn DELIVERED.
+ * Dùng cho biểu đồ top sản phẩm và tỉ lệ doanh thu theo danh mục.
+ */
+@Entity
+@Table(name = "PRODUCT_DAILY_REVENUE", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_product_daily_revenue", columnNames = {"shop_id", "revenue_date", "product_id"})
+}, indexes = {
+        @Index(name = "idx_product_daily_revenue_shop_category", columnList = "shop_id, category_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductDailyRevenue {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Column(name = "revenue_date", nullable = false)
+    private LocalDate revenueDate;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "category_id")
+    private Long categoryId;
+
+    // Tổng price * quantity của các dòng chi tiết
+    @Column(name = "revenue", nullable = false, precision = 19, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    @Column(name = "units", nullable = false)
+    private Long units = 0L;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+}
@@ -0,0 +1,50 @@
+package com.oneshop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bảng tổng hợp rating theo sản phẩm (denormalized), được cập nhật
+ * cùng transaction với việc lưu ProductReview.
+ * Không map quan hệ ngược từ Product để tránh OneToOne bị load EAGER.
+ */
+@Entity
+@Table(name = "PRODUCT_RATING_SUMMARY")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductRatingSummary {
+
+    // Dùng chính product_id làm khóa chính
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "rating_sum", nullable = false)
+    private Long ratingSum = 0L;
+
+    @Column(name = "rating_count", nullable = false)
+    private Long ratingCount = 0L;
+
+    // Histogram số review theo từng mức sao
+    @Column(name = "star_1", nullable = false)
+    private Long star1 = 0L;
+
+    @Column(name = "star_2", nullable = false)
+    private Long star2 = 0L;
+
+    @Column(name = "star_3", nullable = false)
+    private Long star3 = 0L;
+
+    @Column(name = "star_4", nullable = false)
+    private Long star4 = 0L;
+
+    @Column(name = "star_5", nullable = false)
+    private Long star5 = 0L;
+
+    // = ratingSum / ratingCount, lưu sẵn và chép sang PRODUCTS.average_rating để sort
+    @Column(name = "average_rating", nullable = false)
+    private Double averageRating = 0.0;
+}
@@ -0,0 +1,71 @@
+package com.oneshop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Bảng kê đối soát hoa hồng của 1 shop trong 1 kỳ (tính trên các đơn DELIVERED đặt trong kỳ).
+ * Chạy lại cùng kỳ sẽ thay thế bảng kê cũ.
+ */
+@Entity
+@Table(name = "SETTLEMENT_STATEMENTS", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_settlement_shop_period", columnNames = {"shop_id", "period_start", "period_end"})
+}, indexes = {
+        @Index(name = "idx_settlement_period", columnList = "period_start, period_end")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SettlementStatement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Column(name = "shop_name", columnDefinition = "nvarchar(255)")
+    private String shopName;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    // Ngày cuối kỳ (bao gồm)
+    @Column(name = "period_end", nullable = false)
+    private LocalDate periodEnd;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    // Tổng tiền hàng (subtotal) của các đơn
+    @Column(name = "gmv", nullable = false, precision = 19, scale = 2)
+    private BigDecimal gmv = BigDecimal.ZERO;
+
+    @Column(name = "discount_total", nullable = false, precision = 19, scale = 2)
+    private BigDecimal discountTotal = BigDecimal.ZERO;
+
+    @Column(name = "shipping_total", nullable = false, precision = 19, scale = 2)
+    private BigDecimal shippingTotal = BigDecimal.ZERO;
+
+    // Tỉ lệ hoa hồng của shop tại thời điểm đối soát
+    @Column(name = "commission_rate", nullable = false, precision = 5, scale = 4)
+    private BigDecimal commissionRate = BigDecimal.ZERO;
+
+    // = (gmv - discountTotal) * commissionRate
+    @Column(name = "commission_amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal commissionAmount = BigDecimal.ZERO;
+
+    // = tổng khách trả (total_amount) - commissionAmount
+    @Column(name = "net_payout", nullable = false, precision = 19, scale = 2)
+    private BigDecimal netPayout = BigDecimal.ZERO;
+
+    @Column(name = "generated_at", nullable = false)
+    private LocalDateTime generatedAt;
+}
@@ -0,0 +1,40 @@
+package com.oneshop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Doanh thu tổng hợp theo shop x ngày đặt hàng (chỉ tính đơn DELIVERED).
+ * Cộng/trừ theo delta khi đơn chuyển vào/ra trạng thái DELIVERED; dựng lại được từ ORDERS.
+ */
+@Entity
+@Table(name = "SHOP_DAILY_REVENUE", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_shop_daily_revenue", columnNames = {"shop_id", "revenue_date"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopDailyRevenue {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Column(name = "revenue_date", nullable = false)
+    private LocalDate revenueDate;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    // Tổng total_amount của đơn (gồm phí ship, đã trừ giảm giá)
+    @Column(name = "revenue", nullable = false, precision = 19, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO;
+}
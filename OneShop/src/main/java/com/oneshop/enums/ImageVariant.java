@@ -0,0 +1,31 @@
+package com.oneshop.enums;
+
+public enum ImageVariant {
+    CARD("card", 400, 0.75f), // Ảnh thẻ sản phẩm trong danh sách, giỏ hàng, đơn hàng
+    DETAIL("detail", 960, 0.82f), // Ảnh chính trang chi tiết, banner shop
+    ZOOM("zoom", 1600, 0.85f); // Ảnh phóng to (xem ảnh đánh giá, zoom)
+
+    private final String directory;
+    private final int maxDimension;
+    private final float quality;
+
+    ImageVariant(String directory, int maxDimension, float quality) {
+        this.directory = directory;
+        this.maxDimension = maxDimension;
+        this.quality = quality;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    // Cạnh dài nhất của ảnh sau khi thu nhỏ (px)
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    // Chất lượng nén JPEG (0..1)
+    public float getQuality() {
+        return quality;
+    }
+}
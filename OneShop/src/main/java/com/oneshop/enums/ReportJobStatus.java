@@ -0,0 +1,8 @@
+package com.oneshop.enums;
+
+public enum ReportJobStatus {
+	QUEUED, // Đang chờ trong hàng đợi
+	RUNNING, // Đang tạo file
+	COMPLETED, // Đã xong, có thể tải về
+	FAILED // Lỗi khi tạo báo cáo
+}
@@ -0,0 +1,32 @@
+package com.oneshop.enums;
+
+import com.oneshop.entity.OrderStatus;
+
+import java.util.List;
+
+public enum ReportType {
+    SALES("Báo cáo bán hàng", "BaoCaoBanHang", List.of(OrderStatus.DELIVERED, OrderStatus.DELIVERING)), // Chỉ các đơn đang giao / đã giao
+    ORDERS("Xuất đơn hàng", "DanhSachDonHang", List.of(OrderStatus.values())); // Toàn bộ đơn hàng (mọi trạng thái)
+
+    private final String displayName;
+    private final String filePrefix;
+    private final List<OrderStatus> orderStatuses;
+
+    ReportType(String displayName, String filePrefix, List<OrderStatus> orderStatuses) {
+        this.displayName = displayName;
+        this.filePrefix = filePrefix;
+        this.orderStatuses = orderStatuses;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getFilePrefix() {
+        return filePrefix;
+    }
+
+    public List<OrderStatus> getOrderStatuses() {
+        return orderStatuses;
+    }
+}
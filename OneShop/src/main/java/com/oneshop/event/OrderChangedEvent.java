@@ -0,0 +1,19 @@
+package com.oneshop.event;
+
+import com.oneshop.entity.Order;
+import com.oneshop.entity.OrderStatus;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sự kiện: đơn hàng của một shop vừa được tạo hoặc đổi trạng thái.
+ * Được publish trong transaction; listener nên dùng AFTER_COMMIT.
+ */
+public record OrderChangedEvent(Long shopId, Collection<Long> orderIds, OrderStatus newStatus) {
+
+    public static OrderChangedEvent of(Order order) {
+        return new OrderChangedEvent(order.getShop() != null ? order.getShop().getId() : null,
+                List.of(order.getId()), order.getOrderStatus());
+    }
+}
@@ -0,0 +1,25 @@
+package com.oneshop.event;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sự kiện: dữ liệu sản phẩm hiển thị ở phía khách hàng đã thay đổi
+ * (thêm/sửa/xóa, đổi trạng thái duyệt, cập nhật số lượng bán, rating...).
+ * Được publish trong transaction; listener nên dùng AFTER_COMMIT.
+ */
+public record ProductCatalogChangedEvent(Collection<Long> productIds, ChangeType changeType) {
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        STATUS_CHANGED,
+        DELETED,
+        SALES_UPDATED,
+        RATING_UPDATED
+    }
+
+    public static ProductCatalogChangedEvent of(Long productId, ChangeType changeType) {
+        return new ProductCatalogChangedEvent(productId != null ? List.of(productId) : List.of(), changeType);
+    }
+}
@@ -0,0 +1,11 @@
+package com.oneshop.event;
+
+import java.util.Map;
+
+/**
+ * Sự kiện: tồn kho biến thể vừa được trừ/hoàn, tồn kho tổng của sản phẩm cha cần cộng delta tương ứng.
+ * Được publish trong transaction; listener dùng AFTER_COMMIT để dòng PRODUCTS không bị khóa
+ * trong suốt transaction đặt hàng.
+ */
+public record ProductStockChangedEvent(Map<Long, Integer> deltasByProduct) {
+}
@@ -0,0 +1,8 @@
+package com.oneshop.event;
+
+/**
+ * Sự kiện: thông tin tài khoản ảnh hưởng tới xác thực/phân quyền vừa đổi (khóa/mở khóa, đổi quyền,
+ * sửa hồ sơ, đổi mật khẩu, xóa). Được publish trong transaction; listener nên dùng AFTER_COMMIT.
+ */
+public record UserAccountChangedEvent(String username) {
+}
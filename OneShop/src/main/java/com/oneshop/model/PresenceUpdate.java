@@ -0,0 +1,7 @@
+package com.oneshop.model;
+
+/**
+ * Thông báo online/offline gửi tới /user/queue/presence của những người đã trò chuyện với {@code username}.
+ */
+public record PresenceUpdate(String username, boolean online) {
+}
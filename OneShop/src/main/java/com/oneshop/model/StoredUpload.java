@@ -0,0 +1,8 @@
+package com.oneshop.model;
+
+/**
+ * Kết quả lưu 1 file upload: tên file đã lưu, file có được tạo mới bởi lần lưu này không
+ * (false = trùng nội dung với file đã có) và thời điểm sửa ngay sau khi lưu.
+ */
+public record StoredUpload(String filename, boolean created, long lastModified) {
+}
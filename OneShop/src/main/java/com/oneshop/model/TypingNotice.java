@@ -0,0 +1,8 @@
+package com.oneshop.model;
+
+/**
+ * Trạng thái "đang nhập": client gửi tới /app/chat.typing (receiver + typing),
+ * server chuyển tới /user/queue/typing của người nhận kèm username người gửi.
+ */
+public record TypingNotice(String username, String receiver, boolean typing) {
+}
@@ -0,0 +1,36 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.ChatMessageEntity;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ghi tin nhắn chat theo lô (JDBC batch): 1 lần gửi tới DB cho cả lô thay vì 1 INSERT IDENTITY + 1 transaction mỗi tin.
+ */
+@Repository
+public class ChatBatchRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public int[] insertMessages(List<ChatMessageEntity> messages) {
+        if (messages.isEmpty()) {
+            return new int[0];
+        }
+        List<Object[]> args = new ArrayList<>(messages.size());
+        for (ChatMessageEntity m : messages) {
+            String conversationKey = m.getConversationKey() != null
+                    ? m.getConversationKey()
+                    : ChatMessageEntity.conversationKeyOf(m.getSender(), m.getReceiver());
+            args.add(new Object[]{m.getSender(), m.getReceiver(), conversationKey, m.getContent(), m.getTimestamp(),
+                    m.getType() != null ? m.getType().name() : null});
+        }
+        return jdbcTemplate.batchUpdate("INSERT INTO CHAT_MESSAGES (sender, receiver, conversation_key, content, timestamp, type) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", args);
+    }
+}
@@ -0,0 +1,55 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.ChatConversation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChatConversationRepository extends JpaRepository<ChatConversation, Long> {
+
+    // Ghi nhận tin mới vào dòng tóm tắt của owner; trả về 0 nếu dòng chưa tồn tại.
+    // Tin cũ hơn tin cuối hiện tại (ghi trễ) chỉ cộng số chưa đọc, không ghi đè tin cuối
+    @Modifying
+    @Query("""
+        UPDATE ChatConversation c
+        SET c.lastMessagePreview = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt
+                                        THEN :preview ELSE c.lastMessagePreview END,
+            c.lastSender = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt
+                                THEN :sender ELSE c.lastSender END,
+            c.lastMessageAt = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt
+                                   THEN :sentAt ELSE c.lastMessageAt END,
+            c.unreadCount = c.unreadCount + :unreadDelta
+        WHERE c.ownerUsername = :owner AND c.peerUsername = :peer
+    """)
+    int applyMessage(@Param("owner") String owner, @Param("peer") String peer,
+                     @Param("preview") String preview,
+                     @Param("sender") String sender, @Param("sentAt") LocalDateTime sentAt,
+                     @Param("unreadDelta") int unreadDelta);
+
+    @Modifying
+    @Query("""
+        UPDATE ChatConversation c SET c.unreadCount = 0
+        WHERE c.ownerUsername = :owner AND c.peerUsername = :peer AND c.unreadCount > 0
+    """)
+    int markRead(@Param("owner") String owner, @Param("peer") String peer);
+
+    // Những người đã trò chuyện với owner, gần đây nhất trước (nhận thông báo online/offline của owner)
+    @Query("SELECT c.peerUsername FROM ChatConversation c WHERE c.ownerUsername = :owner ORDER BY c.lastMessageAt DESC")
+    List<String> findRecentPeers(@Param("owner") String owner, Pageable limit);
+
+    // Hộp thư: [ChatConversation, User peer], mới nhất trước (seek trên index owner_username, last_message_at)
+    @Query("""
+        SELECT c, u FROM ChatConversation c
+        JOIN User u ON u.username = c.peerUsername
+        WHERE c.ownerUsername = :owner AND u.activated = true
+        ORDER BY c.lastMessageAt DESC
+    """)
+    List<Object[]> findInbox(@Param("owner") String owner);
+}
@@ -1,7 +1,10 @@
 package com.oneshop.repository;
 
+import com.oneshop.dto.ChatMessageDto;
 import com.oneshop.entity.ChatMessageEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,24 +14,30 @@ import java.util.List;
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessageEntity, Long> {
 
-    // Lấy lịch sử chat hai chiều giữa userA và userB
+    // Một trang lịch sử chat: các tin có id < beforeId của cuộc trò chuyện, mới nhất trước
     @Query("""
-        SELECT m FROM ChatMessageEntity m
-        WHERE (m.sender = :userA AND m.receiver = :userB)
-           OR (m.sender = :userB AND m.receiver = :userA)
-        ORDER BY m.timestamp ASC
+        SELECT new com.oneshop.dto.ChatMessageDto(m.id, m.sender, m.receiver, m.content, m.timestamp, m.type)
+        FROM ChatMessageEntity m
+        WHERE m.conversationKey = :conversationKey AND m.id < :beforeId
+        ORDER BY m.id DESC
     """)
-    List<ChatMessageEntity> findChatHistory(@Param("userA") String userA, @Param("userB") String userB);
+    List<ChatMessageDto> findHistoryBefore(@Param("conversationKey") String conversationKey,
+                                           @Param("beforeId") Long beforeId,
+                                           Pageable limit);
+
+    // Dữ liệu cũ chưa có conversation_key: [id, sender, receiver]
+    @Query("SELECT m.id, m.sender, m.receiver FROM ChatMessageEntity m WHERE m.conversationKey IS NULL ORDER BY m.id")
+    List<Object[]> findWithoutConversationKey(Pageable limit);
 
-    // Lấy danh sách username của người dùng đã nhắn tin với vendor
+    @Modifying
+    @Query("UPDATE ChatMessageEntity m SET m.conversationKey = :conversationKey WHERE m.id = :id")
+    int updateConversationKey(@Param("id") Long id, @Param("conversationKey") String conversationKey);
+
+    // Tin cuối cùng của mỗi chiều gửi: [sender, receiver, max id] (dựng lại bảng tóm tắt hội thoại)
     @Query("""
-        SELECT DISTINCT CASE
-            WHEN m.sender = :vendor THEN m.receiver
-            WHEN m.receiver = :vendor THEN m.sender
-            ELSE null
-        END
-        FROM ChatMessageEntity m
-        WHERE m.sender = :vendor OR m.receiver = :vendor
+        SELECT m.sender, m.receiver, MAX(m.id) FROM ChatMessageEntity m
+        WHERE m.sender IS NOT NULL AND m.receiver IS NOT NULL
+        GROUP BY m.sender, m.receiver
     """)
-    List<String> findChatParticipants(@Param("vendor") String vendor);
+    List<Object[]> findLastMessageIdPerDirection();
 }
\ No newline at end of file
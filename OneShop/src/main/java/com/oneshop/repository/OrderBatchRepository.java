@@ -0,0 +1,93 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.OrderStatus;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Các câu UPDATE theo lô (JDBC batch) cho luồng đơn hàng: chuyển trạng thái nhiều đơn,
+ * cộng số lượng bán, hoàn tồn kho. Mỗi lô là 1 lần gửi tới DB thay vì N câu lệnh riêng.
+ * Chạy chung transaction JPA hiện tại; các thay đổi JPA đang chờ được flush trước.
+ */
+@Repository
+public class OrderBatchRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Chuyển trạng thái có điều kiện cho từng đơn (order_status phải bằng trạng thái mong đợi).
+     * @return số dòng cập nhật cho từng đơn, cùng thứ tự với orderIds (0 = đơn đã bị thay đổi bởi thao tác khác)
+     */
+    public int[] compareAndSetStatuses(List<Long> orderIds, List<OrderStatus> expectedStatuses, OrderStatus newStatus) {
+        List<Object[]> args = new ArrayList<>(orderIds.size());
+        for (int i = 0; i < orderIds.size(); i++) {
+            args.add(new Object[]{newStatus.name(), orderIds.get(i), expectedStatuses.get(i).name()});
+        }
+        return batchUpdate("UPDATE ORDERS SET order_status = ? WHERE order_id = ? AND order_status = ?", args);
+    }
+
+    /**
+     * Gán shipper và chuyển CONFIRMED -> DELIVERING cho từng đơn.
+     * @return số dòng cập nhật cho từng đơn, cùng thứ tự với orderIds
+     */
+    public int[] assignShipper(List<Long> orderIds, Long shipperId) {
+        List<Object[]> args = new ArrayList<>(orderIds.size());
+        for (Long orderId : orderIds) {
+            args.add(new Object[]{shipperId, OrderStatus.DELIVERING.name(), orderId, OrderStatus.CONFIRMED.name()});
+        }
+        return batchUpdate("UPDATE ORDERS SET shipper_id = ?, order_status = ? " +
+                "WHERE order_id = ? AND order_status = ? AND shipping_company_id IS NOT NULL", args);
+    }
+
+    // productId -> số lượng bán thêm
+    public void incrementSalesCounts(Map<Long, Integer> quantitiesByProduct) {
+        batchUpdate("UPDATE PRODUCTS SET sales_count = sales_count + ? WHERE product_id = ?", deltaArgs(quantitiesByProduct));
+    }
+
+    /**
+     * Trừ tồn kho có điều kiện (stock >= số lượng) cho nhiều biến thể trong 1 lô.
+     * @return số dòng cập nhật cho từng biến thể, cùng thứ tự duyệt của map (0 = không đủ hàng)
+     */
+    public int[] decrementVariantStocksIfAvailable(Map<Long, Integer> quantitiesByVariant) {
+        List<Object[]> args = new ArrayList<>(quantitiesByVariant.size());
+        quantitiesByVariant.forEach((variantId, quantity) -> args.add(new Object[]{quantity, variantId, quantity}));
+        return batchUpdate("UPDATE PRODUCT_VARIANTS SET stock = stock - ? WHERE variant_id = ? AND stock >= ?", args);
+    }
+
+    // variantId -> số lượng hoàn lại
+    public void incrementVariantStocks(Map<Long, Integer> quantitiesByVariant) {
+        batchUpdate("UPDATE PRODUCT_VARIANTS SET stock = stock + ? WHERE variant_id = ?", deltaArgs(quantitiesByVariant));
+    }
+
+    // productId -> delta tồn kho tổng (âm khi trừ, dương khi hoàn)
+    public void adjustProductStocks(Map<Long, Integer> deltasByProduct) {
+        batchUpdate("UPDATE PRODUCTS SET stock = stock + ? WHERE product_id = ?", deltaArgs(deltasByProduct));
+    }
+
+    private static List<Object[]> deltaArgs(Map<Long, Integer> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((id, delta) -> args.add(new Object[]{delta, id}));
+        return args;
+    }
+
+    private int[] batchUpdate(String sql, List<Object[]> args) {
+        if (args.isEmpty()) {
+            return new int[0];
+        }
+        // Đảm bảo các INSERT/UPDATE JPA trước đó đã xuống DB trước khi chạy SQL trực tiếp
+        entityManager.flush();
+        return jdbcTemplate.batchUpdate(sql, args);
+    }
+}
@@ -1,18 +1,20 @@
 // src/main/java/com/oneshop/repository/OrderRepository.java
 package com.oneshop.repository;
 
+import com.oneshop.dto.SalesReportLineDto;
 import com.oneshop.entity.Order;
 import com.oneshop.entity.OrderStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,33 +25,59 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     Page<Order> findByShopId(Long shopId, Pageable pageable);
     Page<Order> findByShopIdAndOrderStatus(Long shopId, OrderStatus orderStatus, Pageable pageable);
     long countByShopIdAndOrderStatus(Long shopId, OrderStatus orderStatus);
+    long countByOrderStatus(OrderStatus orderStatus);
     List<Order> findByShopIdAndOrderStatusIn(Long shopId, List<OrderStatus> statuses, Sort sort);
 
-    // === PHƯƠNG THỨC TÍNH DOANH THU ===
-
-    @Query("SELECT SUM(o.total) FROM Order o WHERE o.shop.id = :shopId AND o.orderStatus = :status")
-    BigDecimal calculateTotalRevenueByShopIdAndStatus(@Param("shopId") Long shopId, @Param("status") OrderStatus status);
-
-    @Query("SELECT SUM(o.total) FROM Order o WHERE o.shop.id = :shopId AND o.orderStatus = :status AND o.createdAt BETWEEN :startDate AND :endDate")
-    BigDecimal calculateTotalRevenueByShopIdAndStatusBetweenDates(
-            @Param("shopId") Long shopId,
-            @Param("status") OrderStatus status,
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate);
-
-    /**
-     * Lấy doanh thu theo từng tháng trong một khoảng thời gian (Ví dụ: 6 tháng gần nhất).
-     * Sử dụng Native Query với FORMAT cho SQL Server.
-     */
-    @Query(value = "SELECT FORMAT(o.created_at, 'yyyy-MM') as monthYear, SUM(o.total_amount) as monthlyRevenue " +
-                   "FROM orders o " +  // Sửa ORDERS thành orders (thường table name là lowercase)
-                   "WHERE o.shop_id = :shopId AND o.order_status = :status AND o.created_at >= :startDate " +
-                   "GROUP BY FORMAT(o.created_at, 'yyyy-MM') " +
-                   "ORDER BY monthYear ASC", nativeQuery = true)
-    List<Object[]> findMonthlyRevenueByShopIdAndStatusSinceDate(
-            @Param("shopId") Long shopId,
-            @Param("status") String status,  // Sửa thành String để phù hợp với native query
-            @Param("startDate") LocalDateTime startDate);
+    // --- Phân trang keyset cho Vendor: (createdAt, id) giảm dần, trả List nên không chạy COUNT ---
+    @Query("SELECT o FROM Order o JOIN FETCH o.user WHERE o.shop.id = :shopId " +
+           "AND (:status IS NULL OR o.orderStatus = :status) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findFirstPageByShop(@Param("shopId") Long shopId, @Param("status") OrderStatus status, Pageable limit);
+
+    @Query("SELECT o FROM Order o JOIN FETCH o.user WHERE o.shop.id = :shopId " +
+           "AND (:status IS NULL OR o.orderStatus = :status) " +
+           "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findPageByShopAfter(@Param("shopId") Long shopId, @Param("status") OrderStatus status,
+                                    @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable limit);
+
+    // === DỰNG LẠI BẢNG TỔNG HỢP DOANH THU (portable: cast sang LocalDate thay vì FORMAT của SQL Server) ===
+
+    // [shopId, ngày đặt, số đơn, tổng total_amount] của 1 shop
+    @Query("SELECT o.shop.id, cast(o.createdAt as LocalDate), COUNT(o), SUM(o.total) FROM Order o " +
+           "WHERE o.shop.id = :shopId AND o.orderStatus = :status " +
+           "GROUP BY o.shop.id, cast(o.createdAt as LocalDate)")
+    List<Object[]> aggregateDailyRevenueByShop(@Param("shopId") Long shopId, @Param("status") OrderStatus status);
+
+    // [shopId, ngày đặt, productId, categoryId, doanh thu, số lượng, số đơn] của 1 shop
+    @Query("SELECT o.shop.id, cast(o.createdAt as LocalDate), p.productId, p.category.id, " +
+           "SUM(od.price * od.quantity), SUM(od.quantity), COUNT(DISTINCT o.id) " +
+           "FROM Order o JOIN o.orderDetails od JOIN od.productVariant pv JOIN pv.product p " +
+           "WHERE o.shop.id = :shopId AND o.orderStatus = :status " +
+           "GROUP BY o.shop.id, cast(o.createdAt as LocalDate), p.productId, p.category.id")
+    List<Object[]> aggregateDailyRevenueByProduct(@Param("shopId") Long shopId, @Param("status") OrderStatus status);
+
+    // === ĐỐI SOÁT HOA HỒNG ===
+
+    // Kỳ đối soát tính theo ngày giao (deliveredAt): đơn đặt cuối tháng nhưng giao đầu tháng sau thuộc kỳ sau.
+    // Đơn giao trước khi có cột delivered_at (null) vẫn tính theo ngày đặt như trước.
+    @Query("SELECT DISTINCT o.shop.id FROM Order o WHERE o.orderStatus = :status " +
+           "AND ((o.deliveredAt >= :fromDate AND o.deliveredAt < :toDate) " +
+           "OR (o.deliveredAt IS NULL AND o.createdAt >= :fromDate AND o.createdAt < :toDate))")
+    List<Long> findShopIdsWithOrdersBetween(@Param("status") OrderStatus status,
+                                            @Param("fromDate") LocalDateTime fromDate,
+                                            @Param("toDate") LocalDateTime toDate);
+
+    // Gộp theo shop ngay trong DB: [shopId, số đơn, tổng subtotal, tổng giảm giá, tổng phí ship, tổng total_amount]
+    @Query("SELECT o.shop.id, COUNT(o), SUM(o.subtotal), SUM(o.discountAmount), SUM(o.shippingCost), SUM(o.total) " +
+           "FROM Order o WHERE o.shop.id IN :shopIds AND o.orderStatus = :status " +
+           "AND ((o.deliveredAt >= :fromDate AND o.deliveredAt < :toDate) " +
+           "OR (o.deliveredAt IS NULL AND o.createdAt >= :fromDate AND o.createdAt < :toDate)) " +
+           "GROUP BY o.shop.id")
+    List<Object[]> aggregateSettlementByShop(@Param("shopIds") Collection<Long> shopIds,
+                                             @Param("status") OrderStatus status,
+                                             @Param("fromDate") LocalDateTime fromDate,
+                                             @Param("toDate") LocalDateTime toDate);
 
     // --- Cho User ---
     List<Order> findByUserIdOrderByCreatedAtDesc(Long userId);
@@ -72,22 +100,6 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
            "WHERE o.id = :orderId")
     Optional<Order> findByIdWithItems(@Param("orderId") Long orderId);
 
-    // --- PHƯƠNG THỨC MỚI CHO BIỂU ĐỒ DOANH THU ---
-
-    @Query("SELECT p.name, SUM(od.price * od.quantity) as totalRevenue " +
-           "FROM Order o JOIN o.orderDetails od JOIN od.productVariant pv JOIN pv.product p " +
-           "WHERE o.shop.id = :shopId AND o.orderStatus = :status " +
-           "GROUP BY p.productId, p.name " +
-           "ORDER BY totalRevenue DESC")
-    List<Object[]> findTopProductRevenueByShop(@Param("shopId") Long shopId, @Param("status") OrderStatus status, Pageable pageable);
-
-    @Query("SELECT c.name, SUM(od.price * od.quantity) as totalRevenue " +
-           "FROM Order o JOIN o.orderDetails od JOIN od.productVariant pv JOIN pv.product p JOIN p.category c " +
-           "WHERE o.shop.id = :shopId AND o.orderStatus = :status " +
-           "GROUP BY c.id, c.name " +
-           "ORDER BY totalRevenue DESC")  // Sắp xếp theo doanh thu giảm dần
-    List<Object[]> findCategoryRevenueByShop(@Param("shopId") Long shopId, @Param("status") OrderStatus status);
-    
     @Query("SELECT COUNT(o) FROM Order o WHERE o.shop.id = :shopId AND o.orderStatus = :status")
     long countOrdersByShopAndStatus(@Param("shopId") Long shopId, @Param("status") OrderStatus status);
 
@@ -98,4 +110,56 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
                                             @Param("endDate") LocalDateTime endDate);
     
     long countByPromotionId(Long promotionId);
+
+    // Báo cáo bán hàng: mỗi dòng chi tiết đơn là 1 DTO, đọc theo trang keyset (orderId giảm dần, detailId tăng dần)
+    @Query("SELECT new com.oneshop.dto.SalesReportLineDto(o.id, od.id, o.createdAt, o.recipientName, o.shippingPhone, " +
+           "o.shippingAddress, p.name, v.name, od.quantity, od.price, o.orderStatus) " +
+           "FROM Order o JOIN o.orderDetails od LEFT JOIN od.productVariant v LEFT JOIN v.product p " +
+           "WHERE o.shop.id = :shopId AND o.orderStatus IN :statuses " +
+           "AND (:fromDate IS NULL OR o.createdAt >= :fromDate) AND (:toDate IS NULL OR o.createdAt < :toDate) " +
+           "AND (o.id < :lastOrderId OR (o.id = :lastOrderId AND od.id > :lastDetailId)) " +
+           "ORDER BY o.id DESC, od.id ASC")
+    List<SalesReportLineDto> findSalesReportLines(@Param("shopId") Long shopId,
+                                                  @Param("statuses") Collection<OrderStatus> statuses,
+                                                  @Param("fromDate") LocalDateTime fromDate,
+                                                  @Param("toDate") LocalDateTime toDate,
+                                                  @Param("lastOrderId") Long lastOrderId,
+                                                  @Param("lastDetailId") Long lastDetailId,
+                                                  Pageable limit);
+
+    // Tổng số dòng báo cáo (để tính tiến độ job báo cáo)
+    @Query("SELECT COUNT(od) FROM Order o JOIN o.orderDetails od " +
+           "WHERE o.shop.id = :shopId AND o.orderStatus IN :statuses " +
+           "AND (:fromDate IS NULL OR o.createdAt >= :fromDate) AND (:toDate IS NULL OR o.createdAt < :toDate)")
+    long countSalesReportLines(@Param("shopId") Long shopId,
+                               @Param("statuses") Collection<OrderStatus> statuses,
+                               @Param("fromDate") LocalDateTime fromDate,
+                               @Param("toDate") LocalDateTime toDate);
+
+    // Thao tác hàng loạt: đơn của shop kèm chi tiết, biến thể và sản phẩm trong 1 query
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderDetails od " +
+           "LEFT JOIN FETCH od.productVariant v LEFT JOIN FETCH v.product " +
+           "WHERE o.shop.id = :shopId AND o.id IN :orderIds")
+    List<Order> findByShopAndIdInWithItems(@Param("shopId") Long shopId, @Param("orderIds") Collection<Long> orderIds);
+
+    // Chuyển trạng thái có điều kiện: chỉ 1 trong các thao tác đồng thời (xác nhận/hủy/hết hạn) thắng
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Order o SET o.orderStatus = :newStatus WHERE o.id = :orderId AND o.orderStatus = :expectedStatus")
+    int compareAndSetStatus(@Param("orderId") Long orderId,
+                            @Param("expectedStatus") OrderStatus expectedStatus,
+                            @Param("newStatus") OrderStatus newStatus);
+
+    // Lùi hạn kiểm tra thanh toán của đơn vẫn đang chờ thanh toán
+    @Modifying
+    @Query("UPDATE Order o SET o.paymentExpiresAt = :nextCheckAt WHERE o.id = :orderId AND o.orderStatus = :status")
+    int deferPaymentExpiry(@Param("orderId") Long orderId,
+                           @Param("status") OrderStatus status,
+                           @Param("nextCheckAt") LocalDateTime nextCheckAt);
+
+    // Đơn thanh toán online đã quá hạn mà vẫn chờ thanh toán
+    @Query("SELECT o.id FROM Order o WHERE o.orderStatus = :status AND o.paymentExpiresAt < :now " +
+           "ORDER BY o.paymentExpiresAt")
+    List<Long> findPaymentExpiredOrderIds(@Param("status") OrderStatus status,
+                                          @Param("now") LocalDateTime now,
+                                          Pageable limit);
 }
\ No newline at end of file
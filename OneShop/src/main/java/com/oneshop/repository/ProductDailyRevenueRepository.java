@@ -0,0 +1,50 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.ProductDailyRevenue;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ProductDailyRevenueRepository extends JpaRepository<ProductDailyRevenue, Long> {
+
+    /**
+     * Cộng dồn (atomic) doanh thu, số lượng và số đơn của 1 sản phẩm trong ngày.
+     * @return số dòng bị ảnh hưởng (0 nếu chưa có dòng cho sản phẩm/ngày đó).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductDailyRevenue r SET r.revenue = r.revenue + :revenueDelta, " +
+           "r.units = r.units + :unitsDelta, r.orderCount = r.orderCount + :orderDelta " +
+           "WHERE r.shopId = :shopId AND r.revenueDate = :revenueDate AND r.productId = :productId")
+    int applyDelta(@Param("shopId") Long shopId,
+                   @Param("revenueDate") LocalDate revenueDate,
+                   @Param("productId") Long productId,
+                   @Param("revenueDelta") BigDecimal revenueDelta,
+                   @Param("unitsDelta") long unitsDelta,
+                   @Param("orderDelta") long orderDelta);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM ProductDailyRevenue r WHERE r.shopId = :shopId")
+    int deleteByShopId(@Param("shopId") Long shopId);
+
+    @Query("SELECT p.name, SUM(r.revenue) FROM ProductDailyRevenue r JOIN Product p ON p.productId = r.productId " +
+           "WHERE r.shopId = :shopId " +
+           "GROUP BY r.productId, p.name " +
+           "HAVING SUM(r.revenue) > 0 " +
+           "ORDER BY SUM(r.revenue) DESC")
+    List<Object[]> findTopProductRevenueByShop(@Param("shopId") Long shopId, Pageable pageable);
+
+    @Query("SELECT c.name, SUM(r.revenue) FROM ProductDailyRevenue r LEFT JOIN Category c ON c.id = r.categoryId " +
+           "WHERE r.shopId = :shopId " +
+           "GROUP BY r.categoryId, c.name " +
+           "HAVING SUM(r.revenue) > 0 " +
+           "ORDER BY SUM(r.revenue) DESC")
+    List<Object[]> findCategoryRevenueByShop(@Param("shopId") Long shopId);
+}
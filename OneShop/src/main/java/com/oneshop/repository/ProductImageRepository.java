@@ -2,8 +2,19 @@ package com.oneshop.repository;
 
 import com.oneshop.entity.ProductImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface ProductImageRepository extends JpaRepository<ProductImage, Long> {
-}
\ No newline at end of file
+
+    // Lấy ảnh của nhiều sản phẩm trong 1 query (không load entity Product)
+    // Mỗi dòng: [productId, imageUrl, isPrimary]
+    @Query("SELECT i.product.productId, i.imageUrl, i.isPrimary FROM ProductImage i " +
+           "WHERE i.product.productId IN :productIds ORDER BY i.imageId")
+    List<Object[]> findImageRowsByProductIds(@Param("productIds") Collection<Long> productIds);
+}
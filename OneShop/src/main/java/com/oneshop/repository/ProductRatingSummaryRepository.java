@@ -0,0 +1,32 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.ProductRatingSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProductRatingSummaryRepository extends JpaRepository<ProductRatingSummary, Long> {
+
+    /**
+     * Cộng dồn (atomic) một thay đổi rating vào dòng tổng hợp.
+     * Các vế phải dùng giá trị CŨ của cột (ngữ nghĩa chuẩn của UPDATE).
+     * @return số dòng bị ảnh hưởng (0 nếu sản phẩm chưa có dòng tổng hợp).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductRatingSummary s SET " +
+           "s.ratingSum = s.ratingSum + :sumDelta, " +
+           "s.ratingCount = s.ratingCount + :countDelta, " +
+           "s.star1 = s.star1 + :d1, s.star2 = s.star2 + :d2, s.star3 = s.star3 + :d3, " +
+           "s.star4 = s.star4 + :d4, s.star5 = s.star5 + :d5, " +
+           "s.averageRating = CASE WHEN s.ratingCount + :countDelta > 0 " +
+           "    THEN (s.ratingSum + :sumDelta) * 1.0 / (s.ratingCount + :countDelta) ELSE 0.0 END " +
+           "WHERE s.productId = :productId")
+    int applyDelta(@Param("productId") Long productId,
+                   @Param("sumDelta") long sumDelta,
+                   @Param("countDelta") long countDelta,
+                   @Param("d1") long d1, @Param("d2") long d2, @Param("d3") long d3,
+                   @Param("d4") long d4, @Param("d5") long d5);
+}
@@ -6,11 +6,16 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +29,50 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
     long countByCategoryId(Long categoryId);
     List<Product> findByCategory_Id(Long categoryId);
 
+    // --- Cho chỉ mục tìm kiếm (load kèm brand/category trong 1 query) ---
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.brand LEFT JOIN FETCH p.category " +
+           "WHERE p.published = true AND p.status = :status AND p.productId > :afterId ORDER BY p.productId")
+    List<Product> findSearchableAfterId(@Param("status") ProductStatus status, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.brand LEFT JOIN FETCH p.category WHERE p.productId IN :productIds")
+    List<Product> findWithBrandAndCategoryByIdIn(@Param("productIds") Collection<Long> productIds);
+
+    // Cùng điều kiện với ProductSpecification.hasName, chỉ lấy ID (facet khi tìm kiếm quay về LIKE)
+    @Query("SELECT p.productId FROM Product p " +
+           "WHERE p.published = true AND p.status = :status AND LOWER(p.name) LIKE :pattern")
+    List<Long> findSearchableIdsByNameLike(@Param("status") ProductStatus status, @Param("pattern") String pattern);
+
+    // --- Cho bộ đếm facet: chỉ lấy các cột cần thiết ---
+    // Mỗi dòng: [productId, categoryId, brandId, price]
+    @Query("SELECT p.productId, c.id, b.brandId, p.price FROM Product p LEFT JOIN p.category c LEFT JOIN p.brand b " +
+           "WHERE p.published = true AND p.status = :status")
+    List<Object[]> findFacetRows(@Param("status") ProductStatus status);
+
+    @Query("SELECT p.productId, c.id, b.brandId, p.price FROM Product p LEFT JOIN p.category c LEFT JOIN p.brand b " +
+           "WHERE p.published = true AND p.status = :status AND p.productId IN :productIds")
+    List<Object[]> findFacetRowsByIdIn(@Param("status") ProductStatus status, @Param("productIds") Collection<Long> productIds);
+
+    // Khóa dòng sản phẩm (dùng để tuần tự hóa việc tạo dòng tổng hợp rating đầu tiên)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.productId = :productId")
+    Optional<Product> findByIdForUpdate(@Param("productId") Long productId);
+
+    // Chép average_rating từ bảng tổng hợp rating sang PRODUCTS (sản phẩm chưa có review = 0)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE PRODUCTS SET average_rating = COALESCE((SELECT s.average_rating FROM PRODUCT_RATING_SUMMARY s " +
+                   "WHERE s.product_id = PRODUCTS.product_id), 0) WHERE product_id = :productId", nativeQuery = true)
+    int syncAverageRating(@Param("productId") Long productId);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE PRODUCTS SET average_rating = COALESCE((SELECT s.average_rating FROM PRODUCT_RATING_SUMMARY s " +
+                   "WHERE s.product_id = PRODUCTS.product_id), 0)", nativeQuery = true)
+    int syncAllAverageRatings();
+
+    // Số sản phẩm có average_rating lệch với bảng tổng hợp (vd lần đầu thêm cột)
+    @Query(value = "SELECT COUNT(*) FROM PRODUCTS p JOIN PRODUCT_RATING_SUMMARY s ON s.product_id = p.product_id " +
+                   "WHERE p.average_rating <> s.average_rating", nativeQuery = true)
+    long countStaleAverageRatings();
+
     // --- Cho User (Public) - ĐÃ CẬP NHẬT ---
 
     /**
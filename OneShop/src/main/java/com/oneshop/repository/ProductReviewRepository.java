@@ -28,6 +28,12 @@ public interface ProductReviewRepository extends JpaRepository<ProductReview, Lo
     @Query("SELECT COUNT(r) FROM ProductReview r WHERE r.product.productId = :productId")
     Integer countReviewsByProductId(@Param("productId") Long productId);
 
+    // Dữ liệu để dựng lại bảng tổng hợp rating
+    // Mỗi dòng: [productId, rating, số review có rating đó]
+    @Query("SELECT r.product.productId, r.rating, COUNT(r) FROM ProductReview r " +
+           "WHERE r.rating IS NOT NULL GROUP BY r.product.productId, r.rating")
+    List<Object[]> countByProductAndRating();
+
    
     @Query("""
     	    SELECT new com.oneshop.dto.ReviewDTO(
@@ -5,15 +5,27 @@ import com.oneshop.entity.ProductVariant;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface ProductVariantRepository extends JpaRepository<ProductVariant, Long> {
 	ProductVariant findByVariantId(Long variantId);
 	List<ProductVariant> findByProduct_ProductId(Long productId);
+
+	// Ảnh biến thể dùng làm ảnh dự phòng khi sản phẩm không có ảnh riêng
+	// Mỗi dòng: [productId, imageUrl]
+	@Query("SELECT v.product.productId, v.imageUrl FROM ProductVariant v " +
+	       "WHERE v.product.productId IN :productIds AND v.imageUrl IS NOT NULL ORDER BY v.variantId")
+	List<Object[]> findVariantImageRowsByProductIds(@Param("productIds") Collection<Long> productIds);
+
+	@Query("SELECT v.stock FROM ProductVariant v WHERE v.variantId = :variantId")
+	Integer findStockByVariantId(@Param("variantId") Long variantId);
 	// Tạo interface custom
 	interface ProductVariantRepositoryCustom {
 	    void refresh(ProductVariant variant);
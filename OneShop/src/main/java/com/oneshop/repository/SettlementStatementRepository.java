@@ -0,0 +1,26 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.SettlementStatement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface SettlementStatementRepository extends JpaRepository<SettlementStatement, Long> {
+
+    List<SettlementStatement> findByPeriodStartAndPeriodEndOrderByCommissionAmountDesc(LocalDate periodStart, LocalDate periodEnd);
+
+    // Xóa toàn bộ bảng kê cũ của kỳ trước khi ghi lại
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM SettlementStatement s WHERE s.periodStart = :periodStart AND s.periodEnd = :periodEnd")
+    int deleteByPeriod(@Param("periodStart") LocalDate periodStart, @Param("periodEnd") LocalDate periodEnd);
+
+    // Các kỳ đã đối soát, mới nhất trước: [periodStart, periodEnd]
+    @Query("SELECT DISTINCT s.periodStart, s.periodEnd FROM SettlementStatement s ORDER BY s.periodStart DESC, s.periodEnd DESC")
+    List<Object[]> findSettledPeriods();
+}
@@ -0,0 +1,47 @@
+package com.oneshop.repository;
+
+import com.oneshop.entity.ShopDailyRevenue;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ShopDailyRevenueRepository extends JpaRepository<ShopDailyRevenue, Long> {
+
+    /**
+     * Cộng dồn (atomic) số đơn và doanh thu vào dòng tổng hợp của shop trong ngày.
+     * @return số dòng bị ảnh hưởng (0 nếu chưa có dòng cho ngày đó).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ShopDailyRevenue r SET r.orderCount = r.orderCount + :orderDelta, r.revenue = r.revenue + :revenueDelta " +
+           "WHERE r.shopId = :shopId AND r.revenueDate = :revenueDate")
+    int applyDelta(@Param("shopId") Long shopId,
+                   @Param("revenueDate") LocalDate revenueDate,
+                   @Param("orderDelta") long orderDelta,
+                   @Param("revenueDelta") BigDecimal revenueDelta);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM ShopDailyRevenue r WHERE r.shopId = :shopId")
+    int deleteByShopId(@Param("shopId") Long shopId);
+
+    @Query("SELECT SUM(r.revenue) FROM ShopDailyRevenue r WHERE r.shopId = :shopId")
+    BigDecimal sumRevenueByShop(@Param("shopId") Long shopId);
+
+    @Query("SELECT SUM(r.revenue) FROM ShopDailyRevenue r " +
+           "WHERE r.shopId = :shopId AND r.revenueDate BETWEEN :fromDate AND :toDate")
+    BigDecimal sumRevenueByShopBetween(@Param("shopId") Long shopId,
+                                       @Param("fromDate") LocalDate fromDate,
+                                       @Param("toDate") LocalDate toDate);
+
+    @Query("SELECT SUM(r.orderCount) FROM ShopDailyRevenue r WHERE r.shopId = :shopId")
+    Long sumOrderCountByShop(@Param("shopId") Long shopId);
+
+    // Mỗi shop tối đa 1 dòng / ngày -> vài trăm dòng cho biểu đồ theo tháng
+    List<ShopDailyRevenue> findByShopIdAndRevenueDateGreaterThanEqualOrderByRevenueDateAsc(Long shopId, LocalDate fromDate);
+}
@@ -2,11 +2,20 @@ package com.oneshop.repository;
 
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.oneshop.dto.VendorDashboardDto;
+import com.oneshop.entity.OrderStatus;
 import com.oneshop.entity.Shop;
 import com.oneshop.enums.ShopStatus;
 
+import jakarta.persistence.LockModeType;
+
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +25,28 @@ public interface ShopRepository extends JpaRepository<Shop, Long> {
     // Tìm Shop dựa trên User (chủ sở hữu)
     Optional<Shop> findByUserId(Long userId);
     List<Shop> findByStatus(ShopStatus status, Sort sort);
+
+    // Dashboard vendor: đơn chờ xác nhận, số sản phẩm và doanh thu trong khoảng ngày (bảng tổng hợp) trong 1 query
+    @Query("SELECT new com.oneshop.dto.VendorDashboardDto(" +
+           "(SELECT COUNT(o) FROM Order o WHERE o.shop.id = s.id AND o.orderStatus = :newStatus), " +
+           "(SELECT COUNT(p) FROM Product p WHERE p.shop.id = s.id), " +
+           "(SELECT COALESCE(SUM(r.revenue), 0) FROM ShopDailyRevenue r " +
+           "    WHERE r.shopId = s.id AND r.revenueDate BETWEEN :fromDate AND :toDate)) " +
+           "FROM Shop s WHERE s.id = :shopId")
+    Optional<VendorDashboardDto> findDashboardCounters(@Param("shopId") Long shopId,
+                                                       @Param("newStatus") OrderStatus newStatus,
+                                                       @Param("fromDate") LocalDate fromDate,
+                                                       @Param("toDate") LocalDate toDate);
+
+    // Đối soát hoa hồng: [shopId, tên shop, tỉ lệ hoa hồng]
+    @Query("SELECT s.id, s.name, s.commissionRate FROM Shop s WHERE s.id IN :shopIds")
+    List<Object[]> findCommissionInfoByIdIn(@Param("shopIds") Collection<Long> shopIds);
+
+    @Query("SELECT s.id FROM Shop s ORDER BY s.id")
+    List<Long> findAllIds();
+
+    // Khóa dòng shop: tuần tự hóa delta doanh thu của shop với nhau và với việc dựng lại bảng tổng hợp của shop
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Shop s WHERE s.id = :shopId")
+    Optional<Shop> findByIdForUpdate(@Param("shopId") Long shopId);
 }
\ No newline at end of file
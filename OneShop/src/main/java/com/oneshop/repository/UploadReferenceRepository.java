@@ -0,0 +1,41 @@
+package com.oneshop.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Đếm số tham chiếu tới từng file upload trên mọi cột lưu tên file:
+ * ảnh sản phẩm, ảnh biến thể, logo/banner shop, logo thương hiệu, media đánh giá.
+ * Dùng cho bước "mark" của bộ dọn file upload (UploadGarbageCollectorService).
+ */
+@Repository
+public class UploadReferenceRepository {
+
+    private static final String COUNT_REFERENCES_SQL =
+            "SELECT r.ref, COUNT(*) FROM (" +
+            " SELECT image_url AS ref FROM PRODUCT_IMAGES" +
+            " UNION ALL SELECT image_url FROM PRODUCT_VARIANTS WHERE image_url IS NOT NULL" +
+            " UNION ALL SELECT logo FROM Shops WHERE logo IS NOT NULL" +
+            " UNION ALL SELECT banner FROM Shops WHERE banner IS NOT NULL" +
+            " UNION ALL SELECT logo_url FROM BRANDS WHERE logo_url IS NOT NULL" +
+            " UNION ALL SELECT media_url FROM REVIEW_MEDIA" +
+            ") r GROUP BY r.ref";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Giá trị cột (tên file hoặc URL /uploads/images/...) -> số dòng đang tham chiếu.
+     */
+    public Map<String, Long> countReferences() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(COUNT_REFERENCES_SQL, rs -> {
+            counts.put(rs.getString(1), rs.getLong(2));
+        });
+        return counts;
+    }
+}
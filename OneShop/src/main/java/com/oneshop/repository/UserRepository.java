@@ -5,7 +5,12 @@ import com.oneshop.entity.User;
 
 import java.util.List;
 import java.util.Optional;
+
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 
@@ -17,4 +22,9 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     List<User> findByRoleAndUsernameIn(Role role, List<String> usernames);
     List<User> findByUsernameIn(List<String> usernames);
+
+    // Khóa dòng user (tuần tự hóa việc tạo dòng tóm tắt hội thoại đầu tiên của user)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.username = :username")
+    Optional<User> findByUsernameForUpdate(@Param("username") String username);
 }
\ No newline at end of file
@@ -2,6 +2,7 @@
 package com.oneshop.service;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.slf4j.Logger; // <<< THÊM IMPORT
 import org.slf4j.LoggerFactory; // <<< THÊM IMPORT
@@ -23,23 +24,38 @@ import jakarta.servlet.http.HttpServletResponse;
 public class AuthTokenFilter extends OncePerRequestFilter {
 
     @Autowired
-    private JwtUtils jwtUtils;
+    private JwtTokenService jwtTokenService;
 
     @Autowired
-    private UserService userService; // Đảm bảo đây là interface UserService đã sửa
+    private PrincipalCacheService principalCacheService; // UserDetails được cache, không query DB mỗi request
 
     // Thêm logger
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
+    // Tài nguyên tĩnh/ảnh không cần xác thực -> bỏ qua đọc cookie, kiểm tra JWT và tải user
+    private static final List<String> STATIC_PREFIXES = List.of(
+            "/assets/", "/webjars/", "/css/", "/js/", "/images/", "/uploads/", "/media/", "/favicon.ico");
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String prefix : STATIC_PREFIXES) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         try {
             String jwt = parseJwtFromCookie(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
+            String username = jwt != null ? jwtTokenService.getUsername(jwt) : null;
+            if (username != null) {
                 
-                UserDetails userDetails = userService.loadUserByUsername(username); 
+                UserDetails userDetails = principalCacheService.getUserDetails(username);
                 
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
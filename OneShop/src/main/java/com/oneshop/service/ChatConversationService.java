@@ -0,0 +1,190 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.ChatConversation;
+import com.oneshop.entity.ChatMessageEntity;
+import com.oneshop.entity.User;
+import com.oneshop.repository.ChatBatchRepository;
+import com.oneshop.repository.ChatConversationRepository;
+import com.oneshop.repository.ChatMessageRepository;
+import com.oneshop.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Hộp thư chat: lưu tin nhắn (theo lô, xem ChatWriteBehindService) và cập nhật bảng tóm tắt hội thoại
+ * (CHAT_CONVERSATIONS) trong cùng transaction.
+ * Mỗi hội thoại có 2 dòng (1 cho mỗi người tham gia) nên hộp thư và bộ đếm chưa đọc
+ * chỉ cần đọc/ghi đúng dòng của người đó, không quét CHAT_MESSAGES.
+ */
+@Service
+public class ChatConversationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatConversationService.class);
+
+    private static final int PREVIEW_LENGTH = 200;
+    private static final int BACKFILL_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private ChatBatchRepository chatBatchRepository;
+
+    @Autowired
+    private ChatConversationRepository conversationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Dòng tóm tắt của 1 phía cần cập nhật sau 1 lô tin: tin mới nhất + số tin owner nhận thêm
+    private record SideUpdate(String owner, String peer, ChatMessageEntity lastMessage, int unreadDelta) {
+        SideUpdate merge(ChatMessageEntity message, int unread) {
+            ChatMessageEntity latest = lastMessage.getTimestamp() != null && message.getTimestamp() != null
+                    && message.getTimestamp().isBefore(lastMessage.getTimestamp()) ? lastMessage : message;
+            return new SideUpdate(owner, peer, latest, unreadDelta + unread);
+        }
+    }
+
+    private static final Comparator<SideUpdate> SIDE_ORDER =
+            Comparator.comparing(SideUpdate::owner).thenComparing(SideUpdate::peer);
+
+    /**
+     * Ghi 1 lô tin nhắn (JDBC batch) và cập nhật tóm tắt hội thoại của người gửi lẫn người nhận
+     * (người nhận cộng thêm số tin chưa đọc). Nhiều tin giữa cùng 2 người trong lô chỉ tốn 2 câu UPDATE.
+     */
+    @Transactional
+    public void saveMessages(List<ChatMessageEntity> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        chatBatchRepository.insertMessages(messages);
+
+        // Gộp theo (owner, peer); tin cuối lấy theo thời điểm gửi (2 luồng gửi có thể đưa vào hàng đợi lệch thứ tự)
+        Map<String, SideUpdate> updates = new HashMap<>();
+        for (ChatMessageEntity message : messages) {
+            String sender = message.getSender();
+            String receiver = message.getReceiver();
+            if (sender == null || receiver == null || sender.equals(receiver)) {
+                continue;
+            }
+            updates.merge(sender + "|" + receiver, new SideUpdate(sender, receiver, message, 0),
+                    (old, added) -> old.merge(message, 0));
+            updates.merge(receiver + "|" + sender, new SideUpdate(receiver, sender, message, 1),
+                    (old, added) -> old.merge(message, 1));
+        }
+        // Cập nhật theo thứ tự username cố định -> 2 lần ghi đồng thời không khóa chéo
+        updates.values().stream().sorted(SIDE_ORDER).forEach(this::applyToSide);
+    }
+
+    private void applyToSide(SideUpdate update) {
+        ChatMessageEntity message = update.lastMessage();
+        String preview = preview(message.getContent());
+        if (conversationRepository.applyMessage(update.owner(), update.peer(), preview,
+                message.getSender(), message.getTimestamp(), update.unreadDelta()) > 0) {
+            return;
+        }
+        // Tin đầu tiên giữa 2 người: khóa dòng user của owner rồi thử lại để 2 lần ghi đồng thời không tạo trùng dòng
+        userRepository.findByUsernameForUpdate(update.owner());
+        if (conversationRepository.applyMessage(update.owner(), update.peer(), preview,
+                message.getSender(), message.getTimestamp(), update.unreadDelta()) > 0) {
+            return;
+        }
+        ChatConversation conversation = new ChatConversation();
+        conversation.setOwnerUsername(update.owner());
+        conversation.setPeerUsername(update.peer());
+        conversation.setLastMessagePreview(preview);
+        conversation.setLastSender(message.getSender());
+        conversation.setLastMessageAt(message.getTimestamp());
+        conversation.setUnreadCount(update.unreadDelta());
+        conversationRepository.save(conversation);
+    }
+
+    private static String preview(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.length() <= PREVIEW_LENGTH ? content : content.substring(0, PREVIEW_LENGTH - 1) + "…";
+    }
+
+    /**
+     * Hộp thư của {@code owner}: các cặp [tóm tắt hội thoại, user còn lại], mới nhất trước.
+     */
+    @Transactional(readOnly = true)
+    public List<Object[]> getInbox(String owner) {
+        return conversationRepository.findInbox(owner);
+    }
+
+    /**
+     * Đánh dấu đã đọc toàn bộ tin của {@code peer} gửi cho {@code owner}.
+     * @return true nếu có tin chưa đọc được xóa
+     */
+    @Transactional
+    public boolean markRead(String owner, String peer) {
+        return conversationRepository.markRead(owner, peer) > 0;
+    }
+
+    /**
+     * Lần đầu chạy (bảng tóm tắt còn trống) dựng lại từ CHAT_MESSAGES; tin cũ coi như đã đọc.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            Integer created = template.execute(status -> {
+                if (conversationRepository.count() > 0) {
+                    return 0;
+                }
+                // Cặp (nhỏ|lớn) -> id tin cuối cùng của cả 2 chiều
+                Map<String, Long> lastIdByPair = new HashMap<>();
+                for (Object[] row : chatMessageRepository.findLastMessageIdPerDirection()) {
+                    String key = ChatMessageEntity.conversationKeyOf((String) row[0], (String) row[1]);
+                    if (!((String) row[0]).equals(row[1])) {
+                        lastIdByPair.merge(key, (Long) row[2], Math::max);
+                    }
+                }
+                List<Long> messageIds = new ArrayList<>(lastIdByPair.values());
+                List<ChatConversation> conversations = new ArrayList<>(messageIds.size() * 2);
+                for (int i = 0; i < messageIds.size(); i += BACKFILL_CHUNK_SIZE) {
+                    List<Long> chunk = messageIds.subList(i, Math.min(i + BACKFILL_CHUNK_SIZE, messageIds.size()));
+                    for (ChatMessageEntity message : chatMessageRepository.findAllById(chunk)) {
+                        conversations.add(backfilledSide(message.getSender(), message.getReceiver(), message));
+                        conversations.add(backfilledSide(message.getReceiver(), message.getSender(), message));
+                    }
+                }
+                conversationRepository.saveAll(conversations);
+                return conversations.size();
+            });
+            if (created != null && created > 0) {
+                logger.info("Built {} chat conversation summaries from message history.", created);
+            }
+        } catch (Exception e) {
+            logger.error("Could not build chat conversation summaries: {}", e.getMessage(), e);
+        }
+    }
+
+    private static ChatConversation backfilledSide(String owner, String peer, ChatMessageEntity last) {
+        ChatConversation conversation = new ChatConversation();
+        conversation.setOwnerUsername(owner);
+        conversation.setPeerUsername(peer);
+        conversation.setLastMessagePreview(preview(last.getContent()));
+        conversation.setLastSender(last.getSender());
+        conversation.setLastMessageAt(last.getTimestamp());
+        conversation.setUnreadCount(0);
+        return conversation;
+    }
+}
@@ -0,0 +1,104 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.ChatMessageDto;
+import com.oneshop.dto.CursorPage;
+import com.oneshop.entity.ChatMessageEntity;
+import com.oneshop.repository.ChatMessageRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lịch sử chat phân trang theo con trỏ: lấy N tin mới nhất, sau đó lùi dần bằng "trước tin có id X".
+ * Mỗi trang là 1 lần seek trên index (conversation_key, id) nên chi phí không phụ thuộc độ dài cuộc trò chuyện.
+ */
+@Service
+public class ChatHistoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatHistoryService.class);
+
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${oneshop.chat.history.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${oneshop.chat.history.max-page-size:100}")
+    private int maxPageSize;
+
+    /**
+     * Một trang lịch sử giữa {@code currentUser} và {@code otherUser}.
+     * @param beforeId chỉ lấy tin có id nhỏ hơn (null = trang mới nhất)
+     * @return tin nhắn theo thứ tự cũ -> mới; nextCursor là id của tin cũ nhất trong trang
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ChatMessageDto> getHistory(String currentUser, String otherUser, Long beforeId, Integer limit) {
+        int size = (limit == null || limit <= 0) ? defaultPageSize : Math.min(limit, maxPageSize);
+        String conversationKey = ChatMessageEntity.conversationKeyOf(currentUser, otherUser);
+        long cursor = beforeId != null ? beforeId : Long.MAX_VALUE;
+
+        // Lấy dư 1 dòng để biết còn tin cũ hơn hay không (không cần COUNT)
+        List<ChatMessageDto> rows = chatMessageRepository.findHistoryBefore(conversationKey, cursor,
+                PageRequest.of(0, size + 1));
+        boolean hasNext = rows.size() > size;
+        List<ChatMessageDto> content = new ArrayList<>(hasNext ? rows.subList(0, size) : rows);
+        Collections.reverse(content);
+
+        String nextCursor = hasNext ? String.valueOf(content.get(0).getId()) : null;
+        return new CursorPage<>(content, nextCursor, hasNext, size);
+    }
+
+    /**
+     * Tin nhắn cũ (trước khi có cột conversation_key) được gán khóa khi ứng dụng khởi động.
+     * Khóa tính phía Java giống hệt lúc lưu tin mới để không phụ thuộc collation của DB.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillConversationKeys() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int total = 0;
+        try {
+            while (true) {
+                Integer updated = template.execute(status -> {
+                    List<Object[]> batch = chatMessageRepository.findWithoutConversationKey(
+                            PageRequest.of(0, BACKFILL_BATCH_SIZE));
+                    int count = 0;
+                    for (Object[] row : batch) {
+                        String key = ChatMessageEntity.conversationKeyOf((String) row[1], (String) row[2]);
+                        // Tin thiếu sender/receiver không thuộc cuộc trò chuyện nào: đánh dấu rỗng để không quét lại
+                        count += chatMessageRepository.updateConversationKey((Long) row[0], key != null ? key : "");
+                    }
+                    return count;
+                });
+                if (updated == null || updated == 0) {
+                    break;
+                }
+                total += updated;
+            }
+        } catch (Exception e) {
+            logger.error("Could not backfill chat conversation keys: {}", e.getMessage(), e);
+        }
+        if (total > 0) {
+            logger.info("Backfilled conversation key for {} chat messages.", total);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.ChatMessageEntity;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lưu tin nhắn chat kiểu write-behind: luồng nhận STOMP chỉ đưa tin vào hàng đợi có giới hạn rồi trả về ngay,
+ * 1 luồng nền gom tin thành lô (đủ batch-size hoặc sau flush-interval-ms kể từ tin đầu tiên của lô)
+ * và ghi bằng JDBC batch.
+ * - Hàng đợi đầy: luồng gửi chờ đến khi có chỗ (backpressure). Không ghi vượt lên trước các tin đang chờ
+ *   nên tin được ghi đúng thứ tự vào hàng đợi (ID tăng dần theo thứ tự gửi).
+ * - Lỗi DB: giữ nguyên lô và thử lại với thời gian chờ tăng dần cho đến khi ghi được; trong lúc đó hàng đợi đầy dần
+ *   và chặn người gửi thay vì bỏ tin. Chỉ tin lỗi dữ liệu (ghi riêng vẫn vi phạm ràng buộc) mới bị bỏ và ghi log.
+ * - Tắt ứng dụng: ngừng nhận, ghi hết phần còn lại trong hàng đợi trước khi DataSource đóng; nếu DB vẫn lỗi
+ *   sau MAX_FLUSH_ATTEMPTS lần thì phần còn lại bị bỏ và được ghi log.
+ */
+@Service
+public class ChatWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatWriteBehindService.class);
+
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    @Autowired
+    private ChatConversationService chatConversationService;
+
+    @Value("${oneshop.chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${oneshop.chat.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${oneshop.chat.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${oneshop.chat.write-behind.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    private BlockingQueue<ChatMessageEntity> queue;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = new Thread(this::flushLoop, "chat-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            logger.warn("Chat write-behind flusher did not finish within {} ms.", shutdownTimeoutMs);
+            return;
+        }
+        // Tin được đưa vào ngay trước khi running = false mà luồng nền chưa kịp lấy
+        List<ChatMessageEntity> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flushWithRetry(remaining);
+        }
+        logger.info("Chat write-behind stopped; queue drained.");
+    }
+
+    /**
+     * Đưa tin vào hàng đợi ghi; chờ nếu hàng đợi đầy. Khi đang tắt (luồng nền đã dừng) thì ghi đồng bộ.
+     */
+    public void enqueue(ChatMessageEntity message) {
+        if (!running) {
+            chatConversationService.saveMessages(List.of(message));
+            return;
+        }
+        try {
+            if (!queue.offer(message)) {
+                logger.warn("Chat write-behind queue full ({} messages), blocking sender.", queueCapacity);
+                queue.put(message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Không thể lưu tin nhắn: luồng gửi bị gián đoạn.", e);
+        }
+    }
+
+    private void flushLoop() {
+        List<ChatMessageEntity> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessageEntity first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Gom thêm đến khi đủ lô hoặc hết thời gian chờ của lô
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long waitNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || waitNanos <= 0 || !running) {
+                        break;
+                    }
+                    ChatMessageEntity next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Chỉ xảy ra khi JVM dừng đột ngột: ghi nốt lô đang gom rồi thoát
+                Thread.currentThread().interrupt();
+                flushWithRetry(batch);
+                return;
+            }
+            flushWithRetry(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Ghi lô cho đến khi thành công. Sau mỗi MAX_FLUSH_ATTEMPTS lần lỗi thử ghi từng tin để tách tin hỏng
+     * (lỗi dữ liệu) ra khỏi lô; các tin còn lại tiếp tục được thử lại.
+     * Khi đang tắt ứng dụng thì chỉ thử MAX_FLUSH_ATTEMPTS lần.
+     */
+    private void flushWithRetry(List<ChatMessageEntity> batch) {
+        List<ChatMessageEntity> pending = new ArrayList<>(batch);
+        long backoffMs = 200;
+        int attempt = 0;
+        while (!pending.isEmpty()) {
+            try {
+                chatConversationService.saveMessages(pending);
+                logger.debug("Flushed {} chat messages.", pending.size());
+                return;
+            } catch (Exception e) {
+                attempt++;
+                logger.warn("Chat flush attempt {} failed for {} messages: {}", attempt, pending.size(), e.getMessage());
+                if (attempt % MAX_FLUSH_ATTEMPTS == 0) {
+                    pending = saveIndividually(pending);
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    if (!running || Thread.currentThread().isInterrupted()) {
+                        logger.error("Dropping {} chat messages on shutdown after {} failed flush attempts.", pending.size(), attempt, e);
+                        return;
+                    }
+                }
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                backoffMs = Math.min(backoffMs * 2, 5000);
+            }
+        }
+    }
+
+    // Ghi lần lượt từng tin theo thứ tự: tin lỗi dữ liệu (không thể ghi dù thử lại) bị bỏ,
+    // gặp lỗi khác (mất kết nối, timeout...) thì dừng và trả về tin đó cùng các tin sau để thử lại
+    private List<ChatMessageEntity> saveIndividually(List<ChatMessageEntity> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessageEntity message = messages.get(i);
+            try {
+                chatConversationService.saveMessages(List.of(message));
+            } catch (Exception e) {
+                if (!isPoison(e)) {
+                    return new ArrayList<>(messages.subList(i, messages.size()));
+                }
+                logger.error("Dropping chat message {} -> {} at {} that cannot be saved: {}",
+                        message.getSender(), message.getReceiver(), message.getTimestamp(), e.getMessage());
+            }
+        }
+        return List.of();
+    }
+
+    private static boolean isPoison(Exception e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+}
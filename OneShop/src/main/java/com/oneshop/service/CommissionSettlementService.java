@@ -0,0 +1,267 @@
+package com.oneshop.service;
+
+import com.oneshop.config.TransactionConfig;
+import com.oneshop.dto.SettlementRunResult;
+import com.oneshop.entity.OrderStatus;
+import com.oneshop.entity.SettlementStatement;
+import com.oneshop.repository.OrderRepository;
+import com.oneshop.repository.SettlementStatementRepository;
+import com.oneshop.repository.ShopRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Đối soát hoa hồng toàn sàn theo kỳ: với mỗi shop tính GMV, hoa hồng và số tiền trả shop
+ * từ các đơn DELIVERED giao thành công trong kỳ (deliveredAt), rồi lưu bảng kê (SETTLEMENT_STATEMENTS).
+ * Tính theo ngày giao nên đơn đặt cuối kỳ mà lúc đối soát vẫn đang giao sẽ được tính vào kỳ nó được giao.
+ * - Danh sách shop được chia lô; mỗi lô chạy trên 1 virtual thread, số lô chạy đồng thời
+ *   bị giới hạn để không chiếm hết connection pool.
+ * - Mỗi lô chỉ đọc 2 query projection (gộp theo shop ngay trong DB + tỉ lệ hoa hồng), không load entity Order.
+ * - Bảng kê của cả kỳ được thay trong 1 transaction sau khi mọi lô tính xong (xóa hết bảng kê cũ của kỳ
+ *   rồi ghi mới): shop không còn đơn hợp lệ sẽ mất bảng kê cũ, lô nào lỗi thì bảng kê cũ được giữ nguyên.
+ */
+@Service
+public class CommissionSettlementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommissionSettlementService.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Autowired
+    private SettlementStatementRepository statementRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier(TransactionConfig.READ_ONLY_NEW_TEMPLATE)
+    private TransactionTemplate readOnlyTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${oneshop.settlement.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${oneshop.settlement.parallelism:4}")
+    private int parallelism;
+
+    // Chỉ cho phép 1 lần đối soát chạy tại 1 thời điểm
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Bảng kê đã tính (chưa lưu) của 1 lô
+    private record ChunkResult(List<SettlementStatement> statements, long orderCount, BigDecimal gmv,
+                               BigDecimal commission, BigDecimal netPayout) {
+        static final ChunkResult EMPTY = new ChunkResult(List.of(), 0L, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Đối soát kỳ [periodStart, periodEnd] (bao gồm cả 2 đầu). Chạy lại cùng kỳ sẽ thay toàn bộ bảng kê cũ của kỳ.
+     * @throws IllegalStateException nếu đang có lần đối soát khác chạy, hoặc lần chạy lỗi (bảng kê cũ được giữ nguyên)
+     */
+    public SettlementRunResult settle(LocalDate periodStart, LocalDate periodEnd) {
+        if (periodStart == null || periodEnd == null || periodStart.isAfter(periodEnd)) {
+            throw new IllegalArgumentException("Kỳ đối soát không hợp lệ.");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Đang có một lần đối soát khác chạy. Vui lòng thử lại sau.");
+        }
+        try {
+            return doSettle(periodStart, periodEnd);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private SettlementRunResult doSettle(LocalDate periodStart, LocalDate periodEnd) {
+        long start = System.currentTimeMillis();
+        LocalDateTime from = periodStart.atStartOfDay();
+        LocalDateTime to = periodEnd.plusDays(1).atStartOfDay();
+        LocalDateTime generatedAt = LocalDateTime.now();
+
+        List<Long> shopIds = readOnlyTemplate.execute(status ->
+                orderRepository.findShopIdsWithOrdersBetween(OrderStatus.DELIVERED, from, to));
+        shopIds = shopIds != null ? new ArrayList<>(shopIds) : new ArrayList<>();
+        Collections.sort(shopIds);
+
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < shopIds.size(); i += chunkSize) {
+            chunks.add(shopIds.subList(i, Math.min(i + chunkSize, shopIds.size())));
+        }
+        logger.info("Settling period {} - {}: {} shops in {} chunks (parallelism {}).",
+                periodStart, periodEnd, shopIds.size(), chunks.size(), parallelism);
+
+        Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        List<Future<ChunkResult>> futures = new ArrayList<>(chunks.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Long> chunk : chunks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return settleChunk(chunk, periodStart, periodEnd, from, to, generatedAt);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            SettlementRunResult result = new SettlementRunResult();
+            result.setPeriodStart(periodStart);
+            result.setPeriodEnd(periodEnd);
+            List<ChunkResult> chunkResults = new ArrayList<>(futures.size());
+            for (Future<ChunkResult> future : futures) {
+                ChunkResult chunk = future.get();
+                chunkResults.add(chunk);
+                result.setShopCount(result.getShopCount() + chunk.statements().size());
+                result.setOrderCount(result.getOrderCount() + chunk.orderCount());
+                result.setTotalGmv(result.getTotalGmv().add(chunk.gmv()));
+                result.setTotalCommission(result.getTotalCommission().add(chunk.commission()));
+                result.setTotalNetPayout(result.getTotalNetPayout().add(chunk.netPayout()));
+            }
+            replaceStatements(periodStart, periodEnd, chunkResults);
+            result.setDurationMs(System.currentTimeMillis() - start);
+            logger.info("Settlement {} - {} done: {} shops, {} orders, commission {} in {} ms.", periodStart, periodEnd,
+                    result.getShopCount(), result.getOrderCount(), result.getTotalCommission(), result.getDurationMs());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Đối soát bị gián đoạn.", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            logger.error("Settlement {} - {} failed: {}", periodStart, periodEnd, e.getCause().getMessage(), e.getCause());
+            throw new IllegalStateException("Lỗi khi đối soát (bảng kê cũ của kỳ được giữ nguyên): " + e.getCause().getMessage(), e.getCause());
+        } catch (RuntimeException e) {
+            logger.error("Saving settlement {} - {} failed: {}", periodStart, periodEnd, e.getMessage(), e);
+            throw new IllegalStateException("Lỗi khi lưu bảng kê (bảng kê cũ của kỳ được giữ nguyên): " + e.getMessage(), e);
+        }
+    }
+
+    // Xóa toàn bộ bảng kê của kỳ rồi ghi bảng kê mới của tất cả các lô trong cùng 1 transaction
+    private void replaceStatements(LocalDate periodStart, LocalDate periodEnd, List<ChunkResult> chunkResults) {
+        TransactionTemplate write = new TransactionTemplate(transactionManager);
+        write.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        write.executeWithoutResult(status -> {
+            int deleted = statementRepository.deleteByPeriod(periodStart, periodEnd);
+            for (ChunkResult chunk : chunkResults) {
+                statementRepository.saveAll(chunk.statements());
+                // Ghi từng lô xuống DB và bỏ khỏi persistence context để bộ nhớ không tăng theo số shop
+                entityManager.flush();
+                entityManager.clear();
+            }
+            logger.debug("Replaced {} old statements of period {} - {}.", deleted, periodStart, periodEnd);
+        });
+    }
+
+    private ChunkResult settleChunk(List<Long> shopIds, LocalDate periodStart, LocalDate periodEnd,
+                                    LocalDateTime from, LocalDateTime to, LocalDateTime generatedAt) {
+        List<Object[]> aggregates = readOnlyTemplate.execute(status ->
+                orderRepository.aggregateSettlementByShop(shopIds, OrderStatus.DELIVERED, from, to));
+        List<Object[]> shopInfos = readOnlyTemplate.execute(status -> shopRepository.findCommissionInfoByIdIn(shopIds));
+        if (aggregates == null || aggregates.isEmpty()) {
+            return ChunkResult.EMPTY;
+        }
+
+        // shopId -> [tên, tỉ lệ hoa hồng]
+        Map<Long, Object[]> infoByShop = new HashMap<>();
+        if (shopInfos != null) {
+            shopInfos.forEach(row -> infoByShop.put((Long) row[0], row));
+        }
+
+        List<SettlementStatement> statements = new ArrayList<>(aggregates.size());
+        long orderCount = 0;
+        BigDecimal gmvTotal = BigDecimal.ZERO;
+        BigDecimal commissionTotal = BigDecimal.ZERO;
+        BigDecimal payoutTotal = BigDecimal.ZERO;
+        for (Object[] row : aggregates) {
+            Long shopId = (Long) row[0];
+            Object[] info = infoByShop.get(shopId);
+            BigDecimal rate = info != null && info[2] != null ? (BigDecimal) info[2] : BigDecimal.ZERO;
+
+            SettlementStatement st = new SettlementStatement();
+            st.setShopId(shopId);
+            st.setShopName(info != null ? (String) info[1] : null);
+            st.setPeriodStart(periodStart);
+            st.setPeriodEnd(periodEnd);
+            st.setOrderCount(((Number) row[1]).longValue());
+            st.setGmv(money(row[2]));
+            st.setDiscountTotal(money(row[3]));
+            st.setShippingTotal(money(row[4]));
+            st.setCommissionRate(rate);
+            BigDecimal commissionBase = st.getGmv().subtract(st.getDiscountTotal()).max(BigDecimal.ZERO);
+            st.setCommissionAmount(commissionBase.multiply(rate).setScale(2, RoundingMode.HALF_UP));
+            st.setNetPayout(money(row[5]).subtract(st.getCommissionAmount()));
+            st.setGeneratedAt(generatedAt);
+            statements.add(st);
+
+            orderCount += st.getOrderCount();
+            gmvTotal = gmvTotal.add(st.getGmv());
+            commissionTotal = commissionTotal.add(st.getCommissionAmount());
+            payoutTotal = payoutTotal.add(st.getNetPayout());
+        }
+
+        logger.debug("Settled chunk of {} shops ({} - {}).", statements.size(), shopIds.get(0), shopIds.get(shopIds.size() - 1));
+        return new ChunkResult(statements, orderCount, gmvTotal, commissionTotal, payoutTotal);
+    }
+
+    private static BigDecimal money(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO.setScale(2);
+        }
+        BigDecimal bd = value instanceof BigDecimal b ? b : new BigDecimal(value.toString());
+        return bd.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Bảng kê của 1 kỳ, hoa hồng lớn nhất trước.
+     */
+    public List<SettlementStatement> getStatements(LocalDate periodStart, LocalDate periodEnd) {
+        return statementRepository.findByPeriodStartAndPeriodEndOrderByCommissionAmountDesc(periodStart, periodEnd);
+    }
+
+    /**
+     * Các kỳ đã đối soát: [periodStart, periodEnd], mới nhất trước.
+     */
+    public List<Object[]> getSettledPeriods() {
+        return statementRepository.findSettledPeriods();
+    }
+
+    // Đầu mỗi tháng: đối soát tháng trước
+    @Scheduled(cron = "${oneshop.settlement.cron:0 0 2 1 * *}")
+    public void settlePreviousMonth() {
+        YearMonth previous = YearMonth.now().minusMonths(1);
+        try {
+            settle(previous.atDay(1), previous.atEndOfMonth());
+        } catch (Exception e) {
+            logger.error("Scheduled settlement for {} failed: {}", previous, e.getMessage(), e);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.oneshop.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import com.oneshop.model.StoredUpload;
+
 import java.io.IOException;
 
 import org.springframework.core.io.Resource;
@@ -14,6 +16,12 @@ public interface FileStorageService {
     // Lưu file
     public String save(MultipartFile file);
 
+    // Lưu file ảnh, kèm thông tin để hủy nếu transaction dùng nó bị rollback
+    public StoredUpload store(MultipartFile file);
+
+    // Hủy file vừa lưu (chỉ xóa nếu lần lưu đó tạo file mới và chưa ai dùng lại)
+    public void discard(StoredUpload upload);
+
     // Tải file
     public Resource load(String filename);
 
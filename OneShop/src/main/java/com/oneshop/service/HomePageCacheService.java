@@ -0,0 +1,174 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.Product;
+import com.oneshop.event.ProductCatalogChangedEvent;
+
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache trong bộ nhớ cho các khối sản phẩm trang chủ (bán chạy, mới nhất, giá tốt)
+ * và danh sách sản phẩm mới ở trang /news.
+ * - Hết hạn theo TTL, giới hạn số entry.
+ * - Xóa toàn bộ khi nhận ProductCatalogChangedEvent (sau khi transaction commit).
+ * - Mỗi key chỉ có 1 request thực sự truy vấn DB khi cache trống (các request khác chờ kết quả).
+ */
+@Service
+public class HomePageCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HomePageCacheService.class);
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${oneshop.cache.homepage.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${oneshop.cache.homepage.max-entries:200}")
+    private int maxEntries;
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    // Tăng mỗi lần invalidate; kết quả load xong sau khi bị invalidate sẽ không được giữ lại
+    private final AtomicLong generation = new AtomicLong();
+
+    private record CacheEntry(CompletableFuture<Object> value, long expiresAt) {
+        boolean isFresh(long now) {
+            return expiresAt > now && !value.isCompletedExceptionally();
+        }
+    }
+
+    public List<Product> getBestSellingProducts(int limit) {
+        return get("best-selling:" + limit, () -> productService.findBestSellingProducts(limit));
+    }
+
+    public List<Product> getBestPriceProducts(int limit) {
+        return get("best-price:" + limit, () -> productService.findBestPriceProducts(limit));
+    }
+
+    public List<Product> getNewestProducts(int limit) {
+        return get("newest:" + limit, () -> getNewestProductPage(0, limit).getContent());
+    }
+
+    /**
+     * Trang sản phẩm mới nhất (sắp xếp productId giảm dần), dùng cho trang /news.
+     */
+    public Page<Product> getNewestProductPage(int page, int size) {
+        return get("newest-page:" + page + ":" + size, () -> {
+            Page<Product> productPage = productService.findNewestProducts(
+                    PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "productId")));
+            // Trang /news hiển thị tên shop -> khởi tạo proxy trước khi entity bị tách khỏi session
+            productPage.getContent().forEach(p -> Hibernate.initialize(p.getShop()));
+            return productPage;
+        });
+    }
+
+    /**
+     * Xóa toàn bộ cache.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+        logger.debug("Homepage cache invalidated.");
+    }
+
+    // Chỉ xóa cache khi transaction thay đổi dữ liệu đã commit (không có transaction thì xóa ngay)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductCatalogChanged(ProductCatalogChangedEvent event) {
+        logger.debug("Product catalog changed ({} for {}), clearing homepage cache.", event.changeType(), event.productIds());
+        invalidateAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Supplier<T> loader) {
+        long now = System.currentTimeMillis();
+        CacheEntry existing = cache.get(key);
+        if (existing != null && existing.isFresh(now)) {
+            return (T) await(existing);
+        }
+
+        long currentGeneration = generation.get();
+        CacheEntry mine = new CacheEntry(new CompletableFuture<>(), now + ttlSeconds * 1000);
+        CacheEntry winner = cache.compute(key, (k, old) -> old != null && old.isFresh(now) ? old : mine);
+        if (winner != mine) {
+            return (T) await(winner);
+        }
+
+        T value;
+        try {
+            value = loadReadOnly(loader);
+            mine.value().complete(value);
+        } catch (RuntimeException e) {
+            cache.remove(key, mine);
+            mine.value().completeExceptionally(e);
+            throw e;
+        }
+
+        if (generation.get() != currentGeneration) {
+            // Dữ liệu đã thay đổi trong lúc đang load -> không giữ bản cũ
+            cache.remove(key, mine);
+        } else {
+            evictIfNeeded(now);
+        }
+        logger.debug("Homepage cache miss for key '{}', loaded from database.", key);
+        return value;
+    }
+
+    // Load trong 1 transaction chỉ đọc để có thể khởi tạo các quan hệ lazy trước khi cache
+    private <T> T loadReadOnly(Supplier<T> loader) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> loader.get());
+    }
+
+    private Object await(CacheEntry entry) {
+        try {
+            return entry.value().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    // Xóa entry hết hạn; nếu vẫn vượt giới hạn thì bỏ các entry sắp hết hạn nhất
+    private void evictIfNeeded(long now) {
+        if (cache.size() <= maxEntries) {
+            return;
+        }
+        cache.entrySet().removeIf(e -> e.getValue().expiresAt() <= now);
+        int overflow = cache.size() - maxEntries;
+        if (overflow > 0) {
+            cache.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt()))
+                    .limit(overflow)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(cache::remove);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.oneshop.service;
+
+import com.oneshop.enums.ImageVariant;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Tạo ảnh thu nhỏ (card / detail / zoom) cho ảnh được upload (sản phẩm, biến thể, logo/banner shop, ảnh đánh giá).
+ * - Chạy nền trên pool worker riêng (giới hạn số luồng + hàng đợi), request upload không phải chờ.
+ * - Ảnh gốc được giải mã 1 lần (lấy mẫu thưa nếu ảnh rất lớn), các cỡ được thu nhỏ nối tiếp từ lớn xuống nhỏ.
+ * - Kết quả lưu JPEG nén dưới uploads/images/derivatives/{cỡ}/{tên file}.jpg, phục vụ qua URL /media có hash nội dung.
+ * - Template gọi card()/detail()/zoom(); khi ảnh thu nhỏ chưa có (đang xử lý, file không phải ảnh...) trả về ảnh gốc.
+ */
+@Service
+public class ImageDerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    private static final String PUBLIC_PREFIX = "/uploads/images/";
+    private static final String DERIVATIVE_DIR = "derivatives";
+    private static final String NO_IMAGE = "/assets/img/product/no-image.jpg";
+
+    @Autowired
+    private MediaService mediaService;
+
+    private final Path imageRoot = Paths.get("uploads", "images");
+    private final Path derivativeRoot = imageRoot.resolve(DERIVATIVE_DIR);
+
+    @Value("${oneshop.images.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${oneshop.images.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${oneshop.images.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    private ThreadPoolExecutor executor;
+
+    // Ảnh đang chờ/đang xử lý: cùng 1 file (upload trùng nội dung) chỉ xử lý 1 lần tại 1 thời điểm
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void startExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "image-worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Đưa ảnh vừa lưu (tên file trong uploads/images) vào hàng đợi tạo ảnh thu nhỏ.
+     */
+    public void scheduleDerivatives(String filename) {
+        if (!StringUtils.hasText(filename) || !inFlight.add(filename)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generateQuietly(filename);
+                } finally {
+                    inFlight.remove(filename);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(filename);
+            // Hàng đợi đầy: bỏ qua, lần khởi động sau sẽ tạo bù; trong lúc đó template dùng ảnh gốc
+            logger.warn("Image queue full, derivatives for {} deferred.", filename);
+        }
+    }
+
+    /**
+     * Xóa các ảnh thu nhỏ của 1 ảnh gốc (gọi khi ảnh gốc bị xóa).
+     */
+    public void deleteDerivatives(String filename) {
+        if (!StringUtils.hasText(filename)) {
+            return;
+        }
+        for (ImageVariant variant : ImageVariant.values()) {
+            try {
+                Files.deleteIfExists(derivativePath(filename, variant));
+                mediaService.forget(mediaPath(filename, variant));
+            } catch (IOException e) {
+                logger.warn("Could not delete {} derivative of {}: {}", variant, filename, e.getMessage());
+            }
+        }
+    }
+
+    public String card(String imageUrl) {
+        return url(imageUrl, ImageVariant.CARD);
+    }
+
+    public String detail(String imageUrl) {
+        return url(imageUrl, ImageVariant.DETAIL);
+    }
+
+    public String zoom(String imageUrl) {
+        return url(imageUrl, ImageVariant.ZOOM);
+    }
+
+    /**
+     * URL ảnh thu nhỏ cho 1 ảnh đã upload (nhận tên file hoặc URL /uploads/images/...).
+     * URL khác (ảnh tĩnh trong /assets, link ngoài) được trả về nguyên vẹn.
+     */
+    public String url(String imageUrl, ImageVariant variant) {
+        if (!StringUtils.hasText(imageUrl)) {
+            return NO_IMAGE;
+        }
+        String filename = toStoredFilename(imageUrl);
+        if (filename == null) {
+            return imageUrl;
+        }
+        String url = mediaService.url(mediaPath(filename, variant));
+        if (url == null) {
+            url = mediaService.url("images/" + filename);
+        }
+        return url != null ? url : PUBLIC_PREFIX + filename;
+    }
+
+    // "abc.png", "ab/cd/<hash>.png" hoặc "/uploads/images/..." -> tên file đã lưu; null nếu không phải ảnh đã upload
+    private static String toStoredFilename(String imageUrl) {
+        String name;
+        if (imageUrl.startsWith(PUBLIC_PREFIX)) {
+            name = imageUrl.substring(PUBLIC_PREFIX.length());
+        } else if (imageUrl.startsWith("/") || imageUrl.contains("://")) {
+            return null;
+        } else {
+            name = imageUrl;
+        }
+        boolean invalid = name.isEmpty() || name.startsWith("/") || name.contains("..") || name.contains("\\")
+                || name.startsWith(DERIVATIVE_DIR + "/");
+        return invalid ? null : name;
+    }
+
+    public boolean hasDerivatives(String filename) {
+        return Files.isRegularFile(derivativePath(filename, ImageVariant.CARD));
+    }
+
+    private Path derivativePath(String filename, ImageVariant variant) {
+        return derivativeRoot.resolve(variant.getDirectory()).resolve(derivativeName(filename));
+    }
+
+    // Đường dẫn của ảnh thu nhỏ trong uploads, dùng cho MediaService
+    private static String mediaPath(String filename, ImageVariant variant) {
+        return "images/" + DERIVATIVE_DIR + "/" + variant.getDirectory() + "/" + derivativeName(filename);
+    }
+
+    private static String derivativeName(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0 ? filename.substring(0, dot) : filename) + ".jpg";
+    }
+
+    private void generateQuietly(String filename) {
+        try {
+            generate(filename);
+        } catch (Exception | OutOfMemoryError e) {
+            logger.error("Could not create derivatives for {}: {}", filename, e.getMessage());
+        }
+    }
+
+    /**
+     * Tạo mọi cỡ ảnh thu nhỏ cho 1 ảnh gốc. File không đọc được như ảnh (video đánh giá...) được bỏ qua.
+     * @return true nếu đã tạo
+     */
+    public boolean generate(String filename) throws IOException {
+        Path source = imageRoot.resolve(filename);
+        if (!Files.isRegularFile(source)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        BufferedImage image = decode(source, ImageVariant.ZOOM.getMaxDimension());
+        if (image == null) {
+            logger.debug("{} is not a decodable image, skipping derivatives.", filename);
+            return false;
+        }
+        // Thu nhỏ nối tiếp: zoom -> detail -> card (mỗi bước làm việc trên ảnh nhỏ hơn)
+        BufferedImage current = toRgb(image);
+        for (ImageVariant variant : List.of(ImageVariant.ZOOM, ImageVariant.DETAIL, ImageVariant.CARD)) {
+            current = resize(current, variant.getMaxDimension());
+            writeJpeg(current, derivativePath(filename, variant), variant.getQuality());
+            mediaService.register(mediaPath(filename, variant));
+        }
+        logger.debug("Derivatives for {} ({}x{}) created in {} ms.", filename, image.getWidth(), image.getHeight(),
+                System.currentTimeMillis() - start);
+        return true;
+    }
+
+    // Giải mã ảnh; ảnh lớn hơn nhiều so với cỡ cần dùng được lấy mẫu thưa ngay khi đọc để tiết kiệm bộ nhớ
+    private static BufferedImage decode(Path source, int targetMaxDimension) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = longest / targetMaxDimension;
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // JPEG không có kênh alpha: vẽ lên nền trắng
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    // Giữ tỉ lệ, không phóng to; giảm từng nửa kích thước để ảnh không bị răng cưa
+    private static BufferedImage resize(BufferedImage image, int maxDimension) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage current = image;
+        while (width != targetWidth || height != targetHeight) {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = step.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = step;
+        }
+        return current;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target, float quality) throws IOException {
+        Files.createDirectories(target.getParent());
+        // Ghi ra file tạm rồi đổi tên -> không bao giờ phục vụ file đang ghi dở
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".part");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Ảnh upload trước khi có pipeline: tạo bù các ảnh thu nhỏ còn thiếu trên 1 luồng nền (không chặn khởi động).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissing() {
+        if (!backfillOnStartup || !Files.isDirectory(imageRoot)) {
+            return;
+        }
+        Thread backfill = new Thread(() -> {
+            int created = 0;
+            // Gồm cả file theo nội dung trong thư mục con (ab/cd/...), bỏ qua thư mục ảnh thu nhỏ
+            try (Stream<Path> files = Files.walk(imageRoot)) {
+                for (Path file : files.filter(f -> !f.startsWith(derivativeRoot) && Files.isRegularFile(f)).toList()) {
+                    String filename = imageRoot.relativize(file).toString().replace('\\', '/');
+                    if (filename.endsWith(".part") || hasDerivatives(filename)) {
+                        continue;
+                    }
+                    try {
+                        if (generate(filename)) {
+                            created++;
+                        }
+                    } catch (Exception | OutOfMemoryError e) {
+                        logger.warn("Backfill: could not create derivatives for {}: {}", filename, e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Backfill: could not list {}: {}", imageRoot, e.getMessage());
+            }
+            if (created > 0) {
+                logger.info("Backfilled derivatives for {} images.", created);
+            }
+        }, "image-derivative-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+}
@@ -0,0 +1,173 @@
+package com.oneshop.service;
+
+import com.oneshop.model.StoredUpload;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Nhận ảnh upload của sản phẩm/biến thể trước khi mở transaction lưu sản phẩm.
+ * - Mỗi ảnh được kiểm tra (đọc header: đúng định dạng ảnh, kích thước trong giới hạn) rồi ghi vào kho file;
+ *   các ảnh chạy song song trên virtual thread, số ảnh ghi đồng thời trên toàn server bị giới hạn.
+ * - 1 ảnh lỗi -> hủy các ảnh cùng lô đã ghi rồi ném lỗi; transaction sản phẩm chưa từng được mở.
+ * - discardOnRollback(): gắn lô ảnh vào transaction hiện tại, transaction rollback thì ảnh tự được hủy.
+ */
+@Service
+public class ImageIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageIngestionService.class);
+
+    private static final Set<String> ALLOWED_FORMATS = Set.of("jpeg", "png", "gif", "bmp");
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${oneshop.images.ingest-parallelism:4}")
+    private int parallelism;
+
+    @Value("${oneshop.images.min-dimension:100}")
+    private int minDimension;
+
+    @Value("${oneshop.images.max-pixels:40000000}")
+    private long maxPixels;
+
+    // Dùng chung cho mọi request: giới hạn số ảnh ghi đồng thời trên toàn server, không phải theo từng lô
+    private Semaphore permits;
+
+    @PostConstruct
+    void initPermits() {
+        permits = new Semaphore(Math.max(1, parallelism));
+    }
+
+    /**
+     * Kiểm tra và lưu các ảnh (bỏ qua phần tử null/rỗng). Kết quả cùng thứ tự và cùng số phần tử với đầu vào,
+     * null ở vị trí không có ảnh.
+     * @throws IllegalArgumentException nếu có ảnh không hợp lệ
+     */
+    public List<StoredUpload> ingest(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long start = System.currentTimeMillis();
+        List<Future<StoredUpload>> futures = new ArrayList<>(files.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MultipartFile file : files) {
+                if (file == null || file.isEmpty()) {
+                    futures.add(null);
+                    continue;
+                }
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        validate(file);
+                        return fileStorageService.store(file);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        // Executor đã đóng (chờ mọi tác vụ xong): gom kết quả, lỗi đầu tiên được ném lại sau khi hủy phần đã ghi
+        List<StoredUpload> uploads = new ArrayList<>(files.size());
+        RuntimeException failure = null;
+        for (Future<StoredUpload> future : futures) {
+            if (future == null) {
+                uploads.add(null);
+                continue;
+            }
+            try {
+                uploads.add(future.get());
+            } catch (ExecutionException e) {
+                uploads.add(null);
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException re ? re
+                            : new RuntimeException("Lỗi khi lưu file ảnh: " + e.getCause().getMessage(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                uploads.add(null);
+                failure = new IllegalStateException("Lưu ảnh bị gián đoạn.", e);
+            }
+        }
+        if (failure != null) {
+            discard(uploads);
+            throw failure;
+        }
+        logger.debug("Ingested {} images in {} ms.", uploads.stream().filter(Objects::nonNull).count(),
+                System.currentTimeMillis() - start);
+        return uploads;
+    }
+
+    /**
+     * Hủy các ảnh trong lô nếu transaction đang chạy bị rollback. Không có transaction thì không làm gì.
+     */
+    public void discardOnRollback(List<StoredUpload> uploads) {
+        if (uploads.stream().noneMatch(Objects::nonNull) || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        List<StoredUpload> batch = uploads.stream().filter(Objects::nonNull).toList();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    logger.info("Transaction did not commit, discarding {} staged images.", batch.size());
+                    discard(batch);
+                }
+            }
+        });
+    }
+
+    public void discard(Collection<StoredUpload> uploads) {
+        uploads.stream().filter(Objects::nonNull).forEach(fileStorageService::discard);
+    }
+
+    // Chỉ đọc header ảnh (không giải mã toàn bộ) để lấy định dạng và kích thước thật, không tin Content-Type của client
+    private void validate(MultipartFile file) throws IOException {
+        String name = file.getOriginalFilename();
+        try (InputStream in = file.getInputStream(); ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : Collections.emptyIterator();
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("File '" + name + "' không phải ảnh hợp lệ.");
+            }
+            ImageReader reader = readers.next();
+            try {
+                String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                if (!ALLOWED_FORMATS.contains(format)) {
+                    throw new IllegalArgumentException("Định dạng ảnh '" + format + "' của file '" + name + "' không được hỗ trợ (JPEG, PNG, GIF, BMP).");
+                }
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width < minDimension || height < minDimension) {
+                    throw new IllegalArgumentException("Ảnh '" + name + "' quá nhỏ (" + width + "x" + height
+                            + "), cần tối thiểu " + minDimension + "x" + minDimension + ".");
+                }
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Ảnh '" + name + "' quá lớn (" + width + "x" + height + ").");
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch (IIOException e) {
+            // Header hỏng
+            throw new IllegalArgumentException("File '" + name + "' không phải ảnh hợp lệ.");
+        }
+    }
+}
@@ -8,12 +8,10 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger; // Import Logger
 import org.slf4j.LoggerFactory; // Import LoggerFactory
-import org.springframework.beans.factory.annotation.Qualifier; // Import Qualifier
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService; // Import UserDetailsService
 import org.springframework.security.core.userdetails.UsernameNotFoundException; // Import Exception
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component; // Đảm bảo là Component
@@ -27,12 +25,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class); // Thêm Logger
 
-    private final JwtService jwtService; // Inject JwtService (đã có)
+    private final JwtTokenService jwtTokenService; // Dùng chung với AuthTokenFilter (cache token đã xác thực)
 
-    // Inject UserDetailsService (chính là UserService của bạn)
-    // Dùng @Qualifier nếu có nhiều bean UserDetailsService
-    @Qualifier("userService") // Chỉ định tên bean là "userService" (mặc định của class UserService)
-    private final UserDetailsService userDetailsService;
+    // UserDetails được cache, không query DB mỗi request
+    private final PrincipalCacheService principalCacheService;
 
     @Override
     protected void doFilterInternal(
@@ -53,15 +49,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             // 2. Lấy JWT token từ header
             jwt = authHeader.substring(7); // Bỏ "Bearer "
-            username = jwtService.extractUsername(jwt); // Trích xuất username
+            username = jwtTokenService.getUsername(jwt); // Kiểm tra chữ ký + hạn dùng, trích xuất username
 
             // 3. Nếu có username và chưa có ai được xác thực trong SecurityContext
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                // Tải UserDetails từ UserDetailsService (UserService)
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+                // Tải UserDetails (từ cache hoặc UserService)
+                UserDetails userDetails = principalCacheService.getUserDetails(username);
 
-                // 4. Kiểm tra token có hợp lệ không (chưa hết hạn, khớp với userDetails)
-                if (jwtService.isTokenValid(jwt, userDetails)) {
+                // 4. Token đã được xác thực ở bước 2; kiểm tra user khớp với subject
+                if (username.equals(userDetails.getUsername())) {
                     // Tạo đối tượng Authentication
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
@@ -77,6 +73,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 } else {
                      logger.warn("Invalid JWT token received for user: {}", username);
                 }
+            } else if (username == null) {
+                logger.warn("Invalid or expired JWT token received.");
             }
         } catch (UsernameNotFoundException e) {
              logger.warn("User not found for username extracted from JWT: {}", e.getMessage());
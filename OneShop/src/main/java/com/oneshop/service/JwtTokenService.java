@@ -0,0 +1,141 @@
+package com.oneshop.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tạo và xác thực JWT cho cả cookie "jwtToken" (AuthTokenFilter) và header "Authorization: Bearer" (JwtAuthenticationFilter).
+ * - Khóa HS512 lấy từ jwt.secret, tạo 1 lần; parser dùng chung.
+ * - Token đã xác thực được nhớ trong LRU (key = SHA-256 của token, không giữ token gốc) kèm claims và hạn dùng:
+ *   request sau với cùng token bỏ qua giải mã base64/JSON và kiểm tra chữ ký. Mục hết hạn bị bỏ khi gặp lại.
+ * - Token sai (chữ ký, định dạng, hết hạn) không được cache.
+ */
+@Service
+public class JwtTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtTokenService.class);
+
+    @Value("${jwt.secret}")
+    private String jwtSecret;
+
+    @Value("${jwt.expiration}")
+    private long jwtExpirationMs;
+
+    @Value("${oneshop.auth.token-cache.max-size:10000}")
+    private int maxCachedTokens;
+
+    /**
+     * Token đã xác thực: subject (username), toàn bộ claims và thời điểm hết hạn (epoch ms).
+     */
+    public record VerifiedToken(String username, Claims claims, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private Key signingKey;
+    private JwtParser parser;
+
+    // SHA-256(token) -> token đã xác thực; LinkedHashMap theo thứ tự truy cập = LRU
+    private Map<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        int capacity = Math.max(1, maxCachedTokens);
+        verifiedTokens = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * Tạo JWT token trực tiếp từ username.
+     * @param username Tên đăng nhập của người dùng trong hệ thống.
+     * @return Chuỗi JWT token.
+     */
+    public String generateToken(String username) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setSubject(username) // Subject là username
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + jwtExpirationMs))
+                .signWith(signingKey, SignatureAlgorithm.HS512)
+                .compact();
+    }
+
+    /**
+     * Xác thực token (chữ ký + hạn dùng), ưu tiên kết quả đã cache.
+     * @return thông tin token, hoặc rỗng nếu token không hợp lệ/hết hạn
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (!cached.isExpired(now)) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.remove(digest);
+            return Optional.empty();
+        }
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Date expiration = claims.getExpiration();
+            VerifiedToken verified = new VerifiedToken(claims.getSubject(), claims,
+                    expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+            if (verified.username() == null) {
+                return Optional.empty();
+            }
+            verifiedTokens.put(digest, verified);
+            return Optional.of(verified);
+        } catch (JwtException | IllegalArgumentException e) {
+            // ExpiredJwtException, MalformedJwtException, SignatureException...
+            logger.debug("Invalid JWT token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Username (subject) của token hợp lệ, hoặc null.
+     */
+    public String getUsername(String token) {
+        return verify(token).map(VerifiedToken::username).orElse(null);
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
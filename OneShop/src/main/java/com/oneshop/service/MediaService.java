@@ -0,0 +1,233 @@
+package com.oneshop.service;
+
+import com.oneshop.service.impl.FileStorageServiceImpl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * URL có dấu vân tay nội dung cho file upload: /media/{hash}/{đường dẫn trong uploads}.
+ * - hash = 16 ký tự hex đầu của SHA-256 nội dung file, nên nội dung đổi -> URL đổi;
+ *   nhờ vậy response được cache "immutable" 1 năm ở trình duyệt/CDN.
+ * - Vân tay được tính 1 lần khi file được ghi (register) và giữ trong bộ nhớ; file lưu theo nội dung
+ *   ("ab/cd/<sha256>.ext") lấy luôn hash từ tên, không cần đọc file. Lúc khởi động, 1 luồng nền lập chỉ mục
+ *   các file đã có. Dựng URL khi render chỉ tra bộ nhớ, không đụng tới ổ đĩa.
+ * - Chỉ phục vụ file trong các thư mục uploads/images và uploads/reviews.
+ */
+@Service
+public class MediaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaService.class);
+
+    public static final String PUBLIC_PREFIX = "/media/";
+
+    private static final Set<String> SERVED_DIRECTORIES = Set.of("images", "reviews");
+
+    private static final int HASH_LENGTH = 16;
+
+    private final Path root = Paths.get("uploads").toAbsolutePath().normalize();
+
+    @Value("${oneshop.media.fingerprint-cache-size:100000}")
+    private int fingerprintCacheSize;
+
+    public record Fingerprint(long size, long lastModified, String hash) {
+    }
+
+    // đường dẫn trong uploads (vd "images/ab/cd/<hash>.jpg") -> vân tay của file đang tồn tại
+    private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    private volatile boolean indexFullLogged;
+
+    /**
+     * URL /media/... cho file trong uploads (vd "images/abc.jpg", "reviews/xyz.mp4");
+     * null nếu file chưa có trong chỉ mục (không tồn tại, hoặc lúc khởi động chưa lập chỉ mục xong).
+     */
+    public String url(String relativePath) {
+        if (!isServable(relativePath)) {
+            return null;
+        }
+        Fingerprint fingerprint = fingerprints.get(relativePath);
+        return fingerprint != null ? PUBLIC_PREFIX + fingerprint.hash() + "/" + relativePath : null;
+    }
+
+    /**
+     * URL cho file đính kèm của đánh giá: video nằm trong uploads/reviews, ảnh (và file cũ) trong uploads/images.
+     */
+    public String reviewMediaUrl(String filename) {
+        if (!StringUtils.hasText(filename)) {
+            return null;
+        }
+        String url = url("reviews/" + filename);
+        if (url == null) {
+            url = url("images/" + filename);
+        }
+        return url != null ? url : "/uploads/images/" + filename;
+    }
+
+    public boolean isVideo(String filename) {
+        return StringUtils.hasText(filename)
+                && MediaTypeFactory.getMediaType(filename).map(t -> "video".equals(t.getType())).orElse(false);
+    }
+
+    public MediaType contentType(Path file) {
+        return MediaTypeFactory.getMediaType(file.getFileName().toString()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    /**
+     * Đường dẫn tuyệt đối của file được phép phục vụ; null nếu không hợp lệ (ra ngoài thư mục cho phép, không tồn tại...).
+     */
+    public Path resolve(String relativePath) {
+        if (!isServable(relativePath)) {
+            return null;
+        }
+        Path file = root.resolve(relativePath).normalize();
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    // Kiểm tra đường dẫn thuần chuỗi (không truy cập ổ đĩa)
+    private boolean isServable(String relativePath) {
+        if (!StringUtils.hasText(relativePath) || relativePath.contains("..") || relativePath.contains("\\")) {
+            return false;
+        }
+        Path file = root.resolve(relativePath).normalize();
+        return file.startsWith(root) && file.getNameCount() > root.getNameCount() + 1
+                && SERVED_DIRECTORIES.contains(file.getName(root.getNameCount()).toString());
+    }
+
+    /**
+     * Ghi nhận file vừa được ghi/làm mới trong uploads (gọi từ luồng lưu file, không phải lúc render).
+     */
+    public void register(String relativePath) {
+        Path file = resolve(relativePath);
+        if (file == null) {
+            fingerprints.remove(relativePath);
+            return;
+        }
+        try {
+            compute(relativePath, file);
+        } catch (IOException e) {
+            logger.warn("Could not fingerprint {}: {}", relativePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Bỏ file đã xóa khỏi chỉ mục.
+     */
+    public void forget(String relativePath) {
+        if (relativePath != null) {
+            fingerprints.remove(relativePath);
+        }
+    }
+
+    /**
+     * Vân tay hiện tại của file đang được phục vụ (tính lại nếu kích thước hoặc thời điểm sửa khác chỉ mục).
+     */
+    public Fingerprint fingerprint(Path file) {
+        String relativePath = root.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            Fingerprint cached = fingerprints.get(relativePath);
+            if (cached != null && cached.size() == attrs.size() && cached.lastModified() == attrs.lastModifiedTime().toMillis()) {
+                return cached;
+            }
+            return compute(relativePath, file);
+        } catch (IOException e) {
+            logger.warn("Could not fingerprint {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private Fingerprint compute(String relativePath, Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        String hash = hashFromName(relativePath);
+        Fingerprint computed = new Fingerprint(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                hash != null ? hash : sha256Prefix(file));
+        if (fingerprints.size() < fingerprintCacheSize || fingerprints.containsKey(relativePath)) {
+            fingerprints.put(relativePath, computed);
+        } else if (!indexFullLogged) {
+            // File ngoài chỉ mục vẫn hiển thị được qua URL /uploads thường (không có cache dài hạn)
+            indexFullLogged = true;
+            logger.warn("Media fingerprint index is full ({} files); new files are served without fingerprinted URLs.",
+                    fingerprintCacheSize);
+        }
+        return computed;
+    }
+
+    // File gốc lưu theo nội dung ("images/ab/cd/<sha256>.ext"): hash nằm sẵn trong tên.
+    // Ảnh thu nhỏ mang tên của ảnh gốc nhưng nội dung khác nên vẫn phải băm nội dung.
+    private static String hashFromName(String relativePath) {
+        int slash = relativePath.indexOf('/');
+        String name = relativePath.substring(slash + 1);
+        if (!FileStorageServiceImpl.isContentAddressed(name)) {
+            return null;
+        }
+        return name.substring(name.lastIndexOf('/') + 1, name.lastIndexOf('/') + 1 + HASH_LENGTH);
+    }
+
+    /**
+     * Lập chỉ mục các file đã có trên 1 luồng nền (không chặn khởi động); file cũ đặt tên UUID được băm nội dung.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexExistingFiles() {
+        Thread indexer = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            for (String directory : SERVED_DIRECTORIES) {
+                Path dir = root.resolve(directory);
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path file : files.filter(Files::isRegularFile).toList()) {
+                        String relativePath = root.relativize(file).toString().replace('\\', '/');
+                        if (!fingerprints.containsKey(relativePath) && !relativePath.endsWith(".part")) {
+                            register(relativePath);
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not index media directory {}: {}", dir, e.getMessage());
+                }
+            }
+            logger.info("Media fingerprint index built: {} files in {} ms.", fingerprints.size(), System.currentTimeMillis() - start);
+        }, "media-fingerprint-index");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    private static String sha256Prefix(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, HASH_LENGTH / 2);
+    }
+}
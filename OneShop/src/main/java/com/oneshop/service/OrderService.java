@@ -1,5 +1,7 @@
 package com.oneshop.service;
 
+import com.oneshop.dto.BulkOrderActionResult;
+import com.oneshop.dto.CursorPage;
 import com.oneshop.dto.PlaceOrderRequest;
 import com.oneshop.entity.Order;
 import com.oneshop.entity.OrderStatus;
@@ -7,6 +9,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -17,8 +21,13 @@ public interface OrderService {
 
     // --- Vendor ---
     Page<Order> getOrdersByShop(Long shopId, Optional<OrderStatus> status, Pageable pageable);
+    // Phân trang theo con trỏ (createdAt, id giảm dần), không chạy COUNT
+    CursorPage<Order> getOrdersByShopCursor(Long shopId, Optional<OrderStatus> status, String cursor, int size);
     Order getOrderDetails(Long orderId, Long shopId);
     Order updateOrderStatus(Long orderId, OrderStatus newStatus, Long shopId);
+    // Xác nhận / hủy nhiều đơn cùng lúc; kết quả ghi nhận thành công / thất bại cho từng đơn
+    BulkOrderActionResult bulkUpdateOrderStatus(Long shopId, Collection<Long> orderIds, OrderStatus newStatus);
+    BulkOrderActionResult bulkAssignShipper(Long shopId, Collection<Long> orderIds, Long shipperId);
     long countNewOrdersByShop(Long shopId);
 
     BigDecimal getTotalRevenueByShop(Long shopId);
@@ -33,6 +42,10 @@ public interface OrderService {
     Order createOrderFromRequest(String username, PlaceOrderRequest orderRequest);
     Order findOrderByIdAndUser(Long orderId, String username);
     void cancelOrder(Long orderId, String username);
+    // Hủy đơn thanh toán online chưa thanh toán và hoàn tồn kho; false nếu đơn không còn chờ thanh toán
+    boolean cancelUnpaidOrder(Long orderId);
+    // Chưa xác định được kết quả thanh toán: giữ đơn chờ thanh toán và hẹn kiểm tra lại
+    boolean deferPaymentExpiry(Long orderId, LocalDateTime nextCheckAt);
     Order getOrderById(Long orderId); 
 
     // --- Shipper ---
@@ -0,0 +1,238 @@
+package com.oneshop.service;
+
+import com.oneshop.model.PresenceUpdate;
+import com.oneshop.model.TypingNotice;
+import com.oneshop.repository.ChatConversationRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trạng thái online và "đang nhập" của người dùng chat.
+ * - Online/offline lấy từ sự kiện connect/disconnect của session STOMP; 1 user có thể mở nhiều tab (nhiều session).
+ * - Mất kết nối mà không có sự kiện disconnect: hết hạn sau heartbeat-ttl nếu client không gửi /app/presence.heartbeat;
+ *   session vẫn được giữ (có thể chỉ là tab ngủ) để heartbeat/tin nhắn tiếp theo đưa user online trở lại.
+ * - Đóng tab rồi mở trang khác ngay: chờ offline-grace trước khi báo offline để không nhấp nháy.
+ * - Thay đổi chỉ được đẩy tới những người đã trò chuyện với user đó và đang online (tối đa max-notified-peers người).
+ * - "Đang nhập" được gộp phía server: mỗi cặp người gửi -> người nhận chuyển tiếp tối đa 1 lần mỗi typing-interval-ms.
+ * Bộ nhớ chỉ tỉ lệ với số user đang kết nối (+ số cặp đang nhập trong vài giây gần nhất).
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    @Autowired
+    private ChatConversationRepository conversationRepository;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private SimpUserRegistry simpUserRegistry;
+
+    @Value("${oneshop.chat.presence.heartbeat-ttl-ms:90000}")
+    private long heartbeatTtlMs;
+
+    @Value("${oneshop.chat.presence.offline-grace-ms:10000}")
+    private long offlineGraceMs;
+
+    @Value("${oneshop.chat.presence.max-notified-peers:200}")
+    private int maxNotifiedPeers;
+
+    @Value("${oneshop.chat.typing-interval-ms:2000}")
+    private long typingIntervalMs;
+
+    private static final class Presence {
+        final Set<String> sessionIds = ConcurrentHashMap.newKeySet();
+        volatile long lastSeen;
+        // > 0 khi không còn session nào, đang chờ hết thời gian ân hạn
+        volatile long disconnectedAt;
+        // Quá heartbeat-ttl không thấy hoạt động: đã báo offline, nhưng vẫn nhớ session cho tới khi disconnect
+        volatile boolean expired;
+    }
+
+    // username -> trạng thái kết nối trên node này
+    private final Map<String, Presence> presences = new ConcurrentHashMap<>();
+
+    // "người gửi|người nhận" -> lần cuối chuyển tiếp "đang nhập"
+    private final Map<String, Long> typingForwardedAt = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = (String) event.getMessage().getHeaders().get("simpSessionId");
+        if (user == null || sessionId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean[] cameOnline = {false};
+        presences.compute(user.getName(), (username, presence) -> {
+            if (presence == null) {
+                presence = new Presence();
+                cameOnline[0] = true;
+            } else if (presence.expired) {
+                presence.expired = false;
+                cameOnline[0] = true;
+            }
+            presence.sessionIds.add(sessionId);
+            presence.lastSeen = now;
+            presence.disconnectedAt = 0;
+            return presence;
+        });
+        if (cameOnline[0]) {
+            notifyPeers(user.getName(), true);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        presences.computeIfPresent(user.getName(), (username, presence) -> {
+            presence.sessionIds.remove(event.getSessionId());
+            if (presence.sessionIds.isEmpty()) {
+                presence.disconnectedAt = System.currentTimeMillis();
+            }
+            return presence;
+        });
+    }
+
+    /**
+     * Client còn hoạt động (heartbeat hoặc gửi tin): gia hạn trạng thái online,
+     * và đưa user đã hết hạn heartbeat online trở lại (báo cho các peer).
+     */
+    public void touch(String username) {
+        if (username == null) {
+            return;
+        }
+        boolean[] cameOnline = {false};
+        presences.computeIfPresent(username, (key, presence) -> {
+            presence.lastSeen = System.currentTimeMillis();
+            if (presence.expired) {
+                presence.expired = false;
+                cameOnline[0] = true;
+            }
+            return presence;
+        });
+        if (cameOnline[0]) {
+            notifyPeers(username, true);
+        }
+    }
+
+    /**
+     * Online trên node này, hoặc ở node khác (khi chạy broker relay, SimpUserRegistry biết session của mọi node).
+     * Nhất quán với thông báo đã đẩy: user đã bị báo offline do hết hạn heartbeat không được tính là online
+     * chỉ vì SimpUserRegistry vẫn còn giữ session cũ của node này.
+     */
+    public boolean isOnline(String username) {
+        if (username == null) {
+            return false;
+        }
+        Presence presence = presences.get(username);
+        SimpUser simpUser = simpUserRegistry.getUser(username);
+        if (presence == null) {
+            return simpUser != null;
+        }
+        // Còn trong thời gian ân hạn sau disconnect vẫn tính là online (chưa báo offline)
+        if (!presence.expired) {
+            return true;
+        }
+        // Đã hết hạn trên node này: chỉ còn online nếu có session ở node khác
+        return simpUser != null && simpUser.getSessions().stream()
+                .anyMatch(session -> !presence.sessionIds.contains(session.getId()));
+    }
+
+    /**
+     * Chuyển tiếp trạng thái "đang nhập" của {@code sender} tới {@code receiver} (đã gộp/giới hạn tần suất).
+     */
+    public void typing(String sender, String receiver, boolean typing) {
+        if (sender == null || receiver == null || sender.equals(receiver)) {
+            return;
+        }
+        touch(sender);
+        String key = sender + "|" + receiver;
+        if (typing) {
+            long now = System.currentTimeMillis();
+            Long last = typingForwardedAt.get(key);
+            if (last != null && now - last < typingIntervalMs) {
+                return; // Đã báo gần đây, client tự giữ trạng thái đến lần báo tiếp theo
+            }
+            typingForwardedAt.put(key, now);
+        } else if (typingForwardedAt.remove(key) == null) {
+            return; // Chưa từng báo "đang nhập" -> không cần báo dừng
+        }
+        if (isOnline(receiver)) {
+            messagingTemplate.convertAndSendToUser(receiver, "/queue/typing", new TypingNotice(sender, receiver, typing));
+        }
+    }
+
+    /**
+     * Hết thời gian ân hạn sau disconnect hoặc quá lâu không có heartbeat -> offline; dọn các cặp "đang nhập" cũ.
+     * Hết hạn heartbeat nhưng session chưa đóng: chỉ đánh dấu expired (xóa khi disconnect + hết ân hạn).
+     */
+    @Scheduled(fixedDelayString = "${oneshop.chat.presence.sweep-interval-ms:5000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (String username : presences.keySet()) {
+            boolean[] wentOffline = {false};
+            presences.computeIfPresent(username, (key, presence) -> {
+                boolean graceOver = presence.sessionIds.isEmpty() && presence.disconnectedAt > 0
+                        && now - presence.disconnectedAt >= offlineGraceMs;
+                boolean expired = now - presence.lastSeen >= heartbeatTtlMs;
+                if (graceOver) {
+                    wentOffline[0] = !presence.expired; // Đã báo offline lúc hết hạn thì không báo lại
+                    return null;
+                }
+                if (expired && !presence.expired) {
+                    presence.expired = true;
+                    wentOffline[0] = true;
+                } else if (presence.expired && simpUserRegistry.getUser(key) == null) {
+                    return null; // Session đã bị đóng mà không có sự kiện disconnect -> quên luôn
+                }
+                return presence;
+            });
+            if (wentOffline[0]) {
+                notifyPeers(username, false);
+            }
+        }
+        long typingCutoff = now - typingIntervalMs * 3;
+        typingForwardedAt.values().removeIf(forwardedAt -> forwardedAt < typingCutoff);
+    }
+
+    private void notifyPeers(String username, boolean online) {
+        try {
+            List<String> peers = conversationRepository.findRecentPeers(username, PageRequest.of(0, maxNotifiedPeers));
+            PresenceUpdate update = new PresenceUpdate(username, online);
+            int notified = 0;
+            for (String peer : peers) {
+                if (isOnline(peer)) {
+                    messagingTemplate.convertAndSendToUser(peer, "/queue/presence", update);
+                    notified++;
+                }
+            }
+            logger.debug("{} is {}; notified {} of {} peers.", username, online ? "online" : "offline", notified, peers.size());
+        } catch (Exception e) {
+            logger.warn("Could not push presence of {}: {}", username, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.oneshop.service;
+
+import com.oneshop.event.UserAccountChangedEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache UserDetails cho AuthTokenFilter: mỗi request có cookie JWT không còn phải query user + role.
+ * - Key là username trong token; mục hết hạn sau ttl-seconds (lưới an toàn).
+ * - Bị xóa ngay khi tài khoản đổi (UserAccountChangedEvent sau commit): khóa/mở khóa, đổi quyền, sửa hồ sơ...
+ *   Mỗi lần xóa tăng "thế hệ" của cache; bản load từ DB trước khi xóa (có thể là dữ liệu cũ) không được giữ lại.
+ * - Giới hạn max-size mục; đầy thì bỏ các mục hết hạn, vẫn đầy thì bỏ bớt mục bất kỳ.
+ * Không dùng cho đăng nhập bằng mật khẩu (DaoAuthenticationProvider luôn đọc DB).
+ */
+@Service
+public class PrincipalCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrincipalCacheService.class);
+
+    @Autowired
+    private UserService userService;
+
+    @Value("${oneshop.auth.principal-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${oneshop.auth.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    private record CachedPrincipal(UserDetails userDetails, long expiresAt) {
+        boolean isValid(long now) {
+            return now < expiresAt;
+        }
+    }
+
+    // username -> UserDetails đã load
+    private final Map<String, CachedPrincipal> cache = new ConcurrentHashMap<>();
+
+    // Tăng trước mỗi lần evict; dùng chung mọi key vì mục có thể được cache theo email mà evict theo username
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * UserDetails của {@code username}: từ cache nếu còn hạn, nếu không thì load từ DB rồi cache lại.
+     * @throws org.springframework.security.core.userdetails.UsernameNotFoundException nếu user không tồn tại
+     */
+    public UserDetails getUserDetails(String username) {
+        long now = System.currentTimeMillis();
+        CachedPrincipal cached = cache.get(username);
+        if (cached != null && cached.isValid(now)) {
+            return cached.userDetails();
+        }
+        long loadedGeneration = generation.get();
+        UserDetails userDetails = userService.loadUserByUsername(username);
+        if (cache.size() >= maxSize) {
+            shrink(now);
+        }
+        CachedPrincipal entry = new CachedPrincipal(userDetails, now + ttlSeconds * 1000);
+        cache.put(username, entry);
+        // Có evict xen giữa lúc load và lúc put -> bản vừa load có thể đã cũ, bỏ khỏi cache
+        // (evict xảy ra sau put thì tự xóa mục này)
+        if (generation.get() != loadedGeneration) {
+            cache.remove(username, entry);
+        }
+        return userDetails;
+    }
+
+    public void evict(String username) {
+        if (username != null) {
+            generation.incrementAndGet();
+            cache.remove(username);
+            // Token đăng nhập OAuth2 có thể mang email làm subject -> mục được cache theo email
+            cache.values().removeIf(entry -> username.equals(entry.userDetails().getUsername()));
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserAccountChanged(UserAccountChangedEvent event) {
+        evict(event.username());
+    }
+
+    private void shrink(long now) {
+        cache.values().removeIf(entry -> !entry.isValid(now));
+        // Toàn mục còn hạn (nhiều user hoạt động cùng lúc): bỏ bớt 1/10 để không phải dọn ở mỗi lần thêm
+        int toRemove = cache.size() - maxSize + Math.max(1, maxSize / 10);
+        Iterator<String> keys = cache.keySet().iterator();
+        while (toRemove-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        logger.debug("Principal cache shrunk to {} entries.", cache.size());
+    }
+}
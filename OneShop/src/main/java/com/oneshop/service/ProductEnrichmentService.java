@@ -0,0 +1,144 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.Product;
+import com.oneshop.entity.ProductRatingSummary;
+import com.oneshop.repository.ProductImageRepository;
+import com.oneshop.repository.ProductRatingSummaryRepository;
+import com.oneshop.repository.ProductVariantRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * Gán các trường @Transient (rating, reviewCount, primaryImageUrl, soldCount)
+ * cho cả một trang sản phẩm bằng vài query gộp theo danh sách ID,
+ * thay vì 2 query + lazy load ảnh/biến thể cho từng sản phẩm.
+ */
+@Service
+public class ProductEnrichmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductEnrichmentService.class);
+
+    public static final String DEFAULT_IMAGE_URL = "/assets/img/product/no-image.jpg";
+
+    // SQL Server giới hạn 2100 tham số / câu lệnh -> chia nhỏ danh sách ID
+    private static final int ID_CHUNK_SIZE = 1000;
+
+    @Autowired private ProductRatingSummaryRepository ratingSummaryRepository;
+    @Autowired private ProductImageRepository productImageRepository;
+    @Autowired private ProductVariantRepository variantRepository;
+
+    /**
+     * Tính và gán các trường transient cho danh sách sản phẩm.
+     * Số query cố định (tối đa 3 / chunk) bất kể số lượng sản phẩm.
+     */
+    @Transactional(readOnly = true)
+    public void enrich(Collection<Product> products) {
+        if (products == null || products.isEmpty()) {
+            return;
+        }
+
+        // Gom ID (bỏ qua sản phẩm chưa lưu)
+        List<Long> productIds = products.stream()
+                .filter(Objects::nonNull)
+                .map(Product::getProductId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        Map<Long, double[]> ratingStats = new HashMap<>();
+        Map<Long, String> imageUrls = new HashMap<>();
+
+        try {
+            for (List<Long> chunk : partition(productIds)) {
+                loadRatingStats(chunk, ratingStats);
+                loadPrimaryImages(chunk, imageUrls);
+            }
+        } catch (Exception e) {
+            // Không để lỗi truy vấn phụ làm hỏng cả trang danh sách
+            logger.warn("Could not batch-load product card details for {} products: {}", productIds.size(), e.getMessage());
+        }
+
+        for (Product product : products) {
+            if (product == null) {
+                continue;
+            }
+            double[] stats = product.getProductId() != null ? ratingStats.get(product.getProductId()) : null;
+            product.setRating(stats != null ? stats[0] : 0.0);
+            product.setReviewCount(stats != null ? (int) stats[1] : 0);
+            product.setPrimaryImageUrl(product.getProductId() != null
+                    ? imageUrls.getOrDefault(product.getProductId(), DEFAULT_IMAGE_URL)
+                    : DEFAULT_IMAGE_URL);
+            // soldCount lấy từ salesCount (trường được lưu trong DB)
+            product.setSoldCount(product.getSalesCount());
+        }
+        logger.trace("Enriched {} products with {} rating rows and {} image rows", products.size(), ratingStats.size(), imageUrls.size());
+    }
+
+    // Rating trung bình + số review: đọc thẳng từ bảng tổng hợp theo khóa chính
+    private void loadRatingStats(List<Long> productIds, Map<Long, double[]> ratingStats) {
+        for (ProductRatingSummary summary : ratingSummaryRepository.findAllById(productIds)) {
+            ratingStats.put(summary.getProductId(),
+                    new double[]{summary.getAverageRating(), summary.getRatingCount()});
+        }
+    }
+
+    // Ảnh chính: ưu tiên ảnh isPrimary -> ảnh đầu tiên -> ảnh biến thể đầu tiên
+    private void loadPrimaryImages(List<Long> productIds, Map<Long, String> imageUrls) {
+        Map<Long, String> primary = new HashMap<>();
+        Map<Long, String> first = new HashMap<>();
+        Set<Long> hasImages = new HashSet<>();
+
+        for (Object[] row : productImageRepository.findImageRowsByProductIds(productIds)) {
+            Long productId = (Long) row[0];
+            String url = (String) row[1];
+            hasImages.add(productId);
+            if (!StringUtils.hasText(url)) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(row[2])) {
+                primary.putIfAbsent(productId, url);
+            }
+            first.putIfAbsent(productId, url);
+        }
+
+        for (Long productId : productIds) {
+            String url = primary.getOrDefault(productId, first.get(productId));
+            if (url != null) {
+                imageUrls.put(productId, toPublicUrl(url));
+            }
+        }
+
+        // Chỉ hỏi ảnh biến thể cho sản phẩm hoàn toàn không có ảnh riêng
+        List<Long> withoutImages = productIds.stream().filter(id -> !hasImages.contains(id)).toList();
+        if (withoutImages.isEmpty()) {
+            return;
+        }
+        for (Object[] row : variantRepository.findVariantImageRowsByProductIds(withoutImages)) {
+            Long productId = (Long) row[0];
+            String url = (String) row[1];
+            if (StringUtils.hasText(url)) {
+                imageUrls.putIfAbsent(productId, toPublicUrl(url));
+            }
+        }
+    }
+
+    // Thêm tiền tố '/uploads/images/' nếu URL chỉ là tên file
+    private String toPublicUrl(String url) {
+        return url.startsWith("/") ? url : "/uploads/images/" + url;
+    }
+
+    private static List<List<Long>> partition(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += ID_CHUNK_SIZE) {
+            chunks.add(ids.subList(i, Math.min(i + ID_CHUNK_SIZE, ids.size())));
+        }
+        return chunks;
+    }
+}
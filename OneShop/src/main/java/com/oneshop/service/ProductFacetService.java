@@ -0,0 +1,251 @@
+package com.oneshop.service;
+
+import com.oneshop.config.TransactionConfig;
+import com.oneshop.dto.ProductFacetsDto;
+import com.oneshop.enums.ProductStatus;
+import com.oneshop.event.ProductCatalogChangedEvent;
+import com.oneshop.event.ProductCatalogChangedEvent.ChangeType;
+import com.oneshop.repository.ProductRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Đếm facet (danh mục / thương hiệu / khoảng giá) cho trang /products
+ * từ một snapshot dạng cột trong bộ nhớ của các sản phẩm published + SELLING.
+ * Snapshot là bất biến: mỗi thay đổi tạo bản mới (copy-on-write), request đọc không cần khóa.
+ */
+@Service
+public class ProductFacetService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetService.class);
+
+    private static final int REFRESH_CHUNK_SIZE = 1000;
+
+    // Các khoảng giá hiển thị (VND): [min, max), max = -1 nghĩa là không giới hạn trên
+    private static final long[][] PRICE_RANGES = {
+            {0, 100_000}, {100_000, 500_000}, {500_000, 1_000_000}, {1_000_000, 5_000_000}, {5_000_000, -1}
+    };
+    // Giá lưu 2 chữ số thập phân; link của khoảng [min, max) lọc minPrice <= giá <= max - 0.01
+    // (bộ lọc danh sách gồm cả 2 đầu) -> sản phẩm ở đúng mốc chỉ thuộc 1 khoảng, số đếm khớp danh sách
+    private static final BigDecimal PRICE_STEP = new BigDecimal("0.01");
+
+    private static final String[] PRICE_LABELS = {
+            "Dưới 100.000đ", "100.000đ - 500.000đ", "500.000đ - 1.000.000đ", "1.000.000đ - 5.000.000đ", "Trên 5.000.000đ"
+    };
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    @Qualifier(TransactionConfig.READ_ONLY_NEW_TEMPLATE)
+    private TransactionTemplate readOnlyTemplate;
+
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Snapshot dạng cột: phần tử thứ i của các mảng là của cùng 1 sản phẩm.
+     * categoryIds/brandIds = 0 nếu sản phẩm không có danh mục/thương hiệu.
+     */
+    private static final class Snapshot {
+        final int size;
+        final long[] productIds;
+        final long[] categoryIds;
+        final long[] brandIds;
+        final double[] prices;
+
+        Snapshot(int size, long[] productIds, long[] categoryIds, long[] brandIds, double[] prices) {
+            this.size = size;
+            this.productIds = productIds;
+            this.categoryIds = categoryIds;
+            this.brandIds = brandIds;
+            this.prices = prices;
+        }
+
+        static Snapshot of(List<Object[]> rows) {
+            int n = rows.size();
+            long[] ids = new long[n];
+            long[] cats = new long[n];
+            long[] brands = new long[n];
+            double[] prices = new double[n];
+            for (int i = 0; i < n; i++) {
+                Object[] row = rows.get(i);
+                ids[i] = (Long) row[0];
+                cats[i] = row[1] != null ? (Long) row[1] : 0L;
+                brands[i] = row[2] != null ? (Long) row[2] : 0L;
+                prices[i] = row[3] != null ? ((BigDecimal) row[3]).doubleValue() : 0.0;
+            }
+            return new Snapshot(n, ids, cats, brands, prices);
+        }
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Tính facet cho trạng thái lọc hiện tại trong 1 lần duyệt snapshot.
+     * @param candidateIds ID khớp từ khóa tìm kiếm (null = không lọc theo từ khóa)
+     * @return null nếu snapshot chưa sẵn sàng
+     */
+    public ProductFacetsDto computeFacets(Set<Long> candidateIds, Collection<Long> categoryIds, Collection<Long> brandIds,
+                                          BigDecimal minPrice, BigDecimal maxPrice) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return null;
+        }
+        Set<Long> selectedCategories = categoryIds != null && !categoryIds.isEmpty() ? new HashSet<>(categoryIds) : null;
+        Set<Long> selectedBrands = brandIds != null && !brandIds.isEmpty() ? new HashSet<>(brandIds) : null;
+        double min = minPrice != null ? minPrice.doubleValue() : Double.NEGATIVE_INFINITY;
+        double max = maxPrice != null ? maxPrice.doubleValue() : Double.POSITIVE_INFINITY;
+
+        Map<Long, Integer> categoryCounts = new HashMap<>();
+        Map<Long, Integer> brandCounts = new HashMap<>();
+        int[] bucketCounts = new int[PRICE_RANGES.length];
+        int total = 0;
+
+        for (int i = 0; i < s.size; i++) {
+            if (candidateIds != null && !candidateIds.contains(s.productIds[i])) {
+                continue;
+            }
+            boolean categoryOk = selectedCategories == null || selectedCategories.contains(s.categoryIds[i]);
+            boolean brandOk = selectedBrands == null || selectedBrands.contains(s.brandIds[i]);
+            double price = s.prices[i];
+            boolean priceOk = price >= min && price <= max;
+
+            // Mỗi nhóm facet bỏ qua bộ lọc của chính nhóm đó
+            if (brandOk && priceOk && s.categoryIds[i] != 0L) {
+                categoryCounts.merge(s.categoryIds[i], 1, Integer::sum);
+            }
+            if (categoryOk && priceOk && s.brandIds[i] != 0L) {
+                brandCounts.merge(s.brandIds[i], 1, Integer::sum);
+            }
+            if (categoryOk && brandOk) {
+                bucketCounts[priceBucketOf(price)]++;
+            }
+            if (categoryOk && brandOk && priceOk) {
+                total++;
+            }
+        }
+
+        ProductFacetsDto facets = new ProductFacetsDto();
+        facets.setCategoryCounts(categoryCounts);
+        facets.setBrandCounts(brandCounts);
+        facets.setTotalMatches(total);
+        for (int b = 0; b < PRICE_RANGES.length; b++) {
+            facets.getPriceBuckets().add(new ProductFacetsDto.PriceBucket(
+                    PRICE_LABELS[b],
+                    PRICE_RANGES[b][0] > 0 ? BigDecimal.valueOf(PRICE_RANGES[b][0]) : null,
+                    PRICE_RANGES[b][1] >= 0 ? BigDecimal.valueOf(PRICE_RANGES[b][1]).subtract(PRICE_STEP) : null,
+                    bucketCounts[b]));
+        }
+        return facets;
+    }
+
+    private static int priceBucketOf(double price) {
+        for (int b = 0; b < PRICE_RANGES.length - 1; b++) {
+            if (price < PRICE_RANGES[b][1]) {
+                return b;
+            }
+        }
+        return PRICE_RANGES.length - 1;
+    }
+
+    /**
+     * Dựng lại toàn bộ snapshot từ DB (1 query chỉ lấy 4 cột).
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = readOnlyTemplate.execute(status -> productRepository.findFacetRows(ProductStatus.SELLING));
+        snapshot = Snapshot.of(rows != null ? rows : Collections.emptyList());
+        logger.info("Product facet snapshot built: {} products in {} ms.", snapshot.size, System.currentTimeMillis() - start);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            logger.error("Could not build product facet snapshot: {}", e.getMessage(), e);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductCatalogChanged(ProductCatalogChangedEvent event) {
+        // Số lượng bán / rating không ảnh hưởng facet
+        if (event.changeType() == ChangeType.SALES_UPDATED || event.changeType() == ChangeType.RATING_UPDATED) {
+            return;
+        }
+        if (event.productIds() == null || event.productIds().isEmpty() || snapshot == null) {
+            return;
+        }
+        try {
+            refresh(event.productIds(), event.changeType() == ChangeType.DELETED);
+        } catch (Exception e) {
+            logger.error("Could not update facet snapshot for products {}: {}", event.productIds(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cập nhật snapshot cho các sản phẩm đã thay đổi: chỉ đọc lại các dòng đó từ DB,
+     * giữ nguyên các dòng khác rồi thay snapshot mới.
+     */
+    public synchronized void refresh(Collection<Long> productIds, boolean deleted) {
+        Set<Long> changed = new HashSet<>(productIds);
+        List<Object[]> freshRows = new ArrayList<>();
+        if (!deleted) {
+            List<Long> ids = new ArrayList<>(changed);
+            for (int i = 0; i < ids.size(); i += REFRESH_CHUNK_SIZE) {
+                List<Long> chunk = ids.subList(i, Math.min(i + REFRESH_CHUNK_SIZE, ids.size()));
+                List<Object[]> rows = readOnlyTemplate.execute(status -> productRepository.findFacetRowsByIdIn(ProductStatus.SELLING, chunk));
+                if (rows != null) {
+                    freshRows.addAll(rows);
+                }
+            }
+        }
+
+        Snapshot old = snapshot;
+        if (old == null) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < old.size; i++) {
+            if (!changed.contains(old.productIds[i])) {
+                kept++;
+            }
+        }
+        int n = kept + freshRows.size();
+        long[] ids = new long[n];
+        long[] cats = new long[n];
+        long[] brands = new long[n];
+        double[] prices = new double[n];
+        int j = 0;
+        for (int i = 0; i < old.size; i++) {
+            if (!changed.contains(old.productIds[i])) {
+                ids[j] = old.productIds[i];
+                cats[j] = old.categoryIds[i];
+                brands[j] = old.brandIds[i];
+                prices[j] = old.prices[i];
+                j++;
+            }
+        }
+        Snapshot fresh = Snapshot.of(freshRows);
+        System.arraycopy(fresh.productIds, 0, ids, j, fresh.size);
+        System.arraycopy(fresh.categoryIds, 0, cats, j, fresh.size);
+        System.arraycopy(fresh.brandIds, 0, brands, j, fresh.size);
+        System.arraycopy(fresh.prices, 0, prices, j, fresh.size);
+        snapshot = new Snapshot(n, ids, cats, brands, prices);
+        logger.debug("Facet snapshot refreshed: {} changed, {} rows now.", changed.size(), n);
+    }
+}
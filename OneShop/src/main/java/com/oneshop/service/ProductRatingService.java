@@ -0,0 +1,136 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.ProductRatingSummary;
+import com.oneshop.repository.ProductRatingSummaryRepository;
+import com.oneshop.repository.ProductRepository;
+import com.oneshop.repository.ProductReviewRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Quản lý bảng tổng hợp rating (PRODUCT_RATING_SUMMARY):
+ * cập nhật tăng dần khi có review mới và dựng lại toàn bộ khi cần.
+ * average_rating được chép sang PRODUCTS trong cùng transaction để sắp xếp theo rating dùng index của PRODUCTS.
+ */
+@Service
+public class ProductRatingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductRatingService.class);
+
+    @Autowired private ProductRatingSummaryRepository ratingSummaryRepository;
+    @Autowired private ProductReviewRepository reviewRepository;
+    @Autowired private ProductRepository productRepository;
+
+    /**
+     * Cộng một review mới (rating 1..5) vào bảng tổng hợp.
+     * Phải được gọi trong cùng transaction với việc lưu ProductReview.
+     */
+    @Transactional
+    public void recordReview(Long productId, Integer rating) {
+        if (productId == null || rating == null || rating < 1 || rating > 5) {
+            logger.warn("Skip rating summary update: invalid productId {} or rating {}", productId, rating);
+            return;
+        }
+        long[] stars = new long[5];
+        stars[rating - 1] = 1;
+
+        // Trường hợp thường gặp: dòng tổng hợp đã tồn tại -> 1 câu UPDATE atomic
+        if (applyDelta(productId, rating, 1, stars) > 0) {
+            productRepository.syncAverageRating(productId);
+            return;
+        }
+
+        // Review đầu tiên của sản phẩm: khóa dòng Product để 2 request đồng thời
+        // không cùng INSERT dòng tổng hợp, rồi thử UPDATE lại trước khi tạo mới
+        productRepository.findByIdForUpdate(productId)
+                .orElseThrow(() -> new IllegalArgumentException("Sản phẩm không tồn tại!"));
+        if (applyDelta(productId, rating, 1, stars) > 0) {
+            productRepository.syncAverageRating(productId);
+            return;
+        }
+
+        ProductRatingSummary summary = new ProductRatingSummary();
+        summary.setProductId(productId);
+        summary.setRatingSum((long) rating);
+        summary.setRatingCount(1L);
+        summary.setStar1(stars[0]);
+        summary.setStar2(stars[1]);
+        summary.setStar3(stars[2]);
+        summary.setStar4(stars[3]);
+        summary.setStar5(stars[4]);
+        summary.setAverageRating(rating.doubleValue());
+        ratingSummaryRepository.save(summary);
+        productRepository.syncAverageRating(productId);
+        logger.debug("Created rating summary for product {}", productId);
+    }
+
+    /**
+     * Dựng lại toàn bộ bảng tổng hợp từ PRODUCT_REVIEWS.
+     * @return số sản phẩm có dữ liệu tổng hợp.
+     */
+    @Transactional
+    public int rebuildAll() {
+        Map<Long, ProductRatingSummary> summaries = new HashMap<>();
+        for (Object[] row : reviewRepository.countByProductAndRating()) {
+            Long productId = (Long) row[0];
+            int rating = ((Number) row[1]).intValue();
+            long count = ((Number) row[2]).longValue();
+            if (rating < 1 || rating > 5) {
+                continue;
+            }
+            ProductRatingSummary s = summaries.computeIfAbsent(productId, id -> {
+                ProductRatingSummary created = new ProductRatingSummary();
+                created.setProductId(id);
+                return created;
+            });
+            s.setRatingSum(s.getRatingSum() + rating * count);
+            s.setRatingCount(s.getRatingCount() + count);
+            switch (rating) {
+                case 1 -> s.setStar1(s.getStar1() + count);
+                case 2 -> s.setStar2(s.getStar2() + count);
+                case 3 -> s.setStar3(s.getStar3() + count);
+                case 4 -> s.setStar4(s.getStar4() + count);
+                default -> s.setStar5(s.getStar5() + count);
+            }
+        }
+        summaries.values().forEach(s ->
+                s.setAverageRating(s.getRatingCount() > 0 ? (double) s.getRatingSum() / s.getRatingCount() : 0.0));
+
+        ratingSummaryRepository.deleteAllInBatch();
+        ratingSummaryRepository.saveAll(summaries.values());
+        productRepository.syncAllAverageRatings();
+        logger.info("Rebuilt rating summary for {} products.", summaries.size());
+        return summaries.size();
+    }
+
+    // Lần đầu triển khai: bảng tổng hợp rỗng nhưng đã có review -> dựng lại; PRODUCTS.average_rating lệch -> chép lại
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        try {
+            if (ratingSummaryRepository.count() == 0 && reviewRepository.count() > 0) {
+                logger.info("Rating summary table is empty, backfilling from existing reviews...");
+                rebuildAll();
+            } else if (productRepository.countStaleAverageRatings() > 0) {
+                // Cột PRODUCTS.average_rating vừa được thêm (mặc định 0) -> chép lại từ bảng tổng hợp
+                logger.info("Product average ratings out of sync with rating summary, copying...");
+                productRepository.syncAllAverageRatings();
+            }
+        } catch (Exception e) {
+            logger.error("Could not backfill rating summary: {}", e.getMessage(), e);
+        }
+    }
+
+    private int applyDelta(Long productId, long sumDelta, long countDelta, long[] stars) {
+        return ratingSummaryRepository.applyDelta(productId, sumDelta, countDelta,
+                stars[0], stars[1], stars[2], stars[3], stars[4]);
+    }
+}
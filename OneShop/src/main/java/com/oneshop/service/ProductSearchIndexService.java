@@ -0,0 +1,366 @@
+package com.oneshop.service;
+
+import com.oneshop.config.TransactionConfig;
+import com.oneshop.entity.Product;
+import com.oneshop.enums.ProductStatus;
+import com.oneshop.event.ProductCatalogChangedEvent;
+import com.oneshop.event.ProductCatalogChangedEvent.ChangeType;
+import com.oneshop.repository.ProductRepository;
+import com.oneshop.specification.ProductSpecification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục đảo (inverted index) trong bộ nhớ cho tìm kiếm sản phẩm phía khách hàng.
+ * - Chỉ chứa sản phẩm published + SELLING.
+ * - Dữ liệu: tên, tags, thương hiệu, danh mục, mô tả; bỏ dấu tiếng Việt ("Áo đỏ" ~ "ao do").
+ * - Mỗi từ khóa khớp theo tiền tố, các từ khóa kết hợp bằng AND.
+ * - Dựng lại khi khởi động, cập nhật tăng dần qua ProductCatalogChangedEvent.
+ * Kết quả là danh sách ID ứng viên; việc lọc/sắp xếp/phân trang vẫn do 1 query IN thực hiện.
+ * Từ khóa quá rộng: giữ MAX_CANDIDATES ứng viên liên quan nhất (xếp hạng trong chỉ mục), không quay về LIKE.
+ */
+@Service
+public class ProductSearchIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndexService.class);
+
+    // SQL Server giới hạn 2100 tham số; nhiều hơn thì chỉ giữ các ứng viên xếp hạng cao nhất
+    static final int MAX_CANDIDATES = 2000;
+    private static final int REBUILD_BATCH_SIZE = 500;
+    private static final int REFRESH_CHUNK_SIZE = 1000;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    // Transaction riêng, chỉ đọc (listener chạy sau khi transaction gốc đã commit)
+    @Autowired
+    @Qualifier(TransactionConfig.READ_ONLY_NEW_TEMPLATE)
+    private TransactionTemplate readOnlyTemplate;
+
+    // token -> tập productId; TreeMap để tra cứu theo tiền tố
+    private TreeMap<String, Set<Long>> postings = new TreeMap<>();
+    // productId -> các token của sản phẩm (để xóa/cập nhật)
+    private Map<Long, Set<String>> documentTokens = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready = false;
+
+    // Các sản phẩm thay đổi trong lúc đang rebuild -> áp dụng lại sau khi đổi chỉ mục
+    private volatile boolean rebuilding = false;
+    private final Queue<Long> changedDuringRebuild = new ConcurrentLinkedQueue<>();
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Tìm ID sản phẩm khớp với từ khóa.
+     * @return tập ID (có thể rỗng), hoặc null nếu từ khóa không có token nào.
+     */
+    public Set<Long> search(String query) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Set<Long> result = null;
+            for (String token : queryTokens) {
+                Set<Long> matches = new HashSet<>();
+                for (Set<Long> ids : postings.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+                    matches.addAll(ids);
+                }
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Specification lọc theo từ khóa tìm kiếm, dùng thay cho ProductSpecification.hasName.
+     * Chỉ quay về LIKE khi chỉ mục chưa sẵn sàng.
+     */
+    public Specification<Product> matching(String query) {
+        return matching(query, indexCandidates(query));
+    }
+
+    /**
+     * Như matching(query) nhưng dùng tập ứng viên đã tính bằng indexCandidates(query),
+     * để danh sách và bộ đếm facet dựa trên cùng 1 kết quả.
+     */
+    public Specification<Product> matching(String query, Set<Long> indexCandidates) {
+        if (indexCandidates == null) {
+            return ProductSpecification.hasName(query);
+        }
+        return ProductSpecification.hasIdIn(indexCandidates);
+    }
+
+    /**
+     * Tập ID khớp từ khóa theo chỉ mục, tối đa MAX_CANDIDATES phần tử (vừa 1 mệnh đề IN).
+     * @return null nếu phải quay về LIKE (từ khóa rỗng/không có token, chỉ mục chưa sẵn sàng)
+     */
+    public Set<Long> indexCandidates(String query) {
+        if (!StringUtils.hasText(query)) {
+            return null;
+        }
+        if (!ready) {
+            logger.debug("Search index not ready, falling back to LIKE for '{}'", query);
+            return null;
+        }
+        Set<Long> candidates = search(query);
+        if (candidates == null) {
+            return null;
+        }
+        if (candidates.size() > MAX_CANDIDATES) {
+            logger.debug("Search '{}' matched {} products (> {}), keeping the top ranked", query, candidates.size(), MAX_CANDIDATES);
+            return topRanked(tokenize(query), candidates, MAX_CANDIDATES);
+        }
+        return candidates;
+    }
+
+    /**
+     * Giữ {@code limit} ứng viên liên quan nhất: nhiều từ khóa khớp nguyên token hơn (không chỉ tiền tố) đứng trước,
+     * hòa thì sản phẩm mới hơn (productId lớn hơn) đứng trước.
+     */
+    private Set<Long> topRanked(List<String> queryTokens, Set<Long> candidates, int limit) {
+        Comparator<long[]> ranking = Comparator.<long[]>comparingLong(e -> e[1]).thenComparingLong(e -> e[0]);
+        // Heap nhỏ nhất có kích thước limit -> O(n log limit)
+        PriorityQueue<long[]> top = new PriorityQueue<>(limit + 1, ranking);
+        lock.readLock().lock();
+        try {
+            for (Long productId : candidates) {
+                Set<String> tokens = documentTokens.getOrDefault(productId, Collections.emptySet());
+                long exactMatches = queryTokens.stream().filter(tokens::contains).count();
+                top.add(new long[]{productId, exactMatches});
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Set<Long> result = new HashSet<>();
+        top.forEach(e -> result.add(e[0]));
+        return result;
+    }
+
+    /**
+     * Tập ID khớp điều kiện LIKE của ProductSpecification.hasName (khi danh sách quay về LIKE).
+     * Chỉ đọc cột ID, không giới hạn số lượng như mệnh đề IN.
+     */
+    public Set<Long> likeMatches(String query) {
+        return new HashSet<>(productRepository.findSearchableIdsByNameLike(ProductStatus.SELLING, "%" + query.toLowerCase() + "%"));
+    }
+
+    /**
+     * Dựng lại toàn bộ chỉ mục từ DB (theo từng lô, seek theo productId).
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        changedDuringRebuild.clear();
+        try {
+            TreeMap<String, Set<Long>> newPostings = new TreeMap<>();
+            Map<Long, Set<String>> newDocumentTokens = new HashMap<>();
+
+            long afterId = 0L;
+            while (true) {
+                final long cursor = afterId;
+                List<Product> batch = readOnlyTemplate.execute(status -> {
+                    List<Product> products = productRepository.findSearchableAfterId(
+                            ProductStatus.SELLING, cursor, PageRequest.of(0, REBUILD_BATCH_SIZE));
+                    products.forEach(p -> newDocumentTokens.put(p.getProductId(), documentTokensOf(p)));
+                    return products;
+                });
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                afterId = batch.get(batch.size() - 1).getProductId();
+            }
+            newDocumentTokens.forEach((productId, tokens) -> addPostings(newPostings, productId, tokens));
+
+            lock.writeLock().lock();
+            try {
+                postings = newPostings;
+                documentTokens = newDocumentTokens;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("Product search index rebuilt: {} products, {} tokens in {} ms.",
+                    newDocumentTokens.size(), newPostings.size(), System.currentTimeMillis() - start);
+        } finally {
+            rebuilding = false;
+        }
+
+        // Áp dụng lại các thay đổi xảy ra trong lúc rebuild
+        Set<Long> pending = new HashSet<>();
+        Long id;
+        while ((id = changedDuringRebuild.poll()) != null) {
+            pending.add(id);
+        }
+        if (!pending.isEmpty()) {
+            refresh(pending);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // Không chặn khởi động; tìm kiếm sẽ dùng LIKE cho tới khi rebuild thành công
+            logger.error("Could not build product search index: {}", e.getMessage(), e);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductCatalogChanged(ProductCatalogChangedEvent event) {
+        // Số lượng bán / rating không ảnh hưởng nội dung tìm kiếm
+        if (event.changeType() == ChangeType.SALES_UPDATED || event.changeType() == ChangeType.RATING_UPDATED) {
+            return;
+        }
+        if (event.productIds() == null || event.productIds().isEmpty()) {
+            return;
+        }
+        if (rebuilding) {
+            changedDuringRebuild.addAll(event.productIds());
+        }
+        try {
+            if (event.changeType() == ChangeType.DELETED) {
+                event.productIds().forEach(this::remove);
+            } else {
+                refresh(event.productIds());
+            }
+        } catch (Exception e) {
+            logger.error("Could not update search index for products {}: {}", event.productIds(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Đọc lại các sản phẩm từ DB và cập nhật chỉ mục (xóa nếu không còn published + SELLING).
+     */
+    public void refresh(Collection<Long> productIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        for (int i = 0; i < ids.size(); i += REFRESH_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(i, Math.min(i + REFRESH_CHUNK_SIZE, ids.size()));
+            Map<Long, Set<String>> fresh = readOnlyTemplate.execute(status -> {
+                Map<Long, Set<String>> tokens = new HashMap<>();
+                for (Product p : productRepository.findWithBrandAndCategoryByIdIn(chunk)) {
+                    if (p.isPublished() && p.getStatus() == ProductStatus.SELLING) {
+                        tokens.put(p.getProductId(), documentTokensOf(p));
+                    }
+                }
+                return tokens;
+            });
+            lock.writeLock().lock();
+            try {
+                for (Long productId : chunk) {
+                    removeUnlocked(productId);
+                    Set<String> tokens = fresh != null ? fresh.get(productId) : null;
+                    if (tokens != null) {
+                        documentTokens.put(productId, tokens);
+                        addPostings(postings, productId, tokens);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        logger.debug("Search index refreshed for {} products.", ids.size());
+    }
+
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeUnlocked(Long productId) {
+        Set<String> tokens = documentTokens.remove(productId);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<Long> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    private static void addPostings(Map<String, Set<Long>> target, Long productId, Set<String> tokens) {
+        for (String token : tokens) {
+            target.computeIfAbsent(token, t -> new HashSet<>()).add(productId);
+        }
+    }
+
+    // Gom tất cả trường cần tìm kiếm của 1 sản phẩm (brand/category phải đã được load)
+    private Set<String> documentTokensOf(Product product) {
+        Set<String> tokens = new HashSet<>();
+        tokens.addAll(tokenize(product.getName()));
+        tokens.addAll(tokenize(product.getTags()));
+        tokens.addAll(tokenize(product.getDescription()));
+        if (product.getBrand() != null) {
+            tokens.addAll(tokenize(product.getBrand().getName()));
+        }
+        if (product.getCategory() != null) {
+            tokens.addAll(tokenize(product.getCategory().getName()));
+        }
+        return tokens;
+    }
+
+    /**
+     * Chuẩn hóa và tách từ: chữ thường, bỏ dấu tiếng Việt (kể cả đ -> d), tách theo ký tự không phải chữ/số.
+     */
+    static List<String> tokenize(String text) {
+        if (!StringUtils.hasText(text)) {
+            return Collections.emptyList();
+        }
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        folded = COMBINING_MARKS.matcher(folded).replaceAll("").replace('đ', 'd');
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
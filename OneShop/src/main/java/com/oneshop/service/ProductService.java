@@ -1,6 +1,7 @@
 // src/main/java/com/oneshop/service/ProductService.java
 package com.oneshop.service; // Đảm bảo package đúng
 
+import com.oneshop.dto.CursorPage;
 import com.oneshop.dto.ProductDto;
 import com.oneshop.entity.Brand;
 import com.oneshop.entity.Category;
@@ -11,6 +12,7 @@ import jakarta.transaction.Transactional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -33,6 +35,15 @@ public interface ProductService {
      */
     Page<Product> getProductsByShop(Long shopId, Pageable pageable);
 
+    /**
+     * Lấy danh sách sản phẩm của Shop theo con trỏ (keyset, productId giảm dần), không chạy COUNT.
+     * @param shopId ID của Shop.
+     * @param cursor Con trỏ trả về từ trang trước (null/rỗng = trang đầu).
+     * @param size Số phần tử mỗi trang.
+     * @return CursorPage<Product>.
+     */
+    CursorPage<Product> getProductsByShopCursor(Long shopId, String cursor, int size);
+
     /**
      * Lấy thông tin chi tiết một sản phẩm cho Vendor (kiểm tra quyền sở hữu).
      * @param productId ID sản phẩm.
@@ -185,6 +196,24 @@ public interface ProductService {
      */
     Page<Product> findAllPublishedProducts(Specification<Product> spec, Pageable pageable); // Sửa tên: findAllPublishedProducts
 
+    /**
+     * Giống findAllPublishedProducts nhưng phân trang theo con trỏ (seek trên (sortKey, productId)), không chạy COUNT.
+     * @param spec Specification chứa điều kiện lọc.
+     * @param sortProperty Khóa sắp xếp: productId, price, salesCount hoặc averageRating.
+     * @param direction Chiều sắp xếp.
+     * @param cursor Con trỏ trả về từ trang trước (null/rỗng hoặc không khớp sort = trang đầu).
+     * @param size Số phần tử mỗi trang.
+     * @return CursorPage<Product>.
+     */
+    CursorPage<Product> findPublishedProductsByCursor(Specification<Product> spec, String sortProperty,
+                                                      Sort.Direction direction, String cursor, int size);
+
+    /**
+     * Tạo con trỏ trỏ tới vị trí ngay sau sản phẩm cho trước (dùng để chuyển từ trang offset sang "xem thêm").
+     * @return chuỗi con trỏ, hoặc null nếu khóa sắp xếp không hỗ trợ keyset.
+     */
+    String buildCursorAfter(Product product, String sortProperty, Sort.Direction direction);
+
     /**
      * Tìm kiếm và lọc sản phẩm public (không phân trang).
      * @param name Tên sản phẩm (có thể null).
@@ -199,6 +228,11 @@ public interface ProductService {
    
  
     
+    /**
+     * Tính lại toàn bộ giá thấp nhất / giá gốc / tồn kho tổng từ các biến thể.
+     * Chỉ cần khi biến thể thay đổi giá; thay đổi tồn kho do đơn hàng đã được cộng/trừ
+     * theo delta (StockReservationService) nên không gọi hàm này.
+     */
     void updateProductStockAndPriceFromVariants(Product product);
   //main 
     
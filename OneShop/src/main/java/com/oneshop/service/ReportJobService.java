@@ -0,0 +1,294 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.ReportJobDto;
+import com.oneshop.enums.ReportJobStatus;
+import com.oneshop.enums.ReportType;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Hàng đợi tạo báo cáo chạy nền: request chỉ nhận job ID rồi trả về ngay,
+ * file xlsx được tạo trên pool worker riêng (giới hạn số luồng + độ dài hàng đợi),
+ * mỗi shop chỉ được chạy tối đa N job cùng lúc. File kết quả lưu dưới uploads/reports/{shopId}/
+ * (không nằm trong thư mục public) và được dọn sau thời gian lưu giữ.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobService.class);
+
+    private static final String PART_SUFFIX = ".xlsx.part";
+
+    private final Path reportRoot = Paths.get("uploads", "reports");
+
+    @Autowired
+    private ReportService reportService;
+
+    @Value("${oneshop.report.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${oneshop.report.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${oneshop.report.max-jobs-per-shop:2}")
+    private int maxJobsPerShop;
+
+    @Value("${oneshop.report.retention-hours:24}")
+    private long retentionHours;
+
+    private ThreadPoolExecutor executor;
+
+    // jobId -> job (chỉ giữ trong bộ nhớ; file vẫn còn trên đĩa đến khi bị dọn)
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // shopId -> số job đang chờ/chạy
+    private final Map<Long, AtomicInteger> activeJobsByShop = new ConcurrentHashMap<>();
+
+    private static final class Job {
+        final String id;
+        final Long shopId;
+        final ReportType type;
+        final LocalDate fromDate;
+        final LocalDate toDate;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        volatile ReportJobStatus status = ReportJobStatus.QUEUED;
+        volatile long processedRows;
+        volatile long totalRows;
+        volatile Path file;
+        volatile String fileName;
+        volatile String errorMessage;
+        volatile LocalDateTime finishedAt;
+
+        Job(Long shopId, ReportType type, LocalDate fromDate, LocalDate toDate) {
+            this.id = UUID.randomUUID().toString();
+            this.shopId = shopId;
+            this.type = type;
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+        }
+
+        ReportJobDto toDto() {
+            ReportJobDto dto = new ReportJobDto();
+            dto.setJobId(id);
+            dto.setType(type);
+            dto.setTypeName(type.getDisplayName());
+            dto.setStatus(status);
+            dto.setFromDate(fromDate);
+            dto.setToDate(toDate);
+            dto.setProcessedRows(processedRows);
+            dto.setTotalRows(totalRows);
+            int percent;
+            if (status == ReportJobStatus.COMPLETED) {
+                percent = 100;
+            } else if (totalRows > 0) {
+                // Giữ 99% cho bước ghi file cuối cùng
+                percent = (int) Math.min(99, processedRows * 100 / totalRows);
+            } else {
+                percent = 0;
+            }
+            dto.setProgressPercent(percent);
+            dto.setFileName(fileName);
+            dto.setErrorMessage(errorMessage);
+            dto.setCreatedAt(createdAt);
+            dto.setFinishedAt(finishedAt);
+            return dto;
+        }
+    }
+
+    @PostConstruct
+    void startExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "report-worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Đưa 1 job báo cáo vào hàng đợi.
+     * @return trạng thái ban đầu của job (chứa job ID để theo dõi tiến độ)
+     * @throws IllegalStateException nếu shop đã đạt giới hạn job đồng thời hoặc hàng đợi đầy
+     */
+    public ReportJobDto submit(Long shopId, ReportType type, LocalDate fromDate, LocalDate toDate) {
+        AtomicInteger active = activeJobsByShop.computeIfAbsent(shopId, id -> new AtomicInteger());
+        if (active.incrementAndGet() > maxJobsPerShop) {
+            active.decrementAndGet();
+            throw new IllegalStateException("Shop đang có " + maxJobsPerShop + " báo cáo đang xử lý. Vui lòng chờ hoàn tất.");
+        }
+        Job job = new Job(shopId, type, fromDate, toDate);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            active.decrementAndGet();
+            logger.warn("Report queue full, rejected {} job for shop {}", type, shopId);
+            throw new IllegalStateException("Hệ thống đang xử lý nhiều báo cáo. Vui lòng thử lại sau ít phút.");
+        }
+        logger.info("Queued {} report job {} for shop {} ({} - {})", type, job.id, shopId, fromDate, toDate);
+        return job.toDto();
+    }
+
+    private void run(Job job) {
+        job.status = ReportJobStatus.RUNNING;
+        long start = System.currentTimeMillis();
+        Path tempFile = null;
+        try {
+            job.totalRows = reportService.countReportLines(job.type, job.shopId, job.fromDate, job.toDate);
+            Path shopDir = reportRoot.resolve(String.valueOf(job.shopId));
+            Files.createDirectories(shopDir);
+            // Ghi ra file tạm rồi đổi tên -> không bao giờ tải về file đang ghi dở
+            tempFile = shopDir.resolve(job.id + PART_SUFFIX);
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                reportService.writeReport(job.type, job.shopId, job.fromDate, job.toDate, out,
+                        rows -> job.processedRows = rows);
+            }
+            Path target = shopDir.resolve(job.id + ".xlsx");
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            job.file = target;
+            job.fileName = buildFileName(job);
+            job.status = ReportJobStatus.COMPLETED;
+            logger.info("Report job {} completed: {} rows in {} ms", job.id, job.processedRows, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            job.status = ReportJobStatus.FAILED;
+            job.errorMessage = "Lỗi khi tạo báo cáo: " + e.getMessage();
+            logger.error("Report job {} failed for shop {}: {}", job.id, job.shopId, e.getMessage(), e);
+            deleteQuietly(tempFile);
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            activeJobsByShop.get(job.shopId).decrementAndGet();
+        }
+    }
+
+    private static String buildFileName(Job job) {
+        String range = (job.fromDate != null || job.toDate != null)
+                ? "_" + (job.fromDate != null ? job.fromDate : "") + "_" + (job.toDate != null ? job.toDate : "")
+                : "_" + job.createdAt.toLocalDate();
+        return job.type.getFilePrefix() + "_Shop" + job.shopId + range + ".xlsx";
+    }
+
+    /**
+     * Trạng thái job của shop; rỗng nếu không tồn tại hoặc thuộc shop khác.
+     */
+    public Optional<ReportJobDto> getJob(Long shopId, String jobId) {
+        return findOwnedJob(shopId, jobId).map(Job::toDto);
+    }
+
+    /**
+     * Các job gần đây của shop, mới nhất trước.
+     */
+    public List<ReportJobDto> listJobs(Long shopId) {
+        return jobs.values().stream()
+                .filter(job -> job.shopId.equals(shopId))
+                .sorted(Comparator.comparing((Job job) -> job.createdAt).reversed())
+                .map(Job::toDto)
+                .toList();
+    }
+
+    /**
+     * File kết quả của job đã hoàn tất; rỗng nếu job chưa xong, không thuộc shop hoặc file đã bị dọn.
+     */
+    public Optional<Path> getResultFile(Long shopId, String jobId) {
+        return findOwnedJob(shopId, jobId)
+                .filter(job -> job.status == ReportJobStatus.COMPLETED && job.file != null)
+                .map(job -> job.file)
+                .filter(Files::isRegularFile);
+    }
+
+    private Optional<Job> findOwnedJob(Long shopId, String jobId) {
+        if (jobId == null) {
+            return Optional.empty();
+        }
+        Job job = jobs.get(jobId);
+        return job != null && job.shopId.equals(shopId) ? Optional.of(job) : Optional.empty();
+    }
+
+    /**
+     * Dọn các job đã kết thúc quá thời gian lưu giữ và file báo cáo cũ còn sót trên đĩa (ví dụ sau khi khởi động lại).
+     */
+    @Scheduled(fixedDelayString = "${oneshop.report.cleanup-interval-ms:3600000}")
+    public void cleanupExpiredJobs() {
+        LocalDateTime jobCutoff = LocalDateTime.now().minusHours(retentionHours);
+        int removed = 0;
+        for (Iterator<Job> it = jobs.values().iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            if (job.finishedAt != null && job.finishedAt.isBefore(jobCutoff)) {
+                it.remove();
+                deleteQuietly(job.file);
+                removed++;
+            }
+        }
+
+        // File .part của job chưa kết thúc đang được ghi (có thể lâu hơn thời gian lưu giữ) -> không đụng tới;
+        // chỉ dọn .part mồ côi (job đã kết thúc hoặc không còn trong bộ nhớ sau khi khởi động lại)
+        Set<String> runningJobIds = new HashSet<>();
+        jobs.values().forEach(job -> {
+            if (job.finishedAt == null) {
+                runningJobIds.add(job.id);
+            }
+        });
+        Instant fileCutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+        if (Files.isDirectory(reportRoot)) {
+            try (Stream<Path> files = Files.walk(reportRoot, 2)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(PART_SUFFIX)
+                            && runningJobIds.contains(name.substring(0, name.length() - PART_SUFFIX.length()))) {
+                        continue;
+                    }
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(fileCutoff)) {
+                        deleteQuietly(file);
+                        removed++;
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Could not sweep report directory {}: {}", reportRoot, e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            logger.info("Cleaned up {} expired report jobs/files.", removed);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete report file {}: {}", file, e.getMessage());
+        }
+    }
+}
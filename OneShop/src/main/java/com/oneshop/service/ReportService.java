@@ -1,9 +1,25 @@
 package com.oneshop.service;
 
-import org.apache.poi.ss.usermodel.Workbook; 
+import com.oneshop.enums.ReportType;
+
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.function.LongConsumer;
 
 public interface ReportService {
 
-    Workbook generateSalesReport(Long shopId) throws IOException;
-}
\ No newline at end of file
+    /**
+     * Đếm số dòng (chi tiết đơn) sẽ có trong báo cáo, dùng để tính phần trăm tiến độ.
+     */
+    long countReportLines(ReportType type, Long shopId, LocalDate fromDate, LocalDate toDate);
+
+    /**
+     * Ghi báo cáo (xlsx) của shop trực tiếp ra stream, bộ nhớ dùng không phụ thuộc số đơn.
+     * @param fromDate ngày bắt đầu (bao gồm), null = không giới hạn
+     * @param toDate ngày kết thúc (bao gồm), null = không giới hạn
+     * @param progress nhận số dòng đã ghi sau mỗi trang dữ liệu (có thể null)
+     */
+    void writeReport(ReportType type, Long shopId, LocalDate fromDate, LocalDate toDate,
+                     OutputStream out, LongConsumer progress) throws IOException;
+}
@@ -0,0 +1,283 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.Order;
+import com.oneshop.entity.OrderDetail;
+import com.oneshop.entity.OrderStatus;
+import com.oneshop.entity.Product;
+import com.oneshop.entity.ProductDailyRevenue;
+import com.oneshop.entity.ProductVariant;
+import com.oneshop.entity.ShopDailyRevenue;
+import com.oneshop.repository.OrderRepository;
+import com.oneshop.repository.ProductDailyRevenueRepository;
+import com.oneshop.repository.ShopDailyRevenueRepository;
+import com.oneshop.repository.ShopRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Quản lý bảng tổng hợp doanh thu theo ngày (SHOP_DAILY_REVENUE, PRODUCT_DAILY_REVENUE):
+ * cộng/trừ theo delta khi đơn chuyển vào/ra trạng thái DELIVERED, dựng lại toàn bộ từ ORDERS khi cần.
+ * Các biểu đồ doanh thu của vendor chỉ đọc từ bảng tổng hợp (không quét ORDERS).
+ * Delta và việc dựng lại cùng khóa dòng SHOPS của shop, nên dựng lại an toàn khi đang có đơn được giao.
+ */
+@Service
+public class RevenueRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevenueRollupService.class);
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    @Autowired private ShopDailyRevenueRepository shopDailyRevenueRepository;
+    @Autowired private ProductDailyRevenueRepository productDailyRevenueRepository;
+    @Autowired private OrderRepository orderRepository;
+    @Autowired private ShopRepository shopRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    /**
+     * Khóa dòng shop trước khi đổi trạng thái đơn vào/ra DELIVERED (gọi trước compare-and-set trên ORDERS).
+     * Giữ thứ tự khóa SHOPS -> ORDERS giống rebuildShop, tránh deadlock khi dựng lại đọc ORDERS của shop.
+     */
+    @Transactional
+    public void lockShop(Long shopId) {
+        shopRepository.findByIdForUpdate(shopId);
+    }
+
+    /**
+     * Đơn vừa chuyển sang DELIVERED. Phải gọi trong cùng transaction với việc đổi trạng thái
+     * (sau khi compare-and-set thành công) để mỗi lần chuyển chỉ được cộng đúng 1 lần.
+     */
+    @Transactional
+    public void recordDelivered(Order order) {
+        apply(order, 1);
+    }
+
+    /**
+     * Đơn rời trạng thái DELIVERED (ví dụ trả hàng): trừ lại phần đã cộng.
+     */
+    @Transactional
+    public void recordUndelivered(Order order) {
+        apply(order, -1);
+    }
+
+    private void apply(Order order, int sign) {
+        if (order.getShop() == null || order.getCreatedAt() == null) {
+            logger.warn("Skip revenue rollup for order {}: missing shop or creation date.", order.getId());
+            return;
+        }
+        Long shopId = order.getShop().getId();
+        LocalDate day = order.getCreatedAt().toLocalDate();
+        BigDecimal orderTotal = order.getTotal() != null ? order.getTotal() : BigDecimal.ZERO;
+        BigDecimal signum = BigDecimal.valueOf(sign);
+
+        // Khóa dòng shop tới hết transaction: rebuildShop không thể đọc ORDERS rồi ghi đè mất delta này,
+        // và 2 đơn đồng thời không cùng INSERT dòng đầu tiên của ngày/sản phẩm
+        shopRepository.findByIdForUpdate(shopId);
+
+        // Gộp các dòng chi tiết theo sản phẩm (TreeMap -> thứ tự khóa dòng cố định)
+        Map<Long, ProductDailyRevenue> byProduct = new TreeMap<>();
+        for (OrderDetail detail : order.getOrderDetails()) {
+            ProductVariant variant = detail.getProductVariant();
+            Product product = variant != null ? variant.getProduct() : null;
+            if (product == null || detail.getPrice() == null) {
+                continue;
+            }
+            ProductDailyRevenue row = byProduct.computeIfAbsent(product.getProductId(), id -> {
+                ProductDailyRevenue created = new ProductDailyRevenue();
+                created.setShopId(shopId);
+                created.setRevenueDate(day);
+                created.setProductId(id);
+                created.setCategoryId(product.getCategory() != null ? product.getCategory().getId() : null);
+                created.setOrderCount((long) sign);
+                return created;
+            });
+            row.setRevenue(row.getRevenue().add(detail.getPrice().multiply(BigDecimal.valueOf(detail.getQuantity())).multiply(signum)));
+            row.setUnits(row.getUnits() + (long) sign * detail.getQuantity());
+        }
+
+        // Trường hợp thường gặp: dòng của ngày đã tồn tại -> chỉ UPDATE atomic
+        boolean shopRowUpdated = shopDailyRevenueRepository.applyDelta(shopId, day, sign, orderTotal.multiply(signum)) > 0;
+        List<ProductDailyRevenue> missing = new ArrayList<>();
+        for (ProductDailyRevenue row : byProduct.values()) {
+            if (!applyProductDelta(row)) {
+                missing.add(row);
+            }
+        }
+        if (shopRowUpdated && missing.isEmpty()) {
+            return;
+        }
+        if (sign < 0) {
+            // Trừ cho đơn chưa từng được cộng -> bảng tổng hợp đang lệch, cần dựng lại
+            logger.warn("Revenue rollup rows missing while reverting order {} (shop {}, {}). Run a rebuild.", order.getId(), shopId, day);
+            return;
+        }
+
+        // Đơn đầu tiên của ngày/sản phẩm (dòng shop đã khóa ở trên) -> tạo mới
+        if (!shopRowUpdated && shopDailyRevenueRepository.applyDelta(shopId, day, sign, orderTotal.multiply(signum)) == 0) {
+            shopDailyRevenueRepository.save(new ShopDailyRevenue(null, shopId, day, (long) sign, orderTotal.multiply(signum)));
+        }
+        for (ProductDailyRevenue row : missing) {
+            if (!applyProductDelta(row)) {
+                productDailyRevenueRepository.save(row);
+            }
+        }
+        logger.debug("Created revenue rollup rows for shop {} on {} ({} products).", shopId, day, missing.size());
+    }
+
+    private boolean applyProductDelta(ProductDailyRevenue row) {
+        return productDailyRevenueRepository.applyDelta(row.getShopId(), row.getRevenueDate(), row.getProductId(),
+                row.getRevenue(), row.getUnits(), row.getOrderCount()) > 0;
+    }
+
+    // === ĐỌC CHO TRANG DOANH THU ===
+
+    @Transactional(readOnly = true)
+    public BigDecimal getTotalRevenue(Long shopId) {
+        BigDecimal total = shopDailyRevenueRepository.sumRevenueByShop(shopId);
+        return total != null ? total : BigDecimal.ZERO;
+    }
+
+    @Transactional(readOnly = true)
+    public BigDecimal getRevenueBetween(Long shopId, LocalDate fromDate, LocalDate toDate) {
+        BigDecimal total = shopDailyRevenueRepository.sumRevenueByShopBetween(shopId, fromDate, toDate);
+        return total != null ? total : BigDecimal.ZERO;
+    }
+
+    @Transactional(readOnly = true)
+    public long countDeliveredOrders(Long shopId) {
+        Long count = shopDailyRevenueRepository.sumOrderCountByShop(shopId);
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Doanh thu theo tháng ("yyyy-MM" -> doanh thu) cho {@code months} tháng gần nhất, kể cả tháng không có đơn.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, BigDecimal> getMonthlyRevenue(Long shopId, int months) {
+        YearMonth endMonth = YearMonth.now();
+        YearMonth startMonth = endMonth.minusMonths(Math.max(months, 1) - 1L);
+        Map<String, BigDecimal> monthly = new LinkedHashMap<>();
+        for (YearMonth m = startMonth; !m.isAfter(endMonth); m = m.plusMonths(1)) {
+            monthly.put(m.format(MONTH_FORMATTER), BigDecimal.ZERO);
+        }
+        for (ShopDailyRevenue row : shopDailyRevenueRepository
+                .findByShopIdAndRevenueDateGreaterThanEqualOrderByRevenueDateAsc(shopId, startMonth.atDay(1))) {
+            monthly.computeIfPresent(YearMonth.from(row.getRevenueDate()).format(MONTH_FORMATTER),
+                    (key, value) -> value.add(row.getRevenue()));
+        }
+        return monthly;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, BigDecimal> getTopProductRevenue(Long shopId, int limit) {
+        Map<String, BigDecimal> topProducts = new LinkedHashMap<>();
+        for (Object[] row : productDailyRevenueRepository.findTopProductRevenueByShop(shopId, PageRequest.of(0, limit))) {
+            if (row[0] != null) {
+                topProducts.put((String) row[0], toBigDecimal(row[1]));
+            }
+        }
+        return topProducts;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, BigDecimal> getCategoryRevenue(Long shopId) {
+        Map<String, BigDecimal> categoryRevenue = new LinkedHashMap<>();
+        for (Object[] row : productDailyRevenueRepository.findCategoryRevenueByShop(shopId)) {
+            String categoryName = (String) row[0];
+            if (categoryName == null || categoryName.trim().isEmpty()) {
+                categoryName = "Chưa phân loại";
+            }
+            categoryRevenue.merge(categoryName, toBigDecimal(row[1]), BigDecimal::add);
+        }
+        return categoryRevenue;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal bd) {
+            return bd;
+        }
+        return value instanceof Number n ? new BigDecimal(n.toString()) : BigDecimal.ZERO;
+    }
+
+    // === DỰNG LẠI ===
+
+    /**
+     * Dựng lại toàn bộ bảng tổng hợp từ các đơn DELIVERED, mỗi shop 1 transaction (xem rebuildShop).
+     * @return số dòng tổng hợp theo shop x ngày.
+     */
+    public int rebuildAll() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        int shopDays = 0;
+        List<Long> shopIds = shopRepository.findAllIds();
+        for (Long shopId : shopIds) {
+            Integer rows = template.execute(status -> rebuildShop(shopId));
+            shopDays += rows != null ? rows : 0;
+        }
+        logger.info("Rebuilt revenue rollups for {} shops: {} shop-day rows in {} ms.",
+                shopIds.size(), shopDays, System.currentTimeMillis() - start);
+        return shopDays;
+    }
+
+    // Khóa dòng shop (như delta trong apply) rồi mới đọc ORDERS: delta của đơn giao trong lúc dựng lại
+    // hoặc đã commit trước (được đếm trong GROUP BY), hoặc chờ tới khi dựng lại xong (cộng vào dòng mới)
+    private int rebuildShop(Long shopId) {
+        if (shopRepository.findByIdForUpdate(shopId).isEmpty()) {
+            return 0;
+        }
+        List<ShopDailyRevenue> shopRows = new ArrayList<>();
+        for (Object[] row : orderRepository.aggregateDailyRevenueByShop(shopId, OrderStatus.DELIVERED)) {
+            shopRows.add(new ShopDailyRevenue(null, (Long) row[0], (LocalDate) row[1],
+                    ((Number) row[2]).longValue(), toBigDecimal(row[3])));
+        }
+        List<ProductDailyRevenue> productRows = new ArrayList<>();
+        for (Object[] row : orderRepository.aggregateDailyRevenueByProduct(shopId, OrderStatus.DELIVERED)) {
+            productRows.add(new ProductDailyRevenue(null, (Long) row[0], (LocalDate) row[1], (Long) row[2], (Long) row[3],
+                    toBigDecimal(row[4]), ((Number) row[5]).longValue(), ((Number) row[6]).longValue()));
+        }
+
+        productDailyRevenueRepository.deleteByShopId(shopId);
+        shopDailyRevenueRepository.deleteByShopId(shopId);
+        shopDailyRevenueRepository.saveAll(shopRows);
+        productDailyRevenueRepository.saveAll(productRows);
+        return shopRows.size();
+    }
+
+    // Lần đầu triển khai: bảng tổng hợp rỗng nhưng đã có đơn giao thành công -> dựng lại
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (shopDailyRevenueRepository.count() == 0 && orderRepository.countByOrderStatus(OrderStatus.DELIVERED) > 0) {
+                logger.info("Revenue rollup tables are empty, backfilling from delivered orders...");
+                rebuildAll();
+            }
+        } catch (Exception e) {
+            logger.error("Could not backfill revenue rollups: {}", e.getMessage(), e);
+        }
+    }
+
+    // Đối soát định kỳ (mặc định tắt): dựng lại từ ORDERS để sửa sai lệch nếu có
+    @Scheduled(cron = "${oneshop.revenue.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        try {
+            rebuildAll();
+        } catch (Exception e) {
+            logger.error("Scheduled revenue rollup rebuild failed: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.oneshop.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional; 
 
 import com.oneshop.entity.ProductReview;
+import com.oneshop.event.ProductCatalogChangedEvent;
 import com.oneshop.entity.Order;
 import com.oneshop.entity.Product;
 import com.oneshop.entity.User;
@@ -48,6 +50,12 @@ public class ReviewService { // <<< CẦN ĐỔI THÀNH INTERFACE (NẾU CÓ) ho
     @Autowired
     private ReviewMediaRepository reviewMediaRepository; 
 
+    @Autowired
+    private ProductRatingService productRatingService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
 
     /**
      * Lưu đánh giá, bao gồm xử lý file ảnh/video.
@@ -121,8 +129,9 @@ public class ReviewService { // <<< CẦN ĐỔI THÀNH INTERFACE (NẾU CÓ) ho
             }
         }
         
-        // (Tùy chọn): Cập nhật lại rating trung bình cho sản phẩm
-        // ...
+        // 4. Cập nhật bảng tổng hợp rating (cùng transaction với review)
+        productRatingService.recordReview(productId, rating);
+        eventPublisher.publishEvent(ProductCatalogChangedEvent.of(productId, ProductCatalogChangedEvent.ChangeType.RATING_UPDATED));
     }
     
     // --- Helper để xác định loại Media ---
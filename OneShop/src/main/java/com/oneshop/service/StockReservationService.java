@@ -0,0 +1,236 @@
+package com.oneshop.service;
+
+import com.oneshop.config.VnPayConfig;
+import com.oneshop.entity.Order;
+import com.oneshop.entity.OrderDetail;
+import com.oneshop.entity.OrderStatus;
+import com.oneshop.entity.ProductVariant;
+import com.oneshop.event.ProductStockChangedEvent;
+import com.oneshop.repository.OrderBatchRepository;
+import com.oneshop.repository.OrderRepository;
+import com.oneshop.repository.ProductVariantRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Giữ / hoàn tồn kho biến thể cho đơn hàng.
+ * - Trừ kho bằng UPDATE có điều kiện (stock >= qty) ngay trên DB, mọi biến thể của đơn gửi trong 1 lô JDBC:
+ *   không bán vượt, không cần khóa bi quan hay @Version, chỉ khóa đúng dòng biến thể đến khi commit.
+ *   Bên gọi nên giữ hàng ở bước ghi cuối cùng trước commit để thời gian giữ khóa ngắn nhất.
+ * - Các biến thể được cập nhật theo thứ tự ID tăng dần để tránh deadlock giữa 2 đơn.
+ * - Tồn kho tổng của Product được cộng/trừ theo delta sau khi transaction commit (ProductStockChangedEvent),
+ *   nên dòng PRODUCTS không bị khóa suốt lúc đặt hàng và các biến thể khác nhau của 1 sản phẩm không phải chờ nhau.
+ *   Đổi lại tồn kho tổng có thể trễ một chút so với tổng tồn kho biến thể.
+ * - Hoàn kho (kể cả cho nhiều đơn cùng lúc) gộp theo biến thể và gửi 1 lô JDBC.
+ * - Đơn thanh toán online quá hạn (paymentExpiresAt) được tra cứu lại với VNPAY: đã thanh toán thì xác nhận,
+ *   chắc chắn chưa thanh toán thì hủy và hoàn kho, chưa rõ thì giữ nguyên và kiểm tra lại sau.
+ */
+@Service
+public class StockReservationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    @Autowired
+    private ProductVariantRepository variantRepository;
+
+    @Autowired
+    private OrderBatchRepository orderBatchRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    @Lazy
+    private OrderService orderService;
+
+    @Autowired
+    private VnPayConfig vnPayConfig;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Thời gian giữ hàng cho đơn chờ thanh toán online (link VNPAY hết hạn sau 15 phút)
+    @Value("${oneshop.order.payment-timeout-minutes:20}")
+    private long paymentTimeoutMinutes;
+
+    // Không tra cứu được kết quả thanh toán -> thử lại sau khoảng này
+    @Value("${oneshop.order.payment-recheck-minutes:10}")
+    private long paymentRecheckMinutes;
+
+    /**
+     * Hạn thanh toán cho đơn online tạo tại thời điểm {@code createdAt}.
+     */
+    public LocalDateTime paymentDeadline(LocalDateTime createdAt) {
+        return createdAt.plusMinutes(paymentTimeoutMinutes);
+    }
+
+    /**
+     * Trừ tồn kho cho các dòng đơn hàng. Phải chạy trong transaction tạo đơn:
+     * nếu 1 biến thể không đủ hàng thì ném lỗi và toàn bộ đơn (kể cả các dòng đã trừ) được rollback.
+     */
+    @Transactional
+    public void reserve(Collection<OrderDetail> details) {
+        Map<Long, Integer> quantities = quantitiesByVariant(details);
+        int[] updated = orderBatchRepository.decrementVariantStocksIfAvailable(quantities);
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            if (updated[i++] == 0) {
+                ProductVariant variant = variantOf(details, entry.getKey());
+                Integer remaining = variantRepository.findStockByVariantId(entry.getKey());
+                logger.info("Stock reservation rejected for variant {}: requested {}, available {}",
+                        entry.getKey(), entry.getValue(), remaining);
+                throw new RuntimeException("Sản phẩm '" + variant.getProduct().getName() + " - " +
+                        variant.getName() + "' không đủ hàng (chỉ còn " + (remaining != null ? remaining : 0) + ").");
+            }
+        }
+        publishProductStockDeltas(details, -1);
+        syncManagedVariants(details);
+        logger.debug("Reserved stock for {} variants.", quantities.size());
+    }
+
+    /**
+     * Hoàn lại tồn kho cho các dòng đơn hàng (hủy đơn, hết hạn thanh toán, trả hàng).
+     */
+    @Transactional
+    public void release(Collection<OrderDetail> details) {
+        Map<Long, Integer> quantities = quantitiesByVariant(details);
+        orderBatchRepository.incrementVariantStocks(quantities);
+        publishProductStockDeltas(details, 1);
+        syncManagedVariants(details);
+        logger.debug("Released stock for {} variants.", quantities.size());
+    }
+
+    /**
+     * Cộng delta tồn kho tổng của sản phẩm sau khi transaction giữ/hoàn hàng đã commit
+     * (transaction rollback thì không có gì để áp).
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductStockChanged(ProductStockChangedEvent event) {
+        if (event.deltasByProduct().isEmpty()) {
+            return;
+        }
+        try {
+            TransactionTemplate write = new TransactionTemplate(transactionManager);
+            write.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            write.executeWithoutResult(status -> orderBatchRepository.adjustProductStocks(event.deltasByProduct()));
+        } catch (Exception e) {
+            logger.error("Could not apply product stock deltas {}: {}", event.deltasByProduct(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Xử lý các đơn chờ thanh toán online đã quá hạn. Khách có thể đã trả tiền nhưng đóng trình duyệt
+     * trước khi về trang vnpay_return, nên mỗi đơn được tra cứu với VNPAY trước khi hủy.
+     * Mỗi đơn xử lý trong transaction riêng để 1 đơn lỗi không chặn các đơn khác.
+     */
+    @Scheduled(fixedDelayString = "${oneshop.order.reservation-sweep-ms:60000}")
+    public void releaseExpiredReservations() {
+        List<Long> expiredOrderIds = orderRepository.findPaymentExpiredOrderIds(
+                OrderStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, EXPIRY_BATCH_SIZE));
+        if (expiredOrderIds.isEmpty()) {
+            return;
+        }
+        int confirmed = 0;
+        int cancelled = 0;
+        int deferred = 0;
+        for (Long orderId : expiredOrderIds) {
+            try {
+                Order order = orderService.getOrderById(orderId);
+                VnPayConfig.TransactionStatus status = vnPayConfig.queryTransaction(orderId.toString(), order.getCreatedAt());
+                if (status == VnPayConfig.TransactionStatus.PAID) {
+                    orderService.updateOrderStatus(orderId, OrderStatus.CONFIRMED, order.getShop().getId());
+                    confirmed++;
+                } else if (status == VnPayConfig.TransactionStatus.UNPAID) {
+                    if (orderService.cancelUnpaidOrder(orderId)) {
+                        cancelled++;
+                    }
+                } else if (orderService.deferPaymentExpiry(orderId, LocalDateTime.now().plusMinutes(paymentRecheckMinutes))) {
+                    // Chưa rõ khách đã trả tiền hay chưa -> không hủy, giữ hàng và kiểm tra lại sau
+                    deferred++;
+                }
+            } catch (Exception e) {
+                logger.error("Could not settle expired payment of order {}: {}", orderId, e.getMessage(), e);
+            }
+        }
+        logger.info("Expired online payments: {} confirmed as paid, {} cancelled as unpaid, {} still unknown.",
+                confirmed, cancelled, deferred);
+        if (deferred > 0) {
+            logger.warn("{} orders past their payment deadline could not be checked with VNPAY; retrying in {} minutes.",
+                    deferred, paymentRecheckMinutes);
+        }
+    }
+
+    // Gộp số lượng theo biến thể; TreeMap -> thứ tự khóa dòng cố định
+    private Map<Long, Integer> quantitiesByVariant(Collection<OrderDetail> details) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderDetail detail : details) {
+            ProductVariant variant = detail.getProductVariant();
+            if (variant == null || variant.getVariantId() == null || detail.getQuantity() <= 0) {
+                continue;
+            }
+            quantities.merge(variant.getVariantId(), detail.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    // Tồn kho tổng = tổng tồn kho biến thể -> áp cùng delta lên Product sau commit (giá không đổi nên không tính lại)
+    private void publishProductStockDeltas(Collection<OrderDetail> details, int sign) {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        for (OrderDetail detail : details) {
+            ProductVariant variant = detail.getProductVariant();
+            if (variant == null || variant.getProduct() == null || detail.getQuantity() <= 0) {
+                continue;
+            }
+            deltas.merge(variant.getProduct().getProductId(), sign * detail.getQuantity(), Integer::sum);
+        }
+        if (!deltas.isEmpty()) {
+            eventPublisher.publishEvent(new ProductStockChangedEvent(deltas));
+        }
+    }
+
+    private ProductVariant variantOf(Collection<OrderDetail> details, Long variantId) {
+        return details.stream()
+                .map(OrderDetail::getProductVariant)
+                .filter(v -> v != null && variantId.equals(v.getVariantId()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Variant " + variantId + " not in order details"));
+    }
+
+    // UPDATE trực tiếp không cập nhật entity đang được quản lý -> đọc lại để tránh ghi đè stock cũ khi flush
+    private void syncManagedVariants(Collection<OrderDetail> details) {
+        Set<ProductVariant> refreshed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (OrderDetail detail : details) {
+            ProductVariant variant = detail.getProductVariant();
+            if (variant != null && refreshed.add(variant) && entityManager.contains(variant)) {
+                entityManager.refresh(variant);
+            }
+        }
+    }
+}
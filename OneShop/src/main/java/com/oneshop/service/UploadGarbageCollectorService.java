@@ -0,0 +1,204 @@
+package com.oneshop.service;
+
+import com.oneshop.repository.UploadReferenceRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Dọn file upload không còn được dùng (mark-and-sweep).
+ * - Mark: đếm tham chiếu tới từng file trên mọi cột lưu tên file (1 query UNION ALL).
+ * - Sweep: duyệt uploads/images (trừ ảnh thu nhỏ) và uploads/reviews; file không còn tham chiếu
+ *   và không được ghi/dùng lại trong grace-hours giờ qua thì bị xóa cùng ảnh thu nhỏ của nó.
+ *   Thời gian ân hạn bảo vệ file vừa upload mà transaction lưu sản phẩm/đánh giá chưa commit.
+ * - Không tìm thấy tham chiếu nào (DB rỗng, cấu hình sai) -> không xóa gì.
+ */
+@Service
+public class UploadGarbageCollectorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadGarbageCollectorService.class);
+
+    private static final List<String> URL_PREFIXES = List.of("/uploads/images/", "/uploads/reviews/");
+
+    @Autowired
+    private UploadReferenceRepository referenceRepository;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Autowired
+    private MediaService mediaService;
+
+    @Value("${oneshop.uploads.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${oneshop.uploads.gc.grace-hours:24}")
+    private long graceHours;
+
+    private final Path root = Paths.get("uploads");
+    private final Path imageRoot = root.resolve("images");
+    private final Path derivativeRoot = imageRoot.resolve("derivatives");
+    private final Path reviewRoot = root.resolve("reviews");
+    private final Path stagingRoot = root.resolve("tmp");
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public record GcResult(int files, int referencedFiles, int deletedFiles, long totalBytes, long reclaimedBytes,
+                           long deduplicatedBytes) {
+    }
+
+    private static final class Tally {
+        int files;
+        int referenced;
+        int deleted;
+        long totalBytes;
+        long reclaimedBytes;
+        long deduplicatedBytes;
+    }
+
+    @Scheduled(cron = "${oneshop.uploads.gc.cron:0 30 3 * * *}")
+    public void scheduledCollect() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            collect();
+        } catch (Exception e) {
+            logger.error("Upload garbage collection failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Chạy 1 lượt mark-and-sweep.
+     * @throws IllegalStateException nếu đang có lượt khác chạy
+     */
+    public GcResult collect() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Đang dọn file upload. Vui lòng thử lại sau.");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, Long> references = markReferences();
+            if (references.isEmpty()) {
+                logger.warn("Upload GC: no references found in the database, skipping sweep.");
+                return new GcResult(0, 0, 0, 0L, 0L, 0L);
+            }
+            long cutoff = start - graceHours * 3600_000L;
+            Tally tally = new Tally();
+            sweep(imageRoot, references, cutoff, true, tally);
+            sweep(reviewRoot, references, cutoff, false, tally);
+            cleanStaging(cutoff);
+            GcResult result = new GcResult(tally.files, tally.referenced, tally.deleted, tally.totalBytes,
+                    tally.reclaimedBytes, tally.deduplicatedBytes);
+            logger.info("Upload GC done in {} ms: {} files ({} bytes), {} referenced, {} deleted ({} bytes reclaimed), "
+                            + "{} bytes saved by deduplication.", System.currentTimeMillis() - start, result.files(),
+                    result.totalBytes(), result.referencedFiles(), result.deletedFiles(), result.reclaimedBytes(),
+                    result.deduplicatedBytes());
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Tên file đã chuẩn hóa (bỏ tiền tố URL) -> số tham chiếu
+    private Map<String, Long> markReferences() {
+        Map<String, Long> references = new HashMap<>();
+        referenceRepository.countReferences().forEach((value, count) -> {
+            if (value == null || value.isBlank()) {
+                return;
+            }
+            String name = value.trim();
+            for (String prefix : URL_PREFIXES) {
+                if (name.startsWith(prefix)) {
+                    name = name.substring(prefix.length());
+                    break;
+                }
+            }
+            references.merge(name, count, Long::sum);
+        });
+        return references;
+    }
+
+    private void sweep(Path directory, Map<String, Long> references, long cutoff, boolean images, Tally tally) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(f -> !f.startsWith(derivativeRoot) && Files.isRegularFile(f)).toList();
+        } catch (IOException e) {
+            logger.warn("Upload GC: could not list {}: {}", directory, e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace('\\', '/');
+            try {
+                long size = Files.size(file);
+                tally.files++;
+                tally.totalBytes += size;
+                Long count = references.get(name);
+                if (count != null) {
+                    tally.referenced++;
+                    tally.deduplicatedBytes += (count - 1) * size;
+                    continue;
+                }
+                if (Files.getLastModifiedTime(file).toMillis() >= cutoff) {
+                    continue; // Mới ghi/dùng lại gần đây, có thể thuộc transaction chưa commit
+                }
+                Files.delete(file);
+                mediaService.forget(root.relativize(file).toString().replace('\\', '/'));
+                if (images) {
+                    imageDerivativeService.deleteDerivatives(name);
+                }
+                removeEmptyParents(file.getParent(), directory);
+                tally.deleted++;
+                tally.reclaimedBytes += size;
+                logger.debug("Upload GC: deleted unreferenced {}", file);
+            } catch (IOException e) {
+                logger.warn("Upload GC: could not process {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    // File tạm của upload bị gián đoạn (JVM dừng giữa chừng)
+    private void cleanStaging(long cutoff) {
+        if (!Files.isDirectory(stagingRoot)) {
+            return;
+        }
+        try (Stream<Path> staged = Files.list(stagingRoot)) {
+            for (Path file : staged.toList()) {
+                if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Upload GC: could not clean {}: {}", stagingRoot, e.getMessage());
+        }
+    }
+
+    // Xóa thư mục phân mảnh (ab/cd) đã rỗng
+    private static void removeEmptyParents(Path dir, Path stopAt) {
+        while (dir != null && !dir.equals(stopAt) && dir.startsWith(stopAt)) {
+            try {
+                Files.delete(dir);
+            } catch (IOException e) {
+                return; // Còn file (DirectoryNotEmptyException) hoặc không xóa được
+            }
+            dir = dir.getParent();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.VendorDashboardDto;
+import com.oneshop.entity.OrderStatus;
+import com.oneshop.event.OrderChangedEvent;
+import com.oneshop.event.ProductCatalogChangedEvent;
+import com.oneshop.event.ProductCatalogChangedEvent.ChangeType;
+import com.oneshop.repository.ShopRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Số liệu trang dashboard của vendor: tính trong 1 query (subquery đếm đơn mới, đếm sản phẩm,
+ * cộng doanh thu tháng từ bảng tổng hợp) rồi cache theo shop.
+ * Cache bị xóa khi đơn của shop thay đổi hoặc sản phẩm được thêm/xóa; TTL ngắn chỉ là lưới an toàn.
+ * Mỗi lần xóa tăng "thế hệ" (của shop, hoặc toàn cache khi xóa hết); số liệu tính trước khi xóa không được giữ lại.
+ */
+@Service
+public class VendorDashboardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VendorDashboardService.class);
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Value("${oneshop.dashboard.cache-ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    private record CachedTiles(VendorDashboardDto tiles, YearMonth month, long expiresAt) {
+        boolean isValid(YearMonth currentMonth) {
+            return month.equals(currentMonth) && System.currentTimeMillis() < expiresAt;
+        }
+    }
+
+    // shopId -> số liệu đã tính
+    private final Map<Long, CachedTiles> cache = new ConcurrentHashMap<>();
+
+    // shopId -> số lần bị xóa; tăng trước khi xóa mục của shop
+    private final Map<Long, Long> shopGenerations = new ConcurrentHashMap<>();
+
+    // Tăng trước khi xóa toàn bộ cache
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Số liệu dashboard của shop (đọc từ cache nếu còn hiệu lực).
+     */
+    @Transactional(readOnly = true)
+    public VendorDashboardDto getDashboard(Long shopId) {
+        YearMonth currentMonth = YearMonth.now();
+        CachedTiles cached = cache.get(shopId);
+        if (cached != null && cached.isValid(currentMonth)) {
+            return cached.tiles();
+        }
+        long loadedGeneration = generation.get();
+        long loadedShopGeneration = shopGenerations.getOrDefault(shopId, 0L);
+        VendorDashboardDto tiles = shopRepository.findDashboardCounters(shopId, OrderStatus.PENDING,
+                        currentMonth.atDay(1), currentMonth.atEndOfMonth())
+                .orElseGet(() -> new VendorDashboardDto(0L, 0L, BigDecimal.ZERO));
+        CachedTiles entry = new CachedTiles(tiles, currentMonth, System.currentTimeMillis() + cacheTtlSeconds * 1000);
+        cache.put(shopId, entry);
+        // Đơn commit (và xóa cache) trong lúc đang query -> số liệu vừa tính có thể đã cũ, bỏ khỏi cache
+        // (xóa xảy ra sau put thì tự xóa mục này)
+        if (generation.get() != loadedGeneration || shopGenerations.getOrDefault(shopId, 0L) != loadedShopGeneration) {
+            cache.remove(shopId, entry);
+        }
+        logger.debug("Dashboard tiles computed for shop {}: {}", shopId, tiles);
+        return tiles;
+    }
+
+    public void evict(Long shopId) {
+        if (shopId != null) {
+            shopGenerations.merge(shopId, 1L, Long::sum);
+            cache.remove(shopId);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        evict(event.shopId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductCatalogChanged(ProductCatalogChangedEvent event) {
+        // Chỉ thêm/xóa sản phẩm làm đổi số lượng; sự kiện không mang shopId và hiếm xảy ra -> xóa toàn bộ cache
+        if (event.changeType() == ChangeType.CREATED || event.changeType() == ChangeType.DELETED) {
+            generation.incrementAndGet();
+            cache.clear();
+        }
+    }
+}
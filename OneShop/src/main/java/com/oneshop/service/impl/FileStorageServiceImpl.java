@@ -1,22 +1,50 @@
 package com.oneshop.service.impl;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.oneshop.model.StoredUpload;
 import com.oneshop.service.FileStorageService;
+import com.oneshop.service.ImageDerivativeService;
+import com.oneshop.service.MediaService;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
+/**
+ * Lưu file upload theo địa chỉ nội dung: tên file = SHA-256 của nội dung, chia thư mục con theo 4 ký tự đầu
+ * (vd "3f/a9/3fa9...e1.jpg"). Cùng 1 ảnh upload nhiều lần (nhiều biến thể, sửa sản phẩm) chỉ lưu 1 bản.
+ * Vì 1 file có thể được nhiều dòng dùng chung, delete() không xóa ngay file theo nội dung;
+ * UploadGarbageCollectorService đếm tham chiếu và dọn file không còn ai dùng.
+ * File cũ đặt tên UUID (trước khi có cơ chế này) vẫn đọc/xóa như trước.
+ */
 @Service
 public class FileStorageServiceImpl implements FileStorageService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileStorageServiceImpl.class);
+
+    // "ab/cd/<64 hex>.<đuôi>"
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+
     // Đường dẫn gốc của thư mục lưu file
     private final Path root = Paths.get("uploads");
     private final Path imageRoot = root.resolve("images");
@@ -25,6 +53,14 @@ public class FileStorageServiceImpl implements FileStorageService {
     private final Path reviewRoot = root.resolve("reviews"); 
     // ======================================
 
+    // File đang ghi dở (chưa biết hash), cùng ổ đĩa để đổi tên nguyên tử
+    private final Path stagingRoot = root.resolve("tmp");
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Autowired
+    private MediaService mediaService;
 
     @Override
     public void init() {
@@ -47,24 +83,40 @@ public class FileStorageServiceImpl implements FileStorageService {
 
     @Override
     public String save(MultipartFile file) {
+        return store(file).filename();
+    }
+
+    @Override
+    public StoredUpload store(MultipartFile file) {
         try {
             if (file.isEmpty()) {
                 throw new RuntimeException("Failed to store empty file.");
             }
-            
-            String originalFilename = file.getOriginalFilename();
-            // Lấy phần mở rộng (extension), an toàn hơn khi kiểm tra lastIndexOf
-            String extension = originalFilename.contains(".") ? originalFilename.substring(originalFilename.lastIndexOf(".")) : "";
-            String uniqueFilename = UUID.randomUUID().toString() + extension;
-
-            // Lưu file vào thư mục /uploads/images
-            Files.copy(file.getInputStream(), this.imageRoot.resolve(uniqueFilename));
-            
-            return uniqueFilename; // Trả về tên file duy nhất
+            // Lưu file vào thư mục /uploads/images; tạo ảnh thu nhỏ (card/detail/zoom) ở nền nếu là file mới
+            return storeContentAddressed(file, imageRoot, true);
         } catch (Exception e) {
             throw new RuntimeException("Failed to store file. Error: " + e.getMessage(), e);
         }
     }
+
+    @Override
+    public void discard(StoredUpload upload) {
+        if (upload == null || !upload.created()) {
+            return; // File đã có từ trước -> có thể đang được dùng
+        }
+        Path file = imageRoot.resolve(upload.filename());
+        try {
+            // Thời điểm sửa đổi khác -> 1 upload khác đã dùng lại file này, để bộ dọn file quyết định
+            if (Files.exists(file) && Files.getLastModifiedTime(file).toMillis() == upload.lastModified()) {
+                Files.delete(file);
+                mediaService.forget("images/" + upload.filename());
+                imageDerivativeService.deleteDerivatives(upload.filename());
+                logger.debug("Discarded upload {}.", upload.filename());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not discard upload {}: {}", upload.filename(), e.getMessage());
+        }
+    }
     
     // === TRIỂN KHAI PHƯƠNG THỨC MỚI CHO REVIEW MEDIA ===
     @Override
@@ -72,20 +124,78 @@ public class FileStorageServiceImpl implements FileStorageService {
         if (file.isEmpty()) {
             throw new IOException("Failed to store empty file.");
         }
-        
-        // Tạo tên file duy nhất
-        String originalFilename = file.getOriginalFilename();
-        String extension = originalFilename.contains(".") ? originalFilename.substring(originalFilename.lastIndexOf(".")) : "";
-        String uniqueFilename = UUID.randomUUID().toString() + extension;
-
-        // Lưu file vào thư mục /uploads/reviews
-        Files.copy(file.getInputStream(), this.imageRoot.resolve(uniqueFilename));
-        
-        // Trả về đường dẫn tương đối (ví dụ: /uploads/reviews/unique-name.jpg)
-        return uniqueFilename; 
+
+        // Video -> /uploads/reviews (phục vụ qua /media, hỗ trợ tua); ảnh -> /uploads/images để tạo ảnh thu nhỏ
+        // Trả về tên file; URL được dựng bởi MediaService.reviewMediaUrl
+        String contentType = file.getContentType();
+        if (contentType != null && contentType.startsWith("video/")) {
+            return storeContentAddressed(file, reviewRoot, false).filename();
+        }
+        return storeContentAddressed(file, imageRoot, true).filename();
     }
     // ======================================================
 
+    // Ghi ra file tạm đồng thời tính SHA-256, rồi chuyển vào vị trí theo hash (nếu đã có thì dùng lại bản cũ)
+    private StoredUpload storeContentAddressed(MultipartFile file, Path targetRoot, boolean imageDerivatives) throws IOException {
+        Files.createDirectories(stagingRoot);
+        Path staged = stagingRoot.resolve(UUID.randomUUID() + ".part");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, staged);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String filename = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extensionOf(file.getOriginalFilename());
+            Path target = targetRoot.resolve(filename);
+            boolean created = false;
+            if (Files.exists(target)) {
+                // Đã có: làm mới thời điểm sửa để bộ dọn file không xóa trong lúc transaction hiện tại chưa commit
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+                    created = true;
+                } catch (FileAlreadyExistsException e) {
+                    // Upload cùng nội dung song song đã ghi trước
+                    logger.trace("Blob {} stored concurrently.", filename);
+                }
+            }
+            // Vân tay cho URL /media tính ngay lúc lưu (hash có sẵn trong tên file), không phải lúc render
+            mediaService.register(root.relativize(target).toString().replace('\\', '/'));
+            if (imageDerivatives && (created || !imageDerivativeService.hasDerivatives(filename))) {
+                imageDerivativeService.scheduleDerivatives(filename);
+            }
+            logger.debug("Stored upload '{}' as {} ({}).", file.getOriginalFilename(), filename, created ? "new" : "deduplicated");
+            return new StoredUpload(filename, created, Files.getLastModifiedTime(target).toMillis());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Tên file theo nội dung ("ab/cd/<sha256>.ext"): có thể được nhiều dòng dùng chung.
+     */
+    public static boolean isContentAddressed(String filename) {
+        return filename != null && CONTENT_ADDRESSED_NAME.matcher(filename).matches();
+    }
+
+    private static String extensionOf(String originalFilename) {
+        if (originalFilename == null || !originalFilename.contains(".")) {
+            return "";
+        }
+        String extension = originalFilename.substring(originalFilename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,10}") ? "." + extension : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public Resource load(String filename) {
         try {
@@ -106,10 +216,17 @@ public class FileStorageServiceImpl implements FileStorageService {
 
     @Override
     public void delete(String filename) {
+        if (isContentAddressed(filename)) {
+            // Có thể đang được dòng khác dùng chung -> để bộ dọn file xóa khi không còn tham chiếu
+            logger.debug("Release of shared blob {} deferred to garbage collection.", filename);
+            return;
+        }
         try {
             // CÂN NHẮC: Hàm này chỉ xóa từ imageRoot. Nếu file là review, nó sẽ không xóa được.
             Path file = imageRoot.resolve(filename);
             Files.deleteIfExists(file);
+            mediaService.forget("images/" + filename);
+            imageDerivativeService.deleteDerivatives(filename);
         } catch (IOException e) {
             throw new RuntimeException("Could not delete the file. Error: " + e.getMessage(), e);
         }
@@ -2,18 +2,26 @@
 package com.oneshop.service.impl;
 
 import com.oneshop.dto.CartDto;
+import com.oneshop.dto.BulkOrderActionResult;
 import com.oneshop.dto.CartItemDto;
+import com.oneshop.dto.CursorPage;
 import com.oneshop.dto.PlaceOrderRequest;
 import com.oneshop.entity.*;
 import com.oneshop.entity.Role.RoleName;
+import com.oneshop.event.OrderChangedEvent;
+import com.oneshop.event.ProductCatalogChangedEvent;
 import com.oneshop.repository.*;
 import com.oneshop.service.*;
+import com.oneshop.specification.KeysetCursor;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.PersistenceContext;
 import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -23,12 +31,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -41,7 +51,6 @@ public class OrderServiceImpl implements OrderService {
     @Autowired private OrderRepository orderRepository;
     @Autowired private UserRepository userRepository;
     @Autowired private AddressRepository addressRepository;
-    @Autowired private ProductVariantRepository variantRepository;
     @Autowired private ProductRepository productRepository;
     @Autowired private UserService userService;
     @Autowired private ProductVariantService productVariantService;
@@ -52,6 +61,14 @@ public class OrderServiceImpl implements OrderService {
     @Autowired private ShippingCompanyRepository shippingCompanyRepository;
     @Autowired @Lazy private ProductService productService;
     @Autowired private RoleRepository roleRepository;
+    @Autowired private ApplicationEventPublisher eventPublisher;
+    @Autowired private StockReservationService stockReservationService;
+    @Autowired private OrderBatchRepository orderBatchRepository;
+    @Autowired private RevenueRollupService revenueRollupService;
+    @PersistenceContext private EntityManager entityManager;
+
+    // SQL Server giới hạn 2100 tham số / câu lệnh
+    private static final int BULK_CHUNK_SIZE = 1000;
 
     @Override
     @Transactional(readOnly = true)
@@ -88,15 +105,37 @@ public class OrderServiceImpl implements OrderService {
     public Order updateOrderStatus(Long orderId, OrderStatus newStatus, Long shopId) {
         logger.info("Updating order status - orderId: {}, newStatus: {}, shopId: {}", orderId, newStatus, shopId);
         Order order = getOrderDetails(orderId, shopId);
-        validateStatusTransition(order.getOrderStatus(), newStatus);
+        OrderStatus oldStatus = order.getOrderStatus();
+        validateStatusTransition(oldStatus, newStatus);
+
+        // Đơn vào/ra DELIVERED -> khóa dòng shop trước ORDERS (cùng thứ tự với dựng lại bảng tổng hợp doanh thu)
+        if ((newStatus == OrderStatus.DELIVERED) != (oldStatus == OrderStatus.DELIVERED)) {
+            revenueRollupService.lockShop(shopId);
+        }
+        // Chuyển trạng thái có điều kiện: tránh xác nhận đơn vừa bị hủy do hết hạn thanh toán (và ngược lại)
+        if (oldStatus != newStatus && orderRepository.compareAndSetStatus(orderId, oldStatus, newStatus) == 0) {
+            throw new IllegalStateException("Đơn hàng #" + orderId + " vừa được cập nhật bởi thao tác khác, vui lòng tải lại.");
+        }
 
         // Cập nhật số lượng bán khi xác nhận đơn hàng
-        if (order.getOrderStatus() == OrderStatus.PENDING && newStatus == OrderStatus.CONFIRMED) {
+        if (oldStatus == OrderStatus.PENDING && newStatus == OrderStatus.CONFIRMED) {
             updateProductSaleCounts(order);
         }
+        // Shop hủy đơn -> hoàn lại tồn kho đã giữ
+        if (newStatus == OrderStatus.CANCELLED && oldStatus != OrderStatus.CANCELLED) {
+            releaseStock(order);
+        }
+        // Cập nhật bảng tổng hợp doanh thu khi đơn vào/ra trạng thái DELIVERED
+        if (newStatus == OrderStatus.DELIVERED && oldStatus != OrderStatus.DELIVERED) {
+            order.setDeliveredAt(LocalDateTime.now());
+            revenueRollupService.recordDelivered(order);
+        } else if (oldStatus == OrderStatus.DELIVERED && newStatus != OrderStatus.DELIVERED) {
+            revenueRollupService.recordUndelivered(order);
+        }
 
         order.setOrderStatus(newStatus);
         Order updatedOrder = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderChangedEvent.of(updatedOrder));
         logger.info("Order {} status updated to {}", orderId, newStatus);
         return updatedOrder;
     }
@@ -126,52 +165,156 @@ public class OrderServiceImpl implements OrderService {
     }
 
     private void updateProductSaleCounts(Order order) {
-        Map<Long, Product> productsToUpdateMap = new HashMap<>();
+        updateProductSaleCounts(List.of(order));
+    }
 
-        for (OrderDetail detail : order.getOrderDetails()) {
-            ProductVariant variant = detail.getProductVariant();
-            if (variant == null || variant.getProduct() == null) {
-                logger.warn("OrderDetail {} in Order {} has null variant or product, skipping stock/sales update.", 
-                    detail.getId(), order.getId());
-                continue;
+    private void updateProductSaleCounts(Collection<Order> orders) {
+        // Gộp số lượng theo sản phẩm; tồn kho tổng đã được trừ lúc giữ hàng nên chỉ cộng số lượng bán
+        Map<Long, Integer> quantitiesByProduct = new TreeMap<>();
+
+        for (Order order : orders) {
+            for (OrderDetail detail : order.getOrderDetails()) {
+                ProductVariant variant = detail.getProductVariant();
+                if (variant == null || variant.getProduct() == null) {
+                    logger.warn("OrderDetail {} in Order {} has null variant or product, skipping sales update.", 
+                        detail.getId(), order.getId());
+                    continue;
+                }
+                quantitiesByProduct.merge(variant.getProduct().getProductId(), detail.getQuantity(), Integer::sum);
             }
+        }
+
+        if (!quantitiesByProduct.isEmpty()) {
+            orderBatchRepository.incrementSalesCounts(quantitiesByProduct);
+            logger.info("Updated sales count for {} products related to {} orders", 
+                quantitiesByProduct.size(), orders.size());
+            // Số lượng bán thay đổi -> khối "bán chạy" ở trang chủ cần làm mới
+            eventPublisher.publishEvent(new ProductCatalogChangedEvent(
+                new ArrayList<>(quantitiesByProduct.keySet()), ProductCatalogChangedEvent.ChangeType.SALES_UPDATED));
+        }
+    }
 
-            Product product = variant.getProduct();
-            int quantityBought = detail.getQuantity();
-
-            // Lấy hoặc tạo product để cập nhật
-            Product productToUpdate = productsToUpdateMap.computeIfAbsent(
-                product.getProductId(), 
-                id -> productRepository.findById(id)
-                    .orElseThrow(() -> new EntityNotFoundException("Product not found for update: " + id))
-            );
-
-            // Cập nhật số lượng đã bán
-            int currentSales = productToUpdate.getSalesCount();
-            productToUpdate.setSalesCount(currentSales + quantityBought);
-
-            // Cập nhật tồn kho tổng
-            Integer currentTotalStock = productToUpdate.getStock();
-            if (currentTotalStock != null) {
-                if (currentTotalStock < quantityBought) {
-                    logger.error("Critical Stock Error! Product {} (Total Stock: {}) insufficient for quantity {}.", 
-                        product.getProductId(), currentTotalStock, quantityBought);
-                    throw new IllegalStateException("Không đủ tồn kho tổng cho sản phẩm ID " + product.getProductId());
+    @Override
+    public BulkOrderActionResult bulkUpdateOrderStatus(Long shopId, Collection<Long> orderIds, OrderStatus newStatus) {
+        logger.info("Bulk updating {} orders of shop {} to {}", orderIds.size(), shopId, newStatus);
+        if (newStatus != OrderStatus.CONFIRMED && newStatus != OrderStatus.CANCELLED) {
+            throw new IllegalArgumentException("Chỉ hỗ trợ xác nhận hoặc hủy đơn hàng loạt.");
+        }
+        BulkOrderActionResult result = new BulkOrderActionResult(newStatus.name());
+        Map<Long, Order> orders = loadShopOrdersWithItems(shopId, orderIds);
+
+        // Kiểm tra chuyển trạng thái trong bộ nhớ, chỉ gửi các đơn hợp lệ xuống DB
+        List<Order> candidates = new ArrayList<>();
+        for (Long orderId : new LinkedHashSet<>(orderIds)) {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                result.failed(orderId, "Không tìm thấy đơn hàng hoặc đơn không thuộc shop của bạn.");
+                continue;
+            }
+            if (order.getOrderStatus() == newStatus) {
+                result.failed(orderId, "Đơn hàng đã ở trạng thái " + newStatus + ".");
+                continue;
+            }
+            try {
+                validateStatusTransition(order.getOrderStatus(), newStatus);
+                if (newStatus == OrderStatus.CONFIRMED && order.getOrderStatus() != OrderStatus.PENDING) {
+                    throw new IllegalStateException("Chỉ có thể xác nhận đơn đang chờ xác nhận.");
                 }
-                productToUpdate.setStock(currentTotalStock - quantityBought);
-                logger.debug("Updated Product {} aggregate stock: {} -> {}", 
-                    product.getProductId(), currentTotalStock, productToUpdate.getStock());
+                candidates.add(order);
+            } catch (IllegalStateException e) {
+                result.failed(orderId, e.getMessage());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return result;
+        }
+
+        int[] updated = orderBatchRepository.compareAndSetStatuses(
+            candidates.stream().map(Order::getId).toList(),
+            candidates.stream().map(Order::getOrderStatus).toList(),
+            newStatus);
+        List<Order> applied = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Order order = candidates.get(i);
+            if (updated[i] > 0) {
+                applied.add(order);
+                result.succeeded(order.getId());
+            } else {
+                result.failed(order.getId(), "Đơn hàng vừa được cập nhật bởi thao tác khác.");
+            }
+        }
+
+        if (newStatus == OrderStatus.CONFIRMED) {
+            updateProductSaleCounts(applied);
+        } else {
+            // Hoàn kho gộp cho tất cả đơn bị hủy
+            List<OrderDetail> details = applied.stream().flatMap(o -> o.getOrderDetails().stream()).toList();
+            if (!details.isEmpty()) {
+                stockReservationService.release(details);
+            }
+        }
+        // Trạng thái đã ghi bằng JDBC -> bỏ các entity khỏi ngữ cảnh để không bị ghi đè khi flush
+        applied.forEach(entityManager::detach);
+        if (!applied.isEmpty()) {
+            eventPublisher.publishEvent(new OrderChangedEvent(shopId, result.getSucceededOrderIds(), newStatus));
+        }
+        logger.info("Bulk {} for shop {}: {} succeeded, {} failed", newStatus, shopId, result.getSucceededCount(), result.getFailedCount());
+        return result;
+    }
+
+    @Override
+    public BulkOrderActionResult bulkAssignShipper(Long shopId, Collection<Long> orderIds, Long shipperId) {
+        logger.info("Bulk assigning shipper {} to {} orders of shop {}", shipperId, orderIds.size(), shopId);
+        User shipper = userRepository.findById(shipperId)
+            .orElseThrow(() -> new EntityNotFoundException("Không tìm thấy Shipper với ID: " + shipperId));
+        if (shipper.getRole() == null || shipper.getRole().getName() != RoleName.SHIPPER) {
+            throw new IllegalArgumentException("Người dùng ID " + shipperId + " không phải là Shipper.");
+        }
+        if (!shipper.isActivated()) {
+            throw new IllegalArgumentException("Tài khoản Shipper ID " + shipperId + " hiện đang bị khóa.");
+        }
+
+        BulkOrderActionResult result = new BulkOrderActionResult(OrderStatus.DELIVERING.name());
+        Map<Long, Order> orders = loadShopOrdersWithItems(shopId, orderIds);
+        List<Long> candidateIds = new ArrayList<>();
+        for (Long orderId : new LinkedHashSet<>(orderIds)) {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                result.failed(orderId, "Không tìm thấy đơn hàng hoặc đơn không thuộc shop của bạn.");
+            } else if (order.getOrderStatus() != OrderStatus.CONFIRMED) {
+                result.failed(orderId, "Chỉ có thể gán Shipper cho đơn hàng đã xác nhận (CONFIRMED).");
+            } else if (order.getShippingCompany() == null) {
+                result.failed(orderId, "Vui lòng chọn Đơn vị Vận chuyển trước khi gán Shipper.");
             } else {
-                logger.warn("Product {} has null aggregate stock. Cannot decrease stock.", product.getProductId());
+                candidateIds.add(orderId);
             }
         }
+        if (candidateIds.isEmpty()) {
+            return result;
+        }
 
-        // Lưu tất cả sản phẩm đã cập nhật
-        if (!productsToUpdateMap.isEmpty()) {
-            productRepository.saveAll(productsToUpdateMap.values());
-            logger.info("Updated sales count and aggregate stock for {} products related to order {}", 
-                productsToUpdateMap.size(), order.getId());
+        int[] updated = orderBatchRepository.assignShipper(candidateIds, shipperId);
+        for (int i = 0; i < candidateIds.size(); i++) {
+            if (updated[i] > 0) {
+                result.succeeded(candidateIds.get(i));
+                entityManager.detach(orders.get(candidateIds.get(i)));
+            } else {
+                result.failed(candidateIds.get(i), "Đơn hàng vừa được cập nhật bởi thao tác khác.");
+            }
+        }
+        logger.info("Bulk shipper assignment for shop {}: {} succeeded, {} failed", shopId, result.getSucceededCount(), result.getFailedCount());
+        return result;
+    }
+
+    // Đơn của shop kèm chi tiết + biến thể + sản phẩm, vài query fetch-join (chia nhỏ danh sách ID)
+    private Map<Long, Order> loadShopOrdersWithItems(Long shopId, Collection<Long> orderIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        Map<Long, Order> orders = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += BULK_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(i, Math.min(i + BULK_CHUNK_SIZE, ids.size()));
+            orderRepository.findByShopAndIdInWithItems(shopId, chunk).forEach(o -> orders.put(o.getId(), o));
         }
+        return orders;
     }
 
     @Override
@@ -185,73 +328,29 @@ public class OrderServiceImpl implements OrderService {
     @Transactional(readOnly = true)
     public BigDecimal getTotalRevenueByShop(Long shopId) {
         logger.debug("Calculating total revenue for shopId: {}", shopId);
-        BigDecimal totalRevenue = orderRepository.calculateTotalRevenueByShopIdAndStatus(shopId, OrderStatus.DELIVERED);
-        return totalRevenue != null ? totalRevenue : BigDecimal.ZERO;
+        return revenueRollupService.getTotalRevenue(shopId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public BigDecimal getCurrentMonthRevenueByShop(Long shopId) {
         logger.debug("Calculating current month revenue for shopId: {}", shopId);
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime startOfMonth = now.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime endOfMonth = now.withDayOfMonth(now.toLocalDate().lengthOfMonth())
-            .withHour(23).withMinute(59).withSecond(59).withNano(999999999);
-        
-        BigDecimal monthlyRevenue = orderRepository.calculateTotalRevenueByShopIdAndStatusBetweenDates(
-            shopId, OrderStatus.DELIVERED, startOfMonth, endOfMonth);
-        return monthlyRevenue != null ? monthlyRevenue : BigDecimal.ZERO;
+        YearMonth currentMonth = YearMonth.now();
+        return revenueRollupService.getRevenueBetween(shopId, currentMonth.atDay(1), currentMonth.atEndOfMonth());
     }
 
     @Override
     @Transactional(readOnly = true)
     public long countDeliveredOrdersByShop(Long shopId) {
         logger.debug("Counting delivered orders for shopId: {}", shopId);
-        return orderRepository.countByShopIdAndOrderStatus(shopId, OrderStatus.DELIVERED);
+        return revenueRollupService.countDeliveredOrders(shopId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Map<String, BigDecimal> getMonthlyRevenueData(Long shopId, int months) {
         logger.debug("Fetching monthly revenue data for last {} months for shopId: {}", months, shopId);
-        LocalDateTime startDate = LocalDateTime.now().minusMonths(months - 1)
-            .withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
-
-        // SỬA LỖI: Truyền status dưới dạng String
-        List<Object[]> results = orderRepository.findMonthlyRevenueByShopIdAndStatusSinceDate(
-            shopId, OrderStatus.DELIVERED.name(), startDate);
-
-        // Tạo map với tất cả các tháng trong khoảng thời gian
-        Map<String, BigDecimal> monthlyRevenueMap = new LinkedHashMap<>();
-        DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("yyyy-MM");
-        YearMonth currentMonth = YearMonth.from(startDate);
-        YearMonth endMonth = YearMonth.now();
-
-        while (!currentMonth.isAfter(endMonth)) {
-            monthlyRevenueMap.put(currentMonth.format(monthFormatter), BigDecimal.ZERO);
-            currentMonth = currentMonth.plusMonths(1);
-        }
-
-        // Điền dữ liệu từ kết quả query
-        for (Object[] result : results) {
-            String monthYear = (String) result[0];
-            BigDecimal revenue = (result[1] instanceof Number) ? 
-                new BigDecimal(((Number) result[1]).toString()) : BigDecimal.ZERO;
-            if (monthYear != null && revenue != null) {
-                monthlyRevenueMap.put(monthYear, revenue);
-            }
-        }
-
-        // Chỉ giữ lại số tháng yêu cầu
-        List<String> sortedKeys = new ArrayList<>(monthlyRevenueMap.keySet());
-        int startIndex = Math.max(0, sortedKeys.size() - months);
-        Map<String, BigDecimal> finalMap = new LinkedHashMap<>();
-        for (int i = startIndex; i < sortedKeys.size(); i++) {
-            String key = sortedKeys.get(i);
-            finalMap.put(key, monthlyRevenueMap.get(key));
-        }
-        
-        return finalMap;
+        return revenueRollupService.getMonthlyRevenue(shopId, months);
     }
 
     @Override
@@ -308,6 +407,39 @@ public class OrderServiceImpl implements OrderService {
         return orderPage;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Order> getOrdersByShopCursor(Long shopId, Optional<OrderStatus> status, String cursorToken, int size) {
+        logger.debug("Fetching orders by cursor for shopId: {}, status: {}", shopId, status);
+        OrderStatus statusFilter = status.orElse(null);
+        Pageable limit = PageRequest.of(0, size + 1); // Lấy dư 1 để biết còn trang sau
+
+        KeysetCursor cursor = KeysetCursor.decode(cursorToken);
+        List<Order> rows;
+        LocalDateTime lastCreatedAt = null;
+        if (cursor != null && cursor.matches("createdAt", Sort.Direction.DESC)) {
+            try {
+                lastCreatedAt = LocalDateTime.parse(cursor.getSortValue());
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Con trỏ phân trang không hợp lệ: " + cursor.getSortValue(), e);
+            }
+        }
+        if (lastCreatedAt != null) {
+            rows = orderRepository.findPageByShopAfter(shopId, statusFilter, lastCreatedAt, cursor.getLastId(), limit);
+        } else {
+            rows = orderRepository.findFirstPageByShop(shopId, statusFilter, limit);
+        }
+
+        boolean hasNext = rows.size() > size;
+        List<Order> content = hasNext ? new ArrayList<>(rows.subList(0, size)) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            Order last = content.get(content.size() - 1);
+            nextCursor = new KeysetCursor("createdAt", Sort.Direction.DESC, last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(content, nextCursor, hasNext, size);
+    }
+
     @Override
     public Order createOrderFromRequest(String username, PlaceOrderRequest orderRequest) {
         logger.info("Creating order from request for user: {}", username);
@@ -351,8 +483,12 @@ public class OrderServiceImpl implements OrderService {
         newOrder.setOrderStatus(OrderStatus.PENDING);
         newOrder.setPaymentMethod(orderRequest.getPaymentMethod());
 
+        // Thanh toán online: giữ hàng tới hạn thanh toán, quá hạn sẽ bị hủy tự động
+        if (!"cod".equalsIgnoreCase(orderRequest.getPaymentMethod())) {
+            newOrder.setPaymentExpiresAt(stockReservationService.paymentDeadline(newOrder.getCreatedAt()));
+        }
+
         BigDecimal subtotal = BigDecimal.ZERO;
-        List<ProductVariant> variantsToUpdateStock = new ArrayList<>();
         Shop orderShop = null;
 
         // 5. Xử lý từng sản phẩm trong đơn hàng
@@ -371,14 +507,12 @@ public class OrderServiceImpl implements OrderService {
                 throw new IllegalArgumentException("Không thể đặt hàng các sản phẩm từ nhiều gian hàng khác nhau.");
             }
 
-            // Kiểm tra và trừ tồn kho
+            // Kiểm tra nhanh tồn kho (việc trừ kho thực sự là UPDATE có điều kiện ở bước 10)
             int requestedQuantity = cartItem.getQuantity();
             if (variant.getStock() < requestedQuantity) {
                 throw new RuntimeException("Sản phẩm '" + variant.getProduct().getName() + " - " + 
                     variant.getName() + "' không đủ hàng (chỉ còn " + variant.getStock() + ").");
             }
-            variant.setStock(variant.getStock() - requestedQuantity);
-            variantsToUpdateStock.add(variant);
 
             // Tạo order detail
             OrderDetail detail = new OrderDetail();
@@ -433,35 +567,23 @@ public class OrderServiceImpl implements OrderService {
         newOrder.recalculateTotal();
         Order savedOrder = orderRepository.save(newOrder);
 
-        // 9. Cập nhật tồn kho
-        if (!variantsToUpdateStock.isEmpty()) {
-            variantRepository.saveAll(variantsToUpdateStock);
-            logger.debug("Updated stock for {} variants.", variantsToUpdateStock.size());
-        }
-
-        // 10. Cập nhật tồn kho tổng cho sản phẩm cha
-        Set<Product> parentProductsToUpdate = variantsToUpdateStock.stream()
-            .map(ProductVariant::getProduct)
-            .filter(Objects::nonNull)
-            .collect(Collectors.toSet());
-            
-        if (!parentProductsToUpdate.isEmpty()) {
-            parentProductsToUpdate.forEach(product -> {
-                try {
-                    productService.updateProductStockAndPriceFromVariants(product);
-                } catch (Exception e) {
-                    logger.error("Error updating aggregate stock/price for parent product {}: {}", 
-                        product.getProductId(), e.getMessage());
-                }
-            });
-        }
+        eventPublisher.publishEvent(OrderChangedEvent.of(savedOrder));
 
-        // 11. Xóa voucher và sản phẩm khỏi giỏ hàng
-        promotionService.removeVoucher(username);
+        // 9. Xóa sản phẩm khỏi giỏ hàng; voucher (lưu trong session) chỉ bỏ khi đơn đã commit
         List<Long> orderedVariantIds = itemsToOrder.stream()
             .map(CartItemDto::getProductId)
             .collect(Collectors.toList());
         cartService.clearCartItems(user.getId(), orderedVariantIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                promotionService.removeVoucher(username);
+            }
+        });
+
+        // 10. Giữ tồn kho: trừ atomic các biến thể trong 1 lô, thiếu hàng -> rollback cả đơn.
+        // Là lần ghi cuối trước commit để khóa dòng biến thể được giữ ngắn nhất
+        stockReservationService.reserve(savedOrder.getOrderDetails());
 
         logger.info("Order {} created successfully for user {}", savedOrder.getId(), username);
         return savedOrder;
@@ -491,41 +613,18 @@ public class OrderServiceImpl implements OrderService {
                 "Không thể hủy đơn hàng ở trạng thái này (" + currentStatus + ").");
         }
 
+        // Chỉ 1 trong các thao tác hủy đồng thời (khách / shop / hết hạn thanh toán) được hoàn kho
+        if (orderRepository.compareAndSetStatus(orderId, currentStatus, OrderStatus.CANCELLED) == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                "Đơn hàng vừa được cập nhật, vui lòng tải lại trang.");
+        }
         order.setOrderStatus(OrderStatus.CANCELLED);
 
         // Hoàn lại tồn kho
-        List<ProductVariant> variantsToRestoreStock = new ArrayList<>();
-        if (order.getOrderDetails() != null) {
-            for (OrderDetail detail : order.getOrderDetails()) {
-                ProductVariant variant = detail.getProductVariant();
-                if (variant != null) {
-                    variant.setStock(variant.getStock() + detail.getQuantity());
-                    variantsToRestoreStock.add(variant);
-                    logger.debug("Restoring stock for variant {}: +{}", variant.getVariantId(), detail.getQuantity());
-                }
-            }
-        }
-
-        if (!variantsToRestoreStock.isEmpty()) {
-            variantRepository.saveAll(variantsToRestoreStock);
-            
-            // Cập nhật tồn kho tổng cho sản phẩm cha
-            Set<Product> parentProductsToUpdate = variantsToRestoreStock.stream()
-                .map(ProductVariant::getProduct)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
-                
-            parentProductsToUpdate.forEach(product -> {
-                try {
-                    productService.updateProductStockAndPriceFromVariants(product);
-                } catch (Exception e) {
-                    logger.error("Error updating aggregate stock/price for parent product {}: {}", 
-                        product.getProductId(), e.getMessage());
-                }
-            });
-        }
+        releaseStock(order);
 
         orderRepository.save(order);
+        eventPublisher.publishEvent(OrderChangedEvent.of(order));
         logger.info("Order {} successfully cancelled by user {}", orderId, username);
     }
 
@@ -537,6 +636,38 @@ public class OrderServiceImpl implements OrderService {
             .orElseThrow(() -> new IllegalArgumentException("Đơn hàng #" + orderId + " không tồn tại!"));
     }
 
+    @Override
+    public boolean cancelUnpaidOrder(Long orderId) {
+        Order order = orderRepository.findById(orderId).orElse(null);
+        // Chỉ áp dụng cho đơn thanh toán online còn đang chờ thanh toán
+        if (order == null || order.getPaymentExpiresAt() == null) {
+            return false;
+        }
+        if (orderRepository.compareAndSetStatus(orderId, OrderStatus.PENDING, OrderStatus.CANCELLED) == 0) {
+            logger.debug("Order {} is no longer pending payment, nothing to release.", orderId);
+            return false;
+        }
+        order.setOrderStatus(OrderStatus.CANCELLED);
+        releaseStock(order);
+        orderRepository.save(order);
+        eventPublisher.publishEvent(OrderChangedEvent.of(order));
+        logger.info("Unpaid order {} cancelled and its reserved stock released.", orderId);
+        return true;
+    }
+
+    @Override
+    public boolean deferPaymentExpiry(Long orderId, LocalDateTime nextCheckAt) {
+        return orderRepository.deferPaymentExpiry(orderId, OrderStatus.PENDING, nextCheckAt) > 0;
+    }
+
+    // Hoàn tồn kho biến thể của đơn (kèm tồn kho tổng của sản phẩm cha)
+    private void releaseStock(Order order) {
+        if (order.getOrderDetails() == null || order.getOrderDetails().isEmpty()) {
+            return;
+        }
+        stockReservationService.release(order.getOrderDetails());
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Order> getAssignedOrders(Long shipperId) {
@@ -679,40 +810,25 @@ public class OrderServiceImpl implements OrderService {
             throw new IllegalArgumentException("Trạng thái cập nhật không hợp lệ cho Shipper.");
         }
 
+        if (newStatus == OrderStatus.DELIVERED && order.getShop() != null) {
+            revenueRollupService.lockShop(order.getShop().getId());
+        }
+        // Chuyển trạng thái có điều kiện: mỗi lần giao/trả chỉ được ghi nhận đúng 1 lần
+        if (orderRepository.compareAndSetStatus(orderId, currentStatus, newStatus) == 0) {
+            throw new IllegalStateException("Đơn hàng #" + orderId + " vừa được cập nhật bởi thao tác khác.");
+        }
         // Hoàn lại tồn kho nếu trả hàng hoặc hủy
         if (newStatus == OrderStatus.RETURNED || newStatus == OrderStatus.CANCELLED) {
-            List<ProductVariant> variantsToRestoreStock = new ArrayList<>();
-            if (order.getOrderDetails() != null) {
-                for (OrderDetail detail : order.getOrderDetails()) {
-                    ProductVariant variant = detail.getProductVariant();
-                    if (variant != null) {
-                        variant.setStock(variant.getStock() + detail.getQuantity());
-                        variantsToRestoreStock.add(variant);
-                    }
-                }
-            }
-            
-            if (!variantsToRestoreStock.isEmpty()) {
-                variantRepository.saveAll(variantsToRestoreStock);
-                // Cập nhật tồn kho tổng cho sản phẩm cha
-                Set<Product> parentProductsToUpdate = variantsToRestoreStock.stream()
-                    .map(ProductVariant::getProduct)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet());
-                    
-                parentProductsToUpdate.forEach(product -> {
-                    try {
-                        productService.updateProductStockAndPriceFromVariants(product);
-                    } catch (Exception e) {
-                        logger.error("Error updating aggregate stock/price for parent product {}: {}", 
-                            product.getProductId(), e.getMessage());
-                    }
-                });
-            }
+            releaseStock(order);
+        }
+        if (newStatus == OrderStatus.DELIVERED) {
+            order.setDeliveredAt(LocalDateTime.now());
+            revenueRollupService.recordDelivered(order);
         }
 
         order.setOrderStatus(newStatus);
         orderRepository.save(order);
+        eventPublisher.publishEvent(OrderChangedEvent.of(order));
         logger.info("Order {} status updated to {} by shipper {}", orderId, newStatus, shipperId);
 
         // Gửi email xác nhận giao hàng
@@ -732,40 +848,13 @@ public class OrderServiceImpl implements OrderService {
     @Transactional(readOnly = true)
     public Map<String, BigDecimal> getTopProductRevenueByShop(Long shopId, int limit) {
         logger.debug("Fetching top {} product revenue for shopId: {}", limit, shopId);
-        
-        Pageable topPageable = PageRequest.of(0, limit);
-        List<Object[]> results = orderRepository.findTopProductRevenueByShop(shopId, OrderStatus.DELIVERED, topPageable);
-        
-        Map<String, BigDecimal> topProducts = new LinkedHashMap<>();
-        for (Object[] result : results) {
-            String productName = (String) result[0];
-            BigDecimal revenue = (result[1] instanceof Number) ? 
-                new BigDecimal(((Number) result[1]).toString()) : BigDecimal.ZERO;
-            if (productName != null) {
-                topProducts.put(productName, revenue);
-            }
-        }
-        return topProducts;
+        return revenueRollupService.getTopProductRevenue(shopId, limit);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Map<String, BigDecimal> getCategoryRevenueDistributionByShop(Long shopId) {
         logger.debug("Fetching category revenue distribution for shopId: {}", shopId);
-        
-        List<Object[]> results = orderRepository.findCategoryRevenueByShop(shopId, OrderStatus.DELIVERED);
-        
-        Map<String, BigDecimal> categoryRevenue = new LinkedHashMap<>();
-        for (Object[] result : results) {
-            String categoryName = (String) result[0];
-            if (categoryName == null || categoryName.trim().isEmpty()) {
-                categoryName = "Chưa phân loại";
-            }
-            BigDecimal revenue = (result[1] instanceof Number) ? 
-                new BigDecimal(((Number) result[1]).toString()) : BigDecimal.ZERO;
-
-            categoryRevenue.put(categoryName, categoryRevenue.getOrDefault(categoryName, BigDecimal.ZERO).add(revenue));
-        }
-        return categoryRevenue;
+        return revenueRollupService.getCategoryRevenue(shopId);
     }
 }
\ No newline at end of file
@@ -1,14 +1,22 @@
 package com.oneshop.service.impl;
 
+import com.oneshop.dto.CursorPage;
 import com.oneshop.dto.ProductDto;
 import com.oneshop.dto.VariantDto;
+import com.oneshop.model.StoredUpload;
 import com.oneshop.entity.*;
 import com.oneshop.enums.ProductStatus;
+import com.oneshop.event.ProductCatalogChangedEvent;
+import com.oneshop.event.ProductCatalogChangedEvent.ChangeType;
 import com.oneshop.repository.*;
 import com.oneshop.service.BrandService;
 import com.oneshop.service.CategoryService;
 import com.oneshop.service.FileStorageService;
+import com.oneshop.service.ImageIngestionService;
+import com.oneshop.service.ProductEnrichmentService;
+import com.oneshop.service.ProductSearchIndexService;
 import com.oneshop.service.ProductService;
+import com.oneshop.specification.KeysetCursor;
 import com.oneshop.specification.ProductSpecification;
 
 import jakarta.persistence.EntityNotFoundException;
@@ -17,7 +25,7 @@ import org.hibernate.Hibernate; // Import Hibernate
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -25,13 +33,16 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 // import java.io.IOException; // Không cần nữa nếu Exception được bọc
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -39,17 +50,33 @@ public class ProductServiceImpl implements ProductService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProductServiceImpl.class);
 
+    // Các khóa sắp xếp hỗ trợ phân trang keyset (có index (key, product_id))
+    private static final Set<String> KEYSET_SORT_PROPERTIES = Set.of("productId", "price", "salesCount", "averageRating");
+
     @Autowired private ProductRepository productRepository;
     @Autowired private ShopRepository shopRepository;
     @Autowired private CategoryRepository categoryRepository;
     @Autowired private ProductImageRepository productImageRepository;
-    // Sử dụng @Lazy để tránh lỗi vòng lặp phụ thuộc (circular dependency)
-    // vì ProductReviewRepository có thể cũng cần ProductService
-    @Autowired @Lazy private ProductReviewRepository reviewRepository;
     @Autowired private FileStorageService fileStorageService;
     @Autowired private BrandService brandService;
     @Autowired private ProductVariantRepository variantRepository;
     @Autowired private CategoryService categoryService;
+    @Autowired private ProductEnrichmentService productEnrichmentService;
+    @Autowired private ApplicationEventPublisher eventPublisher;
+    @Autowired private ProductSearchIndexService productSearchIndexService;
+    @Autowired private ImageIngestionService imageIngestionService;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    // Ảnh đã ghi trước khi mở transaction: generalCount phần tử đầu là ảnh chung, phần sau ứng với từng biến thể (null nếu không có)
+    private record StagedImages(List<StoredUpload> uploads, int generalCount) {
+        List<String> generalFilenames() {
+            return uploads.subList(0, generalCount).stream().filter(Objects::nonNull).map(StoredUpload::filename).toList();
+        }
+
+        List<String> variantFilenames() {
+            return uploads.subList(generalCount, uploads.size()).stream().map(u -> u != null ? u.filename() : null).toList();
+        }
+    }
 
     // --- Các phương thức cho Vendor (Thêm, Sửa, Xóa, Lấy danh sách...) ---
 
@@ -58,11 +85,19 @@ public class ProductServiceImpl implements ProductService {
     public Page<Product> getProductsByShop(Long shopId, Pageable pageable) {
         logger.debug("Fetching products for shop ID: {} with pageable: {}", shopId, pageable);
         Page<Product> productPage = productRepository.findByShopId(shopId, pageable);
-        // Gọi setProductDetails cho từng sản phẩm trong trang hiện tại
-        productPage.getContent().forEach(this::setProductDetails);
+        // Gán trường transient cho cả trang bằng query gộp
+        setProductDetails(productPage.getContent());
         return productPage;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Product> getProductsByShopCursor(Long shopId, String cursor, int size) {
+        logger.debug("Fetching products for shop ID: {} by cursor, size: {}", shopId, size);
+        Specification<Product> spec = (root, query, cb) -> cb.equal(root.get("shop").get("id"), shopId);
+        return findByCursor(spec, "productId", Sort.Direction.DESC, cursor, size);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Optional<Product> getProductByIdForVendor(Long productId, Long shopId) {
@@ -79,9 +114,18 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Product addProduct(ProductDto productDto, List<MultipartFile> images, Long shopId) {
         logger.info("Adding new product '{}' for shop ID: {}", productDto.getProductName(), shopId);
+        // Kiểm tra tính hợp lệ của các biến thể
+        validateVariants(productDto.getVariants());
+
+        // Kiểm tra + ghi ảnh song song TRƯỚC khi mở transaction; transaction chỉ lưu thông tin sản phẩm
+        StagedImages staged = stageImages(images, productDto.getVariants());
+        return executeWithStagedImages(staged,
+                () -> addProductInTransaction(productDto, shopId, staged.generalFilenames(), staged.variantFilenames()));
+    }
+
+    private Product addProductInTransaction(ProductDto productDto, Long shopId, List<String> generalImageFilenames, List<String> variantImageFilenames) {
         // Tìm các entity liên quan (Shop, Category, Brand)
         Shop shop = shopRepository.findById(shopId)
                 .orElseThrow(() -> new EntityNotFoundException("Shop not found with ID: " + shopId));
@@ -89,39 +133,31 @@ public class ProductServiceImpl implements ProductService {
                 .orElseThrow(() -> new EntityNotFoundException("Category not found with ID: " + productDto.getCategoryId()));
         Brand brand = resolveBrand(productDto.getBrandId(), productDto.getNewBrandName()); // Xử lý Brand (chọn hoặc tạo mới)
 
-        // Kiểm tra tính hợp lệ của các biến thể
-        validateVariants(productDto.getVariants());
-
-        List<String> savedGeneralImageFilenames = new ArrayList<>();
-        List<String> savedVariantImageFilenames = new ArrayList<>();
         Product product = new Product();
 
         try {
-            // Lưu ảnh chung (nếu có)
-            savedGeneralImageFilenames.addAll(saveImages(images));
             // Gán ảnh chung đã lưu vào đối tượng Product
-            setProductImages(product, savedGeneralImageFilenames);
+            setProductImages(product, generalImageFilenames);
 
             // Map thông tin cơ bản từ DTO sang Entity Product
             mapDtoToEntity(productDto, product, category, shop, brand);
             product.setPublished(true); // Mặc định publish khi thêm mới (Admin sẽ duyệt sau)
             product.setStatus(ProductStatus.PENDING); // Trạng thái chờ duyệt
 
-            // Map thông tin biến thể và lưu ảnh biến thể (nếu có)
-            mapAndSaveVariants(productDto.getVariants(), product, savedVariantImageFilenames);
+            // Map thông tin biến thể (ảnh biến thể đã được lưu)
+            mapAndSaveVariants(productDto.getVariants(), product, variantImageFilenames);
             // Cập nhật giá và tồn kho tổng của Product dựa trên các biến thể
             updateProductPriceAndStockFromVariants(product);
 
             // Lưu Product (bao gồm cả Variants và Images do cascade)
             Product savedProduct = productRepository.save(product);
             logger.info("Successfully added product ID: {}", savedProduct.getProductId());
+            publishCatalogChanged(savedProduct.getProductId(), ChangeType.CREATED);
             return savedProduct;
 
         } catch (Exception e) {
-            // Xử lý lỗi: Xóa các file ảnh đã lưu nếu quá trình lưu thất bại
+            // Xử lý lỗi: ảnh đã lưu được hủy khi transaction rollback (ImageIngestionService.discardOnRollback)
             logger.error("Error during addProduct process for '{}': {}", productDto.getProductName(), e.getMessage(), e);
-            deleteImageFiles(savedGeneralImageFilenames);
-            deleteImageFiles(savedVariantImageFilenames);
 
             // Ném lại các loại Exception khác nhau để Controller xử lý phù hợp
             if (e instanceof DataIntegrityViolationException) {
@@ -129,15 +165,25 @@ public class ProductServiceImpl implements ProductService {
             } else if (e instanceof IllegalArgumentException || e instanceof EntityNotFoundException) {
                 throw e; // Ném lại lỗi validation hoặc không tìm thấy entity
             }
-            // Các lỗi khác (bao gồm lỗi lưu ảnh đã được bọc trong RuntimeException)
+            // Các lỗi khác
             throw new RuntimeException("Lỗi không xác định khi thêm sản phẩm: " + e.getMessage(), e);
         }
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Product updateProduct(Long productId, ProductDto productDto, List<MultipartFile> newImages, Long shopId) {
         logger.info("Updating product ID: {} for shop ID: {}", productId, shopId);
+        // Kiểm tra biến thể
+        validateVariants(productDto.getVariants());
+
+        // Kiểm tra + ghi ảnh mới song song TRƯỚC khi mở transaction
+        StagedImages staged = stageImages(newImages, productDto.getVariants());
+        return executeWithStagedImages(staged,
+                () -> updateProductInTransaction(productId, productDto, shopId, staged.generalFilenames(), staged.variantFilenames()));
+    }
+
+    private Product updateProductInTransaction(Long productId, ProductDto productDto, Long shopId,
+                                               List<String> newGeneralImageFilenames, List<String> variantImageFilenames) {
         // Tìm sản phẩm hiện có, đảm bảo thuộc đúng shop
         Product existingProduct = productRepository.findById(productId)
                 .filter(p -> p.getShop() != null && p.getShop().getId().equals(shopId))
@@ -151,32 +197,25 @@ public class ProductServiceImpl implements ProductService {
                 .orElseThrow(() -> new EntityNotFoundException("Category not found with ID: " + productDto.getCategoryId()));
         Brand brand = resolveBrand(productDto.getBrandId(), productDto.getNewBrandName());
 
-        // Kiểm tra biến thể
-        validateVariants(productDto.getVariants());
-
-        List<String> savedNewGeneralImageFilenames = new ArrayList<>();
-        List<String> savedNewVariantImageFilenames = new ArrayList<>();
         List<String> oldVariantImagesToDelete = new ArrayList<>(); // Danh sách ảnh cũ cần xóa
 
         try {
-            // Lưu ảnh chung mới (nếu có)
-            savedNewGeneralImageFilenames.addAll(saveImages(newImages));
             // Map thông tin cơ bản
             mapDtoToEntity(productDto, existingProduct, category, existingProduct.getShop(), brand);
             // Khi cập nhật, luôn đặt lại trạng thái chờ duyệt
             existingProduct.setStatus(ProductStatus.PENDING);
 
             // Cập nhật/Thêm/Xóa biến thể và ảnh biến thể
-            updateAndSaveVariants(productDto.getVariants(), existingProduct, savedNewVariantImageFilenames, oldVariantImagesToDelete);
+            updateAndSaveVariants(productDto.getVariants(), existingProduct, variantImageFilenames, oldVariantImagesToDelete);
             // Cập nhật lại giá/tồn kho tổng
             updateProductPriceAndStockFromVariants(existingProduct);
 
             // Gán ảnh chung mới vào sản phẩm (nếu có ảnh mới)
-            if (!savedNewGeneralImageFilenames.isEmpty()) {
+            if (!newGeneralImageFilenames.isEmpty()) {
                 // Có thể cần logic xóa ảnh chung cũ ở đây nếu muốn thay thế hoàn toàn
                 // Ví dụ: deleteImageFiles(existingProduct.getImages().stream().map(ProductImage::getImageUrl).collect(Collectors.toList()));
                 // existingProduct.getImages().clear(); // Xóa liên kết ảnh cũ
-                setProductImages(existingProduct, savedNewGeneralImageFilenames);
+                setProductImages(existingProduct, newGeneralImageFilenames);
             }
 
             // Lưu sản phẩm đã cập nhật
@@ -185,13 +224,12 @@ public class ProductServiceImpl implements ProductService {
             deleteImageFiles(oldVariantImagesToDelete);
 
             logger.info("Successfully updated product ID: {}", updatedProduct.getProductId());
+            publishCatalogChanged(updatedProduct.getProductId(), ChangeType.UPDATED);
             return updatedProduct;
 
         } catch (Exception e) {
-            // Xử lý lỗi: Xóa ảnh mới đã lưu nếu có lỗi
+            // Xử lý lỗi: ảnh mới đã lưu được hủy khi transaction rollback
             logger.error("Error during updateProduct process for ID {}: {}", productId, e.getMessage(), e);
-            deleteImageFiles(savedNewGeneralImageFilenames);
-            deleteImageFiles(savedNewVariantImageFilenames);
 
             // Ném lại Exception
              if (e instanceof DataIntegrityViolationException) {
@@ -203,6 +241,39 @@ public class ProductServiceImpl implements ProductService {
         }
     }
 
+    // Ghi ảnh chung + ảnh của từng biến thể trong 1 lô song song (ngoài transaction)
+    private StagedImages stageImages(List<MultipartFile> generalImages, List<VariantDto> variantDtos) {
+        List<MultipartFile> files = new ArrayList<>();
+        if (generalImages != null) {
+            files.addAll(generalImages);
+        }
+        int generalCount = files.size();
+        if (variantDtos != null) {
+            variantDtos.forEach(dto -> files.add(dto.getVariantImageFile()));
+        }
+        List<StoredUpload> uploads = imageIngestionService.ingest(files);
+        return new StagedImages(uploads.isEmpty() ? Collections.nCopies(files.size(), null) : uploads, generalCount);
+    }
+
+    private TransactionTemplate writeTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    // Chạy phần lưu sản phẩm trong transaction; ảnh đã ghi trước đó bị hủy nếu transaction rollback
+    // (discardOnRollback), hoặc nếu lỗi xảy ra ngoài transaction (không mở được transaction, lỗi khi commit...)
+    private Product executeWithStagedImages(StagedImages staged, Supplier<Product> work) {
+        try {
+            return writeTemplate().execute(status -> {
+                imageIngestionService.discardOnRollback(staged.uploads());
+                return work.get();
+            });
+        } catch (RuntimeException | Error e) {
+            // Hủy lại lần nữa là vô hại: file đã hủy thì không còn, file được dùng lại từ trước thì không bị xóa
+            imageIngestionService.discard(staged.uploads());
+            throw e;
+        }
+    }
+
     @Override
     @Transactional
     public void deleteProduct(Long productId, Long shopId) {
@@ -238,6 +309,7 @@ public class ProductServiceImpl implements ProductService {
             // Đảm bảo lệnh xóa được gửi đi (tùy chọn, có thể không cần)
             productRepository.flush();
             logger.info("Successfully initiated deletion for product entity ID: {} from database.", productId);
+            publishCatalogChanged(productId, ChangeType.DELETED);
 
             // Sau khi xóa entity thành công, tiến hành xóa file vật lý
             deleteImageFiles(imageFilenamesToDelete);
@@ -289,7 +361,7 @@ public class ProductServiceImpl implements ProductService {
         Page<Product> productPage = productRepository.findAll(spec, pageable);
         List<Product> products = productPage.getContent();
         // Tính toán và gán các trường transient cho từng sản phẩm
-        products.forEach(this::setProductDetails);
+        setProductDetails(products);
         logger.info("findBestSellingProducts - Found {} products.", products.size());
         return products;
     }
@@ -307,7 +379,7 @@ public class ProductServiceImpl implements ProductService {
 
         Page<Product> productPage = productRepository.findAll(spec, effectivePageable);
         // Tính toán và gán các trường transient
-        productPage.getContent().forEach(this::setProductDetails);
+        setProductDetails(productPage.getContent());
         logger.info("findNewestProducts - Found {} products on page {}.", productPage.getNumberOfElements(), effectivePageable.getPageNumber());
         return productPage;
     }
@@ -329,7 +401,7 @@ public class ProductServiceImpl implements ProductService {
 
         List<Product> products = productPage.getContent();
         // Tính toán và gán các trường transient
-        products.forEach(this::setProductDetails);
+        setProductDetails(products);
         logger.info("findBestPriceProducts - Found {} products.", products.size());
         return products;
     }
@@ -376,7 +448,7 @@ public class ProductServiceImpl implements ProductService {
 
         List<Product> relatedProducts = productPage.getContent();
         // Tính toán trường transient
-        relatedProducts.forEach(this::setProductDetails);
+        setProductDetails(relatedProducts);
         return relatedProducts;
     }
 
@@ -390,10 +462,74 @@ public class ProductServiceImpl implements ProductService {
                                                       .and(ProductSpecification.isSelling());
         Page<Product> productPage = productRepository.findAll(finalSpec, pageable);
         // Tính toán trường transient
-        productPage.getContent().forEach(this::setProductDetails);
+        setProductDetails(productPage.getContent());
         return productPage;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Product> findPublishedProductsByCursor(Specification<Product> spec, String sortProperty,
+                                                             Sort.Direction direction, String cursor, int size) {
+        logger.debug("Finding PUBLISHED and SELLING products by cursor - sort: {} {}, size: {}", sortProperty, direction, size);
+        Specification<Product> finalSpec = Specification.where(spec)
+                                                      .and(ProductSpecification.isPublished())
+                                                      .and(ProductSpecification.isSelling());
+        return findByCursor(finalSpec, sortProperty, direction, cursor, size);
+    }
+
+    @Override
+    public String buildCursorAfter(Product product, String sortProperty, Sort.Direction direction) {
+        if (product == null || product.getProductId() == null || !KEYSET_SORT_PROPERTIES.contains(sortProperty)) {
+            return null;
+        }
+        Object sortValue = switch (sortProperty) {
+            case "price" -> product.getPrice();
+            case "salesCount" -> product.getSalesCount();
+            case "averageRating" -> product.getAverageRating();
+            default -> product.getProductId();
+        };
+        return new KeysetCursor(sortProperty, direction, sortValue, product.getProductId()).encode();
+    }
+
+    // Lấy size + 1 phần tử sau con trỏ (phần tử thừa chỉ để biết còn trang sau), không chạy COUNT
+    private CursorPage<Product> findByCursor(Specification<Product> spec, String sortProperty,
+                                             Sort.Direction direction, String cursorToken, int size) {
+        if (!KEYSET_SORT_PROPERTIES.contains(sortProperty)) {
+            throw new IllegalArgumentException("Không hỗ trợ phân trang con trỏ cho thuộc tính: " + sortProperty);
+        }
+        Specification<Product> seekSpec = spec;
+        KeysetCursor cursor = KeysetCursor.decode(cursorToken);
+        if (cursor != null && cursor.matches(sortProperty, direction)) {
+            // Giá trị khóa sai định dạng -> NumberFormatException (IllegalArgumentException), không quay về trang đầu
+            seekSpec = seekSpec.and(seekAfter(cursor));
+        }
+        Sort sort = Sort.by(direction, sortProperty);
+        if (!"productId".equals(sortProperty)) {
+            sort = sort.and(Sort.by(direction, "productId")); // Khóa phụ để thứ tự là duy nhất
+        }
+        final Sort finalSort = sort;
+        List<Product> rows = productRepository.findBy(seekSpec, q -> q.sortBy(finalSort).limit(size + 1).all());
+
+        boolean hasNext = rows.size() > size;
+        List<Product> content = hasNext ? new ArrayList<>(rows.subList(0, size)) : rows;
+        setProductDetails(content);
+        String nextCursor = hasNext ? buildCursorAfter(content.get(content.size() - 1), sortProperty, direction) : null;
+        return new CursorPage<>(content, nextCursor, hasNext, size);
+    }
+
+    private Specification<Product> seekAfter(KeysetCursor cursor) {
+        return switch (cursor.getSortProperty()) {
+            case "price" -> KeysetCursor.after("price", "productId", cursor.getDirection(),
+                    new BigDecimal(cursor.getSortValue()), cursor.getLastId());
+            case "salesCount" -> KeysetCursor.after("salesCount", "productId", cursor.getDirection(),
+                    Integer.valueOf(cursor.getSortValue()), cursor.getLastId());
+            case "averageRating" -> KeysetCursor.after("averageRating", "productId", cursor.getDirection(),
+                    Double.valueOf(cursor.getSortValue()), cursor.getLastId());
+            default -> KeysetCursor.after("productId", "productId", cursor.getDirection(),
+                    cursor.getLastId(), cursor.getLastId());
+        };
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Product> searchAndFilterPublic(String name, Long categoryId, Long brandId, BigDecimal minPrice, BigDecimal maxPrice) {
@@ -403,7 +539,7 @@ public class ProductServiceImpl implements ProductService {
                                                   .and(ProductSpecification.isSelling());
         // Thêm các điều kiện lọc nếu có
         if (StringUtils.hasText(name)) {
-            spec = spec.and(ProductSpecification.hasName(name));
+            spec = spec.and(productSearchIndexService.matching(name.trim()));
         }
         if (categoryId != null) {
             spec = spec.and(ProductSpecification.hasCategoryId(categoryId));
@@ -418,7 +554,7 @@ public class ProductServiceImpl implements ProductService {
         // Lấy danh sách sản phẩm, sắp xếp theo ID giảm dần
         List<Product> products = productRepository.findAll(spec, Sort.by(Sort.Direction.DESC, "productId"));
         // Tính toán trường transient
-        products.forEach(this::setProductDetails);
+        setProductDetails(products);
         return products;
     }
 
@@ -493,30 +629,22 @@ public class ProductServiceImpl implements ProductService {
     }
 
     // Tạo và lưu các biến thể mới cho sản phẩm mới
-    private void mapAndSaveVariants(List<VariantDto> variantDtos, Product product, List<String> savedVariantImageFilenames) {
+    // variantImageFilenames: ảnh đã lưu của từng biến thể (cùng thứ tự với variantDtos, null nếu không upload)
+    private void mapAndSaveVariants(List<VariantDto> variantDtos, Product product, List<String> variantImageFilenames) {
          if (product.getVariants() == null) {
             product.setVariants(new HashSet<>());
          }
          product.getVariants().clear(); // Đảm bảo collection rỗng trước khi thêm
 
-        for (VariantDto dto : variantDtos) {
+        for (int i = 0; i < variantDtos.size(); i++) {
+            VariantDto dto = variantDtos.get(i);
             ProductVariant variant = new ProductVariant();
             mapVariantDtoToEntity(dto, variant); // Map thông tin cơ bản
 
-            MultipartFile imageFile = dto.getVariantImageFile();
-            if (imageFile != null && !imageFile.isEmpty()) {
-                try {
-                    String filename = fileStorageService.save(imageFile); // Lưu ảnh biến thể
-                    variant.setImageUrl(filename); // Gán tên file đã lưu
-                    savedVariantImageFilenames.add(filename); // Thêm vào danh sách để xử lý nếu có lỗi
-                    logger.debug("Saved image '{}' for new variant '{}'", filename, dto.getName());
-                } catch (Exception e) { // Bắt Exception chung
-                    logger.error("Error saving image for new variant '{}': {}", dto.getName(), e.getMessage());
-                    // Ném RuntimeException để đảm bảo rollback transaction
-                    throw new RuntimeException("Lỗi khi lưu ảnh cho loại sản phẩm '" + dto.getName() + "'", e);
-                }
-            } else {
-                 variant.setImageUrl(null); // Không có ảnh
+            String filename = variantImageFilenames.get(i);
+            variant.setImageUrl(filename); // Tên file đã lưu, hoặc null nếu không có ảnh
+            if (filename != null) {
+                logger.debug("Using image '{}' for new variant '{}'", filename, dto.getName());
             }
             variant.setProduct(product); // Liên kết biến thể với sản phẩm cha
             product.getVariants().add(variant); // Thêm biến thể vào collection của sản phẩm
@@ -525,7 +653,7 @@ public class ProductServiceImpl implements ProductService {
     }
 
     // Cập nhật, thêm, xóa biến thể cho sản phẩm đang chỉnh sửa
-    private void updateAndSaveVariants(List<VariantDto> variantDtos, Product existingProduct, List<String> savedNewVariantImageFilenames, List<String> oldVariantImagesToDelete) {
+    private void updateAndSaveVariants(List<VariantDto> variantDtos, Product existingProduct, List<String> variantImageFilenames, List<String> oldVariantImagesToDelete) {
         // Tạo Map các biến thể hiện có theo ID để dễ truy cập
         Map<Long, ProductVariant> existingVariantsMap = existingProduct.getVariants().stream()
                 .collect(Collectors.toMap(ProductVariant::getVariantId, v -> v));
@@ -533,7 +661,8 @@ public class ProductServiceImpl implements ProductService {
         Set<ProductVariant> finalVariants = new HashSet<>(); // Collection chứa các biến thể cuối cùng
         List<Long> dtoVariantIds = new ArrayList<>(); // Lưu ID các biến thể từ DTO để xác định cái nào bị xóa
 
-        for (VariantDto dto : variantDtos) {
+        for (int i = 0; i < variantDtos.size(); i++) {
+            VariantDto dto = variantDtos.get(i);
             ProductVariant variant;
             String oldImageUrl = null; // Lưu URL ảnh cũ của biến thể (nếu có)
 
@@ -554,22 +683,14 @@ public class ProductServiceImpl implements ProductService {
             }
 
             // Xử lý ảnh biến thể
-            MultipartFile imageFile = dto.getVariantImageFile();
-            if (imageFile != null && !imageFile.isEmpty()) { // Nếu có upload file ảnh mới
-                 try {
-                    String filename = fileStorageService.save(imageFile); // Lưu file mới
-                    variant.setImageUrl(filename); // Cập nhật URL ảnh mới cho biến thể
-                    savedNewVariantImageFilenames.add(filename); // Thêm vào danh sách để xử lý nếu lỗi
-                    logger.debug("Saved new image '{}' for variant '{}'", filename, dto.getName());
-                    // Nếu biến thể này trước đó có ảnh, đánh dấu ảnh cũ cần xóa
-                    if (StringUtils.hasText(oldImageUrl)) {
-                        oldVariantImagesToDelete.add(oldImageUrl);
-                        logger.trace("Marked old image '{}' for deletion.", oldImageUrl);
-                    }
-                } catch (Exception e) { // Bắt Exception chung
-                    logger.error("Error saving NEW image for variant '{}': {}", dto.getName(), e.getMessage());
-                    // Ném RuntimeException để rollback
-                    throw new RuntimeException("Lỗi khi lưu ảnh mới cho loại sản phẩm '" + dto.getName() + "'", e);
+            String newImageFilename = variantImageFilenames.get(i);
+            if (newImageFilename != null) { // Nếu có upload file ảnh mới (đã lưu trước transaction)
+                variant.setImageUrl(newImageFilename); // Cập nhật URL ảnh mới cho biến thể
+                logger.debug("Using new image '{}' for variant '{}'", newImageFilename, dto.getName());
+                // Nếu biến thể này trước đó có ảnh (khác ảnh mới), đánh dấu ảnh cũ cần xóa
+                if (StringUtils.hasText(oldImageUrl) && !oldImageUrl.equals(newImageFilename)) {
+                    oldVariantImagesToDelete.add(oldImageUrl);
+                    logger.trace("Marked old image '{}' for deletion.", oldImageUrl);
                 }
             } else { // Không có upload file ảnh mới
                 // Kiểm tra xem DTO có giữ lại URL ảnh cũ không (existingImageUrl)
@@ -662,30 +783,6 @@ public class ProductServiceImpl implements ProductService {
         product.setStock(totalStock);
     }
 
-    // Lưu danh sách file ảnh (MultipartFile) và trả về danh sách tên file đã lưu
-    private List<String> saveImages(List<MultipartFile> images) {
-         if (images == null || images.isEmpty()) {
-            return Collections.emptyList(); // Trả về list rỗng nếu không có ảnh
-         }
-        List<String> savedFilenames = new ArrayList<>();
-        for(MultipartFile file : images) {
-            // Chỉ xử lý file không rỗng
-            if (file != null && !file.isEmpty()) {
-                try {
-                    String filename = fileStorageService.save(file); // Gọi service lưu file
-                    savedFilenames.add(filename); // Thêm tên file đã lưu vào list
-                    logger.trace("Saved image file: {}", filename);
-                } catch (Exception e) { // Bắt Exception chung
-                    logger.error("Error saving image file '{}': {}", file.getOriginalFilename(), e.getMessage());
-                    // Ném RuntimeException để dừng và rollback
-                    throw new RuntimeException("Lỗi khi lưu file ảnh: " + file.getOriginalFilename(), e);
-                }
-            }
-        }
-        logger.debug("Saved {} image files.", savedFilenames.size());
-        return savedFilenames;
-    }
-
      // Xóa danh sách file ảnh vật lý khỏi hệ thống lưu trữ
      private void deleteImageFiles(List<String> filenames) {
          if (filenames != null && !filenames.isEmpty()) {
@@ -697,7 +794,7 @@ public class ProductServiceImpl implements ProductService {
                         fileStorageService.delete(filename); // Gọi service xóa file
                         logger.trace("Deleted image file: {}", filename);
                     } catch (Exception e) { // Bắt Exception chung
-                        // Ghi log lỗi nhưng không dừng chương trình
+                        // Ghi log lỗi nhưng không dừng chương trình; file còn sót sẽ được UploadGarbageCollectorService dọn
                         logger.error("Error deleting image file '{}' from storage: {}", filename, e.getMessage());
                     }
                 }
@@ -780,51 +877,22 @@ public class ProductServiceImpl implements ProductService {
     }
 
 
-    // Hàm helper để gọi setProductDetails cho danh sách
-    private void setProductDetails(List<Product> products) {
-        if (products != null) {
-            products.forEach(this::setProductDetails);
-        }
+    // Thông báo cho các cache/index phía khách hàng (xử lý sau khi transaction commit)
+    private void publishCatalogChanged(Long productId, ChangeType changeType) {
+        eventPublisher.publishEvent(ProductCatalogChangedEvent.of(productId, changeType));
+    }
+
+    // Hàm helper: gán các trường transient cho cả danh sách bằng query gộp (tránh N+1)
+    private void setProductDetails(Collection<Product> products) {
+        productEnrichmentService.enrich(products);
     }
 
-    // Hàm tính toán và gán giá trị cho các trường @Transient của Product
+    // Hàm tính toán và gán giá trị cho các trường @Transient của một Product
     private void setProductDetails(Product product) {
         if (product == null) {
             return;
         }
-
-        // === SỬ DỤNG HÀM MỚI ĐỂ LẤY URL ẢNH CHÍNH ===
-        product.setPrimaryImageUrl(calculatePrimaryImageUrl(product));
-        logger.trace("Set primaryImageUrl for product {}: {}", product.getProductId() != null ? product.getProductId() : "new product", product.getPrimaryImageUrl());
-
-        // --- Logic tính Rating và Review Count ---
-        Double avgRating = 0.0;
-        Integer reviewCount = 0;
-
-        // Chỉ tính nếu sản phẩm đã được lưu (có ID) và reviewRepository có sẵn
-        if (product.getProductId() != null && reviewRepository != null) {
-            try {
-                // Lấy rating trung bình từ repository (có thể trả về null)
-                Double fetchedAvgRating = reviewRepository.findAverageRatingByProductId(product.getProductId());
-                avgRating = (fetchedAvgRating != null) ? fetchedAvgRating : 0.0; // Gán 0.0 nếu null
-
-                // Đếm số lượng review từ repository (có thể trả về null)
-                Integer fetchedReviewCount = reviewRepository.countReviewsByProductId(product.getProductId());
-                reviewCount = (fetchedReviewCount != null) ? fetchedReviewCount : 0; // Gán 0 nếu null
-
-            } catch (Exception e) {
-                // Ghi log nếu có lỗi khi truy vấn DB nhưng không dừng chương trình
-                logger.warn("Could not set rating/review details for product {}: {}", product.getProductId(), e.getMessage());
-                avgRating = 0.0; // Đặt giá trị mặc định khi lỗi
-                reviewCount = 0;
-            }
-        }
-
-        // Gán giá trị đã tính vào các trường transient
-        product.setRating(avgRating);
-        product.setReviewCount(reviewCount);
-        // Gán soldCount từ salesCount (trường được lưu trong DB)
-        product.setSoldCount(product.getSalesCount());
+        productEnrichmentService.enrich(List.of(product));
     }
 
 
@@ -882,6 +950,7 @@ public class ProductServiceImpl implements ProductService {
             productRepository.delete(product);
             productRepository.flush(); // Đẩy lệnh xóa xuống DB (tùy chọn)
             logger.info("ADMIN action: Successfully deleted product entity ID: {}", productId);
+            publishCatalogChanged(productId, ChangeType.DELETED);
             // Sau khi xóa entity thành công, xóa file ảnh vật lý
             deleteImageFiles(imageFilenamesToDelete);
 
@@ -949,7 +1018,7 @@ public class ProductServiceImpl implements ProductService {
         // Tìm tất cả sản phẩm khớp với điều kiện, sắp xếp theo ID giảm dần
         List<Product> products = productRepository.findAll(spec, Sort.by(Sort.Direction.DESC, "productId"));
         // Tính toán các trường transient
-        products.forEach(this::setProductDetails);
+        setProductDetails(products);
         return products;
     }
 
@@ -980,6 +1049,7 @@ public class ProductServiceImpl implements ProductService {
         // Lưu lại
          productRepository.save(product);
         logger.info("ADMIN action: Product {} status updated to {}. Published state: {}", productId, newStatus, product.isPublished());
+        publishCatalogChanged(productId, ChangeType.STATUS_CHANGED);
     }
 
     @Override
@@ -1013,6 +1083,7 @@ public class ProductServiceImpl implements ProductService {
         // Lưu lại sản phẩm đã cập nhật
         productRepository.save(existingProduct);
         logger.info("ADMIN action: Product {} admin fields updated successfully.", productId);
+        publishCatalogChanged(productId, ChangeType.UPDATED);
     }
 
     @Override
@@ -1047,6 +1118,8 @@ public class ProductServiceImpl implements ProductService {
             // Lưu lại tất cả sản phẩm đã cập nhật
             productRepository.saveAll(productsToUpdate);
             logger.info("ADMIN action: Moved {} products successfully to category ID {}", productsToUpdate.size(), newCategoryId);
+            eventPublisher.publishEvent(new ProductCatalogChangedEvent(
+                    productsToUpdate.stream().map(Product::getProductId).toList(), ChangeType.UPDATED));
             return productsToUpdate.size(); // Trả về số lượng sản phẩm đã di chuyển
         } else {
             // Không tìm thấy sản phẩm nào
@@ -1,23 +1,26 @@
 // src/main/java/com/oneshop/service/impl/ReportServiceImpl.java
 package com.oneshop.service.impl;
 
-import com.oneshop.entity.Order;
-import com.oneshop.entity.OrderDetail;
-import com.oneshop.entity.OrderStatus; // <<< Đảm bảo import này
+import com.oneshop.dto.SalesReportLineDto;
+import com.oneshop.enums.ReportType;
 import com.oneshop.repository.OrderRepository;
 import com.oneshop.service.ReportService;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 @Service
 public class ReportServiceImpl implements ReportService {
@@ -29,92 +32,109 @@ public class ReportServiceImpl implements ReportService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
+    // Số dòng giữ trong bộ nhớ của SXSSF và số dòng mỗi lần truy vấn
+    private static final int ROW_WINDOW = 200;
+    private static final int FETCH_SIZE = 1000;
+
+    private static final String[] HEADERS = {"Mã ĐH", "Ngày Đặt", "Người Nhận", "SĐT Giao", "Địa Chỉ Giao", "Sản Phẩm", "Số Lượng", "Đơn Giá", "Thành Tiền Item", "Trạng Thái ĐH"};
+    private static final int[] COLUMN_WIDTHS = {10, 18, 24, 15, 45, 45, 10, 14, 16, 16};
+
+    @Override
+    public long countReportLines(ReportType type, Long shopId, LocalDate fromDate, LocalDate toDate) {
+        return orderRepository.countSalesReportLines(shopId, type.getOrderStatuses(), startOf(fromDate), endOf(toDate));
+    }
+
     @Override
-    public Workbook generateSalesReport(Long shopId) throws IOException {
-        logger.info("Generating sales report for shopId: {}", shopId);
-        List<Order> orders;
+    public void writeReport(ReportType type, Long shopId, LocalDate fromDate, LocalDate toDate,
+                            OutputStream out, LongConsumer progress) throws IOException {
+        logger.info("Streaming {} report for shopId: {}, range: {} - {}", type, shopId, fromDate, toDate);
+        LocalDateTime from = startOf(fromDate);
+        LocalDateTime to = endOf(toDate);
+
+        // Chỉ giữ ROW_WINDOW dòng trong bộ nhớ, các dòng cũ hơn được ghi ra file tạm (nén)
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
         try {
-            // Lấy đơn hàng đã giao hoặc đang giao
-            orders = orderRepository.findByShopIdAndOrderStatusIn(shopId,
-                    List.of(OrderStatus.DELIVERED, OrderStatus.DELIVERING), 
-                    Sort.by("createdAt").descending()); 
-        } catch (Exception e) {
-             logger.error("Error fetching orders for report (shopId={}): {}", shopId, e.getMessage());
-             throw new IOException("Không thể lấy dữ liệu đơn hàng để tạo báo cáo.", e);
-        }
+            Sheet sheet = workbook.createSheet(type.getFilePrefix());
+
+            // --- Tạo Header Row ---
+            Row headerRow = sheet.createRow(0);
+            CellStyle headerStyle = createHeaderStyle(workbook);
+            for (int i = 0; i < HEADERS.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(HEADERS[i]);
+                cell.setCellStyle(headerStyle);
+                // Độ rộng cố định (autoSizeColumn cần toàn bộ dữ liệu trong bộ nhớ)
+                sheet.setColumnWidth(i, COLUMN_WIDTHS[i] * 256);
+            }
 
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("BaoCaoDonHang");
-        logger.debug("Workbook and sheet created.");
-
-        // --- Tạo Header Row ---
-        Row headerRow = sheet.createRow(0);
-        String[] headers = {"Mã ĐH", "Ngày Đặt", "Người Nhận", "SĐT Giao", "Địa Chỉ Giao", "Sản Phẩm", "Số Lượng", "Đơn Giá", "Thành Tiền Item", "Trạng Thái ĐH"};
-        CellStyle headerStyle = createHeaderStyle(workbook);
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-        }
-        logger.debug("Header row created.");
-
-        // --- Điền Dữ liệu Đơn hàng ---
-        int rowNum = 1;
-        CellStyle dataStyle = createDataStyle(workbook);
-        CellStyle currencyStyle = createCurrencyStyle(workbook);
-        CellStyle centerDataStyle = createCenterDataStyle(workbook);
-
-        for (Order order : orders) {
-            // Dùng OrderDetails (đã sửa)
-            if (order.getOrderDetails() != null) {
-                for (OrderDetail item : order.getOrderDetails()) { // Dùng OrderDetail
-                    Row row = sheet.createRow(rowNum++);
-
-                    createCell(row, 0, "#" + order.getId(), dataStyle);
-                    // Dùng getCreatedAt() (đã sửa)
-                    createCell(row, 1, order.getCreatedAt() != null ? order.getCreatedAt().format(DATE_FORMATTER) : "N/A", dataStyle);
-                    // Dùng getter đúng (đã sửa)
-                    createCell(row, 2, order.getRecipientName(), dataStyle);
-                    createCell(row, 3, order.getShippingPhone(), dataStyle);
-                    createCell(row, 4, order.getShippingAddress(), dataStyle);
-
-                    // Lấy tên từ ProductVariant (đã sửa)
-                    String productName = "N/A";
-                    String variantName = "";
-                    if (item.getProductVariant() != null) {
-                        variantName = item.getProductVariant().getName() != null ? " - " + item.getProductVariant().getName() : "";
-                        if (item.getProductVariant().getProduct() != null) {
-                            productName = item.getProductVariant().getProduct().getName() + variantName;
-                        } else {
-                             productName = "Sản phẩm lỗi" + variantName;
-                        }
-                    } else {
-                        logger.warn("OrderDetail {} in Order {} has null ProductVariant.", item.getId(), order.getId());
-                    }
-                    createCell(row, 5, productName, dataStyle);
-
-                    createCell(row, 6, item.getQuantity(), centerDataStyle);
-                    // Lấy giá từ OrderDetail (đã sửa)
-                    createCell(row, 7, item.getPrice() != null ? item.getPrice().doubleValue() : 0.0, currencyStyle);
-                    // Tính thành tiền từ OrderDetail (đã sửa)
-                    double itemTotal = (item.getPrice() != null) ? item.getQuantity() * item.getPrice().doubleValue() : 0.0;
-                    createCell(row, 8, itemTotal, currencyStyle);
-                    // Dùng getOrderStatus() (đã sửa)
-                    createCell(row, 9, order.getOrderStatus() != null ? order.getOrderStatus().name() : "N/A", centerDataStyle);
+            CellStyle dataStyle = createDataStyle(workbook);
+            CellStyle currencyStyle = createCurrencyStyle(workbook);
+            CellStyle centerDataStyle = createCenterDataStyle(workbook);
+
+            // --- Điền dữ liệu theo từng trang (keyset), mỗi trang 1 query projection ---
+            int rowNum = 1;
+            long lastOrderId = Long.MAX_VALUE;
+            long lastDetailId = 0L;
+            List<SalesReportLineDto> lines;
+            do {
+                try {
+                    lines = orderRepository.findSalesReportLines(shopId, type.getOrderStatuses(), from, to,
+                            lastOrderId, lastDetailId, PageRequest.of(0, FETCH_SIZE));
+                } catch (Exception e) {
+                    logger.error("Error fetching report lines (shopId={}): {}", shopId, e.getMessage());
+                    throw new IOException("Không thể lấy dữ liệu đơn hàng để tạo báo cáo.", e);
                 }
-            } else {
-                 logger.warn("Order {} has null OrderDetails.", order.getId());
-            }
+                for (SalesReportLineDto line : lines) {
+                    writeLine(sheet.createRow(rowNum++), line, dataStyle, currencyStyle, centerDataStyle);
+                }
+                if (!lines.isEmpty()) {
+                    SalesReportLineDto last = lines.get(lines.size() - 1);
+                    lastOrderId = last.getOrderId();
+                    lastDetailId = last.getOrderDetailId();
+                }
+                if (progress != null) {
+                    progress.accept(rowNum - 1);
+                }
+            } while (lines.size() == FETCH_SIZE);
+            logger.debug("Data rows written. Total rows: {}", rowNum);
+
+            workbook.write(out);
+            logger.info("{} report streamed for shopId: {} ({} lines)", type, shopId, rowNum - 1);
+        } finally {
+            // Xóa file tạm của SXSSF
+            workbook.dispose();
+            workbook.close();
         }
-        logger.debug("Data rows populated. Total rows: {}", rowNum);
+    }
 
-        // --- Tự động điều chỉnh độ rộng cột ---
-        for (int i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
-        }
-        logger.debug("Columns auto-sized.");
+    private static LocalDateTime startOf(LocalDate fromDate) {
+        return fromDate != null ? fromDate.atStartOfDay() : null;
+    }
+
+    // Mốc kết thúc không bao gồm: đầu ngày hôm sau
+    private static LocalDateTime endOf(LocalDate toDate) {
+        return toDate != null ? toDate.plusDays(1).atStartOfDay() : null;
+    }
 
-        return workbook;
+    private void writeLine(Row row, SalesReportLineDto line, CellStyle dataStyle, CellStyle currencyStyle, CellStyle centerDataStyle) {
+        createCell(row, 0, "#" + line.getOrderId(), dataStyle);
+        createCell(row, 1, line.getCreatedAt() != null ? line.getCreatedAt().format(DATE_FORMATTER) : "N/A", dataStyle);
+        createCell(row, 2, line.getRecipientName(), dataStyle);
+        createCell(row, 3, line.getShippingPhone(), dataStyle);
+        createCell(row, 4, line.getShippingAddress(), dataStyle);
+
+        String variantName = line.getVariantName() != null ? " - " + line.getVariantName() : "";
+        String productName = line.getProductName() != null ? line.getProductName() + variantName
+                : (line.getVariantName() != null ? "Sản phẩm lỗi" + variantName : "N/A");
+        createCell(row, 5, productName, dataStyle);
+
+        int quantity = line.getQuantity() != null ? line.getQuantity() : 0;
+        createCell(row, 6, quantity, centerDataStyle);
+        createCell(row, 7, line.getPrice() != null ? line.getPrice().doubleValue() : 0.0, currencyStyle);
+        double itemTotal = line.getPrice() != null ? quantity * line.getPrice().doubleValue() : 0.0;
+        createCell(row, 8, itemTotal, currencyStyle);
+        createCell(row, 9, line.getOrderStatus() != null ? line.getOrderStatus().name() : "N/A", centerDataStyle);
     }
 
     // --- Helper Methods ---
@@ -5,6 +5,7 @@ import com.oneshop.entity.Role;
 import com.oneshop.entity.Shop;
 import com.oneshop.entity.User;
 import com.oneshop.enums.ShopStatus;
+import com.oneshop.event.UserAccountChangedEvent;
 import com.oneshop.repository.RoleRepository;
 import com.oneshop.repository.ShopRepository;
 import com.oneshop.repository.UserRepository;
@@ -16,6 +17,7 @@ import jakarta.persistence.EntityNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -43,6 +45,9 @@ public class ShopServiceImpl implements ShopService {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
     @Transactional(readOnly = true)
     public Shop getShopByUserId(Long userId) {
@@ -130,6 +135,7 @@ public class ShopServiceImpl implements ShopService {
             user.setShop(savedShop);
 
             userRepository.save(user);
+            eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
             logger.info("Updated user {} role to VENDOR successfully.", userId);
 
         } catch (Exception e) {
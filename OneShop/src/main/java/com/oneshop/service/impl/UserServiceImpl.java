@@ -6,6 +6,7 @@ import com.oneshop.entity.Otp;
 import com.oneshop.entity.Role;
 import com.oneshop.entity.Role.RoleName;
 import com.oneshop.entity.User;
+import com.oneshop.event.UserAccountChangedEvent;
 import com.oneshop.repository.OtpRepository;
 import com.oneshop.repository.RoleRepository;
 import com.oneshop.repository.UserRepository;
@@ -18,6 +19,7 @@ import com.oneshop.repository.ShippingCompanyRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -45,6 +47,7 @@ public class UserServiceImpl implements UserService {
     @Autowired private EmailService emailService;
     @Autowired private OtpService otpService;
     @Autowired private ShippingCompanyRepository shippingCompanyRepository;
+    @Autowired private ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -83,6 +86,7 @@ public class UserServiceImpl implements UserService {
         }
         user.setActivated(true);
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
         logger.info("Kích hoạt tài khoản thành công cho: {}", email);
     }
 
@@ -102,6 +106,7 @@ public class UserServiceImpl implements UserService {
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng với email: " + email));
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
         logger.info("Đặt lại mật khẩu thành công cho: {}", email);
     }
 
@@ -163,6 +168,7 @@ public class UserServiceImpl implements UserService {
     @Transactional
     public void save(User user) {
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
     }
 
     @Override
@@ -173,6 +179,7 @@ public class UserServiceImpl implements UserService {
                     otpRepository.findByUser_IdAndType(user.getId(), "REGISTRATION").ifPresent(otpRepository::delete);
                     otpRepository.findByUser_IdAndType(user.getId(), "FORGOT").ifPresent(otpRepository::delete);
                     userRepository.delete(user);
+                    eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
                     logger.info("Đã xóa người dùng với email: {}", email);
                 });
     }
@@ -199,6 +206,7 @@ public class UserServiceImpl implements UserService {
         user.setAddress(profileUpdateDto.getAddress());
         user.setPhoneNumber(profileUpdateDto.getPhoneNumber());
 
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
         return userRepository.save(user);
     }
 
@@ -222,6 +230,7 @@ public class UserServiceImpl implements UserService {
         }
         
         updatedUser.setShippingCompany(company);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(updatedUser.getUsername()));
         return userRepository.save(updatedUser);
     }
 
@@ -340,6 +349,7 @@ public class UserServiceImpl implements UserService {
         // 4. Cập nhật quyền
         user.setRole(newRole);
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
         logger.info("ADMIN ACTION: User ID {} role successfully changed to {}", userId, newRoleName);
     }
     
@@ -357,6 +367,7 @@ public class UserServiceImpl implements UserService {
 
         user.setActivated(!user.isActivated()); // Đảo ngược trạng thái
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
         logger.info("ADMIN ACTION: User ID {} status toggled to {}", userId, user.isActivated() ? "Hoạt động" : "Khóa");
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.oneshop.specification;
+
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Con trỏ cho phân trang keyset: ghi nhớ (giá trị khóa sắp xếp, id) của phần tử cuối trang trước.
+ * Được mã hóa base64url để client chỉ coi là chuỗi opaque.
+ * Khóa sắp xếp và id không được null (các cột keyset đều NOT NULL); con trỏ thiếu giá trị bị từ chối
+ * thay vì lặng lẽ quay về trang đầu.
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String sortProperty;
+    private final Sort.Direction direction;
+    private final String sortValue;
+    private final Long lastId;
+
+    /**
+     * @throws IllegalArgumentException nếu giá trị khóa sắp xếp hoặc id là null/rỗng
+     */
+    public KeysetCursor(String sortProperty, Sort.Direction direction, Object sortValue, Long lastId) {
+        if (sortValue == null || sortValue.toString().isEmpty() || lastId == null) {
+            throw new IllegalArgumentException("Không tạo được con trỏ phân trang: khóa sắp xếp '" + sortProperty + "' hoặc id bị null.");
+        }
+        this.sortProperty = sortProperty;
+        this.direction = direction;
+        this.sortValue = sortValue.toString();
+        this.lastId = lastId;
+    }
+
+    public String getSortProperty() { return sortProperty; }
+    public Sort.Direction getDirection() { return direction; }
+    public String getSortValue() { return sortValue; }
+    public Long getLastId() { return lastId; }
+
+    /**
+     * Con trỏ có khớp với kiểu sắp xếp hiện tại không (đổi sort thì phải bắt đầu lại từ đầu).
+     */
+    public boolean matches(String property, Sort.Direction dir) {
+        return sortProperty.equals(property) && direction == dir;
+    }
+
+    public String encode() {
+        String raw = sortProperty + SEPARATOR + direction.name() + SEPARATOR + lastId + SEPARATOR + sortValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Giải mã con trỏ; trả về null nếu rỗng (trang đầu).
+     * @throws IllegalArgumentException nếu con trỏ không hợp lệ (client sửa tay, thiếu giá trị khóa...)
+     */
+    public static KeysetCursor decode(String token) {
+        if (!StringUtils.hasText(token)) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("thiếu thành phần");
+            }
+            return new KeysetCursor(parts[0], Sort.Direction.valueOf(parts[1]), parts[3], Long.valueOf(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Con trỏ phân trang không hợp lệ: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Điều kiện "nằm sau con trỏ" theo thứ tự (sortKey, id) cùng chiều:
+     * ASC:  key > v OR (key = v AND id > lastId)
+     * DESC: key < v OR (key = v AND id < lastId)
+     */
+    public static <T, V extends Comparable<? super V>> Specification<T> after(String sortProperty, String idProperty,
+                                                                              Sort.Direction direction, V lastValue, Long lastId) {
+        return (root, query, criteriaBuilder) -> {
+            Path<Long> id = root.get(idProperty);
+            Predicate idBeyond = direction.isAscending()
+                    ? criteriaBuilder.greaterThan(id, lastId)
+                    : criteriaBuilder.lessThan(id, lastId);
+            if (sortProperty.equals(idProperty)) {
+                return idBeyond;
+            }
+            Path<V> key = root.get(sortProperty);
+            Predicate keyBeyond = direction.isAscending()
+                    ? criteriaBuilder.greaterThan(key, lastValue)
+                    : criteriaBuilder.lessThan(key, lastValue);
+            return criteriaBuilder.or(keyBeyond, criteriaBuilder.and(criteriaBuilder.equal(key, lastValue), idBeyond));
+        };
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.util.StringUtils;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -79,6 +80,15 @@ public class ProductSpecification {
         };
     }
 
+    public static Specification<Product> hasIdIn(Collection<Long> productIds) {
+        return (root, query, criteriaBuilder) -> {
+            if (productIds == null || productIds.isEmpty()) {
+                return criteriaBuilder.disjunction(); // Không có ứng viên -> không có kết quả
+            }
+            return root.get("productId").in(productIds);
+        };
+    }
+
     // --- >>> THÊM PHƯƠNG THỨC NÀY <<< ---
     /**
      * Tạo Specification để lọc các sản phẩm đã được published (published = true).
@@ -93,4 +103,4 @@ public class ProductSpecification {
         return (root, query, criteriaBuilder) ->
                 criteriaBuilder.equal(root.get("status"), ProductStatus.SELLING); // Lọc theo status = SELLING
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package com.oneshop.benchmark;
+
+import com.oneshop.service.JwtTokenService;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh chi phí xác thực JWT mỗi request:
+ * - legacyParseTwice: cách cũ của JwtUtils/JwtService, mỗi lần gọi tạo lại khóa + parser
+ *   và giải mã token 2 lần (validate rồi lấy username).
+ * - verifyCacheMiss: JwtTokenService.verify() khi token chưa có trong cache (giải mã + kiểm tra chữ ký 1 lần).
+ * - verifyCacheHit: JwtTokenService.verify() với token đã xác thực (chỉ băm SHA-256 + tra LRU).
+ * Chạy: mvn test-compile rồi chạy main() của lớp này (hoặc org.openjdk.jmh.Main) với classpath test, vd từ IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "ThisIsAnExtremelyLongSecretKeyForHS512AlgorithmThatIsAtLeastSixtyFourCharactersLong1234567890ABCDEF";
+
+    // Nhiều token khác nhau + cache 1 mục -> mọi lần gọi verify() đều trượt cache
+    private static final int MISS_TOKENS = 1024;
+
+    private JwtTokenService cachingService;
+    private JwtTokenService missingService;
+    private String token;
+    private String[] missTokens;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cachingService = newService(10_000);
+        missingService = newService(1);
+        token = cachingService.generateToken("benchmark-user");
+        cachingService.verify(token);
+        missTokens = new String[MISS_TOKENS];
+        for (int i = 0; i < MISS_TOKENS; i++) {
+            missTokens[i] = missingService.generateToken("user-" + i);
+        }
+    }
+
+    // validateJwtToken() rồi getUserNameFromJwtToken(): mỗi hàm tự tạo khóa + parser
+    @Benchmark
+    public String legacyParseTwice() {
+        Jwts.parserBuilder().setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes())).build().parseClaimsJws(token);
+        return Jwts.parserBuilder().setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes())).build()
+                .parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String verifyCacheMiss() {
+        String t = missTokens[next++ & (MISS_TOKENS - 1)];
+        return missingService.getUsername(t);
+    }
+
+    @Benchmark
+    public String verifyCacheHit() {
+        return cachingService.getUsername(token);
+    }
+
+    private static JwtTokenService newService(int cacheSize) {
+        JwtTokenService service = new JwtTokenService();
+        ReflectionTestUtils.setField(service, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(service, "jwtExpirationMs", TimeUnit.HOURS.toMillis(1));
+        ReflectionTestUtils.setField(service, "maxCachedTokens", cacheSize);
+        service.init();
+        return service;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,139 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.BulkOrderActionResult;
+import com.oneshop.entity.*;
+import com.oneshop.entity.Role.RoleName;
+import com.oneshop.repository.OrderRepository;
+import com.oneshop.repository.ProductRepository;
+import com.oneshop.repository.ProductVariantRepository;
+import com.oneshop.repository.ShippingCompanyRepository;
+import com.oneshop.support.TestFixtures;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+class BulkOrderActionTests {
+
+    @Autowired private OrderService orderService;
+    @Autowired private OrderRepository orderRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private ProductVariantRepository variantRepository;
+    @Autowired private ShippingCompanyRepository shippingCompanyRepository;
+    @Autowired private TestFixtures fixtures;
+
+    private Shop shop;
+    private User customer;
+    private Product product;
+    private ProductVariant variant;
+
+    @BeforeEach
+    void setUp() {
+        shop = fixtures.shop();
+        customer = fixtures.user(RoleName.USER);
+        product = fixtures.product(shop, fixtures.category(), 10);
+        variant = fixtures.variant(product, 10);
+    }
+
+    @Test
+    void confirmAppliesOnlyValidTransitionsAndReportsTheRest() {
+        Order pending = order(2, OrderStatus.PENDING);
+        Order alreadyConfirmed = order(1, OrderStatus.CONFIRMED);
+        Order delivered = order(1, OrderStatus.DELIVERED);
+        Order otherShop = fixtures.order(fixtures.shop(), customer, variant, 1, OrderStatus.PENDING, LocalDateTime.now());
+
+        BulkOrderActionResult result = orderService.bulkUpdateOrderStatus(shop.getId(),
+                List.of(pending.getId(), alreadyConfirmed.getId(), delivered.getId(), otherShop.getId(), pending.getId()),
+                OrderStatus.CONFIRMED);
+
+        assertEquals(List.of(pending.getId()), result.getSucceededOrderIds());
+        assertEquals(3, result.getFailedCount());
+        assertTrue(result.getFailedOrders().containsKey(alreadyConfirmed.getId()));
+        assertTrue(result.getFailedOrders().containsKey(delivered.getId()));
+        assertTrue(result.getFailedOrders().containsKey(otherShop.getId()));
+
+        assertEquals(OrderStatus.CONFIRMED, statusOf(pending));
+        assertEquals(OrderStatus.DELIVERED, statusOf(delivered));
+        assertEquals(OrderStatus.PENDING, statusOf(otherShop));
+        assertEquals(2, productRepository.findById(product.getProductId()).orElseThrow().getSalesCount());
+    }
+
+    @Test
+    void cancelReleasesStockOfEveryCancelledOrder() {
+        // Tồn kho đã trừ lúc đặt 2 đơn (3 + 4)
+        variant.setStock(3);
+        variantRepository.save(variant);
+        product.setStock(3);
+        productRepository.save(product);
+        Order first = order(3, OrderStatus.PENDING);
+        Order second = order(4, OrderStatus.CONFIRMED);
+
+        BulkOrderActionResult result = orderService.bulkUpdateOrderStatus(shop.getId(),
+                List.of(first.getId(), second.getId()), OrderStatus.CANCELLED);
+
+        assertEquals(2, result.getSucceededCount());
+        assertEquals(0, result.getFailedCount());
+        assertEquals(OrderStatus.CANCELLED, statusOf(first));
+        assertEquals(OrderStatus.CANCELLED, statusOf(second));
+        assertEquals(10, variantRepository.findStockByVariantId(variant.getVariantId()));
+        assertEquals(10, productRepository.findById(product.getProductId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void unsupportedTargetStatusIsRejected() {
+        Order pending = order(1, OrderStatus.PENDING);
+        assertThrows(IllegalArgumentException.class, () ->
+                orderService.bulkUpdateOrderStatus(shop.getId(), List.of(pending.getId()), OrderStatus.DELIVERED));
+        assertEquals(OrderStatus.PENDING, statusOf(pending));
+    }
+
+    @Test
+    void assignShipperRequiresConfirmedOrderWithShippingCompany() {
+        User shipper = fixtures.user(RoleName.SHIPPER);
+        ShippingCompany company = new ShippingCompany();
+        company.setName("GHN test");
+        company = shippingCompanyRepository.save(company);
+
+        Order ready = order(1, OrderStatus.CONFIRMED);
+        ready.setShippingCompany(company);
+        orderRepository.save(ready);
+        Order noCompany = order(1, OrderStatus.CONFIRMED);
+        Order pending = order(1, OrderStatus.PENDING);
+
+        BulkOrderActionResult result = orderService.bulkAssignShipper(shop.getId(),
+                List.of(ready.getId(), noCompany.getId(), pending.getId()), shipper.getId());
+
+        assertEquals(List.of(ready.getId()), result.getSucceededOrderIds());
+        assertEquals(2, result.getFailedCount());
+        Order reloaded = orderRepository.findById(ready.getId()).orElseThrow();
+        assertEquals(OrderStatus.DELIVERING, reloaded.getOrderStatus());
+        assertEquals(OrderStatus.CONFIRMED, statusOf(noCompany));
+        assertEquals(OrderStatus.PENDING, statusOf(pending));
+    }
+
+    @Test
+    void assignShipperRejectsNonShipperUser() {
+        Order confirmed = order(1, OrderStatus.CONFIRMED);
+        assertThrows(IllegalArgumentException.class, () ->
+                orderService.bulkAssignShipper(shop.getId(), List.of(confirmed.getId()), customer.getId()));
+    }
+
+    private Order order(int quantity, OrderStatus status) {
+        return fixtures.order(shop, customer, variant, quantity, status, LocalDateTime.now());
+    }
+
+    private OrderStatus statusOf(Order order) {
+        return orderRepository.findById(order.getId()).orElseThrow().getOrderStatus();
+    }
+}
@@ -0,0 +1,91 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.ChatConversation;
+import com.oneshop.entity.ChatMessageEntity;
+import com.oneshop.entity.Role.RoleName;
+import com.oneshop.support.TestFixtures;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+class ChatConversationServiceTests {
+
+    @Autowired private ChatConversationService chatConversationService;
+    @Autowired private TestFixtures fixtures;
+
+    private String alice;
+    private String bob;
+
+    @BeforeEach
+    void setUp() {
+        alice = fixtures.user(RoleName.USER).getUsername();
+        bob = fixtures.user(RoleName.USER).getUsername();
+    }
+
+    @Test
+    void summaryKeepsLatestMessageAndCountsUnread() {
+        LocalDateTime t = LocalDateTime.of(2024, 5, 1, 10, 0);
+        chatConversationService.saveMessages(List.of(message(alice, bob, "chào", t), message(alice, bob, "có đó không?", t.plusSeconds(5))));
+
+        ChatConversation bobSide = conversation(bob, alice);
+        assertEquals("có đó không?", bobSide.getLastMessagePreview());
+        assertEquals(2, bobSide.getUnreadCount());
+        assertEquals(0, conversation(alice, bob).getUnreadCount());
+    }
+
+    @Test
+    void lateWriteOfOlderMessageDoesNotOverwriteLastMessage() {
+        LocalDateTime t = LocalDateTime.of(2024, 5, 1, 10, 0);
+        chatConversationService.saveMessages(List.of(message(bob, alice, "tin mới", t.plusMinutes(1))));
+        // Tin gửi trước nhưng được ghi sau (ví dụ 2 luồng đưa vào hàng đợi lệch thứ tự)
+        chatConversationService.saveMessages(List.of(message(alice, bob, "tin cũ", t)));
+
+        ChatConversation aliceSide = conversation(alice, bob);
+        assertEquals("tin mới", aliceSide.getLastMessagePreview());
+        assertEquals(bob, aliceSide.getLastSender());
+        assertEquals(t.plusMinutes(1), aliceSide.getLastMessageAt());
+        assertEquals(1, aliceSide.getUnreadCount());
+        // Tin cũ vẫn được tính là chưa đọc cho bob
+        assertEquals(1, conversation(bob, alice).getUnreadCount());
+    }
+
+    @Test
+    void batchOutOfTimestampOrderStillPicksLatestMessage() {
+        LocalDateTime t = LocalDateTime.of(2024, 5, 1, 10, 0);
+        chatConversationService.saveMessages(List.of(message(alice, bob, "sau", t.plusSeconds(1)), message(alice, bob, "trước", t)));
+
+        ChatConversation bobSide = conversation(bob, alice);
+        assertEquals("sau", bobSide.getLastMessagePreview());
+        assertEquals(2, bobSide.getUnreadCount());
+    }
+
+    private ChatConversation conversation(String owner, String peer) {
+        return chatConversationService.getInbox(owner).stream()
+                .map(row -> (ChatConversation) row[0])
+                .filter(c -> c.getPeerUsername().equals(peer))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static ChatMessageEntity message(String sender, String receiver, String content, LocalDateTime sentAt) {
+        return ChatMessageEntity.builder()
+                .sender(sender)
+                .receiver(receiver)
+                .content(content)
+                .timestamp(sentAt)
+                .type(ChatMessageEntity.MessageType.CHAT)
+                .build();
+    }
+}
@@ -0,0 +1,161 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.ChatMessageEntity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hàng đợi ghi tin nhắn chạy với ChatConversationService giả (không cần DB).
+ */
+class ChatWriteBehindServiceTests {
+
+    private ChatWriteBehindService service;
+
+    /** Ghi nhận các lô được lưu; có thể chặn lần ghi đầu và làm lỗi theo điều kiện. */
+    static class RecordingConversationService extends ChatConversationService {
+        final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch firstCallStarted = new CountDownLatch(1);
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile Predicate<List<ChatMessageEntity>> failWhen = batch -> false;
+        volatile Predicate<List<ChatMessageEntity>> rejectWhen = batch -> false;
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void saveMessages(List<ChatMessageEntity> messages) {
+            calls.incrementAndGet();
+            firstCallStarted.countDown();
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failWhen.test(messages)) {
+                throw new IllegalStateException("DB lỗi");
+            }
+            if (rejectWhen.test(messages)) {
+                throw new DataIntegrityViolationException("Dữ liệu không hợp lệ");
+            }
+            messages.forEach(m -> saved.add(m.getContent()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void flushesEveryMessageInEnqueueOrder() throws Exception {
+        RecordingConversationService store = new RecordingConversationService();
+        service = start(store, 1000, 7);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add("m" + i);
+            service.enqueue(message("m" + i));
+        }
+
+        awaitSaved(store, 50);
+        assertEquals(expected, store.saved);
+        assertTrue(store.calls.get() < 50, "Tin phải được gom lô");
+    }
+
+    @Test
+    void fullQueueBlocksSenderInsteadOfWritingAhead() throws Exception {
+        RecordingConversationService store = new RecordingConversationService();
+        store.gate = new CountDownLatch(1);
+        service = start(store, 2, 1);
+
+        service.enqueue(message("m0"));
+        assertTrue(store.firstCallStarted.await(5, TimeUnit.SECONDS));
+        // Luồng nền đang kẹt ở m0 -> m1, m2 lấp đầy hàng đợi, m3 phải chờ
+        service.enqueue(message("m1"));
+        service.enqueue(message("m2"));
+        Thread sender = new Thread(() -> service.enqueue(message("m3")));
+        sender.start();
+        sender.join(300);
+        assertTrue(sender.isAlive(), "Người gửi phải bị chặn khi hàng đợi đầy");
+        assertEquals(1, store.calls.get(), "Không được ghi đồng bộ vượt lên trước");
+
+        store.gate.countDown();
+        sender.join(5000);
+        awaitSaved(store, 4);
+        assertEquals(List.of("m0", "m1", "m2", "m3"), store.saved);
+    }
+
+    @Test
+    void failedBatchIsRetriedUntilTheDatabaseRecovers() throws Exception {
+        RecordingConversationService store = new RecordingConversationService();
+        AtomicInteger failures = new AtomicInteger();
+        // Lỗi kéo dài qua cả vòng ghi từng tin -> không tin nào bị bỏ
+        store.failWhen = batch -> failures.incrementAndGet() <= 6;
+        service = start(store, 100, 10);
+
+        service.enqueue(message("m0"));
+        service.enqueue(message("m1"));
+
+        awaitSaved(store, 2);
+        assertEquals(List.of("m0", "m1"), store.saved);
+    }
+
+    @Test
+    void onlyPoisonMessageIsDroppedAfterRetries() throws Exception {
+        RecordingConversationService store = new RecordingConversationService();
+        store.rejectWhen = batch -> batch.stream().anyMatch(m -> "bad".equals(m.getContent()));
+        service = start(store, 100, 10);
+        store.gate = new CountDownLatch(1);
+
+        service.enqueue(message("m0"));
+        service.enqueue(message("bad"));
+        service.enqueue(message("m1"));
+        store.gate.countDown();
+
+        awaitSaved(store, 2);
+        assertEquals(List.of("m0", "m1"), store.saved);
+    }
+
+    private static ChatWriteBehindService start(ChatConversationService store, int capacity, int batchSize) {
+        ChatWriteBehindService service = new ChatWriteBehindService();
+        ReflectionTestUtils.setField(service, "chatConversationService", store);
+        ReflectionTestUtils.setField(service, "queueCapacity", capacity);
+        ReflectionTestUtils.setField(service, "batchSize", batchSize);
+        ReflectionTestUtils.setField(service, "flushIntervalMs", 20L);
+        ReflectionTestUtils.setField(service, "shutdownTimeoutMs", 5000L);
+        service.start();
+        return service;
+    }
+
+    private static ChatMessageEntity message(String content) {
+        return ChatMessageEntity.builder()
+                .sender("alice")
+                .receiver("bob")
+                .content(content)
+                .timestamp(LocalDateTime.now())
+                .type(ChatMessageEntity.MessageType.CHAT)
+                .build();
+    }
+
+    private static void awaitSaved(RecordingConversationService store, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (store.saved.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, store.saved.size(), "Số tin đã ghi: " + store.saved);
+    }
+}
@@ -0,0 +1,153 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.SettlementRunResult;
+import com.oneshop.entity.*;
+import com.oneshop.entity.Role.RoleName;
+import com.oneshop.repository.OrderRepository;
+import com.oneshop.support.TestFixtures;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+class CommissionSettlementServiceTests {
+
+    // Kỳ riêng của test để không lẫn với đơn của các test khác (tạo ở thời điểm hiện tại)
+    private static final LocalDate PERIOD_START = LocalDate.of(2020, 3, 1);
+    private static final LocalDate PERIOD_END = LocalDate.of(2020, 3, 31);
+
+    @Autowired private CommissionSettlementService settlementService;
+    @Autowired private OrderRepository orderRepository;
+    @Autowired private OrderService orderService;
+    @Autowired private TestFixtures fixtures;
+
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        customer = fixtures.user(RoleName.USER);
+        // Mỗi shop 1 lô -> kiểm tra cả việc gộp nhiều lô
+        ReflectionTestUtils.setField(settlementService, "chunkSize", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(settlementService, "chunkSize", 500);
+    }
+
+    @Test
+    void settlesDeliveredOrdersPerShop() {
+        Shop shop = fixtures.shop();
+        ProductVariant variant = variantOf(shop);
+        delivered(shop, variant, 2, 10);
+        delivered(shop, variant, 1, 20);
+        fixtures.order(shop, customer, variant, 5, OrderStatus.CANCELLED, PERIOD_START.atTime(9, 0));
+        // Ngoài kỳ
+        fixtures.order(shop, customer, variant, 5, OrderStatus.DELIVERED, PERIOD_END.plusDays(1).atStartOfDay());
+
+        SettlementRunResult result = settlementService.settle(PERIOD_START, PERIOD_END);
+
+        SettlementStatement statement = statementOf(shop);
+        assertEquals(2, statement.getOrderCount());
+        assertEquals(0, new BigDecimal("300000").compareTo(statement.getGmv()));
+        assertEquals(0, new BigDecimal("15000").compareTo(statement.getCommissionAmount()));
+        assertEquals(0, new BigDecimal("285000").compareTo(statement.getNetPayout()));
+        assertEquals(settlementService.getStatements(PERIOD_START, PERIOD_END).size(), result.getShopCount());
+    }
+
+    @Test
+    void rerunReplacesEveryStatementOfThePeriod() {
+        Shop kept = fixtures.shop();
+        Shop emptied = fixtures.shop();
+        delivered(kept, variantOf(kept), 1, 10);
+        Order refunded = delivered(emptied, variantOf(emptied), 1, 10);
+        settlementService.settle(PERIOD_START, PERIOD_END);
+        assertNotNull(statementOf(emptied));
+
+        // Đơn duy nhất của shop bị hủy sau lần đối soát đầu -> lần chạy lại phải xóa bảng kê cũ của shop
+        refunded.setOrderStatus(OrderStatus.CANCELLED);
+        orderRepository.save(refunded);
+        settlementService.settle(PERIOD_START, PERIOD_END);
+
+        List<SettlementStatement> statements = settlementService.getStatements(PERIOD_START, PERIOD_END);
+        assertTrue(statements.stream().noneMatch(s -> s.getShopId().equals(emptied.getId())));
+        assertEquals(1, statements.stream().filter(s -> s.getShopId().equals(kept.getId())).count());
+    }
+
+    @Test
+    void rerunWithNoQualifyingShopClearsThePeriod() {
+        LocalDate start = LocalDate.of(2019, 6, 1);
+        LocalDate end = LocalDate.of(2019, 6, 30);
+        Shop shop = fixtures.shop();
+        Order order = fixtures.order(shop, customer, variantOf(shop), 1, OrderStatus.DELIVERED, start.atTime(12, 0));
+        settlementService.settle(start, end);
+        assertEquals(1, settlementService.getStatements(start, end).size());
+
+        order.setOrderStatus(OrderStatus.CANCELLED);
+        orderRepository.save(order);
+        SettlementRunResult result = settlementService.settle(start, end);
+
+        assertEquals(0, result.getShopCount());
+        assertTrue(settlementService.getStatements(start, end).isEmpty());
+    }
+
+    @Test
+    void orderIsSettledInThePeriodItWasDelivered() {
+        YearMonth thisMonth = YearMonth.now();
+        YearMonth lastMonth = thisMonth.minusMonths(1);
+        Shop shop = fixtures.shop();
+        User shipper = fixtures.user(RoleName.SHIPPER);
+        // Đặt cuối tháng trước, lúc đối soát tháng trước vẫn đang giao
+        Order order = fixtures.order(shop, customer, variantOf(shop), 1, OrderStatus.DELIVERING, lastMonth.atEndOfMonth().atTime(23, 0));
+        order.setShipper(shipper);
+        orderRepository.save(order);
+        settlementService.settle(lastMonth.atDay(1), lastMonth.atEndOfMonth());
+        assertTrue(statementsOf(shop, lastMonth).isEmpty());
+
+        orderService.updateShipperOrderStatus(order.getId(), shipper.getId(), OrderStatus.DELIVERED);
+        settlementService.settle(thisMonth.atDay(1), thisMonth.atEndOfMonth());
+
+        List<SettlementStatement> statements = statementsOf(shop, thisMonth);
+        assertEquals(1, statements.size());
+        assertEquals(1, statements.get(0).getOrderCount());
+        // Chạy lại kỳ trước cũng không tính đơn này lần nữa
+        settlementService.settle(lastMonth.atDay(1), lastMonth.atEndOfMonth());
+        assertTrue(statementsOf(shop, lastMonth).isEmpty());
+    }
+
+    private List<SettlementStatement> statementsOf(Shop shop, YearMonth month) {
+        return settlementService.getStatements(month.atDay(1), month.atEndOfMonth()).stream()
+                .filter(s -> s.getShopId().equals(shop.getId()))
+                .toList();
+    }
+
+    private ProductVariant variantOf(Shop shop) {
+        return fixtures.variant(fixtures.product(shop, fixtures.category(), 100), 100);
+    }
+
+    private Order delivered(Shop shop, ProductVariant variant, int quantity, int dayOfMonth) {
+        return fixtures.order(shop, customer, variant, quantity, OrderStatus.DELIVERED, PERIOD_START.withDayOfMonth(dayOfMonth).atTime(10, 0));
+    }
+
+    private SettlementStatement statementOf(Shop shop) {
+        return settlementService.getStatements(PERIOD_START, PERIOD_END).stream()
+                .filter(s -> s.getShopId().equals(shop.getId()))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -0,0 +1,88 @@
+package com.oneshop.service;
+
+import com.oneshop.service.JwtTokenService.VerifiedToken;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTokenServiceTests {
+
+    private static final String SECRET = "ThisIsAnExtremelyLongSecretKeyForHS512AlgorithmThatIsAtLeastSixtyFourCharactersLong1234567890ABCDEF";
+
+    @Test
+    void secondVerifyOfSameTokenIsServedFromCache() {
+        JwtTokenService service = newService(60_000, 100);
+        String token = service.generateToken("alice");
+
+        VerifiedToken first = service.verify(token).orElseThrow();
+        VerifiedToken second = service.verify(token).orElseThrow();
+
+        assertEquals("alice", first.username());
+        assertSame(first, second, "Lần 2 phải lấy từ cache, không giải mã lại");
+    }
+
+    @Test
+    void cacheMissParsesAndEvictsLeastRecentlyUsed() {
+        JwtTokenService service = newService(60_000, 1);
+        String alice = service.generateToken("alice");
+        String bob = service.generateToken("bob");
+
+        VerifiedToken aliceFirst = service.verify(alice).orElseThrow();
+        assertEquals("bob", service.getUsername(bob));
+        // Cache 1 mục: token của bob đã đẩy alice ra -> xác thực lại từ đầu
+        VerifiedToken aliceAgain = service.verify(alice).orElseThrow();
+
+        assertEquals("alice", aliceAgain.username());
+        assertNotSame(aliceFirst, aliceAgain);
+    }
+
+    @Test
+    void invalidTokensAreRejectedAndNotCached() {
+        JwtTokenService service = newService(60_000, 100);
+        String token = service.generateToken("alice");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        String otherKey = Jwts.builder().setSubject("alice").setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.replace('T', 'X').getBytes()), SignatureAlgorithm.HS512).compact();
+
+        assertEquals(Optional.empty(), service.verify(tampered));
+        assertEquals(Optional.empty(), service.verify(otherKey));
+        assertEquals(Optional.empty(), service.verify("not-a-jwt"));
+        assertEquals(Optional.empty(), service.verify(" "));
+        assertNull(service.getUsername(null));
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        JwtTokenService service = newService(-1_000, 100);
+        assertEquals(Optional.empty(), service.verify(service.generateToken("alice")));
+    }
+
+    @Test
+    void cachedTokenStopsVerifyingOnceItExpires() throws InterruptedException {
+        // exp của JWT tính theo giây -> token hết hạn trong khoảng 1-2 giây
+        JwtTokenService service = newService(2_000, 100);
+        String token = service.generateToken("alice");
+        assertTrue(service.verify(token).isPresent());
+
+        Thread.sleep(2_100);
+
+        assertEquals(Optional.empty(), service.verify(token));
+    }
+
+    private static JwtTokenService newService(long expirationMs, int cacheSize) {
+        JwtTokenService service = new JwtTokenService();
+        ReflectionTestUtils.setField(service, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(service, "jwtExpirationMs", expirationMs);
+        ReflectionTestUtils.setField(service, "maxCachedTokens", cacheSize);
+        service.init();
+        return service;
+    }
+}
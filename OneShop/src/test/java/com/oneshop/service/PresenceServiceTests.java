@@ -0,0 +1,91 @@
+package com.oneshop.service;
+
+import com.oneshop.model.PresenceUpdate;
+import com.oneshop.repository.ChatConversationRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PresenceServiceTests {
+
+    private PresenceService presenceService;
+    private SimpMessagingTemplate messagingTemplate;
+    private SimpUserRegistry simpUserRegistry;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        simpUserRegistry = mock(SimpUserRegistry.class);
+        ChatConversationRepository conversationRepository = mock(ChatConversationRepository.class);
+        when(conversationRepository.findRecentPeers(eq("alice"), any())).thenReturn(List.of("bob"));
+        // bob online ở node khác; alice có 1 session trên node này mà registry vẫn giữ (simple broker)
+        registered("bob", "remote-1");
+        registered("alice", "s1");
+
+        presenceService = new PresenceService();
+        ReflectionTestUtils.setField(presenceService, "conversationRepository", conversationRepository);
+        ReflectionTestUtils.setField(presenceService, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(presenceService, "simpUserRegistry", simpUserRegistry);
+        ReflectionTestUtils.setField(presenceService, "heartbeatTtlMs", 0L);
+        ReflectionTestUtils.setField(presenceService, "offlineGraceMs", 10_000L);
+        ReflectionTestUtils.setField(presenceService, "maxNotifiedPeers", 200);
+        ReflectionTestUtils.setField(presenceService, "typingIntervalMs", 2000L);
+    }
+
+    @Test
+    void heartbeatExpiryIsOfflineEvenWhileTheRegistryStillHoldsTheSession() {
+        connect("alice", "s1");
+        assertTrue(presenceService.isOnline("alice"));
+
+        presenceService.sweep();
+
+        verify(messagingTemplate).convertAndSendToUser("bob", "/queue/presence", new PresenceUpdate("alice", false));
+        assertFalse(presenceService.isOnline("alice"), "Đã báo offline thì isOnline cũng phải là false");
+        presenceService.sweep();
+        verify(messagingTemplate, times(1)).convertAndSendToUser(eq("bob"), eq("/queue/presence"), eq(new PresenceUpdate("alice", false)));
+    }
+
+    @Test
+    void touchBringsAnExpiredUserBackOnline() {
+        connect("alice", "s1");
+        presenceService.sweep();
+        ReflectionTestUtils.setField(presenceService, "heartbeatTtlMs", 90_000L);
+
+        presenceService.touch("alice");
+
+        assertTrue(presenceService.isOnline("alice"));
+        // 1 lần khi connect, 1 lần khi heartbeat quay lại
+        verify(messagingTemplate, times(2)).convertAndSendToUser("bob", "/queue/presence", new PresenceUpdate("alice", true));
+        presenceService.touch("alice");
+        verify(messagingTemplate, times(2)).convertAndSendToUser("bob", "/queue/presence", new PresenceUpdate("alice", true));
+    }
+
+    private void connect(String username, String sessionId) {
+        Principal principal = () -> username;
+        presenceService.onSessionConnected(new SessionConnectedEvent(this,
+                MessageBuilder.withPayload(new byte[0]).setHeader("simpSessionId", sessionId).build(), principal));
+    }
+
+    private void registered(String username, String sessionId) {
+        SimpSession session = mock(SimpSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        SimpUser user = mock(SimpUser.class);
+        when(user.getSessions()).thenReturn(Set.of(session));
+        when(simpUserRegistry.getUser(username)).thenReturn(user);
+    }
+}
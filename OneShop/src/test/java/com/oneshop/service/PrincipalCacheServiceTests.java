@@ -0,0 +1,78 @@
+package com.oneshop.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PrincipalCacheServiceTests {
+
+    private PrincipalCacheService cache;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userService = mock(UserService.class);
+        when(userService.loadUserByUsername(anyString())).thenAnswer(inv -> details(inv.getArgument(0)));
+        cache = new PrincipalCacheService();
+        ReflectionTestUtils.setField(cache, "userService", userService);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+    }
+
+    @Test
+    void cachesUntilEvicted() {
+        UserDetails first = cache.getUserDetails("alice");
+        assertSame(first, cache.getUserDetails("alice"));
+        verify(userService, times(1)).loadUserByUsername("alice");
+
+        cache.evict("alice");
+        assertNotSame(first, cache.getUserDetails("alice"));
+        verify(userService, times(2)).loadUserByUsername("alice");
+    }
+
+    @Test
+    void evictByUsernameAlsoDropsEntryCachedUnderEmail() {
+        when(userService.loadUserByUsername("alice@test.vn")).thenAnswer(inv -> details("alice"));
+        UserDetails first = cache.getUserDetails("alice@test.vn");
+
+        cache.evict("alice");
+
+        assertNotSame(first, cache.getUserDetails("alice@test.vn"));
+    }
+
+    @Test
+    void loadRacingWithEvictionIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch evicted = new CountDownLatch(1);
+        when(userService.loadUserByUsername("alice")).thenAnswer(inv -> {
+            UserDetails stale = details("alice");
+            loading.countDown();
+            // Tài khoản bị khóa và evict trong lúc bản cũ đang được load
+            evicted.await(5, TimeUnit.SECONDS);
+            return stale;
+        }).thenAnswer(inv -> details("alice"));
+
+        CompletableFuture<UserDetails> racing = CompletableFuture.supplyAsync(() -> cache.getUserDetails("alice"));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.evict("alice");
+        evicted.countDown();
+        UserDetails stale = racing.get(5, TimeUnit.SECONDS);
+
+        assertNotSame(stale, cache.getUserDetails("alice"), "Bản load trước khi evict không được ở lại cache");
+        verify(userService, times(2)).loadUserByUsername("alice");
+    }
+
+    private UserDetails details(String username) {
+        return User.withUsername(username).password("x").authorities("ROLE_USER")
+                .accountLocked(false).disabled(false).build();
+    }
+}
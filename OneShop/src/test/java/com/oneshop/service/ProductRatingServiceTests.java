@@ -0,0 +1,72 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.CursorPage;
+import com.oneshop.entity.Category;
+import com.oneshop.entity.Product;
+import com.oneshop.entity.Shop;
+import com.oneshop.repository.ProductRepository;
+import com.oneshop.support.TestFixtures;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+class ProductRatingServiceTests {
+
+    @Autowired private ProductRatingService productRatingService;
+    @Autowired private ProductService productService;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private TestFixtures fixtures;
+
+    @Test
+    void reviewsAreCopiedToProductAverageRating() {
+        Product product = fixtures.product(fixtures.shop(), fixtures.category(), 10);
+        assertEquals(0.0, reload(product).getAverageRating());
+
+        productRatingService.recordReview(product.getProductId(), 5);
+        productRatingService.recordReview(product.getProductId(), 2);
+
+        assertEquals(3.5, reload(product).getAverageRating());
+    }
+
+    @Test
+    void cursorPagesByRatingVisitEveryProductOnce() {
+        Shop shop = fixtures.shop();
+        Category category = fixtures.category();
+        Product best = fixtures.product(shop, category, 10);
+        Product tiedA = fixtures.product(shop, category, 10);
+        Product tiedB = fixtures.product(shop, category, 10);
+        Product unrated = fixtures.product(shop, category, 10);
+        productRatingService.recordReview(best.getProductId(), 5);
+        productRatingService.recordReview(tiedA.getProductId(), 3);
+        productRatingService.recordReview(tiedB.getProductId(), 3);
+
+        Specification<Product> ofShop = (root, query, cb) -> cb.equal(root.get("shop").get("id"), shop.getId());
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<Product> page = productService.findPublishedProductsByCursor(ofShop, "averageRating", Sort.Direction.DESC, cursor, 1);
+            page.getContent().forEach(p -> seen.add(p.getProductId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        // Cùng rating -> productId giảm dần (cùng chiều với khóa chính)
+        assertEquals(List.of(best.getProductId(), tiedB.getProductId(), tiedA.getProductId(), unrated.getProductId()), seen);
+    }
+
+    private Product reload(Product product) {
+        return productRepository.findById(product.getProductId()).orElseThrow();
+    }
+}
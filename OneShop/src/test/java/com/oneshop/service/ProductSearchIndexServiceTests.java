@@ -0,0 +1,72 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.Product;
+import com.oneshop.enums.ProductStatus;
+import com.oneshop.repository.ProductRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ProductSearchIndexServiceTests {
+
+    private ProductSearchIndexService index;
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.findWithBrandAndCategoryByIdIn(anyCollection())).thenAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            // Sản phẩm 1 khớp nguyên token cả 2 từ khóa, các sản phẩm khác chỉ khớp "ao" + tiền tố "th"
+            return ids.stream().map(id -> product(id, id == 1L ? "Áo th" : "Áo thun số " + id)).collect(Collectors.toList());
+        });
+        index = new ProductSearchIndexService();
+        ReflectionTestUtils.setField(index, "productRepository", productRepository);
+        ReflectionTestUtils.setField(index, "readOnlyTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(index, "ready", true);
+    }
+
+    @Test
+    void broadTermKeepsTheTopRankedCandidatesInsteadOfFallingBackToLike() {
+        int total = ProductSearchIndexService.MAX_CANDIDATES + 10;
+        index.refresh(LongStream.rangeClosed(1, total).boxed().toList());
+
+        Set<Long> candidates = index.indexCandidates("áo th");
+
+        assertNotNull(candidates, "Từ khóa rộng không được quay về LIKE");
+        assertEquals(ProductSearchIndexService.MAX_CANDIDATES, candidates.size());
+        assertTrue(candidates.contains(1L), "Sản phẩm khớp nguyên token được xếp trước");
+        assertTrue(candidates.contains((long) total));
+        assertFalse(candidates.contains(2L), "Hòa điểm -> sản phẩm cũ nhất bị cắt");
+        verify(productRepository, never()).findSearchableIdsByNameLike(any(), anyString());
+    }
+
+    @Test
+    void narrowTermReturnsEveryMatch() {
+        index.refresh(List.of(1L, 2L, 3L));
+
+        assertEquals(Set.of(1L, 2L, 3L), index.indexCandidates("ao"));
+        assertEquals(Set.of(3L), index.indexCandidates("so 3"));
+    }
+
+    private static Product product(Long id, String name) {
+        Product product = new Product();
+        product.setProductId(id);
+        product.setName(name);
+        product.setStatus(ProductStatus.SELLING);
+        return product;
+    }
+}
@@ -0,0 +1,89 @@
+package com.oneshop.service;
+
+import com.oneshop.entity.*;
+import com.oneshop.entity.Role.RoleName;
+import com.oneshop.support.TestFixtures;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+class RevenueRollupServiceTests {
+
+    @Autowired private RevenueRollupService revenueRollupService;
+    @Autowired private OrderService orderService;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private TestFixtures fixtures;
+
+    @Test
+    void rebuildMatchesDeltasOfDeliveredOrders() {
+        Shop shop = fixtures.shop();
+        ProductVariant variant = variantOf(shop);
+        deliver(shop, fixtures.order(shop, fixtures.user(RoleName.USER), variant, 2, OrderStatus.DELIVERING, LocalDateTime.now()));
+        BigDecimal fromDeltas = revenueRollupService.getTotalRevenue(shop.getId());
+
+        revenueRollupService.rebuildAll();
+
+        assertEquals(0, new BigDecimal("200000").compareTo(fromDeltas));
+        assertEquals(0, fromDeltas.compareTo(revenueRollupService.getTotalRevenue(shop.getId())));
+        assertEquals(1, revenueRollupService.countDeliveredOrders(shop.getId()));
+    }
+
+    @Test
+    void deliveryCommittingDuringRebuildIsNotLost() throws Exception {
+        Shop shop = fixtures.shop();
+        ProductVariant variant = variantOf(shop);
+        User customer = fixtures.user(RoleName.USER);
+        deliver(shop, fixtures.order(shop, customer, variant, 1, OrderStatus.DELIVERING, LocalDateTime.now()));
+        Order racing = fixtures.order(shop, customer, variant, 1, OrderStatus.DELIVERING, LocalDateTime.now());
+
+        CountDownLatch delivered = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> delivery = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            deliver(shop, racing);
+            delivered.countDown();
+            // Giữ transaction mở (delta đã cộng, chưa commit) trong lúc dựng lại bắt đầu
+            await(commit);
+        }));
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Integer> rebuild = CompletableFuture.supplyAsync(revenueRollupService::rebuildAll);
+        Thread.sleep(300);
+        commit.countDown();
+        delivery.get(15, TimeUnit.SECONDS);
+        rebuild.get(15, TimeUnit.SECONDS);
+
+        assertEquals(0, new BigDecimal("200000").compareTo(revenueRollupService.getTotalRevenue(shop.getId())));
+        assertEquals(2, revenueRollupService.countDeliveredOrders(shop.getId()));
+    }
+
+    private void deliver(Shop shop, Order order) {
+        orderService.updateOrderStatus(order.getId(), OrderStatus.DELIVERED, shop.getId());
+    }
+
+    private ProductVariant variantOf(Shop shop) {
+        return fixtures.variant(fixtures.product(shop, fixtures.category(), 100), 100);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.oneshop.service;
+
+import com.oneshop.config.VnPayConfig;
+import com.oneshop.config.VnPayConfig.TransactionStatus;
+import com.oneshop.entity.*;
+import com.oneshop.entity.Role.RoleName;
+import com.oneshop.repository.OrderRepository;
+import com.oneshop.repository.ProductRepository;
+import com.oneshop.repository.ProductVariantRepository;
+import com.oneshop.support.TestFixtures;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+class StockReservationServiceTests {
+
+    @Autowired private StockReservationService stockReservationService;
+    @Autowired private ProductVariantRepository variantRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private OrderRepository orderRepository;
+    @Autowired private VnPayConfig vnPayConfig;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private TestFixtures fixtures;
+
+    private Shop shop;
+    private Category category;
+    private VnPayConfig vnPay;
+
+    @BeforeEach
+    void setUp() {
+        shop = fixtures.shop();
+        category = fixtures.category();
+        // Không gọi VNPAY thật trong test
+        vnPay = mock(VnPayConfig.class);
+        ReflectionTestUtils.setField(stockReservationService, "vnPayConfig", vnPay);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(stockReservationService, "vnPayConfig", vnPayConfig);
+    }
+
+    @Test
+    void reserveAndReleaseMoveVariantAndProductStock() {
+        Product product = fixtures.product(shop, category, 15);
+        ProductVariant red = fixtures.variant(product, 10);
+        ProductVariant blue = fixtures.variant(product, 5);
+
+        stockReservationService.reserve(List.of(fixtures.line(red, 3), fixtures.line(blue, 2), fixtures.line(red, 1)));
+        assertEquals(6, variantStock(red));
+        assertEquals(3, variantStock(blue));
+        assertEquals(9, productStock(product));
+
+        stockReservationService.release(List.of(fixtures.line(red, 4), fixtures.line(blue, 2)));
+        assertEquals(10, variantStock(red));
+        assertEquals(5, variantStock(blue));
+        assertEquals(15, productStock(product));
+    }
+
+    @Test
+    void insufficientStockRollsBackTheWholeOrder() {
+        Product product = fixtures.product(shop, category, 3);
+        ProductVariant plenty = fixtures.variant(product, 2);
+        ProductVariant scarce = fixtures.variant(product, 1);
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> tx.executeWithoutResult(status ->
+                stockReservationService.reserve(List.of(fixtures.line(plenty, 2), fixtures.line(scarce, 2)))));
+        assertTrue(e.getMessage().contains("không đủ hàng"), e.getMessage());
+
+        // Dòng đầu đã trừ được cũng phải được hoàn lại cùng transaction
+        assertEquals(2, variantStock(plenty));
+        assertEquals(1, variantStock(scarce));
+        assertEquals(3, productStock(product));
+    }
+
+    @Test
+    void concurrentCheckoutsNeverOversell() throws Exception {
+        int stock = 5;
+        int buyers = 20;
+        Product product = fixtures.product(shop, category, stock);
+        ProductVariant variant = fixtures.variant(product, stock);
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new java.util.ArrayList<>();
+            for (int i = 0; i < buyers; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        tx.executeWithoutResult(status -> stockReservationService.reserve(List.of(fixtures.line(variant, 1))));
+                        succeeded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(stock, succeeded.get());
+        assertEquals(buyers - stock, rejected.get());
+        assertEquals(0, variantStock(variant));
+        assertEquals(0, productStock(product));
+    }
+
+    @Test
+    void checkoutsOfDifferentVariantsOfOneProductDoNotWaitForEachOther() throws Exception {
+        Product product = fixtures.product(shop, category, 10);
+        ProductVariant red = fixtures.variant(product, 5);
+        ProductVariant blue = fixtures.variant(product, 5);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        CountDownLatch redReserved = new CountDownLatch(1);
+        CountDownLatch blueDone = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // Đơn 1 giữ hàng rồi chưa commit ngay
+            Future<?> first = pool.submit(() -> tx.executeWithoutResult(status -> {
+                stockReservationService.reserve(List.of(fixtures.line(red, 2)));
+                redReserved.countDown();
+                try {
+                    blueDone.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(redReserved.await(10, TimeUnit.SECONDS));
+
+            // Đơn 2 (biến thể khác của cùng sản phẩm) không bị chặn bởi khóa dòng PRODUCTS của đơn 1
+            long start = System.currentTimeMillis();
+            tx.executeWithoutResult(status -> stockReservationService.reserve(List.of(fixtures.line(blue, 1))));
+            assertTrue(System.currentTimeMillis() - start < 2000, "Đơn 2 phải không chờ đơn 1 commit");
+            blueDone.countDown();
+            first.get(10, TimeUnit.SECONDS);
+        } finally {
+            blueDone.countDown();
+            pool.shutdownNow();
+        }
+
+        assertEquals(3, variantStock(red));
+        assertEquals(4, variantStock(blue));
+        assertEquals(7, productStock(product));
+    }
+
+    @Test
+    void expiredOrderPaidAtVnpayIsConfirmedNotCancelled() {
+        ProductVariant variant = fixtures.variant(fixtures.product(shop, category, 5), 5);
+        Order order = expiredUnpaidOrder(variant, 2);
+        when(vnPay.queryTransaction(eq(order.getId().toString()), any())).thenReturn(TransactionStatus.PAID);
+
+        stockReservationService.releaseExpiredReservations();
+
+        assertEquals(OrderStatus.CONFIRMED, statusOf(order));
+        assertEquals(3, variantStock(variant));
+    }
+
+    @Test
+    void expiredOrderUnpaidAtVnpayIsCancelledAndStockReleased() {
+        ProductVariant variant = fixtures.variant(fixtures.product(shop, category, 5), 5);
+        Order order = expiredUnpaidOrder(variant, 2);
+        when(vnPay.queryTransaction(eq(order.getId().toString()), any())).thenReturn(TransactionStatus.UNPAID);
+
+        stockReservationService.releaseExpiredReservations();
+
+        assertEquals(OrderStatus.CANCELLED, statusOf(order));
+        assertEquals(5, variantStock(variant));
+    }
+
+    @Test
+    void expiredOrderWithUnknownPaymentKeepsItsStockAndIsRecheckedLater() {
+        ProductVariant variant = fixtures.variant(fixtures.product(shop, category, 5), 5);
+        Order order = expiredUnpaidOrder(variant, 2);
+        when(vnPay.queryTransaction(anyString(), any())).thenReturn(TransactionStatus.UNKNOWN);
+
+        stockReservationService.releaseExpiredReservations();
+
+        Order reloaded = orderRepository.findById(order.getId()).orElseThrow();
+        assertEquals(OrderStatus.PENDING, reloaded.getOrderStatus());
+        assertTrue(reloaded.getPaymentExpiresAt().isAfter(LocalDateTime.now()), "Phải hẹn kiểm tra lại, không hủy");
+        assertEquals(3, variantStock(variant));
+    }
+
+    // Đơn VNPAY đã giữ hàng và quá hạn thanh toán
+    private Order expiredUnpaidOrder(ProductVariant variant, int quantity) {
+        stockReservationService.reserve(List.of(fixtures.line(variant, quantity)));
+        Order order = fixtures.order(shop, fixtures.user(RoleName.USER), variant, quantity, OrderStatus.PENDING,
+                LocalDateTime.now().minusMinutes(30));
+        order.setPaymentMethod("bank_transfer");
+        order.setPaymentExpiresAt(LocalDateTime.now().minusMinutes(10));
+        return orderRepository.save(order);
+    }
+
+    private OrderStatus statusOf(Order order) {
+        return orderRepository.findById(order.getId()).orElseThrow().getOrderStatus();
+    }
+
+    private int variantStock(ProductVariant variant) {
+        return variantRepository.findStockByVariantId(variant.getVariantId());
+    }
+
+    private int productStock(Product product) {
+        return productRepository.findById(product.getProductId()).orElseThrow().getStock();
+    }
+}
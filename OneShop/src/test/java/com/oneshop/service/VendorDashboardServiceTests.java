@@ -0,0 +1,72 @@
+package com.oneshop.service;
+
+import com.oneshop.dto.VendorDashboardDto;
+import com.oneshop.event.OrderChangedEvent;
+import com.oneshop.repository.ShopRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class VendorDashboardServiceTests {
+
+    private VendorDashboardService service;
+    private ShopRepository shopRepository;
+
+    @BeforeEach
+    void setUp() {
+        shopRepository = mock(ShopRepository.class);
+        service = new VendorDashboardService();
+        ReflectionTestUtils.setField(service, "shopRepository", shopRepository);
+        ReflectionTestUtils.setField(service, "cacheTtlSeconds", 300L);
+    }
+
+    @Test
+    void cachesUntilAnOrderOfTheShopChanges() {
+        when(shopRepository.findDashboardCounters(eq(1L), any(), any(), any()))
+                .thenReturn(Optional.of(tiles(1)), Optional.of(tiles(2)));
+
+        assertEquals(1, service.getDashboard(1L).getNewOrderCount());
+        assertEquals(1, service.getDashboard(1L).getNewOrderCount());
+        service.onOrderChanged(new OrderChangedEvent(1L, List.of(10L), null));
+
+        assertEquals(2, service.getDashboard(1L).getNewOrderCount());
+        verify(shopRepository, times(2)).findDashboardCounters(eq(1L), any(), any(), any());
+    }
+
+    @Test
+    void tilesLoadedBeforeAConcurrentOrderCommitAreNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        when(shopRepository.findDashboardCounters(eq(1L), any(), any(), any())).thenAnswer(inv -> {
+            VendorDashboardDto stale = tiles(1);
+            loading.countDown();
+            // Đơn mới commit và xóa cache trong lúc query đang chạy
+            committed.await(5, TimeUnit.SECONDS);
+            return Optional.of(stale);
+        }).thenReturn(Optional.of(tiles(2)));
+
+        CompletableFuture<VendorDashboardDto> racing = CompletableFuture.supplyAsync(() -> service.getDashboard(1L));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        service.onOrderChanged(new OrderChangedEvent(1L, List.of(10L), null));
+        committed.countDown();
+        assertEquals(1, racing.get(5, TimeUnit.SECONDS).getNewOrderCount());
+
+        assertEquals(2, service.getDashboard(1L).getNewOrderCount(), "Số liệu tính trước khi xóa không được ở lại cache");
+    }
+
+    private static VendorDashboardDto tiles(long newOrders) {
+        return new VendorDashboardDto(newOrders, 5L, BigDecimal.ZERO);
+    }
+}
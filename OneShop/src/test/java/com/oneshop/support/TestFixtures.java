@@ -0,0 +1,116 @@
+package com.oneshop.support;
+
+import com.oneshop.entity.*;
+import com.oneshop.entity.Role.RoleName;
+import com.oneshop.enums.ProductStatus;
+import com.oneshop.enums.ShopStatus;
+import com.oneshop.repository.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestComponent;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Tạo dữ liệu mẫu (user, shop, sản phẩm, biến thể, đơn hàng) cho các test tích hợp trên H2.
+ * Mỗi lần gọi dùng tên/email ngẫu nhiên để các test không đụng nhau trong cùng context.
+ */
+@TestComponent
+public class TestFixtures {
+
+    @Autowired private RoleRepository roleRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private ShopRepository shopRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private ProductVariantRepository variantRepository;
+    @Autowired private OrderRepository orderRepository;
+
+    public User user(RoleName roleName) {
+        Role role = roleRepository.findByName(roleName).orElseGet(() -> {
+            Role r = new Role();
+            r.setName(roleName);
+            return roleRepository.save(r);
+        });
+        String key = UUID.randomUUID().toString().substring(0, 8);
+        User user = new User();
+        user.setUsername("u" + key);
+        user.setEmail("u" + key + "@test.vn");
+        user.setPassword("x");
+        user.setActivated(true);
+        user.setRole(role);
+        return userRepository.save(user);
+    }
+
+    public Shop shop() {
+        Shop shop = new Shop();
+        shop.setName("Shop test");
+        shop.setStatus(ShopStatus.APPROVED);
+        shop.setUser(user(RoleName.VENDOR));
+        return shopRepository.save(shop);
+    }
+
+    public Category category() {
+        Category category = new Category();
+        category.setName("Danh mục test");
+        return categoryRepository.save(category);
+    }
+
+    public Product product(Shop shop, Category category, int stock) {
+        Product product = new Product();
+        product.setName("Sản phẩm test");
+        product.setPrice(new BigDecimal("100000"));
+        product.setStock(stock);
+        product.setStatus(ProductStatus.SELLING);
+        product.setShop(shop);
+        product.setCategory(category);
+        return productRepository.save(product);
+    }
+
+    public ProductVariant variant(Product product, int stock) {
+        ProductVariant variant = new ProductVariant();
+        variant.setProduct(product);
+        variant.setName("Mặc định");
+        variant.setSku("SKU-" + UUID.randomUUID());
+        variant.setPrice(product.getPrice());
+        variant.setStock(stock);
+        return variantRepository.save(variant);
+    }
+
+    /**
+     * Chi tiết đơn (chưa lưu) cho 1 biến thể; đủ cho StockReservationService.
+     */
+    public OrderDetail line(ProductVariant variant, int quantity) {
+        OrderDetail detail = new OrderDetail();
+        detail.setProductVariant(variant);
+        detail.setQuantity(quantity);
+        detail.setPrice(variant.getPrice());
+        return detail;
+    }
+
+    /**
+     * Đơn đã lưu của {@code shop} với 1 dòng {@code quantity} x {@code variant}.
+     */
+    public Order order(Shop shop, User customer, ProductVariant variant, int quantity, OrderStatus status, LocalDateTime createdAt) {
+        Order order = new Order();
+        order.setUser(customer);
+        order.setShop(shop);
+        order.setRecipientName("Người nhận");
+        order.setShippingPhone("0900000000");
+        order.setShippingAddress("1 Võ Văn Ngân, Thủ Đức");
+        order.setCreatedAt(createdAt);
+        order.setOrderStatus(status);
+        order.setPaymentMethod("COD");
+        order.setShippingCost(BigDecimal.ZERO);
+        order.setDiscountAmount(BigDecimal.ZERO);
+        BigDecimal lineTotal = variant.getPrice().multiply(BigDecimal.valueOf(quantity));
+        order.setSubtotal(lineTotal);
+        order.setTotal(lineTotal);
+        OrderDetail detail = line(variant, quantity);
+        detail.setOrder(order);
+        order.getOrderDetails().add(detail);
+        return orderRepository.save(order);
+    }
+}